@@ -14,8 +14,11 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serial;
 import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Represents a patch, a potential set of changes to a sourcefile.
@@ -24,6 +27,10 @@ public class Patch implements Serializable, Cloneable {
 
     @Serial
     private static final long serialVersionUID = 1645891147232089192L;
+    /**
+     * a separator in toString(), followed by the first token of the next edit
+     */
+    private static final Pattern EDIT_SEPARATOR = Pattern.compile("\\s\\|\\s+(\\S+)");
     protected LinkedList<Edit> edits = new LinkedList<>();
     protected SourceFile sourceFile;
     /**
@@ -287,6 +294,83 @@ public class Patch implements Serializable, Cloneable {
         return editsValidOnLastApply;
     }
 
+    /**
+     * Recreate a patch from its toString() form, using each edit class's fromString method.
+     * <p>
+     * A " | " only counts as a separator between edits if it is followed by the name
+     * of an Edit class, so edits whose descriptions contain " | " (e.g. LLM
+     * replacements) survive the round trip.
+     *
+     * @param description patch description, as produced by toString()
+     * @param sourceFile  the source file the patch applies to
+     * @return the patch
+     * @throws IllegalArgumentException if an edit can't be recreated
+     */
+    public static Patch fromString(String description, SourceFile sourceFile) {
+        Patch patch = new Patch(sourceFile);
+        for (Edit edit : parseEdits(description)) {
+            patch.add(edit);
+        }
+        return patch;
+    }
+
+    /**
+     * @param description patch description, as produced by toString()
+     * @return the edits in the description, in order
+     * @throws IllegalArgumentException if an edit can't be recreated
+     */
+    public static List<Edit> parseEdits(String description) {
+        String text = description.trim();
+        if (text.startsWith("|")) {
+            text = text.substring(1);
+        }
+        if (text.endsWith("|")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        text = text.trim();
+
+        List<Edit> parsed = new ArrayList<>();
+        if (text.isEmpty()) {
+            return parsed;
+        }
+
+        int start = 0;
+        Matcher m = EDIT_SEPARATOR.matcher(text);
+        while (m.find()) {
+            if (editClassFor(m.group(1)) != null) {
+                parsed.add(parseEdit(text.substring(start, m.start()).trim()));
+                start = m.start(1);
+            }
+        }
+        parsed.add(parseEdit(text.substring(start).trim()));
+
+        return parsed;
+    }
+
+    private static Edit parseEdit(String description) {
+        String className = description.split("\\s+", 2)[0];
+        Class<? extends Edit> clazz = editClassFor(className);
+        if (clazz == null) {
+            throw new IllegalArgumentException("Patch edit type unrecognised: " + className);
+        }
+        try {
+            return (Edit) clazz.getMethod("fromString", String.class).invoke(null, description);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Patch edit type has no fromString method: " + className, e);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalArgumentException("Cannot parse edit: " + description, e);
+        }
+    }
+
+    private static Class<? extends Edit> editClassFor(String className) {
+        try {
+            Class<?> clazz = Class.forName(className);
+            return Edit.class.isAssignableFrom(clazz) ? clazz.asSubclass(Edit.class) : null;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder description = new StringBuilder("| ");
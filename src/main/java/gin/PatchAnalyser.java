@@ -15,10 +15,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serial;
 import java.io.Serializable;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -92,64 +89,21 @@ public class PatchAnalyser implements Serializable {
             return new Patch(sourceFileTree);
         }
 
-        List<Edit> editInstances = new ArrayList<>();
-
-        String patchTrim = patchText.trim();
-        String cleanPatch = patchTrim;
-
-        if (patchTrim.startsWith("|")) {
-            cleanPatch = patchText.replaceFirst("\\|", "").trim();
+        List<Edit> editInstances = null;
+        try {
+            editInstances = Patch.parseEdits(patchText);
+        } catch (IllegalArgumentException e) {
+            Logger.error("Cannot parse patch: " + e.getMessage());
+            Logger.trace(e);
+            System.exit(-1);
         }
 
-        String[] editStrings = cleanPatch.trim().split("\\| (?=gin).+"); // only count separators with "gin" following then (i.e. the start of a new edit)
-
         boolean allLineEdits = true;
         boolean allStatementEdits = true;
 
-        for (String editString : editStrings) {
-
-            String[] tokens = editString.trim().split("\\s+");
-
-            String editAction = tokens[0];
-
-            Class<?> clazz = null;
-
-            try {
-                clazz = Class.forName(editAction);
-            } catch (ClassNotFoundException e) {
-                Logger.error("Patch edit type unrecognised: " + editAction);
-                Logger.trace(e);
-                System.exit(-1);
-            }
-
-            Method parserMethod = null;
-            try {
-                parserMethod = clazz.getMethod("fromString", String.class);
-            } catch (NoSuchMethodException e) {
-                Logger.error("Patch edit type has no fromString method: " + clazz.getCanonicalName());
-                Logger.trace(e);
-                System.exit(-1);
-            }
-
-            Edit editInstance = null;
-            try {
-                editInstance = (Edit) parserMethod.invoke(null, editString.trim());
-            } catch (IllegalAccessException e) {
-                Logger.error("Cannot parse patch: access error invoking edit class.");
-                Logger.trace(e);
-                //System.exit(-1);
-                return null;
-            } catch (InvocationTargetException e) {
-                Logger.error("Cannot parse patch: invocation error invoking edit class.");
-                Logger.trace(e);
-                //System.exit(-1);
-                return null;
-            }
-
+        for (Edit editInstance : editInstances) {
             allLineEdits &= editInstance.getEditType() == EditType.LINE;
             allStatementEdits &= editInstance.getEditType() != EditType.LINE;
-            editInstances.add(editInstance);
-
         }
 
         if (!allLineEdits && !allStatementEdits) {
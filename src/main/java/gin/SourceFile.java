@@ -112,8 +112,10 @@ public abstract class SourceFile implements Serializable {
             return Collections.singletonList(cu);
         }
 
+        // kept out of the TargetMethods, which are shared by every copy of a SourceFile
+        Map<TargetMethod, String> fullyQualifiedNames = new HashMap<>();
         for (TargetMethod tm : targetMethods) {
-            tm.fullyQualifiedMethodName = FullyQualifiedNames.makeMethodNameFullyQualified(tm.methodName, cu);
+            fullyQualifiedNames.put(tm, FullyQualifiedNames.makeMethodNameFullyQualified(tm.methodName, cu));
         }
 
         FullyQualifiedNames.annotateCompilationUnit(cu);
@@ -132,7 +134,7 @@ public abstract class SourceFile implements Serializable {
             if (methodName != null) {
                 for (TargetMethod targetMethod : targetMethods) {
 
-                    if (methodName.equals(targetMethod.fullyQualifiedMethodName)) {
+                    if (methodName.equals(fullyQualifiedNames.get(targetMethod))) {
                         targetMethodNodes.add(m);
                         notFound.remove(targetMethod);
                     }
@@ -174,6 +176,19 @@ public abstract class SourceFile implements Serializable {
         return workingDirPath.relativize(filePath).toString();
     }
 
+    /**
+     * @return the names of the target methods, sorted; empty if the whole class is targeted
+     */
+    public List<String> getTargetMethodNames() {
+        if (targetMethods == null) {
+            return Collections.emptyList();
+        }
+        return targetMethods.stream()
+                .map(tm -> tm.methodName)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
     /*============== the following are some helper methods and classes ==============*/
 
     /**
@@ -188,11 +203,9 @@ public abstract class SourceFile implements Serializable {
     private static class TargetMethod {
 
         String methodName;
-        String fullyQualifiedMethodName;
 
         TargetMethod(String name) {
             methodName = name;
-            fullyQualifiedMethodName = name;
         }
 
         @Override
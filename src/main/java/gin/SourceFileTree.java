@@ -62,7 +62,8 @@ public class SourceFileTree extends SourceFile {
     private Map<Integer, List<Integer>> insertionPointsInBlock;
 
     /**
-     * nodes containing each target method
+     * nodes containing each target method, found once when the CU is populated,
+     * so that reading them doesn't write to a CU that other threads may be copying
      */
     private List<Node> targetMethodRootNodes;
 
@@ -214,8 +215,7 @@ public class SourceFileTree extends SourceFile {
             return null;
         }
 
-        List<Node> targetNode = getTargetMethodRootNodesFromCU(this.compilationUnit, this.targetMethods);
-        return targetNode;
+        return new ArrayList<>(this.targetMethodRootNodes);
     }
 
     /*============== the following are general getter methods used in various places ==============*/
@@ -8,6 +8,7 @@ import gin.SourceFile;
 import gin.edit.Edit;
 import gin.test.UnitTest;
 import gin.test.UnitTestResultSet;
+import gin.util.PopulationCheckpoint;
 import gin.util.Sampler;
 import org.apache.commons.rng.simple.JDKRandomBridge;
 import org.apache.commons.rng.simple.RandomSource;
@@ -42,6 +43,12 @@ public class NSGAII extends Sampler {
     @Argument(alias = "is", description = "Random seed for individual selection")
     protected Integer individualSeed = 123;
 
+    @Argument(alias = "ckpt", description = "Checkpoint file, rewritten after every generation")
+    protected File checkpointFile = null;
+
+    @Argument(alias = "resume", description = "Resume from the checkpoint file (-ckpt)")
+    protected Boolean resume = false;
+
     // Allowed edit types for sampling: parsed from editType
     protected List<Class<? extends Edit>> editTypes;
 
@@ -52,6 +59,10 @@ public class NSGAII extends Sampler {
     private float initTime;
     private long initMem;
     private List<UnitTest> tests;
+    private int methodIndex;
+    private PopulationCheckpoint resumeState;
+    // Every patch evaluated for the current method, and the Pareto front among them
+    private final ParetoArchive archive = new ParetoArchive();
 
     public NSGAII(String[] args) {
         super(args);
@@ -94,17 +105,35 @@ public class NSGAII extends Sampler {
             Logger.info("Please enter a positive number of generations and individuals.");
         } else {
 
-            writeNewHeader();
+            PopulationCheckpoint checkpoint = null;
+            if (resume && checkpointFile != null && checkpointFile.exists()) {
+                checkpoint = resumeFromCheckpoint(checkpointFile);
+                mutationRng = checkpoint.mutationRng();
+                individualRng = checkpoint.individualRng();
+            } else {
+                writeNewHeader();
+            }
 
-            for (TargetMethod method : methodData) {
+            int firstMethod = checkpoint != null ? checkpoint.methodIndex() : 0;
+            for (methodIndex = firstMethod; methodIndex < methodData.size(); methodIndex++) {
+                TargetMethod method = methodData.get(methodIndex);
 
                 Logger.info("Running NSGAII on method " + method);
 
+                resumeState = (checkpoint != null && checkpoint.methodIndex() == methodIndex && checkpoint.hasPopulation())
+                        ? checkpoint : null;
+
                 // Setup SourceFile for patching
                 SourceFile sourceFile = SourceFile.makeSourceFileForEditTypes(editTypes, method.getFileSource().getPath(), Collections.singletonList(method.getMethodName()));
 
                 search(method, new Patch(sourceFile));
 
+                resumeState = null;
+                if (checkpointFile != null) {
+                    saveCheckpoint(checkpointFile, methodIndex + 1, 0, 0, new double[0],
+                            Collections.emptyList(), Collections.emptyList(), mutationRng, individualRng);
+                }
+
             }
         }
 
@@ -117,34 +146,42 @@ public class NSGAII extends Sampler {
         methodName = method.toString();
         tests = method.getGinTests();
 
-        // Run original code
-        UnitTestResultSet initRes = initFitness(className, tests, origPatch);
-        initMem = initRes.totalMemoryUsage();
-        initTime = initRes.totalExecutionTime() / 1000000.0f;
-        writePatch(initRes, methodName);
-
         ArrayList<Integer> dirs = new ArrayList<>();
         dirs.add(-1);
         dirs.add(-1);
         NSGAIIPop P = new NSGAIIPop(2, dirs);
-        UnitTestResultSet resultSet;
-        Logger.info("Generating initial generation");
-        for (int i = 0; i < indNumber; i++) {
-            Patch patch = mutate(origPatch);
-            resultSet = testPatch(className, tests, patch, null);
-            writePatch(resultSet, methodName);
-            ArrayList<Long> fitnesses = new ArrayList<>();
-            if (resultSet.allTestsSuccessful()) {
-                fitnesses.add(resultSet.totalExecutionTime());
-                fitnesses.add(resultSet.totalMemoryUsage());
-            } else {
-                fitnesses.add(Long.MAX_VALUE);
-                fitnesses.add(Long.MAX_VALUE);
+        int firstGeneration = 0;
+        archive.clear();
+
+        if (resumeState != null) {
+            // Continue from the checkpointed population
+            initTime = (float) resumeState.reference()[0];
+            initMem = (long) resumeState.reference()[1];
+            List<Patch> restored = resumeState.restorePatches(origPatch.getSourceFile());
+            for (int i = 0; i < restored.size(); i++) {
+                double[] stored = resumeState.fitnesses().get(i);
+                long[] fitnesses = new long[stored.length];
+                for (int m = 0; m < stored.length; m++) {
+                    fitnesses[m] = (long) stored[m];
+                }
+                archive.add(restored.get(i), fitnesses);
+                P.addInd(restored.get(i), fitnesses);
+            }
+            firstGeneration = resumeState.generation();
+        } else {
+            // Run original code
+            UnitTestResultSet initRes = initFitness(className, tests, origPatch);
+            initMem = initRes.totalMemoryUsage();
+            initTime = initRes.totalExecutionTime() / 1000000.0f;
+            writePatch(initRes, methodName);
+
+            Logger.info("Generating initial generation");
+            for (int i = 0; i < indNumber; i++) {
+                Patch patch = mutate(origPatch);
+                P.addInd(patch, evaluate(patch));
             }
-            P.addInd(patch, fitnesses);
-
         }
-        for (int g = 0; g < genNumber; g++) {
+        for (int g = firstGeneration; g < genNumber; g++) {
             Logger.info("Generating generation " + g);
             NSGAIIPop Q = NSGAIIOffspring(P, origPatch);
             NSGAIIPop R = new NSGAIIPop(P, Q);
@@ -152,21 +189,55 @@ public class NSGAII extends Sampler {
             ArrayList<Patch> patches = R.getNextGen(indNumber);
             P = new NSGAIIPop(2, dirs);
             for (Patch patch : patches) {
-                Logger.info("Testing patch: " + patch);
-                resultSet = testPatch(className, tests, patch, null);
-
-                writePatch(resultSet, methodName);
-                ArrayList<Long> fitnesses = new ArrayList<>();
-                if (resultSet.allTestsSuccessful()) {
-                    fitnesses.add(resultSet.totalExecutionTime());
-                    fitnesses.add(resultSet.totalMemoryUsage());
-                } else {
-                    fitnesses.add(Long.MAX_VALUE);
-                    fitnesses.add(Long.MAX_VALUE);
-                }
-                P.addInd(patch, fitnesses);
+                // survivors were all evaluated already, so this only looks them up
+                P.addInd(patch, evaluate(patch));
+            }
+            if (checkpointFile != null) {
+                checkpoint(g + 1, P);
             }
         }
+
+        Logger.info("Pareto front of " + archive.getFront().size() + " patches, from " + archive.size() + " evaluated:");
+        for (int i = 0; i < archive.getFront().size(); i++) {
+            long[] objectives = archive.getFrontObjectives().get(i);
+            Logger.info("  time " + objectives[0] + " ns, memory " + objectives[1] + " bytes: " + archive.getFront().get(i));
+        }
+    }
+
+    // Execution time and memory of a patch, tested only if it is not in the archive already
+    private long[] evaluate(Patch patch) {
+        long[] fitnesses = archive.lookup(patch);
+        if (fitnesses != null) {
+            Logger.debug("Already evaluated: " + patch);
+            return fitnesses;
+        }
+        Logger.info("Testing patch: " + patch);
+        UnitTestResultSet resultSet = testPatch(className, tests, patch, null);
+        writePatch(resultSet, methodName);
+        if (resultSet.allTestsSuccessful()) {
+            fitnesses = new long[]{resultSet.totalExecutionTime(), resultSet.totalMemoryUsage()};
+        } else {
+            fitnesses = new long[]{Long.MAX_VALUE, Long.MAX_VALUE};
+        }
+        archive.add(patch, fitnesses);
+        return fitnesses;
+    }
+
+    // Save the population at the end of a generation; fitnesses are stored as doubles,
+    // which is exact for Long.MAX_VALUE and for any realistic time or memory value
+    private void checkpoint(int nextGeneration, NSGAIIPop population) {
+        List<Patch> patches = new ArrayList<>();
+        List<double[]> fitnesses = new ArrayList<>();
+        for (NSGAInd ind : population.getPopulation()) {
+            patches.add(ind.getPatch());
+            double[] values = new double[ind.getFitnesses().length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = ind.getFitnesses()[i];
+            }
+            fitnesses.add(values);
+        }
+        saveCheckpoint(checkpointFile, methodIndex, nextGeneration, 0, new double[]{initTime, initMem},
+                patches, fitnesses, mutationRng, individualRng);
     }
 
     public NSGAIIPop NSGAIIOffspring(NSGAIIPop pop, Patch origpatch) {
@@ -211,19 +282,7 @@ public class NSGAII extends Sampler {
         NSGAIIPop Q = new NSGAIIPop(2, dirs);
         //fitness
         for (Patch patch : patches) {
-            UnitTestResultSet resultSet;
-            resultSet = testPatch(className, tests, patch, null);
-
-            writePatch(resultSet, methodName);
-            ArrayList<Long> fitnesses = new ArrayList<>();
-            if (resultSet.allTestsSuccessful()) {
-                fitnesses.add(resultSet.totalExecutionTime());
-                fitnesses.add(resultSet.totalMemoryUsage());
-            } else {
-                fitnesses.add(Long.MAX_VALUE);
-                fitnesses.add(Long.MAX_VALUE);
-            }
-            Q.addInd(patch, fitnesses);
+            Q.addInd(patch, evaluate(patch));
         }
 
         return Q;
@@ -234,6 +293,12 @@ public class NSGAII extends Sampler {
         return testPatch(className, tests, origPatch, null);
     }
 
+    // Both objectives are totals over the tests run
+    @Override
+    protected boolean fitnessUsesTestCost() {
+        return true;
+    }
+
     protected Patch mutate(Patch oldPatch) {
         Patch patch = oldPatch.clone();
         patch.addRandomEditOfClasses(mutationRng, editTypes);
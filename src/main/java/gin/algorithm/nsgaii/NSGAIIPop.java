@@ -4,6 +4,7 @@ import gin.Patch;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 
 public class NSGAIIPop extends NSGAPop {
 
@@ -20,28 +21,27 @@ public class NSGAIIPop extends NSGAPop {
         super(p, q);
     }
 
-    public void addInd(Patch patch, ArrayList<Long> fitnesses) {
-        if (fitnesses.size() != noObj) {
+    public void addInd(Patch patch, long[] fitnesses) {
+        if (fitnesses.length != noObj) {
             throw new IllegalArgumentException("Incorrect number of fitnesses");
         }
         population.add(new NSGAIIInd(patch, fitnesses));
     }
 
+    // Crowding distance of each individual within its own front; call after nonDominatedSort
     public void setCrowding() {
-        for (int m = 0; m < noObj; m++) {
-            sortByObj(m);
-            ((NSGAIIInd) population.get(0)).setCrowding(Double.MAX_VALUE);
-            ((NSGAIIInd) population.get(population.size() - 1)).setCrowding(Double.MAX_VALUE);
-            double max = population.get(population.size() - 1).getFitnesses().get(m);
-            double min = population.get(0).getFitnesses().get(m);
-            double denom = max - min;
-            for (int i = 1; i < population.size() - 1; i++) {
-                double currentDist = ((NSGAIIInd) population.get(i)).getCrowding();
-                double num = population.get(i + 1).getFitnesses().get(m) - population.get(i - 1).getFitnesses().get(m);
-                ((NSGAIIInd) population.get(i)).setCrowding(currentDist + (num / denom));
+        for (List<NSGAInd> front : fronts.values()) {
+            long[][] objectives = new long[front.size()][];
+            int[] members = new int[front.size()];
+            for (int i = 0; i < members.length; i++) {
+                objectives[i] = front.get(i).getFitnesses();
+                members[i] = i;
+            }
+            double[] distances = NonDominatedSorting.crowdingDistances(objectives, members);
+            for (int i = 0; i < members.length; i++) {
+                ((NSGAIIInd) front.get(i)).setCrowding(distances[i]);
             }
         }
-
     }
 
 
@@ -55,7 +55,8 @@ public class NSGAIIPop extends NSGAPop {
                     out.add(ind.getPatch().clone());
                 }
             } else {
-                fronts.get(front).sort(Comparator.comparing((NSGAInd ind) -> ((NSGAIIInd) ind).getCrowding()));
+                // prefer the least crowded individuals, to keep the front spread out
+                fronts.get(front).sort(Comparator.comparingDouble((NSGAInd ind) -> ((NSGAIIInd) ind).getCrowding()).reversed());
                 int frontInd = 0;
                 while (out.size() < popSize) {
                     out.add(fronts.get(front).get(frontInd).getPatch().clone());
@@ -2,24 +2,22 @@ package gin.algorithm.nsgaii;
 
 import gin.Patch;
 
-import java.util.ArrayList;
-
 public abstract class NSGAInd {
 
-    protected ArrayList<Long> fitnesses;
+    protected long[] fitnesses;
     private Patch patch;
     private int rank;
 
-    public NSGAInd(Patch patch, ArrayList<Long> fitnesses) {
+    public NSGAInd(Patch patch, long[] fitnesses) {
         this.patch = patch;
         this.fitnesses = fitnesses;
     }
 
-    public NSGAInd(ArrayList<Long> fitnesses) {
+    public NSGAInd(long[] fitnesses) {
         this.fitnesses = fitnesses;
     }
 
-    public ArrayList<Long> getFitnesses() {
+    public long[] getFitnesses() {
         return fitnesses;
     }
 
@@ -48,74 +48,47 @@ public abstract class NSGAPop {
         }
     }
 
-    public abstract void addInd(Patch patch, ArrayList<Long> fitnesses);
+    public abstract void addInd(Patch patch, long[] fitnesses);
 
     public void addInd(NSGAInd ind) {
         population.add(ind);
     }
 
+    // Sort the population into fronts, numbered from 1, and set each individual's rank to its front
     protected void nonDominatedSort() {
-        Map<NSGAInd, ArrayList<NSGAInd>> dominationSets = new HashMap<>();
-        Map<NSGAInd, Integer> dominationScores = new HashMap<>();
+        int[] front = NonDominatedSorting.sort(objectiveMatrix());
         fronts = new HashMap<>();
-        fronts.put(1, new ArrayList<>());
-        for (NSGAInd p : population) {
-            ArrayList<NSGAInd> dominationSet = new ArrayList<>();
-            int dominationScore = 0;
-            for (NSGAInd q : population) {
-                if (dominates(p, q)) {
-                    dominationSet.add(q);
-                } else if (dominates(q, p)) {
-                    dominationScore += 1;
-                }
-            }
-            dominationScores.put(p, dominationScore);
-            dominationSets.put(p, dominationSet);
-            if (dominationScore == 0) {
-                fronts.get(1).add(p);
-            }
+        for (int i = 0; i < population.size(); i++) {
+            NSGAInd ind = population.get(i);
+            ind.setRank(front[i] + 1);
+            fronts.computeIfAbsent(front[i] + 1, k -> new ArrayList<>()).add(ind);
         }
-        int i = 1;
-        while (true) {
-            ArrayList<NSGAInd> currentFront = fronts.get(i);
-            ArrayList<NSGAInd> nextFront = new ArrayList<>();
-            for (NSGAInd p : currentFront) {
-                for (NSGAInd q : dominationSets.get(p)) {
-                    Integer score = dominationScores.get(q);
-                    score -= 1;
-                    dominationScores.put(q, score);
-                    if (score == 0) {
-                        q.setRank(i + 1);
-                        nextFront.add(q);
-                    }
-                }
-            }
-            i += 1;
-            if (nextFront.size() == 0) {
-                break;
-            } else {
-                fronts.put(i, nextFront);
-            }
+    }
+
+    // Objectives of the whole population, one row per individual, negated where needed so all are minimised
+    protected long[][] objectiveMatrix() {
+        long[][] objectives = new long[population.size()][];
+        for (int i = 0; i < objectives.length; i++) {
+            objectives[i] = toMinimised(population.get(i).getFitnesses());
         }
+        return objectives;
     }
 
+    protected long[] toMinimised(long[] fitnesses) {
+        long[] minimised = new long[noObj];
+        for (int m = 0; m < noObj; m++) {
+            // a positive direction means bigger is better
+            minimised[m] = fitnessDirs.get(m) > 0 ? -fitnesses[m] : fitnesses[m];
+        }
+        return minimised;
+    }
 
     public boolean dominates(NSGAInd p, NSGAInd q) {
-        boolean better = false;
-        for (int i = 0; i < noObj; i++) {
-            float dir = fitnessDirs.get(i);
-            if (p.getFitnesses().get(i) * dir < q.getFitnesses().get(i) * dir) {
-                return false;
-            }
-            if (p.getFitnesses().get(i) * dir > q.getFitnesses().get(i) * dir) {
-                better = true;
-            }
-        }
-        return better;
+        return NonDominatedSorting.dominates(toMinimised(p.getFitnesses()), toMinimised(q.getFitnesses()));
     }
 
     public void sortByObj(int index) {
-        population.sort(Comparator.comparing((NSGAInd ind) -> ind.getFitnesses().get(index)));
+        population.sort(Comparator.comparingLong((NSGAInd ind) -> ind.getFitnesses()[index]));
     }
 
     public ArrayList<NSGAInd> getPopulation() {
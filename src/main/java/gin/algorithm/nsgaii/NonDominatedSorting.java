@@ -0,0 +1,197 @@
+package gin.algorithm.nsgaii;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Non-dominated sorting and crowding distance on primitive objective matrices.
+ * Each row of a matrix is one individual; all objectives are minimised.
+ *
+ * Individuals are first sorted lexicographically, so that an individual can only be
+ * dominated by one that comes before it. Each one is then placed in the first front
+ * that has no member dominating it, found by binary search over the fronts
+ * (ENS-BS: Zhang et al., "An Efficient Approach to Nondominated Sorting for
+ * Evolutionary Multiobjective Optimization", IEEE TEVC 2015).
+ * With two objectives only the last member of a front needs to be checked, which
+ * makes the whole sort O(N log N); with more it is O(M N sqrt(N)) in the worst case,
+ * against O(M N^2) for the pairwise sort of the original NSGA-II.
+ */
+public final class NonDominatedSorting {
+
+    private NonDominatedSorting() {
+    }
+
+    /**
+     * @return true if a is no worse than b in every objective and better in at least one
+     */
+    public static boolean dominates(long[] a, long[] b) {
+        boolean better = false;
+        for (int m = 0; m < a.length; m++) {
+            if (a[m] > b[m]) {
+                return false;
+            }
+            if (a[m] < b[m]) {
+                better = true;
+            }
+        }
+        return better;
+    }
+
+    /**
+     * Sort individuals into fronts.
+     *
+     * @param objectives one row of objective values per individual, all minimised
+     * @return the front of each individual, 0 being the non-dominated front
+     */
+    public static int[] sort(long[][] objectives) {
+        int n = objectives.length;
+        int[] rank = new int[n];
+        if (n == 0) {
+            return rank;
+        }
+
+        int[] order = lexicographicOrder(objectives);
+        List<int[]> fronts = new ArrayList<>();
+        int[] frontSizes = new int[n];
+        boolean twoObjectives = objectives[0].length == 2;
+
+        for (int i : order) {
+            long[] candidate = objectives[i];
+
+            // the first front with no member dominating the candidate; later fronts are
+            // dominated whenever earlier ones are, so binary search applies
+            int low = 0;
+            int high = fronts.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                boolean dominated = twoObjectives
+                        ? dominates(objectives[fronts.get(mid)[frontSizes[mid] - 1]], candidate)
+                        : frontDominates(objectives, fronts.get(mid), frontSizes[mid], candidate);
+                if (dominated) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            if (low == fronts.size()) {
+                fronts.add(new int[4]);
+            }
+            int[] front = fronts.get(low);
+            if (frontSizes[low] == front.length) {
+                front = Arrays.copyOf(front, front.length * 2);
+                fronts.set(low, front);
+            }
+            front[frontSizes[low]++] = i;
+            rank[i] = low;
+        }
+        return rank;
+    }
+
+    // Members added later are more likely to dominate, so check from the end
+    private static boolean frontDominates(long[][] objectives, int[] front, int size, long[] candidate) {
+        for (int k = size - 1; k >= 0; k--) {
+            if (dominates(objectives[front[k]], candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Crowding distance of each member of one front: the sum over objectives of the
+     * normalised distance between its neighbours. Boundary members get infinity.
+     *
+     * @param objectives objective values of the whole population
+     * @param front      indices of the members of the front
+     * @return the distance of each member, in the order given
+     */
+    public static double[] crowdingDistances(long[][] objectives, int[] front) {
+        int size = front.length;
+        double[] distance = new double[size];
+        if (size <= 2) {
+            Arrays.fill(distance, Double.POSITIVE_INFINITY);
+            return distance;
+        }
+
+        int noObj = objectives[front[0]].length;
+        long[] keys = new long[size];
+        for (int m = 0; m < noObj; m++) {
+            for (int k = 0; k < size; k++) {
+                keys[k] = objectives[front[k]][m];
+            }
+            int[] order = sortedIndices(keys);
+
+            distance[order[0]] = Double.POSITIVE_INFINITY;
+            distance[order[size - 1]] = Double.POSITIVE_INFINITY;
+            // in double, as the range may not fit in a long
+            double range = (double) keys[order[size - 1]] - (double) keys[order[0]];
+            if (range == 0) {
+                continue;
+            }
+            for (int k = 1; k < size - 1; k++) {
+                distance[order[k]] += ((double) keys[order[k + 1]] - (double) keys[order[k - 1]]) / range;
+            }
+        }
+        return distance;
+    }
+
+    private static int[] lexicographicOrder(long[][] objectives) {
+        int[] order = new int[objectives.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        mergeSort(order, new int[order.length], 0, order.length, (a, b) -> compareLexicographic(objectives[a], objectives[b]));
+        return order;
+    }
+
+    private static int compareLexicographic(long[] a, long[] b) {
+        for (int m = 0; m < a.length; m++) {
+            int c = Long.compare(a[m], b[m]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    // Indices 0..keys.length-1 in ascending order of key
+    private static int[] sortedIndices(long[] keys) {
+        int[] order = new int[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        mergeSort(order, new int[order.length], 0, order.length, (a, b) -> Long.compare(keys[a], keys[b]));
+        return order;
+    }
+
+    @FunctionalInterface
+    private interface IndexComparator {
+        int compare(int a, int b);
+    }
+
+    // Stable merge sort of int indices, avoiding boxing to Integer
+    private static void mergeSort(int[] a, int[] tmp, int from, int to, IndexComparator comparator) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(a, tmp, from, mid, comparator);
+        mergeSort(a, tmp, mid, to, comparator);
+        if (comparator.compare(a[mid - 1], a[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && comparator.compare(tmp[i], tmp[j]) <= 0)) {
+                a[k] = tmp[i++];
+            } else {
+                a[k] = tmp[j++];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package gin.algorithm.nsgaii;
+
+import gin.Patch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything evaluated during a search, kept across generations.
+ *
+ * Objective values are remembered for every patch, keyed by its string form, so a
+ * patch that reappears (a survivor carried into the next generation, or the same
+ * offspring produced twice) is never tested again. The patches not dominated by any
+ * other evaluated patch are kept as the Pareto front; this may include patches that
+ * were lost from the population. Of patches with identical objectives, only the first
+ * is kept. All objectives are minimised.
+ */
+public class ParetoArchive {
+
+    private final Map<String, long[]> evaluated = new HashMap<>();
+    private final List<Patch> front = new ArrayList<>();
+    private final List<long[]> frontObjectives = new ArrayList<>();
+
+    /**
+     * @return the objectives recorded for this patch, or null if it hasn't been evaluated
+     */
+    public long[] lookup(Patch patch) {
+        return evaluated.get(patch.toString());
+    }
+
+    /**
+     * Record the objectives of a newly evaluated patch.
+     *
+     * @return true if the patch joined the Pareto front
+     */
+    public boolean add(Patch patch, long[] objectives) {
+        evaluated.put(patch.toString(), objectives);
+
+        for (long[] member : frontObjectives) {
+            if (NonDominatedSorting.dominates(member, objectives) || Arrays.equals(member, objectives)) {
+                return false;
+            }
+        }
+        Iterator<Patch> patches = front.iterator();
+        Iterator<long[]> values = frontObjectives.iterator();
+        while (values.hasNext()) {
+            patches.next();
+            if (NonDominatedSorting.dominates(objectives, values.next())) {
+                patches.remove();
+                values.remove();
+            }
+        }
+        front.add(patch);
+        frontObjectives.add(objectives);
+        return true;
+    }
+
+    /**
+     * @return the non-dominated patches evaluated so far
+     */
+    public List<Patch> getFront() {
+        return front;
+    }
+
+    /**
+     * @return the objectives of the patches in {@link #getFront()}, in the same order
+     */
+    public List<long[]> getFrontObjectives() {
+        return frontObjectives;
+    }
+
+    /**
+     * @return the number of distinct patches evaluated
+     */
+    public int size() {
+        return evaluated.size();
+    }
+
+    public void clear() {
+        evaluated.clear();
+        front.clear();
+        frontObjectives.clear();
+    }
+
+}
@@ -25,6 +25,19 @@ public class LLMConfig {
                 + "Do not include any method or class declarations."
                 + "label all code as java.")), 
 		
+		CONTEXT(new PromptTemplate("Give me " + PromptTag.COUNT.withEscape() + " different Java implementations of this method body:"
+        		+ "```\n"
+        		+ PromptTag.DESTINATION.withEscape()
+        		+ "\n"
+        		+ "```\n"
+        		+ "This code belongs to project " + PromptTag.PROJECT.withEscape() + ". "
+        		+ "For context, here is a summary of the surrounding class:\n"
+        		+ PromptTag.CONTEXT.withEscape()
+        		+ "\n"
+                + "Wrap all code in curly braces, if it is not already."
+                + "Do not include any method or class declarations."
+                + "label all code as java.")), 
+		
 		DETAILED(new PromptTemplate("Give me " + PromptTag.COUNT.withEscape() + " different Java implementations of this method body:"
         		+ "```\n"
         		+ PromptTag.DESTINATION.withEscape()
@@ -92,6 +105,12 @@ public class LLMConfig {
     
     public static String projectName = "";
     
+    /** max size, in estimated tokens, of the class context given for the $CONTEXT$ tag; 0 to disable */
+    public static int contextTokenBudget = 512;
+    
+    /** if true, LLM suggestions that are duplicates or no-ops are dropped before being evaluated */
+    public static boolean filterSuggestions = true;
+    
     
     
 }
\ No newline at end of file
@@ -41,6 +41,12 @@ public class LLMMaskedStatement extends StatementEdit{
     private String lastReplacement;
     private String lastPrompt;
 
+    /**
+     * true if this instance was constructed by a call to fromString()
+     * In this case, we won't run the LLM when calling apply, but will use the value of lastReplacement instead
+     */
+    private boolean recreatedFromString;
+
     private Random rng = null;
 
     public LLMMaskedStatement(SourceFile sourceFile, Random rng, PromptTemplate promptTemplate) {
@@ -69,6 +75,22 @@ public class LLMMaskedStatement extends StatementEdit{
         this.lastReplacement = "NOT YET APPLIED";
     }
 
+    public static Edit fromString(String description) {
+        // same layout as LLMReplaceStatement: the destination, then the prompt and replacement between !!!s
+        String[] tokens1 = description.split("!!!", -1);
+
+        String[] tokens2 = tokens1[0].split("\\s+(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
+        String[] destTokens = tokens2[1].split(":");
+        String destFilename = destTokens[0].replace("\"", "");
+        int destination = Integer.parseInt(destTokens[1]);
+
+        LLMMaskedStatement rval = new LLMMaskedStatement(destFilename, destination);
+        rval.lastReplacement = tokens1[3];
+        rval.lastPrompt = tokens1[1];
+        rval.recreatedFromString = true;
+        return rval;
+    }
+
     @Override
     public SourceFile apply(SourceFile sourceFile, Object tagReplacements) {
     	List<SourceFile> l = applyMultiple(sourceFile, 2, (Map<PromptTemplate.PromptTag,String>)tagReplacements);
@@ -82,7 +104,10 @@ public class LLMMaskedStatement extends StatementEdit{
 
     public List<SourceFile> applyMultiple(SourceFile sourceFile, int count, Map<PromptTemplate.PromptTag,String> tagReplacements ){
         SourceFileTree sf = (SourceFileTree) sourceFile;
-        
+
+        if (recreatedFromString) {
+            return applyLastReplacement(sf);
+        }
 
         Statement statementToMask = drawStatementFromSourceFile(sf, (rng != null ? rng : new Random()));
         Logger.info( "Statement to mask: " + statementToMask.toString());
@@ -103,6 +128,7 @@ public class LLMMaskedStatement extends StatementEdit{
         tagReplacements.put(PromptTag.PROJECT, LLMConfig.projectName);
         tagReplacements.put(PromptTag.COUNT, Integer.toString(count));
         tagReplacements.put(PromptTag.DESTINATION, maskCode(sf, statementToMask));
+        tagReplacements.put(PromptTag.CONTEXT, PromptContextBuilder.getContext(sf, LLMConfig.contextTokenBudget));
 
         String prompt = promptTemplate.replaceTags(tagReplacements);
 
@@ -158,9 +184,13 @@ public class LLMMaskedStatement extends StatementEdit{
                 try{
                     MethodDeclaration method;
                     method = StaticJavaParser.parseMethodDeclaration(str);
-                    Statement stmt = method.getBody().orElse(null);
+                    if (method.getBody().isEmpty()) {
+                        // an abstract or interface declaration has nothing to replace the statement with
+                        Logger.info("Suggestion has no method body, skipping it");
+                        continue;
+                    }
                     replacementStrings.add(str);
-                    replacementStatements.add(stmt); 
+                    replacementStatements.add(method.getBody().get());
                     
                 } catch (ParseProblemException e2) {
                     Logger.info("PARSE PROBLEM EXCEPTION 2");
@@ -174,6 +204,11 @@ public class LLMMaskedStatement extends StatementEdit{
 
         }
 
+        Node destination = sf.getNode(destinationStatement);
+        if (LLMConfig.filterSuggestions && destination != null) {
+            SuggestionFilter.retainUseful(destination, replacementStatements, replacementStrings);
+        }
+
         List<SourceFile> variantSourceFiles = new ArrayList<>();
 
         if (replacementStrings.isEmpty()) {
@@ -202,6 +237,33 @@ public class LLMMaskedStatement extends StatementEdit{
         return variantSourceFiles;
     }
 
+    /**
+     * Apply the replacement recorded by toString(), without asking the LLM again.
+     */
+    private List<SourceFile> applyLastReplacement(SourceFileTree sf) {
+        List<SourceFile> variantSourceFiles = new ArrayList<>();
+        Statement stmt;
+        try {
+            stmt = StaticJavaParser.parseBlock(lastReplacement);
+        } catch (ParseProblemException e) {
+            try {
+                stmt = StaticJavaParser.parseMethodDeclaration(lastReplacement).getBody().orElse(null);
+            } catch (ParseProblemException e2) {
+                stmt = null;
+            }
+        }
+        if (stmt == null) {
+            Logger.error("Problem parsing cached edit: " + lastReplacement);
+            return variantSourceFiles;
+        }
+        try {
+            variantSourceFiles.add(sf.replaceNode(destinationStatement, stmt));
+        } catch (ClassCastException e) { // JavaParser sometimes throws this if the statements don't match
+            // do nothing...
+        }
+        return variantSourceFiles;
+    }
+
 
     public Statement drawStatementFromSourceFile(SourceFileTree sourceFileTree, Random rng){
         List<Statement> stmts = sourceFileTree.getTargetMethodRootNode().get(0).findAll(Statement.class);
@@ -145,8 +145,6 @@ public class LLMReplaceStatement extends StatementEdit {
 	    		llmQuery = new Ollama4jLLMQuery("http://localhost:11434", LLMConfig.modelType);
 	    	}
 	
-	    	// TODO here, could call sourceFile.getSource() to provide whole class for context...
-	
 	    	Logger.info("Seeking replacements for:");
 	    	Logger.info(destination);
 	
@@ -156,6 +154,8 @@ public class LLMReplaceStatement extends StatementEdit {
 	    	tagReplacements.put(PromptTag.COUNT, Integer.toString(count));
 	    	tagReplacements.put(PromptTag.DESTINATION, destination.toString());
 	    	tagReplacements.put(PromptTag.PROJECT, LLMConfig.projectName);
+	    	// a compact summary of the class rather than the whole source, to keep prompts small
+	    	tagReplacements.put(PromptTag.CONTEXT, PromptContextBuilder.getContext(sf, LLMConfig.contextTokenBudget));
 	
 	    	String prompt = promptTemplate.replaceTags(tagReplacements);
 	
@@ -190,6 +190,10 @@ public class LLMReplaceStatement extends StatementEdit {
 	
 	    	}
 	
+	    	if (LLMConfig.filterSuggestions) {
+	    		SuggestionFilter.retainUseful(destination, replacementStatements, replacementStrings);
+	    	}
+	
 	    	int i = 1;
 	    	for (String s : replacementStrings) {
 	    		Logger.info("============");
@@ -0,0 +1,191 @@
+package gin.edit.llm;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.pmw.tinylog.Logger;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ThisExpr;
+
+import gin.SourceFileTree;
+
+/**
+ * Builds a compact description of the code surrounding the target method,
+ * for use as the $CONTEXT$ tag of a {@link PromptTemplate}.
+ * <p>
+ * Rather than sending the whole class to the LLM, this only includes:
+ * <ul>
+ * <li>the signature of the target method(s)</li>
+ * <li>declarations of the fields that the target method uses</li>
+ * <li>signatures of methods in the same file that the target method calls</li>
+ * <li>the imports of the file</li>
+ * </ul>
+ * in that order of priority. Output is capped at a token budget (estimated
+ * at {@link #CHARS_PER_TOKEN} characters per token); anything that doesn't fit is dropped.
+ * <p>
+ * Context is cached per file and target method, so it is only computed once per
+ * run. Edits only change statements inside the target method, so the fields,
+ * imports and callee signatures of the original file remain valid for every patch.
+ */
+public class PromptContextBuilder {
+
+    /** rough estimate used to convert the token budget to characters */
+    public static final int CHARS_PER_TOKEN = 4;
+
+    /** keys are filename#targetMethods#budget, values are the context string */
+    private static final Map<String, String> cache = new ConcurrentHashMap<>();
+
+    private PromptContextBuilder() {
+    }
+
+    /**
+     * @param sf          source file containing the target method
+     * @param tokenBudget maximum size of the context, in (estimated) tokens; zero or less disables context
+     * @return the context for the target method of sf; empty string if there's no target method or no budget
+     */
+    public static String getContext(SourceFileTree sf, int tokenBudget) {
+        // a blank name, as given for a whole-class target, is not a method
+        if (tokenBudget <= 0 || sf.getTargetMethodNames().stream().allMatch(String::isBlank)) {
+            return "";
+        }
+
+        String key = sf.getRelativePathToWorkingDir() + "#" + sf.getTargetMethodNames() + "#" + tokenBudget;
+        return cache.computeIfAbsent(key, k -> buildContext(sf, tokenBudget));
+    }
+
+    /**
+     * clears cached context, e.g. if the source on disk has changed
+     */
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    private static String buildContext(SourceFileTree sf, int tokenBudget) {
+        List<Node> targetMethods = sf.getTargetMethodRootNode();
+        if (targetMethods == null || targetMethods.isEmpty()) {
+            return "";
+        }
+
+        CompilationUnit cu = targetMethods.get(0).findCompilationUnit().orElse(null);
+        if (cu == null) {
+            return "";
+        }
+
+        Set<String> signatures = new LinkedHashSet<>();
+        Set<String> usedNames = new LinkedHashSet<>();
+        Set<String> calledNames = new LinkedHashSet<>();
+
+        for (Node target : targetMethods) {
+            if (target instanceof CallableDeclaration) {
+                signatures.add(((CallableDeclaration<?>) target).getDeclarationAsString(true, true, true));
+            }
+
+            for (NameExpr n : target.findAll(NameExpr.class)) {
+                usedNames.add(n.getNameAsString());
+            }
+            for (FieldAccessExpr f : target.findAll(FieldAccessExpr.class)) {
+                if (f.getScope() instanceof ThisExpr) {
+                    usedNames.add(f.getNameAsString());
+                }
+            }
+            for (MethodCallExpr m : target.findAll(MethodCallExpr.class)) {
+                if (m.getScope().isEmpty() || m.getScope().get() instanceof ThisExpr) {
+                    calledNames.add(m.getNameAsString());
+                }
+            }
+        }
+
+        // fields declared in the file that the target method refers to
+        List<String> fields = new ArrayList<>();
+        for (FieldDeclaration fd : cu.findAll(FieldDeclaration.class)) {
+            for (VariableDeclarator vd : fd.getVariables()) {
+                if (usedNames.contains(vd.getNameAsString())) {
+                    StringBuilder field = new StringBuilder();
+                    for (Modifier mod : fd.getModifiers()) {
+                        field.append(mod.getKeyword().asString()).append(" ");
+                    }
+                    fields.add(field.append(vd.getType()).append(" ").append(vd.getName()).append(";").toString());
+                }
+            }
+        }
+
+        // methods declared in the file that the target method calls (excluding the target itself)
+        List<String> callees = new ArrayList<>();
+        for (MethodDeclaration md : cu.findAll(MethodDeclaration.class)) {
+            if (calledNames.contains(md.getNameAsString()) && !targetMethods.contains(md)) {
+                callees.add(md.getDeclarationAsString(true, true, true) + ";");
+            }
+        }
+
+        List<String> imports = new ArrayList<>();
+        for (ImportDeclaration id : cu.getImports()) {
+            imports.add(id.toString().trim());
+        }
+
+        String className = cu.getPrimaryType().map(TypeDeclaration::getNameAsString)
+                .orElse(cu.getTypes().isEmpty() ? "" : cu.getType(0).getNameAsString());
+
+        BudgetedBuilder out = new BudgetedBuilder(tokenBudget * CHARS_PER_TOKEN);
+        out.section("Target method in class " + className + ":", signatures);
+        out.section("Fields used:", fields);
+        out.section("Methods called:", callees);
+        out.section("Imports:", imports);
+
+        String context = out.toString();
+        Logger.debug("Built prompt context of " + context.length() + " chars for " + sf.getTargetMethodNames());
+        return context;
+    }
+
+    /**
+     * appends lines until the character budget is used up
+     */
+    private static class BudgetedBuilder {
+        private final StringBuilder sb = new StringBuilder();
+        private final int maxChars;
+        private boolean full = false;
+
+        BudgetedBuilder(int maxChars) {
+            this.maxChars = maxChars;
+        }
+
+        void section(String heading, Iterable<String> lines) {
+            if (full || !lines.iterator().hasNext() || !fits(heading + System.lineSeparator() + lines.iterator().next())) {
+                return;
+            }
+            sb.append(heading).append(System.lineSeparator());
+            for (String line : lines) {
+                if (!fits(line)) {
+                    full = true;
+                    return;
+                }
+                sb.append(line).append(System.lineSeparator());
+            }
+        }
+
+        private boolean fits(String line) {
+            return sb.length() + line.length() + System.lineSeparator().length() <= maxChars;
+        }
+
+        @Override
+        public String toString() {
+            return sb.toString();
+        }
+    }
+
+}
@@ -13,7 +13,7 @@ import org.pmw.tinylog.Logger;
 
 public class PromptTemplate {
 	public enum PromptTag {
-		COUNT, DESTINATION, ERROR, HINT, PREVIOUS, PROJECT;
+		CONTEXT, COUNT, DESTINATION, ERROR, HINT, PREVIOUS, PROJECT;
 		
 		public String withEscape() {
 			return "$" + this.name() + "$";
@@ -0,0 +1,169 @@
+package gin.edit.llm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.pmw.tinylog.Logger;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.comments.Comment;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.SimpleName;
+import com.github.javaparser.ast.stmt.Statement;
+
+/**
+ * Screens the statements suggested by an LLM before they are turned into
+ * patched source files, so that we don't pay for compiling and testing
+ * suggestions that can't possibly be an improvement.
+ * <p>
+ * Each suggestion is reduced to a canonical form: comments are stripped,
+ * locally declared variables are renamed in order of declaration (v0, v1, ...)
+ * and whitespace is collapsed. Suggestions are dropped if their canonical form
+ * matches the destination node (a no-op) or an earlier suggestion (a duplicate).
+ * <p>
+ * Only the first remaining suggestion is applied, so dropping some of an edit's
+ * suggestions just promotes the next one. An evaluation is saved only when all of
+ * them are dropped: the edit then fails to apply and the patch isn't compiled or tested.
+ * Counts are kept over the whole run so the number of saved evaluations can be reported.
+ */
+public class SuggestionFilter {
+
+    private static final AtomicLong suggestionsSeen = new AtomicLong();
+    private static final AtomicLong duplicatesDropped = new AtomicLong();
+    private static final AtomicLong noOpsDropped = new AtomicLong();
+    private static final AtomicLong allDropped = new AtomicLong();
+
+    private SuggestionFilter() {
+    }
+
+    /**
+     * Removes no-op and duplicate suggestions, in place. The two lists are parallel:
+     * strings.get(i) is the LLM's text for statements.get(i).
+     *
+     * @param destination the node that the suggestions will replace
+     * @param statements  the parsed suggestions
+     * @param strings     the raw suggestion text
+     * @return the number of suggestions removed
+     */
+    public static int retainUseful(Node destination, List<Statement> statements, List<String> strings) {
+        Set<String> seen = new HashSet<>();
+        String original = canonicalise(destination);
+        int removed = 0;
+
+        for (int i = 0; i < statements.size(); ) {
+            suggestionsSeen.incrementAndGet();
+            String canonical = canonicalise(statements.get(i));
+
+            boolean drop = false;
+            if (canonical.equals(original)) {
+                noOpsDropped.incrementAndGet();
+                Logger.info("Dropping LLM suggestion " + (i + removed + 1) + ": same as original code");
+                drop = true;
+            } else if (!seen.add(canonical)) {
+                duplicatesDropped.incrementAndGet();
+                Logger.info("Dropping LLM suggestion " + (i + removed + 1) + ": duplicate of an earlier suggestion");
+                drop = true;
+            }
+
+            if (drop) {
+                statements.remove(i);
+                strings.remove(i);
+                removed++;
+            } else {
+                i++;
+            }
+        }
+
+        if (removed > 0 && statements.isEmpty()) {
+            allDropped.incrementAndGet();
+        }
+        return removed;
+    }
+
+    /**
+     * @param node to canonicalise; not modified
+     * @return source for a copy of node with comments removed, local variables
+     * renamed in declaration order, and whitespace collapsed
+     */
+    public static String canonicalise(Node node) {
+        Node copy = node.clone();
+
+        for (Comment c : copy.getAllContainedComments()) {
+            c.remove();
+        }
+        copy.removeComment();
+
+        // rename locals in the order they're declared
+        Map<String, String> renames = new HashMap<>();
+        for (Node n : copy.findAll(Node.class)) {
+            SimpleName declared = null;
+            if (n instanceof VariableDeclarator) {
+                declared = ((VariableDeclarator) n).getName();
+            } else if (n instanceof Parameter) {
+                declared = ((Parameter) n).getName();
+            }
+            if (declared != null && !renames.containsKey(declared.getIdentifier())) {
+                renames.put(declared.getIdentifier(), "v" + renames.size());
+            }
+        }
+
+        List<SimpleName> names = new ArrayList<>(copy.findAll(SimpleName.class));
+        for (SimpleName name : names) {
+            String replacement = renames.get(name.getIdentifier());
+            Node parent = name.getParentNode().orElse(null);
+            if (replacement != null && (parent instanceof NameExpr || parent instanceof VariableDeclarator || parent instanceof Parameter)) {
+                name.setIdentifier(replacement);
+            }
+        }
+
+        return copy.toString().replaceAll("\\s+", " ").trim();
+    }
+
+    /**
+     * @return number of suggestions checked so far
+     */
+    public static long getSuggestionsSeen() {
+        return suggestionsSeen.get();
+    }
+
+    /**
+     * @return number of suggestions dropped for duplicating an earlier one
+     */
+    public static long getDuplicatesDropped() {
+        return duplicatesDropped.get();
+    }
+
+    /**
+     * @return number of suggestions dropped for being the same as the original code
+     */
+    public static long getNoOpsDropped() {
+        return noOpsDropped.get();
+    }
+
+    /**
+     * @return number of compile and test runs avoided; one per edit whose suggestions were all dropped
+     */
+    public static long getEvaluationsSaved() {
+        return allDropped.get();
+    }
+
+    public static void resetStatistics() {
+        suggestionsSeen.set(0);
+        duplicatesDropped.set(0);
+        noOpsDropped.set(0);
+        allDropped.set(0);
+    }
+
+    public static String statisticsSummary() {
+        return "LLM suggestions: " + getSuggestionsSeen() + " seen, " + getNoOpsDropped() + " no-ops dropped, "
+                + getDuplicatesDropped() + " duplicates dropped, " + getEvaluationsSaved() + " evaluations saved";
+    }
+
+}
@@ -1,6 +1,7 @@
 package gin.rl;
 
 import gin.edit.Edit;
+import org.pmw.tinylog.Level;
 import org.pmw.tinylog.Logger;
 
 import java.io.Serial;
@@ -17,7 +18,19 @@ import java.util.*;
  * - Logging for analysis and debugging
  *
  * Subclasses implement specific selection strategies (epsilon-greedy, UCB, etc.)
- * by overriding the {@link #select()} method.
+ * by overriding {@link #selectArm()}, which returns the index of the chosen
+ * operator in {@link #operators}.
+ *
+ * All per-operator statistics are held in primitive arrays indexed by arm, and
+ * running totals are maintained incrementally, so select() and updateQuality()
+ * do not allocate and their cost does not grow with the number of steps taken.
+ * Only the most recent steps are kept in memory (see {@link BanditHistory});
+ * the full per-step record is written out by {@link ExperimentLogger}.
+ *
+ * Selections can be made one at a time ({@link #select()}) or in batches for
+ * parallel evaluation ({@link #selectBatch(int)}). Each selection is a pending
+ * pull of its arm until the matching updateQuality() or cancelPull() call,
+ * which may arrive in any order.
  *
  * The reward function uses a ratio-based approach:
  * - reward = parentFitness / childFitness
@@ -25,52 +38,79 @@ import java.util.*;
  * - reward = 1 means no change
  * - reward < 1 means degradation
  * - reward = 0 for failed mutations
+ *
+ * With cost-aware rewards enabled ({@link #setCostAwareRewards(boolean)}),
+ * selectors learn from the improvement instead, divided by the operator's
+ * mean wall-clock cost per step relative to the mean cost of all steps:
+ * - shaped reward = max(0, reward - 1) * meanCost / operatorMeanCost
+ * The operator's mean cost includes its failed steps, so the mean shaped
+ * reward of an operator is its improvement per unit of search time, and
+ * neutral edits earn nothing however cheap they are.
  */
-public abstract class AbstractBanditSelector implements OperatorSelector, Serializable {
+public abstract class AbstractBanditSelector implements BatchOperatorSelector, Serializable {
 
     @Serial
     private static final long serialVersionUID = 1L;
 
+    /** Number of recent steps retained in memory by default */
+    public static final int DEFAULT_HISTORY_CAPACITY = 1024;
+
     /** List of available operators (arms) */
     protected final List<Class<? extends Edit>> operators;
 
-    /** Average quality estimate for each operator (Q-values) */
-    protected final Map<Class<? extends Edit>, Double> averageQualities;
+    /** Index of each operator in {@link #operators} */
+    private final Map<Class<? extends Edit>, Integer> operatorIndex;
 
-    /** Number of times each operator has been selected */
-    protected final Map<Class<? extends Edit>, Integer> actionCounts;
+    /** Average quality estimate for each operator (Q-values), indexed by arm */
+    protected final double[] averageQualities;
 
-    /** Number of successful applications for each operator */
-    protected final Map<Class<? extends Edit>, Integer> successCounts;
+    /** Number of times each operator has been selected, indexed by arm */
+    protected final int[] actionCounts;
 
-    /** Number of failed applications for each operator */
-    protected final Map<Class<? extends Edit>, Integer> failureCounts;
+    /** Number of successful applications for each operator, indexed by arm */
+    protected final int[] successCounts;
 
-    /** Total reward accumulated for each operator */
-    protected final Map<Class<? extends Edit>, Double> totalRewards;
+    /** Number of failed applications for each operator, indexed by arm */
+    protected final int[] failureCounts;
 
-    /** The most recently selected operator */
-    protected Class<? extends Edit> previousOperator;
+    /** Total reward accumulated for each operator, indexed by arm */
+    protected final double[] totalRewards;
 
-    /** Random number generator for stochastic selection */
-    protected final Random rng;
+    /** Number of selections of each operator awaiting an update, indexed by arm */
+    protected final int[] pendingPulls;
+
+    /** Total wall-clock cost (ms) of applying each operator, indexed by arm */
+    protected final long[] totalCostsMs;
 
-    // ===== Logging for analysis =====
+    /** Whether rewards are the improvement per unit of search time (see {@link #shapeReward}) */
+    protected boolean costAwareRewards = false;
 
-    /** Log of rewards received at each step */
-    protected final List<Double> rewardLog;
+    /** Sum of totalCostsMs */
+    protected long totalCostMs;
 
-    /** Log of quality estimates after each update */
-    protected final List<Map<Class<? extends Edit>, Double>> qualityLog;
+    /** Number of updates that reported a cost */
+    protected int costedUpdates;
 
-    /** Log of action counts after each update */
-    protected final List<Map<Class<? extends Edit>, Integer>> actionCountLog;
+    /** Sum of actionCounts */
+    protected int totalSelections;
 
-    /** Log of which operator was selected at each step */
-    protected final List<Class<? extends Edit>> selectionLog;
+    /** Sum of pendingPulls */
+    protected int totalPending;
+
+    /** Sum of all rewards received */
+    protected double cumulativeReward;
+
+    /** Reward learnt from in the latest update, after any cost shaping */
+    protected double lastReward;
+
+    /** The most recently selected operator */
+    protected Class<? extends Edit> previousOperator;
+
+    /** Random number generator for stochastic selection */
+    protected final Random rng;
 
-    /** Log of whether each step was successful */
-    protected final List<Boolean> successLog;
+    /** Recent selections, rewards and quality estimates, for analysis */
+    protected final BanditHistory history;
 
     // ===== Sanity check counters =====
 
@@ -87,6 +127,17 @@ public abstract class AbstractBanditSelector implements OperatorSelector, Serial
      * @param rng random number generator for stochastic decisions
      */
     public AbstractBanditSelector(List<Class<? extends Edit>> operators, Random rng) {
+        this(operators, rng, DEFAULT_HISTORY_CAPACITY);
+    }
+
+    /**
+     * Create a new bandit selector with the given operators.
+     *
+     * @param operators list of Edit classes that can be selected
+     * @param rng random number generator for stochastic decisions
+     * @param historyCapacity number of recent steps to keep in memory
+     */
+    public AbstractBanditSelector(List<Class<? extends Edit>> operators, Random rng, int historyCapacity) {
         if (operators == null || operators.isEmpty()) {
             throw new IllegalArgumentException("Operators list cannot be null or empty");
         }
@@ -94,28 +145,21 @@ public abstract class AbstractBanditSelector implements OperatorSelector, Serial
         this.operators = new ArrayList<>(operators);
         this.rng = rng;
 
-        this.averageQualities = new HashMap<>();
-        this.actionCounts = new HashMap<>();
-        this.successCounts = new HashMap<>();
-        this.failureCounts = new HashMap<>();
-        this.totalRewards = new HashMap<>();
-
-        for (Class<? extends Edit> op : operators) {
-            averageQualities.put(op, 0.0);
-            actionCounts.put(op, 0);
-            successCounts.put(op, 0);
-            failureCounts.put(op, 0);
-            totalRewards.put(op, 0.0);
+        int n = operators.size();
+        this.operatorIndex = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            operatorIndex.putIfAbsent(operators.get(i), i);
         }
 
-        this.rewardLog = new ArrayList<>();
-        this.qualityLog = new ArrayList<>();
-        this.actionCountLog = new ArrayList<>();
-        this.selectionLog = new ArrayList<>();
-        this.successLog = new ArrayList<>();
+        this.averageQualities = new double[n];
+        this.actionCounts = new int[n];
+        this.successCounts = new int[n];
+        this.failureCounts = new int[n];
+        this.totalRewards = new double[n];
+        this.pendingPulls = new int[n];
+        this.totalCostsMs = new long[n];
 
-        this.qualityLog.add(new HashMap<>(averageQualities));
-        this.actionCountLog.add(new HashMap<>(actionCounts));
+        this.history = new BanditHistory(historyCapacity);
 
         Logger.info("Initialized bandit selector with " + operators.size() + " operators");
         logOperatorSummary();
@@ -147,67 +191,239 @@ public abstract class AbstractBanditSelector implements OperatorSelector, Serial
         return (double) parentFitness / childFitness;
     }
 
+    /**
+     * Turn a reward into the improvement it represents per unit of search time.
+     * Called once the step's cost has been added to the totals.
+     *
+     * @param arm index of the operator that was applied
+     * @param reward the unshaped reward
+     * @return max(0, reward - 1) * meanCost / operatorMeanCost, both means including this step;
+     *         just the improvement if no cost is known
+     */
+    protected double shapeReward(int arm, double reward) {
+        double improvement = Math.max(0.0, reward - 1.0);
+        if (costedUpdates == 0 || totalCostsMs[arm] <= 0) {
+            return improvement;
+        }
+        double meanCostMs = (double) totalCostMs / costedUpdates;
+        double armMeanCostMs = (double) totalCostsMs[arm] / (actionCounts[arm] + 1);
+        return improvement * meanCostMs / armMeanCostMs;
+    }
+
+    /**
+     * Choose the next operator. Called by {@link #select()} between the common
+     * pre- and post-selection bookkeeping.
+     *
+     * @return index of the selected operator in {@link #operators}
+     */
+    protected abstract int selectArm();
+
+    @Override
+    public Class<? extends Edit> select() {
+        preSelect();
+        int arm = selectArm();
+        postSelect(arm);
+        return operators.get(arm);
+    }
+
+    /**
+     * Select k operators without waiting for updates in between.
+     *
+     * Each selection is registered as a pending pull before the next is made,
+     * so selectors that account for pending pulls spread the batch accordingly.
+     */
+    @Override
+    public List<Class<? extends Edit>> selectBatch(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1, got: " + k);
+        }
+        List<Class<? extends Edit>> batch = new ArrayList<>(k);
+        for (int i = 0; i < k; i++) {
+            selectCallCount++;
+            int arm = selectArm();
+            postSelect(arm);
+            batch.add(operators.get(arm));
+        }
+        return batch;
+    }
+
+    @Override
+    public void cancelPull(Class<? extends Edit> operator) {
+        int arm = indexOf(operator);
+        if (pendingPulls[arm] == 0) {
+            Logger.warn("cancelPull() called for " + operator.getSimpleName() + " without a pending selection");
+            return;
+        }
+        pendingPulls[arm]--;
+        totalPending--;
+        Logger.debug("Cancelled pending selection of " + operator.getSimpleName());
+    }
+
+    @Override
+    public int getPendingPulls() {
+        return totalPending;
+    }
+
+    @Override
+    public int getPendingPulls(Class<? extends Edit> operator) {
+        return pendingPulls[indexOf(operator)];
+    }
+
     @Override
     public void updateQuality(Class<? extends Edit> operator, Long parentFitness,
                               Long childFitness, boolean success) {
-        // Sanity check: ensure select() was called before updateQuality()
-        if (updateCallCount >= selectCallCount) {
+        update(indexOf(operator), calculateReward(parentFitness, childFitness, success), success);
+    }
+
+    @Override
+    public void updateQuality(Class<? extends Edit> operator, Long parentFitness,
+                              Long childFitness, boolean success, long costMs) {
+        int arm = indexOf(operator);
+        double reward = calculateReward(parentFitness, childFitness, success);
+
+        if (costMs >= 0) {
+            totalCostsMs[arm] += costMs;
+            totalCostMs += costMs;
+            costedUpdates++;
+            if (costAwareRewards) {
+                reward = shapeReward(arm, reward);
+            }
+        }
+
+        update(arm, reward, success);
+    }
+
+    /**
+     * Common bookkeeping for both forms of updateQuality().
+     *
+     * @param arm index of the operator that was applied
+     * @param reward the (possibly cost-shaped) reward
+     * @param success whether the edit compiled and passed the tests
+     */
+    private void update(int arm, double reward, boolean success) {
+        Class<? extends Edit> operator = operators.get(arm);
+
+        // Sanity check: ensure this operator was selected before updateQuality()
+        if (pendingPulls[arm] == 0) {
             Logger.warn("updateQuality() called without matching select() call");
+        } else {
+            pendingPulls[arm]--;
+            totalPending--;
         }
         updateCallCount++;
 
-        double reward = calculateReward(parentFitness, childFitness, success);
-
-        int count = actionCounts.get(operator) + 1;
-        actionCounts.put(operator, count);
+        int count = ++actionCounts[arm];
+        totalSelections++;
 
         // Incremental mean: Q(a) = Q(a) + (r - Q(a)) / n(a)
-        double oldQ = averageQualities.get(operator);
-        double newQ = oldQ + (reward - oldQ) / count;
-        averageQualities.put(operator, newQ);
+        double newQ = averageQualities[arm] + (reward - averageQualities[arm]) / count;
+        averageQualities[arm] = newQ;
 
         if (success) {
-            successCounts.put(operator, successCounts.get(operator) + 1);
+            successCounts[arm]++;
         } else {
-            failureCounts.put(operator, failureCounts.get(operator) + 1);
+            failureCounts[arm]++;
         }
 
-        totalRewards.put(operator, totalRewards.get(operator) + reward);
+        totalRewards[arm] += reward;
+        cumulativeReward += reward;
+        lastReward = reward;
 
-        rewardLog.add(reward);
-        qualityLog.add(new HashMap<>(averageQualities));
-        actionCountLog.add(new HashMap<>(actionCounts));
-        successLog.add(success);
+        history.recordUpdate(arm, reward, newQ, success);
 
-        Logger.debug(String.format("Updated %s: reward=%.4f, newQ=%.4f, count=%d, success=%b",
-                operator.getSimpleName(), reward, newQ, count, success));
+        // skip formatting the message on every step unless it will be printed
+        if (Logger.getLevel().ordinal() <= Level.DEBUG.ordinal()) {
+            Logger.debug(String.format("Updated %s: reward=%.4f, newQ=%.4f, count=%d, success=%b",
+                    operator.getSimpleName(), reward, newQ, count, success));
+        }
+
+        onUpdate(arm, reward);
+    }
+
+    /**
+     * Hook for subclasses that maintain their own state (preferences,
+     * probabilities, ...) on top of the Q-values. Called at the end of
+     * {@link #updateQuality}, after the common statistics have been updated.
+     *
+     * @param arm index of the operator that was applied
+     * @param reward the reward it received
+     */
+    protected void onUpdate(int arm, double reward) {
     }
 
     /**
-     * Called by subclasses at the start of select() to perform common bookkeeping.
+     * Called at the start of select() to perform common bookkeeping.
      *
      * This method:
      * - Increments the select call counter
      * - Performs sanity checks
      */
     protected void preSelect() {
-        // Sanity check: updateQuality should have been called after previous select
-        if (selectCallCount > 0 && updateCallCount < selectCallCount) {
+        // Sanity check: updateQuality should have been called after previous select;
+        // use selectBatch() if several selections are meant to be outstanding
+        if (totalPending > 0) {
             Logger.warn("select() called without updateQuality() for previous selection");
         }
         selectCallCount++;
     }
 
     /**
-     * Called by subclasses at the end of select() to log the selection.
+     * Called at the end of select() to log the selection and register it as a pending pull.
+     *
+     * @param arm index of the operator that was selected
+     */
+    protected void postSelect(int arm) {
+        pendingPulls[arm]++;
+        totalPending++;
+        previousOperator = operators.get(arm);
+        history.recordSelection(arm);
+        Logger.debug("Selected operator: " + previousOperator.getSimpleName() +
+                     " (LLM: " + isLLMOperator(previousOperator) + ")");
+    }
+
+    /**
+     * @param operator an operator passed to the constructor
+     * @return its index in {@link #operators}
+     * @throws IllegalArgumentException if the operator is not known to this selector
+     */
+    protected int indexOf(Class<? extends Edit> operator) {
+        Integer index = operatorIndex.get(operator);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+        return index;
+    }
+
+    /**
+     * @param values one value per arm
+     * @return index of the largest value; the lowest index wins ties
+     */
+    protected static int argmax(double[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Sample an arm from a probability distribution.
      *
-     * @param selected the operator that was selected
+     * @param probabilities one probability per arm, summing to 1
+     * @return the sampled index; the last arm if rounding leaves the draw uncovered
      */
-    protected void postSelect(Class<? extends Edit> selected) {
-        previousOperator = selected;
-        selectionLog.add(selected);
-        Logger.debug("Selected operator: " + selected.getSimpleName() +
-                     " (LLM: " + isLLMOperator(selected) + ")");
+    protected int sampleArm(double[] probabilities) {
+        double r = rng.nextDouble();
+        double cumulative = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            cumulative += probabilities[i];
+            if (r <= cumulative) {
+                return i;
+            }
+        }
+        return probabilities.length - 1;
     }
 
     @Override
@@ -223,63 +439,123 @@ public abstract class AbstractBanditSelector implements OperatorSelector, Serial
     @Override
     public Map<Class<? extends Edit>, OperatorStats> getOperatorStatistics() {
         Map<Class<? extends Edit>, OperatorStats> stats = new HashMap<>();
-        for (Class<? extends Edit> op : operators) {
-            stats.put(op, new OperatorStats(
-                actionCounts.get(op),
-                averageQualities.get(op),
-                successCounts.get(op),
-                failureCounts.get(op),
-                totalRewards.get(op)
+        for (int i = 0; i < operators.size(); i++) {
+            stats.put(operators.get(i), new OperatorStats(
+                actionCounts[i],
+                averageQualities[i],
+                successCounts[i],
+                failureCounts[i],
+                totalRewards[i],
+                totalCostsMs[i]
             ));
         }
         return stats;
     }
 
-    public List<Double> getRewardLog() {
-        return Collections.unmodifiableList(rewardLog);
-    }
-
-    public List<Map<Class<? extends Edit>, Double>> getQualityLog() {
-        return Collections.unmodifiableList(qualityLog);
+    public BanditHistory getHistory() {
+        return history;
     }
 
-    public List<Map<Class<? extends Edit>, Integer>> getActionCountLog() {
-        return Collections.unmodifiableList(actionCountLog);
+    /**
+     * @return rewards of the retained recent updates, oldest first
+     */
+    public List<Double> getRewardLog() {
+        List<Double> rewards = new ArrayList<>(history.retainedUpdates());
+        for (int i = 0; i < history.retainedUpdates(); i++) {
+            rewards.add(history.rewardAt(i));
+        }
+        return rewards;
     }
 
+    /**
+     * @return operators of the retained recent selections, oldest first
+     */
     public List<Class<? extends Edit>> getSelectionLog() {
-        return Collections.unmodifiableList(selectionLog);
+        List<Class<? extends Edit>> selections = new ArrayList<>(history.retainedSelections());
+        for (int i = 0; i < history.retainedSelections(); i++) {
+            selections.add(operators.get(history.selectedArmAt(i)));
+        }
+        return selections;
     }
 
+    /**
+     * @return success flags of the retained recent updates, oldest first
+     */
     public List<Boolean> getSuccessLog() {
-        return Collections.unmodifiableList(successLog);
+        List<Boolean> successes = new ArrayList<>(history.retainedUpdates());
+        for (int i = 0; i < history.retainedUpdates(); i++) {
+            successes.add(history.successAt(i));
+        }
+        return successes;
     }
 
     public Map<Class<? extends Edit>, Double> getAverageQualities() {
-        return Collections.unmodifiableMap(averageQualities);
+        Map<Class<? extends Edit>, Double> qualities = new HashMap<>();
+        for (int i = 0; i < operators.size(); i++) {
+            qualities.put(operators.get(i), averageQualities[i]);
+        }
+        return Collections.unmodifiableMap(qualities);
     }
 
     public Map<Class<? extends Edit>, Integer> getActionCounts() {
-        return Collections.unmodifiableMap(actionCounts);
+        Map<Class<? extends Edit>, Integer> counts = new HashMap<>();
+        for (int i = 0; i < operators.size(); i++) {
+            counts.put(operators.get(i), actionCounts[i]);
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    public boolean isCostAwareRewards() {
+        return costAwareRewards;
+    }
+
+    /**
+     * @param costAwareRewards whether to reward improvement per unit of search time rather than
+     *                         the fitness ratio; only has an effect when costs are reported to updateQuality()
+     */
+    public void setCostAwareRewards(boolean costAwareRewards) {
+        this.costAwareRewards = costAwareRewards;
+        Logger.info("Cost-aware rewards " + (costAwareRewards ? "enabled" : "disabled"));
+    }
+
+    /**
+     * @param operator the operator to check
+     * @return mean wall-clock cost of applying it, in milliseconds; 0 if never used
+     */
+    public double getAverageCostMs(Class<? extends Edit> operator) {
+        int arm = indexOf(operator);
+        return actionCounts[arm] > 0 ? (double) totalCostsMs[arm] / actionCounts[arm] : 0.0;
+    }
+
+    public long getTotalCostMs() {
+        return totalCostMs;
+    }
+
+    /**
+     * @return the reward learnt from in the latest updateQuality(), cost-shaped
+     *         if cost-aware rewards are enabled; 0 before the first update
+     */
+    public double getLastReward() {
+        return lastReward;
     }
 
     public int getTotalSelections() {
-        return actionCounts.values().stream().mapToInt(Integer::intValue).sum();
+        return totalSelections;
     }
 
     public Class<? extends Edit> getBestOperator() {
-        return Collections.max(operators, Comparator.comparingDouble(averageQualities::get));
+        return operators.get(argmax(averageQualities));
     }
 
     public double getCumulativeReward() {
-        return rewardLog.stream().mapToDouble(Double::doubleValue).sum();
+        return cumulativeReward;
     }
 
     public double getAverageReward() {
-        if (rewardLog.isEmpty()) {
+        if (history.getUpdateCount() == 0) {
             return 0.0;
         }
-        return getCumulativeReward() / rewardLog.size();
+        return cumulativeReward / history.getUpdateCount();
     }
 
     /**
@@ -287,22 +563,21 @@ public abstract class AbstractBanditSelector implements OperatorSelector, Serial
      */
     public void logOperatorSummary() {
         Logger.info("=== Operator Summary ===");
-        Logger.info(String.format("%-35s %8s %8s %10s %8s",
-                "Operator", "Count", "AvgQ", "SuccRate", "LLM"));
-        Logger.info("-".repeat(75));
-
-        for (Class<? extends Edit> op : operators) {
-            int count = actionCounts.get(op);
-            double avgQ = averageQualities.get(op);
-            int successes = successCounts.get(op);
-            int failures = failureCounts.get(op);
-            double successRate = (count > 0) ? (double) successes / count : 0.0;
+        Logger.info(String.format("%-35s %8s %8s %10s %10s %8s",
+                "Operator", "Count", "AvgQ", "SuccRate", "AvgMs", "LLM"));
+        Logger.info("-".repeat(86));
+
+        for (int i = 0; i < operators.size(); i++) {
+            Class<? extends Edit> op = operators.get(i);
+            int count = actionCounts[i];
+            double successRate = (count > 0) ? (double) successCounts[i] / count : 0.0;
+            double avgCost = (count > 0) ? (double) totalCostsMs[i] / count : 0.0;
             boolean isLLM = isLLMOperator(op);
 
-            Logger.info(String.format("%-35s %8d %8.4f %9.2f%% %8s",
-                    op.getSimpleName(), count, avgQ, successRate * 100, isLLM ? "Yes" : "No"));
+            Logger.info(String.format("%-35s %8d %8.4f %9.2f%% %10.1f %8s",
+                    op.getSimpleName(), count, averageQualities[i], successRate * 100, avgCost, isLLM ? "Yes" : "No"));
         }
-        Logger.info("=".repeat(75));
+        Logger.info("=".repeat(86));
     }
 
     /**
@@ -311,26 +586,25 @@ public abstract class AbstractBanditSelector implements OperatorSelector, Serial
      * This is useful for running multiple experiments without creating new instances.
      */
     public void reset() {
-        for (Class<? extends Edit> op : operators) {
-            averageQualities.put(op, 0.0);
-            actionCounts.put(op, 0);
-            successCounts.put(op, 0);
-            failureCounts.put(op, 0);
-            totalRewards.put(op, 0.0);
-        }
+        Arrays.fill(averageQualities, 0.0);
+        Arrays.fill(actionCounts, 0);
+        Arrays.fill(successCounts, 0);
+        Arrays.fill(failureCounts, 0);
+        Arrays.fill(totalRewards, 0.0);
+        Arrays.fill(pendingPulls, 0);
+        Arrays.fill(totalCostsMs, 0L);
+        totalCostMs = 0;
+        costedUpdates = 0;
+        totalSelections = 0;
+        totalPending = 0;
+        cumulativeReward = 0.0;
+        lastReward = 0.0;
 
         previousOperator = null;
         selectCallCount = 0;
         updateCallCount = 0;
 
-        rewardLog.clear();
-        qualityLog.clear();
-        actionCountLog.clear();
-        selectionLog.clear();
-        successLog.clear();
-
-        qualityLog.add(new HashMap<>(averageQualities));
-        actionCountLog.add(new HashMap<>(actionCounts));
+        history.clear();
 
         Logger.info("Bandit selector reset");
     }
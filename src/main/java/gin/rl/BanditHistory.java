@@ -0,0 +1,131 @@
+package gin.rl;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Fixed-size record of the most recent selections and quality updates made
+ * by a bandit selector.
+ *
+ * Everything is held in preallocated primitive ring buffers, so recording a
+ * step never allocates and memory use is O(capacity) regardless of how long
+ * the run is. Once full, the oldest entries are overwritten. Indices passed
+ * to the getters run from 0 (oldest retained entry) to retained-1 (newest).
+ *
+ * For a complete per-step record, use {@link ExperimentLogger}, which writes
+ * every step out as it happens.
+ */
+public class BanditHistory implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+
+    private final int[] selectedArms;
+    private long selectionCount;
+
+    private final int[] updatedArms;
+    private final double[] rewards;
+    private final double[] qualities;
+    private final boolean[] successes;
+    private long updateCount;
+
+    /**
+     * @param capacity number of selections and updates to retain
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public BanditHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("History capacity must be positive, got: " + capacity);
+        }
+        this.capacity = capacity;
+        this.selectedArms = new int[capacity];
+        this.updatedArms = new int[capacity];
+        this.rewards = new double[capacity];
+        this.qualities = new double[capacity];
+        this.successes = new boolean[capacity];
+    }
+
+    /**
+     * @param arm index of the operator that was selected
+     */
+    public void recordSelection(int arm) {
+        selectedArms[(int) (selectionCount % capacity)] = arm;
+        selectionCount++;
+    }
+
+    /**
+     * @param arm index of the operator that was updated
+     * @param reward reward received
+     * @param newQuality the operator's quality estimate after the update
+     * @param success whether the edit compiled and passed the tests
+     */
+    public void recordUpdate(int arm, double reward, double newQuality, boolean success) {
+        int slot = (int) (updateCount % capacity);
+        updatedArms[slot] = arm;
+        rewards[slot] = reward;
+        qualities[slot] = newQuality;
+        successes[slot] = success;
+        updateCount++;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return total number of selections recorded, including those no longer retained
+     */
+    public long getSelectionCount() {
+        return selectionCount;
+    }
+
+    /**
+     * @return total number of updates recorded, including those no longer retained
+     */
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
+    public int retainedSelections() {
+        return (int) Math.min(selectionCount, capacity);
+    }
+
+    public int retainedUpdates() {
+        return (int) Math.min(updateCount, capacity);
+    }
+
+    public int selectedArmAt(int i) {
+        return selectedArms[slot(selectionCount, i)];
+    }
+
+    public int updatedArmAt(int i) {
+        return updatedArms[slot(updateCount, i)];
+    }
+
+    public double rewardAt(int i) {
+        return rewards[slot(updateCount, i)];
+    }
+
+    public double qualityAt(int i) {
+        return qualities[slot(updateCount, i)];
+    }
+
+    public boolean successAt(int i) {
+        return successes[slot(updateCount, i)];
+    }
+
+    public void clear() {
+        selectionCount = 0;
+        updateCount = 0;
+    }
+
+    private int slot(long count, int i) {
+        int retained = (int) Math.min(count, capacity);
+        if (i < 0 || i >= retained) {
+            throw new IndexOutOfBoundsException("Index " + i + " outside retained history of " + retained);
+        }
+        return (int) ((count - retained + i) % capacity);
+    }
+}
@@ -43,6 +43,9 @@ public class BanditSelectorTest {
 
     private final Random simulationRng;
 
+    /** When set, the operator ranking is reversed, to simulate non-stationary rewards */
+    private boolean drifted = false;
+
     public BanditSelectorTest(long seed) {
         this.simulationRng = new Random(seed);
     }
@@ -53,6 +56,9 @@ public class BanditSelectorTest {
      */
     private SimulatedResult simulateOperator(Class<? extends Edit> operator) {
         double trueQuality = TRUE_QUALITIES.get(operator);
+        if (drifted) {
+            trueQuality = 1.1 - trueQuality;
+        }
 
         boolean success = simulationRng.nextDouble() < (0.3 + 0.6 * trueQuality);
 
@@ -97,6 +103,54 @@ public class BanditSelectorTest {
         return new TestResult(selector, numSteps, totalReward, successCount, rewards, selections);
     }
 
+    /**
+     * Run a selector for a number of steps, reversing the operator ranking halfway through.
+     *
+     * @return average reward over the second half
+     */
+    public double runDriftTest(OperatorSelector selector, int numSteps) {
+        double totalReward = 0;
+        drifted = false;
+        for (int step = 0; step < numSteps; step++) {
+            if (step == numSteps / 2) {
+                drifted = true;
+            }
+            Class<? extends Edit> selected = selector.select();
+            SimulatedResult result = simulateOperator(selected);
+            selector.updateQuality(selected, result.parentFitness, result.childFitness, result.success);
+            if (drifted && result.success && result.childFitness != null) {
+                totalReward += (double) result.parentFitness / result.childFitness;
+            }
+        }
+        drifted = false;
+        return totalReward / (numSteps - numSteps / 2);
+    }
+
+    /**
+     * Run a selector on two simulated methods, picked at random each step, with
+     * opposite operator rankings. Contextual selectors are told which method is
+     * being edited through a (bias, method A, method B) context.
+     *
+     * @return average reward
+     */
+    public double runContextTest(OperatorSelector selector, int numSteps) {
+        double totalReward = 0;
+        for (int step = 0; step < numSteps; step++) {
+            drifted = simulationRng.nextBoolean();
+            if (selector instanceof ContextualOperatorSelector contextual) {
+                contextual.setContext(drifted ? new double[]{1, 0, 1} : new double[]{1, 1, 0});
+            }
+            Class<? extends Edit> selected = selector.select();
+            SimulatedResult result = simulateOperator(selected);
+            selector.updateQuality(selected, result.parentFitness, result.childFitness, result.success);
+            if (result.success && result.childFitness != null) {
+                totalReward += (double) result.parentFitness / result.childFitness;
+            }
+        }
+        drifted = false;
+        return totalReward / numSteps;
+    }
+
     record TestResult(
         OperatorSelector selector,
         int numSteps,
@@ -193,7 +247,8 @@ public class BanditSelectorTest {
         Map<String, List<TestResult>> allResults = new LinkedHashMap<>();
 
         String[] selectorNames = {"Uniform", "EpsilonGreedy(0.1)", "EpsilonGreedy(0.2)",
-                                   "UCB(sqrt2)", "PolicyGradient(0.1)", "ProbabilityMatching(0.05)"};
+                                   "UCB(sqrt2)", "Thompson(0.5)", "BetaThompson",
+                                   "PolicyGradient(0.1)", "ProbabilityMatching(0.05)"};
 
         for (String name : selectorNames) allResults.put(name, new ArrayList<>());
 
@@ -208,6 +263,10 @@ public class BanditSelectorTest {
                 runTest(new EpsilonGreedySelector(OPERATORS, 0.2, new Random(trialRng.nextLong())), numSteps));
             allResults.get("UCB(sqrt2)").add(
                 runTest(new UCBSelector(OPERATORS, Math.sqrt(2), new Random(trialRng.nextLong())), numSteps));
+            allResults.get("Thompson(0.5)").add(
+                runTest(new ThompsonSamplingSelector(OPERATORS, 0.5, new Random(trialRng.nextLong())), numSteps));
+            allResults.get("BetaThompson").add(
+                runTest(new BetaThompsonSamplingSelector(OPERATORS, 0.5, 1.0, new Random(trialRng.nextLong())), numSteps));
             allResults.get("PolicyGradient(0.1)").add(
                 runTest(new PolicyGradientSelector(OPERATORS, 0.1, new Random(trialRng.nextLong())), numSteps));
             allResults.get("ProbabilityMatching(0.05)").add(
@@ -234,6 +293,75 @@ public class BanditSelectorTest {
         }
     }
 
+    /**
+     * Compare stationary and non-stationary selectors when the operator ranking
+     * reverses halfway through the run.
+     */
+    public void compareNonStationary(int numSteps, int numTrials) {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("NON-STATIONARY: ranking reversed at step " + numSteps / 2 +
+                ", " + numTrials + " trials x " + numSteps + " steps each");
+        System.out.println("=".repeat(70));
+
+        Map<String, Double> totals = new LinkedHashMap<>();
+
+        for (int trial = 0; trial < numTrials; trial++) {
+            Random trialRng = new Random(trial * 12345L);
+
+            totals.merge("UCB(c=0.5)", runDriftTest(
+                new UCBSelector(OPERATORS, 0.5, new Random(trialRng.nextLong())), numSteps), Double::sum);
+            totals.merge("Thompson(0.5)", runDriftTest(
+                new ThompsonSamplingSelector(OPERATORS, 0.5, new Random(trialRng.nextLong())), numSteps), Double::sum);
+            totals.merge("Thompson(0.5, g=0.98)", runDriftTest(
+                new ThompsonSamplingSelector(OPERATORS, 0.5, ThompsonSamplingSelector.DEFAULT_PRIOR_MEAN, 0.98,
+                    new Random(trialRng.nextLong())), numSteps), Double::sum);
+            totals.merge("BetaThompson(g=0.98)", runDriftTest(
+                new BetaThompsonSamplingSelector(OPERATORS, 0.5, 0.98, new Random(trialRng.nextLong())), numSteps), Double::sum);
+            totals.merge("SW-UCB(c=0.5, w=100)", runDriftTest(
+                new SlidingWindowUCBSelector(OPERATORS, 0.5, 100, new Random(trialRng.nextLong())), numSteps), Double::sum);
+            totals.merge("D-UCB(c=0.5, g=0.95)", runDriftTest(
+                new DiscountedUCBSelector(OPERATORS, 0.5, 0.95, new Random(trialRng.nextLong())), numSteps), Double::sum);
+            totals.merge("DMAB(c=0.5)", runDriftTest(
+                new DMABSelector(OPERATORS, 0.5, 0.15, 5.0, new Random(trialRng.nextLong())), numSteps), Double::sum);
+        }
+
+        System.out.printf("%n%-25s %20s%n", "Selector", "Avg Reward (after)");
+        System.out.println("-".repeat(46));
+        for (Map.Entry<String, Double> entry : totals.entrySet()) {
+            System.out.printf("%-25s %20.4f%n", entry.getKey(), entry.getValue() / numTrials);
+        }
+    }
+
+    /**
+     * Compare context-free and contextual selectors on two methods where
+     * different operators pay off.
+     */
+    public void compareContextual(int numSteps, int numTrials) {
+        System.out.println("\n" + "=".repeat(70));
+        System.out.println("CONTEXTUAL: two methods with opposite rankings, " +
+                numTrials + " trials x " + numSteps + " steps each");
+        System.out.println("=".repeat(70));
+
+        Map<String, Double> totals = new LinkedHashMap<>();
+
+        for (int trial = 0; trial < numTrials; trial++) {
+            Random trialRng = new Random(trial * 12345L);
+
+            totals.merge("UCB(c=0.5)", runContextTest(
+                new UCBSelector(OPERATORS, 0.5, new Random(trialRng.nextLong())), numSteps), Double::sum);
+            totals.merge("Thompson(0.5)", runContextTest(
+                new ThompsonSamplingSelector(OPERATORS, 0.5, new Random(trialRng.nextLong())), numSteps), Double::sum);
+            totals.merge("LinUCB(a=0.5)", runContextTest(
+                new LinUCBSelector(OPERATORS, 3, 0.5, 1.0, new Random(trialRng.nextLong())), numSteps), Double::sum);
+        }
+
+        System.out.printf("%n%-25s %20s%n", "Selector", "Avg Reward");
+        System.out.println("-".repeat(46));
+        for (Map.Entry<String, Double> entry : totals.entrySet()) {
+            System.out.printf("%-25s %20.4f%n", entry.getKey(), entry.getValue() / numTrials);
+        }
+    }
+
     public static void main(String[] args) {
         System.out.println("Bandit Selector Test Harness");
         System.out.println("============================\n");
@@ -266,6 +394,12 @@ public class BanditSelectorTest {
         System.out.println("\n\n>>> STATISTICAL COMPARISON <<<");
         tester.compareSelectors(500, 10);
 
+        System.out.println("\n\n>>> NON-STATIONARY COMPARISON <<<");
+        tester.compareNonStationary(1000, 10);
+
+        System.out.println("\n\n>>> CONTEXTUAL COMPARISON <<<");
+        tester.compareContextual(1000, 10);
+
         System.out.println("\n\nTest complete!");
     }
 }
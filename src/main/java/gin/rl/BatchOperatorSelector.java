@@ -0,0 +1,56 @@
+package gin.rl;
+
+import gin.edit.Edit;
+
+import java.util.List;
+
+/**
+ * Operator selector that supports parallel evaluation.
+ *
+ * A plain {@link OperatorSelector} expects strict alternation:
+ * select, evaluate, updateQuality. With several patches being evaluated at
+ * once that is not possible, so this interface allows:
+ * - selecting a batch of operators in one call
+ * - any number of selections to be outstanding ("pending pulls")
+ * - quality updates to arrive late and in any order
+ *
+ * Every operator returned by {@link #selectBatch(int)} counts as a pending
+ * pull until it is settled by
+ * {@link #updateQuality(Class, Long, Long, boolean)} or
+ * {@link #cancelPull(Class)}. Implementations may take pending pulls into
+ * account when selecting (e.g. batched UCB treats them as already observed,
+ * so one batch doesn't pile onto the same arm).
+ */
+public interface BatchOperatorSelector extends OperatorSelector {
+
+    /**
+     * Select k operators to be evaluated concurrently.
+     *
+     * Each returned operator becomes a pending pull. An operator may appear
+     * more than once in the batch.
+     *
+     * @param k number of operators to select
+     * @return the selected Edit classes, in the order they were chosen
+     * @throws IllegalArgumentException if k is less than 1
+     */
+    List<Class<? extends Edit>> selectBatch(int k);
+
+    /**
+     * Abandon a pending pull without giving any reward, e.g. if its
+     * evaluation was interrupted. The operator's statistics are left unchanged.
+     *
+     * @param operator operator of the pending pull
+     */
+    void cancelPull(Class<? extends Edit> operator);
+
+    /**
+     * @return number of selections that have not yet been updated or cancelled
+     */
+    int getPendingPulls();
+
+    /**
+     * @param operator the operator to check
+     * @return number of pending pulls of that operator
+     */
+    int getPendingPulls(Class<? extends Edit> operator);
+}
@@ -0,0 +1,222 @@
+package gin.rl;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.expr.ArrayAccessExpr;
+import com.github.javaparser.ast.expr.ArrayCreationExpr;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.BinaryExpr;
+import com.github.javaparser.ast.expr.ConditionalExpr;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.stmt.DoStmt;
+import com.github.javaparser.ast.stmt.ForEachStmt;
+import com.github.javaparser.ast.stmt.ForStmt;
+import com.github.javaparser.ast.stmt.IfStmt;
+import com.github.javaparser.ast.stmt.SwitchStmt;
+import com.github.javaparser.ast.stmt.TryStmt;
+import com.github.javaparser.ast.stmt.WhileStmt;
+import gin.Patch;
+import gin.SourceFile;
+import gin.SourceFileTree;
+import org.pmw.tinylog.Logger;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Cheap numeric description of where the next edit will be applied, used as
+ * the context for {@link ContextualOperatorSelector}s.
+ *
+ * The context vector is made of:
+ * - a constant bias term
+ * - features of the target method(s): log statement count, maximum loop
+ *   nesting depth, and the fraction of AST nodes that are loops, branches,
+ *   method calls, object/array creations, assignments, binary expressions
+ *   and field/array accesses
+ * - the size of the patch being extended
+ * - the outcome of the previous step (invalid patch, compile failure or
+ *   test failure, one-hot; all zero if it succeeded)
+ *
+ * All features are scaled to roughly [0, 1] so that no single feature
+ * dominates the linear model. Method features come from the unpatched
+ * source, which every Patch refers to, so they are computed once per
+ * SourceFile and cached; building a context on each step is O(1).
+ * Since the features describe code shape rather than identify a method,
+ * a model learned on one method carries over to others.
+ */
+public class CodeFeatures {
+
+    /** Outcome of an evaluation, as reported in the RLLocalSearch log */
+    public enum Outcome {
+        SUCCESS, INVALID, COMPILE_FAILURE, TEST_FAILURE
+    }
+
+    /** Names of the context features, in order */
+    public static final List<String> FEATURE_NAMES = List.of(
+            "bias",
+            "log_statements",
+            "loop_nesting",
+            "frac_loops",
+            "frac_branches",
+            "frac_calls",
+            "frac_creations",
+            "frac_assignments",
+            "frac_binary",
+            "frac_accesses",
+            "patch_size",
+            "last_invalid",
+            "last_compile_failure",
+            "last_test_failure"
+    );
+
+    /** Dimension of the context vectors */
+    public static final int DIMENSION = FEATURE_NAMES.size();
+
+    /** Number of method features, starting after the bias term */
+    private static final int METHOD_FEATURES = 9;
+
+    /** Patch sizes at or above this all map to 1 */
+    private static final int MAX_PATCH_SIZE = 10;
+
+    /** Loop nesting depths at or above this all map to 1 */
+    private static final int MAX_LOOP_NESTING = 3;
+
+    /** Method features of each source file seen; weak keys so finished files can be collected */
+    private final Map<SourceFile, double[]> cache = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Build the context for extending a patch.
+     *
+     * @param patch the patch the next edit will be added to
+     * @param lastOutcome outcome of the previous step, or null if there was none
+     * @return a new context vector of length {@link #DIMENSION}
+     */
+    public double[] context(Patch patch, Outcome lastOutcome) {
+        double[] context = new double[DIMENSION];
+        context[0] = 1.0;
+
+        double[] method = methodFeatures(patch.getSourceFile());
+        System.arraycopy(method, 0, context, 1, METHOD_FEATURES);
+
+        int i = 1 + METHOD_FEATURES;
+        context[i++] = Math.min(patch.size(), MAX_PATCH_SIZE) / (double) MAX_PATCH_SIZE;
+        context[i++] = lastOutcome == Outcome.INVALID ? 1.0 : 0.0;
+        context[i++] = lastOutcome == Outcome.COMPILE_FAILURE ? 1.0 : 0.0;
+        context[i] = lastOutcome == Outcome.TEST_FAILURE ? 1.0 : 0.0;
+
+        return context;
+    }
+
+    /**
+     * @return the (cached) features of the target methods of a source file;
+     *         all zero if it is not a SourceFileTree
+     */
+    public double[] methodFeatures(SourceFile sourceFile) {
+        return cache.computeIfAbsent(sourceFile, CodeFeatures::computeMethodFeatures);
+    }
+
+    /**
+     * @return number of source files whose features are cached
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    private static double[] computeMethodFeatures(SourceFile sourceFile) {
+        double[] features = new double[METHOD_FEATURES];
+
+        if (!(sourceFile instanceof SourceFileTree tree) || tree.getTargetMethodRootNode() == null) {
+            Logger.debug("No AST available for " + sourceFile.getRelativePathToWorkingDir() +
+                    ", using empty method features");
+            return features;
+        }
+
+        int nodes = 0;
+        int loops = 0;
+        int branches = 0;
+        int calls = 0;
+        int creations = 0;
+        int assignments = 0;
+        int binary = 0;
+        int accesses = 0;
+        int maxNesting = 0;
+
+        for (Node root : tree.getTargetMethodRootNode()) {
+            maxNesting = Math.max(maxNesting, loopNesting(root));
+            for (Node node : root.findAll(Node.class)) {
+                nodes++;
+                if (isLoop(node)) {
+                    loops++;
+                } else if (node instanceof IfStmt || node instanceof SwitchStmt
+                        || node instanceof ConditionalExpr || node instanceof TryStmt) {
+                    branches++;
+                } else if (node instanceof MethodCallExpr) {
+                    calls++;
+                } else if (node instanceof ObjectCreationExpr || node instanceof ArrayCreationExpr) {
+                    creations++;
+                } else if (node instanceof AssignExpr) {
+                    assignments++;
+                } else if (node instanceof BinaryExpr) {
+                    binary++;
+                } else if (node instanceof FieldAccessExpr || node instanceof ArrayAccessExpr) {
+                    accesses++;
+                }
+            }
+        }
+
+        int statements = tree.getStatementIDsInTargetMethod().size();
+        double total = Math.max(nodes, 1);
+
+        // log1p(1000) ~ 7, so methods of up to a few hundred statements stay below 1
+        features[0] = Math.log1p(statements) / 7.0;
+        features[1] = Math.min(maxNesting, MAX_LOOP_NESTING) / (double) MAX_LOOP_NESTING;
+        features[2] = loops / total;
+        features[3] = branches / total;
+        features[4] = calls / total;
+        features[5] = creations / total;
+        features[6] = assignments / total;
+        features[7] = binary / total;
+        features[8] = accesses / total;
+
+        Logger.debug(String.format("Method features for %s: statements=%d, loop nesting=%d, nodes=%d",
+                sourceFile.getRelativePathToWorkingDir(), statements, maxNesting, nodes));
+
+        return features;
+    }
+
+    private static boolean isLoop(Node node) {
+        return node instanceof ForStmt || node instanceof ForEachStmt
+                || node instanceof WhileStmt || node instanceof DoStmt;
+    }
+
+    /**
+     * @return the deepest nesting of loops within a node, counting the node itself
+     */
+    private static int loopNesting(Node node) {
+        int deepest = 0;
+        for (Node child : node.getChildNodes()) {
+            deepest = Math.max(deepest, loopNesting(child));
+        }
+        return isLoop(node) ? deepest + 1 : deepest;
+    }
+
+    /**
+     * Classify the result of evaluating a patch.
+     *
+     * @param validPatch whether the patch could be applied
+     * @param cleanCompile whether the patched code compiled
+     * @param testsPassed whether all tests passed
+     */
+    public static Outcome outcomeOf(boolean validPatch, boolean cleanCompile, boolean testsPassed) {
+        if (!validPatch) {
+            return Outcome.INVALID;
+        }
+        if (!cleanCompile) {
+            return Outcome.COMPILE_FAILURE;
+        }
+        return testsPassed ? Outcome.SUCCESS : Outcome.TEST_FAILURE;
+    }
+}
@@ -0,0 +1,48 @@
+package gin.rl;
+
+/**
+ * Operator selector that takes into account where the edit will be applied.
+ *
+ * Before each selection the caller describes the current situation (the
+ * code being edited, the patch so far, the last outcome) as a fixed-length
+ * numeric context vector, e.g. from {@link CodeFeatures}. The selector
+ * associates each selection with the context in force when it was made, so
+ * that the matching quality update trains the model for that context.
+ *
+ * If no context has been set, selectors fall back to a context containing
+ * only a bias term, which makes them behave like their non-contextual
+ * counterparts.
+ */
+public interface ContextualOperatorSelector extends BatchOperatorSelector {
+
+    /**
+     * Set the context used for subsequent selections.
+     *
+     * @param context feature vector of length {@link #getContextDimension()}
+     * @throws IllegalArgumentException if the context has the wrong length
+     */
+    void setContext(double[] context);
+
+    /**
+     * @return the length of the context vectors this selector expects
+     */
+    int getContextDimension();
+
+    /**
+     * Number the selections made from now on, so that their quality updates can be matched to
+     * the contexts they were made in. A batch of k selections is numbered firstPull, firstPull + 1,
+     * ..., in the order they are returned. Unnumbered selections carry on from the last number.
+     *
+     * @param firstPull number of the next selection
+     */
+    void setPullId(long firstPull);
+
+    /**
+     * Make the next {@link #updateQuality} or {@link #cancelPull(Class)} settle the selection
+     * with this number, rather than the operator's oldest pending selection. Evaluations that
+     * finish out of order must be settled this way, or they train on another selection's context.
+     *
+     * @param pull number of the selection being settled
+     */
+    void settlePull(long pull);
+}
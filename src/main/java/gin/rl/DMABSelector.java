@@ -0,0 +1,210 @@
+package gin.rl;
+
+import gin.edit.Edit;
+import org.pmw.tinylog.Logger;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Dynamic Multi-Armed Bandit (DMAB) operator selector.
+ *
+ * UCB1 combined with a Page-Hinkley (PH) change-point test on each
+ * operator's rewards. While the rewards look stationary it behaves exactly
+ * like UCB1; when the PH test signals that an operator's reward has shifted
+ * (e.g. because the best patch has changed under it), all UCB estimates
+ * are discarded and learning restarts from scratch.
+ *
+ * For each operator the PH test tracks the cumulative deviation of its
+ * rewards from their running mean, with tolerance delta:
+ *
+ *     m(a)  = Σ (r - r̄(a) + δ)     alarm if max m(a) - m(a) > λ   (drop)
+ *     m'(a) = Σ (r - r̄(a) - δ)     alarm if m'(a) - min m'(a) > λ  (rise)
+ *
+ * Restarts only clear the estimates used for selection; the lifetime
+ * statistics kept by {@link AbstractBanditSelector} (and reported through
+ * {@link ExperimentLogger}) are unaffected. Pending pulls from batched
+ * selection count towards n(a) as in {@link UCBSelector}.
+ *
+ * Advantages:
+ * - No forgetting while rewards are stable
+ * - Reacts quickly to abrupt changes
+ *
+ * Disadvantages:
+ * - Two extra parameters (delta, lambda) that depend on the reward scale
+ * - A restart throws away everything, including still-valid estimates
+ */
+public class DMABSelector extends AbstractBanditSelector {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** Exploration constant */
+    private final double c;
+
+    /** Page-Hinkley tolerance: deviations smaller than this are ignored */
+    private final double delta;
+
+    /** Page-Hinkley threshold: a restart is triggered above this */
+    private final double lambda;
+
+    /** UCB estimates since the last restart, indexed by arm */
+    private final int[] counts;
+    private final double[] means;
+    private int total;
+
+    /** Page-Hinkley statistics since the last restart, indexed by arm */
+    private final double[] phDrop;
+    private final double[] phDropMax;
+    private final double[] phRise;
+    private final double[] phRiseMin;
+
+    /** Number of restarts so far */
+    private int restarts;
+
+    /** Number of updates made before each restart */
+    private final List<Integer> restartLog;
+
+    /**
+     * Create a DMAB selector.
+     *
+     * @param operators list of available Edit classes
+     * @param c exploration constant for UCB (typically sqrt(2))
+     * @param delta Page-Hinkley tolerance (typical: 0.05 to 0.25 of the reward scale)
+     * @param lambda Page-Hinkley threshold (typical: 1 to 10 times the reward scale)
+     * @param rng random number generator
+     * @throws IllegalArgumentException if any parameter is negative or lambda is zero
+     */
+    public DMABSelector(List<Class<? extends Edit>> operators, double c, double delta, double lambda, Random rng) {
+        super(operators, rng);
+
+        if (c < 0) {
+            throw new IllegalArgumentException("Exploration constant c must be non-negative, got: " + c);
+        }
+        if (delta < 0) {
+            throw new IllegalArgumentException("Page-Hinkley delta must be non-negative, got: " + delta);
+        }
+        if (lambda <= 0) {
+            throw new IllegalArgumentException("Page-Hinkley lambda must be positive, got: " + lambda);
+        }
+
+        this.c = c;
+        this.delta = delta;
+        this.lambda = lambda;
+
+        int n = operators.size();
+        this.counts = new int[n];
+        this.means = new double[n];
+        this.phDrop = new double[n];
+        this.phDropMax = new double[n];
+        this.phRise = new double[n];
+        this.phRiseMin = new double[n];
+        this.restartLog = new ArrayList<>();
+
+        Logger.info("Created DMABSelector with c=" + c + ", delta=" + delta + ", lambda=" + lambda);
+    }
+
+    @Override
+    protected int selectArm() {
+        int t = total + totalPending;
+
+        int selected = 0;
+        double best = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < operators.size(); i++) {
+            int n = counts[i] + pendingPulls[i];
+            double value = n == 0
+                    ? Double.MAX_VALUE
+                    : means[i] + c * Math.sqrt(Math.log(Math.max(t, 1)) / n);
+            if (value > best) {
+                best = value;
+                selected = i;
+            }
+        }
+
+        Logger.debug("DMAB: selected " + operators.get(selected).getSimpleName() +
+                " (UCB=" + String.format("%.4f", best) + ", restarts=" + restarts + ")");
+
+        return selected;
+    }
+
+    @Override
+    protected void onUpdate(int arm, double reward) {
+        counts[arm]++;
+        total++;
+        means[arm] += (reward - means[arm]) / counts[arm];
+
+        double deviation = reward - means[arm];
+
+        phDrop[arm] += deviation + delta;
+        phDropMax[arm] = Math.max(phDropMax[arm], phDrop[arm]);
+
+        phRise[arm] += deviation - delta;
+        phRiseMin[arm] = Math.min(phRiseMin[arm], phRise[arm]);
+
+        if (phDropMax[arm] - phDrop[arm] > lambda || phRise[arm] - phRiseMin[arm] > lambda) {
+            restart(arm);
+        }
+    }
+
+    /**
+     * Discard the UCB estimates and Page-Hinkley statistics of all operators.
+     */
+    private void restart(int triggeringArm) {
+        restarts++;
+        restartLog.add(updateCallCount);
+        Logger.info("DMAB: change detected in rewards of " + operators.get(triggeringArm).getSimpleName() +
+                " after " + updateCallCount + " updates, restarting (restart " + restarts + ")");
+        clearEstimates();
+    }
+
+    private void clearEstimates() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(means, 0.0);
+        total = 0;
+        Arrays.fill(phDrop, 0.0);
+        Arrays.fill(phDropMax, 0.0);
+        Arrays.fill(phRise, 0.0);
+        Arrays.fill(phRiseMin, 0.0);
+    }
+
+    public int getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * @return number of updates made before each restart
+     */
+    public List<Integer> getRestartLog() {
+        return Collections.unmodifiableList(restartLog);
+    }
+
+    public double getC() {
+        return c;
+    }
+
+    public double getDelta() {
+        return delta;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        clearEstimates();
+        restarts = 0;
+        restartLog.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "DMABSelector{c=" + c + ", delta=" + delta + ", lambda=" + lambda +
+                ", operators=" + operators.size() + ", restarts=" + restarts + "}";
+    }
+}
@@ -0,0 +1,156 @@
+package gin.rl;
+
+import gin.edit.Edit;
+import org.pmw.tinylog.Logger;
+
+import java.io.Serial;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Discounted UCB (D-UCB) operator selector for non-stationary rewards.
+ *
+ * Like UCB1, but every past reward and selection is weighted by gamma^age,
+ * so older evidence fades gradually rather than being dropped at a fixed
+ * point as in {@link SlidingWindowUCBSelector}:
+ *
+ *     N_γ(a) = Σ γ^(t-s) [a selected at s]
+ *     Q_γ(a) = Σ γ^(t-s) r_s [a selected at s] / N_γ(a)
+ *     D-UCB(a) = Q_γ(a) + c * sqrt(ln(Σ N_γ) / N_γ(a))
+ *
+ * Operators that haven't been chosen for a while see their discounted count
+ * shrink and their exploration bonus grow, so they are periodically re-tried.
+ * With gamma = 1 this is plain UCB1.
+ *
+ * Each update decays all operators, so costs O(number of operators).
+ * Pending pulls from batched selection count towards N_γ(a) as in {@link UCBSelector}.
+ *
+ * Advantages:
+ * - Adapts to gradual drift in operator usefulness
+ * - Single smooth forgetting parameter
+ *
+ * Disadvantages:
+ * - Gamma must suit the rate of change
+ * - Slower to react to abrupt changes than a short window
+ */
+public class DiscountedUCBSelector extends AbstractBanditSelector {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** Exploration constant */
+    private final double c;
+
+    /** Discount factor applied to past evidence at each update */
+    private final double gamma;
+
+    /** Discounted number of selections of each operator */
+    private final double[] discountedCounts;
+
+    /** Discounted sum of rewards of each operator */
+    private final double[] discountedSums;
+
+    /** Sum of discountedCounts */
+    private double discountedTotal;
+
+    /**
+     * Create a discounted UCB selector.
+     *
+     * @param operators list of available Edit classes
+     * @param c exploration constant (typically sqrt(2))
+     * @param gamma discount factor in (0, 1] (typical: 0.9 to 0.99)
+     * @param rng random number generator
+     * @throws IllegalArgumentException if c is negative or gamma is out of range
+     */
+    public DiscountedUCBSelector(List<Class<? extends Edit>> operators, double c, double gamma, Random rng) {
+        super(operators, rng);
+
+        if (c < 0) {
+            throw new IllegalArgumentException("Exploration constant c must be non-negative, got: " + c);
+        }
+        if (gamma <= 0 || gamma > 1) {
+            throw new IllegalArgumentException("Discount gamma must be in (0, 1], got: " + gamma);
+        }
+
+        this.c = c;
+        this.gamma = gamma;
+        this.discountedCounts = new double[operators.size()];
+        this.discountedSums = new double[operators.size()];
+
+        Logger.info("Created DiscountedUCBSelector with c=" + c + ", gamma=" + gamma);
+    }
+
+    @Override
+    protected int selectArm() {
+        double t = discountedTotal + totalPending;
+
+        int selected = 0;
+        double best = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < operators.size(); i++) {
+            double value = computeUCB(i, t);
+            if (value > best) {
+                best = value;
+                selected = i;
+            }
+        }
+
+        Logger.debug("D-UCB: selected " + operators.get(selected).getSimpleName() +
+                " (UCB=" + String.format("%.4f", best) + ")");
+
+        return selected;
+    }
+
+    private double computeUCB(int arm, double t) {
+        double n = discountedCounts[arm] + pendingPulls[arm];
+        if (n == 0) {
+            return Double.MAX_VALUE;
+        }
+        double q = discountedCounts[arm] > 0 ? discountedSums[arm] / discountedCounts[arm] : 0.0;
+        return q + c * Math.sqrt(Math.log(Math.max(t, 1)) / n);
+    }
+
+    @Override
+    protected void onUpdate(int arm, double reward) {
+        for (int i = 0; i < discountedCounts.length; i++) {
+            discountedCounts[i] *= gamma;
+            discountedSums[i] *= gamma;
+        }
+        discountedCounts[arm] += 1;
+        discountedSums[arm] += reward;
+        discountedTotal = discountedTotal * gamma + 1;
+    }
+
+    public Map<Class<? extends Edit>, Double> getDiscountedQualities() {
+        Map<Class<? extends Edit>, Double> qualities = new HashMap<>();
+        for (int i = 0; i < operators.size(); i++) {
+            qualities.put(operators.get(i),
+                    discountedCounts[i] > 0 ? discountedSums[i] / discountedCounts[i] : 0.0);
+        }
+        return qualities;
+    }
+
+    public double getC() {
+        return c;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        Arrays.fill(discountedCounts, 0.0);
+        Arrays.fill(discountedSums, 0.0);
+        discountedTotal = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "DiscountedUCBSelector{c=" + c + ", gamma=" + gamma +
+                ", operators=" + operators.size() + "}";
+    }
+}
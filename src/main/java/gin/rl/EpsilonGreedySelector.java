@@ -4,8 +4,6 @@ import gin.edit.Edit;
 import org.pmw.tinylog.Logger;
 
 import java.io.Serial;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
 
@@ -58,22 +56,18 @@ public class EpsilonGreedySelector extends AbstractBanditSelector {
     }
 
     @Override
-    public Class<? extends Edit> select() {
-        preSelect();
-
-        Class<? extends Edit> selected;
+    protected int selectArm() {
+        int selected;
 
         if (rng.nextDouble() < epsilon) {
-            selected = operators.get(rng.nextInt(operators.size()));
+            selected = rng.nextInt(operators.size());
             Logger.debug("Epsilon-greedy: EXPLORE - random selection");
         } else {
-            selected = Collections.max(operators,
-                    Comparator.comparingDouble(averageQualities::get));
+            selected = argmax(averageQualities);
             Logger.debug("Epsilon-greedy: EXPLOIT - best operator (Q=" +
-                    String.format("%.4f", averageQualities.get(selected)) + ")");
+                    String.format("%.4f", averageQualities[selected]) + ")");
         }
 
-        postSelect(selected);
         return selected;
     }
 
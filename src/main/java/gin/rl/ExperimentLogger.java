@@ -4,7 +4,12 @@ import gin.edit.Edit;
 import org.pmw.tinylog.Logger;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -21,15 +26,60 @@ import java.util.*;
  * - Per-operator statistics: selection count, success rate, average quality
  * - Configuration: algorithm parameters, operator space
  * - Summary: total reward, best fitness, improvement percentage
+ *
+ * Steps are not held in memory. Each step is appended to the steps file
+ * (CSV or JSON Lines, see {@link Format}) as soon as it is logged, through a
+ * buffer that is flushed and forced to disk every {@link #DEFAULT_SYNC_STEPS}
+ * steps or {@link #DEFAULT_SYNC_INTERVAL_MS} ms, whichever comes first, so a
+ * crash loses at most the last few steps. Patch descriptions longer than
+ * {@link #DEFAULT_INLINE_PATCH_LENGTH} characters (LLM edits carry whole
+ * prompts and responses) are written once to a separate patches file and
+ * referenced from the steps file by hash. Summary and per-operator
+ * statistics are kept as running totals.
+ *
+ * The logger is Serializable so it can be saved in a checkpoint: call
+ * {@link #sync()} first. A deserialized logger rolls its files back to their
+ * length at the last sync when it logs its next step, then appends to them,
+ * so steps logged after the checkpoint are not duplicated on resume.
  */
-public class ExperimentLogger implements Serializable {
+public class ExperimentLogger implements Serializable, Closeable {
 
     @Serial
     private static final long serialVersionUID = 1L;
 
+    /** Steps between forced writes to disk */
+    public static final int DEFAULT_SYNC_STEPS = 20;
+
+    /** Maximum time between forced writes to disk */
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 5000;
+
+    /** Patch descriptions up to this length are written inline */
+    public static final int DEFAULT_INLINE_PATCH_LENGTH = 256;
+
+    /** Prefix of patch references in the steps file */
+    public static final String PATCH_REF_PREFIX = "sha256:";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Format of the streamed steps and patches files.
+     */
+    public enum Format {
+        CSV("csv"), JSONL("jsonl");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
     private final String experimentId;
     private final String outputDir;
-    private final List<StepRecord> stepRecords;
     private final Map<String, String> configuration;
     private final long startTime;
 
@@ -38,6 +88,55 @@ public class ExperimentLogger implements Serializable {
     private String bestPatch;
     private String fitnessUnit = "bytes";
 
+    private Format format = Format.CSV;
+    private int syncSteps = DEFAULT_SYNC_STEPS;
+    private long syncIntervalMs = DEFAULT_SYNC_INTERVAL_MS;
+    private int inlinePatchLength = DEFAULT_INLINE_PATCH_LENGTH;
+
+    // ===== Streaming output, opened on the first step =====
+
+    private transient FileChannel stepsChannel;
+    private transient Writer stepsWriter;
+    private transient FileChannel patchesChannel;
+    private transient Writer patchesWriter;
+    private transient MessageDigest digest;
+    private int stepsSinceSync;
+    private long lastSyncTime;
+
+    /** Lengths of the steps and patches files at the last sync */
+    private long stepsLength;
+    private long patchesLength;
+
+    /** Hashes of patch descriptions already written to the patches file */
+    private final Set<String> storedPatchHashes;
+
+    // ===== Running totals =====
+
+    private int totalSteps;
+    private int successfulSteps;
+    private int improvements;
+    private double totalReward;
+    private int llmSelections;
+    private int llmSuccesses;
+    private int llmImprovements;
+
+    /** Totals for each operator, by simple name */
+    private final Map<String, OperatorTotals> operatorTotals;
+
+    /**
+     * Running totals for one operator.
+     */
+    private static class OperatorTotals implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        int selections;
+        int successes;
+        int improvements;
+        double totalReward;
+        long totalDurationMs;
+    }
+
     /**
      * Record for each step in the experiment.
      */
@@ -65,8 +164,9 @@ public class ExperimentLogger implements Serializable {
     public ExperimentLogger(String experimentId, String outputDir) {
         this.experimentId = experimentId;
         this.outputDir = outputDir;
-        this.stepRecords = new ArrayList<>();
         this.configuration = new LinkedHashMap<>();
+        this.storedPatchHashes = new HashSet<>();
+        this.operatorTotals = new HashMap<>();
         this.startTime = System.currentTimeMillis();
 
         try {
@@ -118,6 +218,41 @@ public class ExperimentLogger implements Serializable {
         this.fitnessUnit = unit;
     }
 
+    /**
+     * Set the format of the steps and patches files. Must be called before the first step is logged.
+     */
+    public void setFormat(Format format) {
+        if (stepsWriter != null) {
+            throw new IllegalStateException("Steps file already open, can't change format");
+        }
+        this.format = format;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Set how often logged steps are forced to disk.
+     *
+     * @param steps maximum number of steps between syncs (1 to sync every step)
+     * @param intervalMs maximum time between syncs
+     */
+    public void setSyncInterval(int steps, long intervalMs) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("Sync interval must be at least 1 step, got: " + steps);
+        }
+        this.syncSteps = steps;
+        this.syncIntervalMs = intervalMs;
+    }
+
+    /**
+     * @param length patch descriptions longer than this are stored out of line by hash
+     */
+    public void setInlinePatchLength(int length) {
+        this.inlinePatchLength = length;
+    }
+
     /**
      * Log a single step of the experiment.
      *
@@ -126,7 +261,7 @@ public class ExperimentLogger implements Serializable {
      * @param success whether the mutation succeeded (compiled + passed tests)
      * @param parentFitness fitness before mutation
      * @param childFitness fitness after mutation (null if failed)
-     * @param reward the reward value
+     * @param reward the reward the selector learnt from, cost-shaped when cost-aware rewards are on
      * @param stepDurationMs time taken for this operator invocation (ms)
      * @param patchDescription string description of the patch
      */
@@ -138,7 +273,7 @@ public class ExperimentLogger implements Serializable {
         String category = OperatorSpace.getOperatorCategory(operator);
         boolean isImprovement = success && childFitness != null && childFitness < parentFitness;
 
-        StepRecord record = new StepRecord(
+        StepRecord r = new StepRecord(
             step,
             operator.getSimpleName(),
             category,
@@ -153,7 +288,34 @@ public class ExperimentLogger implements Serializable {
             patchDescription
         );
 
-        stepRecords.add(record);
+        totalSteps++;
+        totalReward += reward;
+        if (success) {
+            successfulSteps++;
+        }
+        if (isImprovement) {
+            improvements++;
+        }
+        if (isLLM) {
+            llmSelections++;
+            if (success) {
+                llmSuccesses++;
+            }
+            if (isImprovement) {
+                llmImprovements++;
+            }
+        }
+
+        OperatorTotals totals = operatorTotals.computeIfAbsent(r.operatorName, k -> new OperatorTotals());
+        totals.selections++;
+        if (success) {
+            totals.successes++;
+        }
+        if (isImprovement) {
+            totals.improvements++;
+        }
+        totals.totalReward += reward;
+        totals.totalDurationMs += stepDurationMs;
 
         // Track best fitness
         if (success && childFitness != null && childFitness < bestFitness) {
@@ -161,39 +323,191 @@ public class ExperimentLogger implements Serializable {
             bestPatch = patchDescription;
         }
 
+        try {
+            writeStep(r);
+        } catch (IOException e) {
+            Logger.error("Failed to write step " + step + " to " + getStepsPath() + ": " + e.getMessage());
+        }
+
         Logger.debug(String.format("Step %d: %s %s reward=%.4f",
             step, operator.getSimpleName(), success ? "SUCCESS" : "FAILED", reward));
     }
 
     /**
-     * Export step-by-step data to CSV.
-     *
-     * @param filename output filename (relative to outputDir)
+     * @return path of the steps file
      */
-    public void exportStepsToCSV(String filename) throws IOException {
-        Path path = Paths.get(outputDir, filename);
-        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path))) {
-            writer.println("step,operator,category,is_llm,success,is_improvement," +
-                          "parent_fitness,child_fitness,reward,step_duration_ms,cumulative_time_ms,patch");
-
-            for (StepRecord r : stepRecords) {
-                writer.printf("%d,%s,%s,%b,%b,%b,%s,%s,%.6f,%d,%d,\"%s\"%n",
-                    r.step,
-                    r.operatorName,
-                    r.operatorCategory,
-                    r.isLLMOperator,
-                    r.success,
-                    r.isImprovement,
-                    r.parentFitness != null ? r.parentFitness : "",
-                    r.childFitness != null ? r.childFitness : "",
-                    r.reward,
-                    r.stepDurationMs,
-                    r.cumulativeTimeMs,
-                    escapeCsvString(r.patchDescription)
-                );
+    public Path getStepsPath() {
+        return Paths.get(outputDir, experimentId + "_steps." + format.getExtension());
+    }
+
+    /**
+     * @return path of the file holding patch descriptions stored out of line
+     */
+    public Path getPatchesPath() {
+        return Paths.get(outputDir, experimentId + "_patches." + format.getExtension());
+    }
+
+    /**
+     * Append a step to the steps file, opening it on the first call.
+     */
+    private void writeStep(StepRecord r) throws IOException {
+        if (stepsWriter == null) {
+            openStreams();
+        }
+
+        String patch = patchReference(r.patchDescription);
+        if (format == Format.JSONL) {
+            stepsWriter.write(String.format(Locale.ROOT,
+                "{\"step\":%d,\"operator\":%s,\"category\":%s,\"is_llm\":%b,\"success\":%b," +
+                "\"is_improvement\":%b,\"parent_fitness\":%s,\"child_fitness\":%s,\"reward\":%.6f," +
+                "\"step_duration_ms\":%d,\"cumulative_time_ms\":%d,\"patch\":%s}%n",
+                r.step,
+                jsonString(r.operatorName),
+                jsonString(r.operatorCategory),
+                r.isLLMOperator,
+                r.success,
+                r.isImprovement,
+                r.parentFitness != null ? r.parentFitness : "null",
+                r.childFitness != null ? r.childFitness : "null",
+                r.reward,
+                r.stepDurationMs,
+                r.cumulativeTimeMs,
+                jsonString(patch)
+            ));
+        } else {
+            stepsWriter.write(String.format(Locale.ROOT, "%d,%s,%s,%b,%b,%b,%s,%s,%.6f,%d,%d,\"%s\"%n",
+                r.step,
+                r.operatorName,
+                r.operatorCategory,
+                r.isLLMOperator,
+                r.success,
+                r.isImprovement,
+                r.parentFitness != null ? r.parentFitness : "",
+                r.childFitness != null ? r.childFitness : "",
+                r.reward,
+                r.stepDurationMs,
+                r.cumulativeTimeMs,
+                escapeCsvString(patch)
+            ));
+        }
+
+        stepsSinceSync++;
+        if (stepsSinceSync >= syncSteps || System.currentTimeMillis() - lastSyncTime >= syncIntervalMs) {
+            sync();
+        }
+    }
+
+    /**
+     * Open the steps and patches files: from scratch if nothing has been
+     * synced yet, otherwise truncated to their length at the last sync.
+     */
+    private void openStreams() throws IOException {
+        boolean append = stepsLength > 0;
+
+        Path stepsPath = getStepsPath();
+        stepsChannel = openChannel(stepsPath, stepsLength);
+        stepsWriter = new BufferedWriter(Channels.newWriter(stepsChannel, StandardCharsets.UTF_8), BUFFER_SIZE);
+        if (!append && format == Format.CSV) {
+            stepsWriter.write("step,operator,category,is_llm,success,is_improvement," +
+                "parent_fitness,child_fitness,reward,step_duration_ms,cumulative_time_ms,patch\n");
+        }
+
+        patchesChannel = openChannel(getPatchesPath(), patchesLength);
+        patchesWriter = new BufferedWriter(Channels.newWriter(patchesChannel, StandardCharsets.UTF_8), BUFFER_SIZE);
+        if (!append && format == Format.CSV) {
+            patchesWriter.write("hash,patch\n");
+        }
+
+        lastSyncTime = System.currentTimeMillis();
+        if (append) {
+            Logger.info("Appending steps to: " + stepsPath + " from byte " + stepsLength);
+        } else {
+            Logger.info("Streaming steps to: " + stepsPath);
+        }
+    }
+
+    private static FileChannel openChannel(Path path, long length) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() < length) {
+            channel.close();
+            throw new IOException(path + " is shorter than when last synced (" + length + " bytes)");
+        }
+        channel.truncate(length);
+        channel.position(length);
+        return channel;
+    }
+
+    /**
+     * @return the description itself if it is short, otherwise a reference to
+     *         it in the patches file, writing it there the first time it is seen
+     */
+    private String patchReference(String description) throws IOException {
+        if (description == null || description.length() <= inlinePatchLength) {
+            return description;
+        }
+
+        String hash = hash(description);
+        if (storedPatchHashes.add(hash)) {
+            if (format == Format.JSONL) {
+                patchesWriter.write("{\"hash\":" + jsonString(hash) + ",\"patch\":" + jsonString(description) + "}\n");
+            } else {
+                patchesWriter.write(hash + ",\"" + escapeCsvString(description) + "\"\n");
+            }
+        }
+        return PATCH_REF_PREFIX + hash;
+    }
+
+    private String hash(String s) {
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
             }
         }
-        Logger.info("Exported steps to: " + path);
+        // 64 bits is plenty to tell apart the patches of one run
+        byte[] bytes = digest.digest(s.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(bytes, 0, 8);
+    }
+
+    /**
+     * Write buffered steps and patches out and force them to disk.
+     */
+    public void sync() throws IOException {
+        if (stepsWriter == null) {
+            return;
+        }
+        // patches first, so that every reference in the steps file can be resolved
+        patchesWriter.flush();
+        patchesChannel.force(false);
+        stepsWriter.flush();
+        stepsChannel.force(false);
+        patchesLength = patchesChannel.size();
+        stepsLength = stepsChannel.size();
+        stepsSinceSync = 0;
+        lastSyncTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Sync and close the steps and patches files. Logging another step
+     * afterwards appends to them.
+     */
+    @Override
+    public void close() throws IOException {
+        if (stepsWriter == null) {
+            return;
+        }
+        try {
+            sync();
+        } finally {
+            patchesWriter.close();
+            stepsWriter.close();
+            patchesWriter = null;
+            stepsWriter = null;
+            patchesChannel = null;
+            stepsChannel = null;
+        }
+        Logger.info("Steps written to: " + getStepsPath());
     }
 
     /**
@@ -205,50 +519,40 @@ public class ExperimentLogger implements Serializable {
     public void exportOperatorStatsToCSV(OperatorSelector selector, String filename) throws IOException {
         Path path = Paths.get(outputDir, filename);
 
-        Map<String, Integer> selectionCounts = new HashMap<>();
-        Map<String, Integer> successCounts = new HashMap<>();
-        Map<String, Double> totalRewards = new HashMap<>();
-        Map<String, Integer> improvementCounts = new HashMap<>();
-
-        for (StepRecord r : stepRecords) {
-            selectionCounts.merge(r.operatorName, 1, Integer::sum);
-            if (r.success) {
-                successCounts.merge(r.operatorName, 1, Integer::sum);
-            }
-            totalRewards.merge(r.operatorName, r.reward, Double::sum);
-            if (r.isImprovement) {
-                improvementCounts.merge(r.operatorName, 1, Integer::sum);
-            }
-        }
-
         Map<Class<? extends Edit>, OperatorSelector.OperatorStats> stats = selector.getOperatorStatistics();
 
         try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path))) {
             writer.println("operator,category,is_llm,selection_count,success_count,success_rate," +
-                          "improvement_count,improvement_rate,total_reward,avg_reward,learned_q");
+                          "improvement_count,improvement_rate,total_reward,avg_reward,learned_q," +
+                          "total_duration_ms,avg_duration_ms,reward_per_second");
 
             for (Class<? extends Edit> op : selector.getOperators()) {
                 String name = op.getSimpleName();
                 String category = OperatorSpace.getOperatorCategory(op);
                 boolean isLLM = OperatorSpace.isLLMOperator(op);
 
-                int selections = selectionCounts.getOrDefault(name, 0);
-                int successes = successCounts.getOrDefault(name, 0);
-                int improvements = improvementCounts.getOrDefault(name, 0);
-                double totalReward = totalRewards.getOrDefault(name, 0.0);
+                OperatorTotals totals = operatorTotals.getOrDefault(name, new OperatorTotals());
+                int selections = totals.selections;
+                int successes = totals.successes;
+                int improvements = totals.improvements;
+                double totalReward = totals.totalReward;
+                long totalDuration = totals.totalDurationMs;
 
                 double successRate = selections > 0 ? (double) successes / selections : 0;
                 double improvementRate = selections > 0 ? (double) improvements / selections : 0;
                 double avgReward = selections > 0 ? totalReward / selections : 0;
+                double avgDuration = selections > 0 ? (double) totalDuration / selections : 0;
+                double rewardPerSecond = totalDuration > 0 ? totalReward / (totalDuration / 1000.0) : 0;
 
                 OperatorSelector.OperatorStats opStats = stats.get(op);
                 double learnedQ = opStats != null ? opStats.averageQuality() : 0;
 
-                writer.printf("%s,%s,%b,%d,%d,%.6f,%d,%.6f,%.6f,%.6f,%.6f%n",
+                writer.printf("%s,%s,%b,%d,%d,%.6f,%d,%.6f,%.6f,%.6f,%.6f,%d,%.1f,%.6f%n",
                     name, category, isLLM,
                     selections, successes, successRate,
                     improvements, improvementRate,
-                    totalReward, avgReward, learnedQ
+                    totalReward, avgReward, learnedQ,
+                    totalDuration, avgDuration, rewardPerSecond
                 );
             }
         }
@@ -279,15 +583,6 @@ public class ExperimentLogger implements Serializable {
     public void exportSummaryToCSV(String filename) throws IOException {
         Path path = Paths.get(outputDir, filename);
 
-        int totalSteps = stepRecords.size();
-        int successfulSteps = (int) stepRecords.stream().filter(r -> r.success).count();
-        int improvements = (int) stepRecords.stream().filter(r -> r.isImprovement).count();
-        double totalReward = stepRecords.stream().mapToDouble(r -> r.reward).sum();
-
-        int llmSelections = (int) stepRecords.stream().filter(r -> r.isLLMOperator).count();
-        int llmSuccesses = (int) stepRecords.stream().filter(r -> r.isLLMOperator && r.success).count();
-        int llmImprovements = (int) stepRecords.stream().filter(r -> r.isLLMOperator && r.isImprovement).count();
-
         int tradSelections = totalSteps - llmSelections;
         int tradSuccesses = successfulSteps - llmSuccesses;
         int tradImprovements = improvements - llmImprovements;
@@ -318,16 +613,19 @@ public class ExperimentLogger implements Serializable {
             writer.printf("traditional_improvements,%d%n", tradImprovements);
             writer.printf("traditional_success_rate,%.6f%n", tradSelections > 0 ? (double) tradSuccesses / tradSelections : 0);
             writer.printf("runtime_ms,%d%n", System.currentTimeMillis() - startTime);
+            writer.printf("steps_file,%s%n", getStepsPath().getFileName());
+            writer.printf("patches_stored_out_of_line,%d%n", storedPatchHashes.size());
             writer.printf("best_patch,\"%s\"%n", escapeCsvString(bestPatch != null ? bestPatch : ""));
         }
         Logger.info("Exported summary to: " + path);
     }
 
     /**
-     * Export all data to CSV files.
+     * Finish the steps file and export everything else to CSV files.
      *
      * Creates:
-     * - {experimentId}_steps.csv
+     * - {experimentId}_steps.csv or .jsonl (streamed during the run, closed here)
+     * - {experimentId}_patches.csv or .jsonl (long patch descriptions, by hash)
      * - {experimentId}_operators.csv
      * - {experimentId}_config.csv
      * - {experimentId}_summary.csv
@@ -335,7 +633,7 @@ public class ExperimentLogger implements Serializable {
      * @param selector the operator selector
      */
     public void exportAll(OperatorSelector selector) throws IOException {
-        exportStepsToCSV(experimentId + "_steps.csv");
+        close();
         exportOperatorStatsToCSV(selector, experimentId + "_operators.csv");
         exportConfigToCSV(experimentId + "_config.csv");
         exportSummaryToCSV(experimentId + "_summary.csv");
@@ -350,8 +648,8 @@ public class ExperimentLogger implements Serializable {
         return outputDir;
     }
 
-    public List<StepRecord> getStepRecords() {
-        return Collections.unmodifiableList(stepRecords);
+    public int getTotalSteps() {
+        return totalSteps;
     }
 
     public long getBestFitness() {
@@ -366,11 +664,6 @@ public class ExperimentLogger implements Serializable {
      * Print a summary to the console.
      */
     public void printSummary() {
-        int totalSteps = stepRecords.size();
-        int successfulSteps = (int) stepRecords.stream().filter(r -> r.success).count();
-        int improvements = (int) stepRecords.stream().filter(r -> r.isImprovement).count();
-        double totalReward = stepRecords.stream().mapToDouble(r -> r.reward).sum();
-
         double improvementPct = originalFitness > 0
             ? 100.0 * (originalFitness - bestFitness) / originalFitness
             : 0;
@@ -394,4 +687,28 @@ public class ExperimentLogger implements Serializable {
         if (s == null) return "";
         return s.replace("\"", "\"\"").replace("\n", "\\n");
     }
+
+    private static String jsonString(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
 }
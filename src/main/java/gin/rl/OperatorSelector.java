@@ -44,6 +44,24 @@ public interface OperatorSelector {
     void updateQuality(Class<? extends Edit> operator, Long parentFitness,
                        Long childFitness, boolean success);
 
+    /**
+     * Update the quality estimate for an operator, also reporting how long it
+     * took to apply and evaluate (LLM query, compilation and tests).
+     *
+     * Selectors that take cost into account override this; by default the
+     * cost is ignored.
+     *
+     * @param operator the operator (Edit class) that was used
+     * @param parentFitness fitness before applying the edit
+     * @param childFitness fitness after applying the edit, or null if the edit failed
+     * @param success whether the edit was successfully applied and all tests passed
+     * @param costMs wall-clock time spent on this step, in milliseconds
+     */
+    default void updateQuality(Class<? extends Edit> operator, Long parentFitness,
+                               Long childFitness, boolean success, long costMs) {
+        updateQuality(operator, parentFitness, childFitness, success);
+    }
+
     /**
      * Get all operators that this selector can choose from.
      *
@@ -88,7 +106,8 @@ public interface OperatorSelector {
         double averageQuality,
         int successCount,
         int failureCount,
-        double totalReward
+        double totalReward,
+        long totalCostMs
     ) {
         /**
          * Calculate the success rate for this operator.
@@ -99,5 +118,14 @@ public interface OperatorSelector {
             int total = successCount + failureCount;
             return total > 0 ? (double) successCount / total : 0.0;
         }
+
+        /**
+         * Calculate the average wall-clock cost of applying this operator.
+         *
+         * @return average cost in milliseconds, or 0 if never used
+         */
+        public double getAverageCostMs() {
+            return selectionCount > 0 ? (double) totalCostMs / selectionCount : 0.0;
+        }
     }
 }
@@ -51,7 +51,7 @@ public class PolicyGradientSelector extends AbstractBanditSelector {
     private final double[] preferences;
 
     /** Current policy (selection probabilities) */
-    private double[] policy;
+    private final double[] policy;
 
     /** Running average of rewards (baseline) */
     private double averageReward;
@@ -63,9 +63,8 @@ public class PolicyGradientSelector extends AbstractBanditSelector {
     private int rewardCount;
 
     // Additional logging for analysis
-    private final List<double[]> preferencesLog;
-    private final List<double[]> policyLog;
-    private final List<Double> averageRewardLog;
+    private final VectorHistory preferencesLog;
+    private final VectorHistory policyLog;
 
     /**
      * Create a policy gradient selector.
@@ -85,21 +84,18 @@ public class PolicyGradientSelector extends AbstractBanditSelector {
         this.alpha = alpha;
 
         this.preferences = new double[operators.size()];
-        Arrays.fill(preferences, 0.0);
-
-        this.policy = computeSoftmax(preferences);
+        this.policy = new double[operators.size()];
+        computeSoftmax(preferences, policy);
 
         this.averageReward = 0.0;
         this.totalReward = 0.0;
         this.rewardCount = 0;
 
-        this.preferencesLog = new ArrayList<>();
-        this.policyLog = new ArrayList<>();
-        this.averageRewardLog = new ArrayList<>();
+        this.preferencesLog = new VectorHistory(history.getCapacity(), operators.size());
+        this.policyLog = new VectorHistory(history.getCapacity(), operators.size());
 
-        preferencesLog.add(preferences.clone());
-        policyLog.add(policy.clone());
-        averageRewardLog.add(averageReward);
+        preferencesLog.record(preferences);
+        policyLog.record(policy);
 
         Logger.info("Created PolicyGradientSelector with alpha=" + alpha);
     }
@@ -112,13 +108,15 @@ public class PolicyGradientSelector extends AbstractBanditSelector {
      * Uses the log-sum-exp trick for numerical stability.
      *
      * @param prefs preference values
-     * @return probability distribution
+     * @param result array to write the probability distribution into
      */
-    private double[] computeSoftmax(double[] prefs) {
+    private static void computeSoftmax(double[] prefs, double[] result) {
         int n = prefs.length;
-        double[] result = new double[n];
 
-        double maxPref = Arrays.stream(prefs).max().orElse(0);
+        double maxPref = prefs[0];
+        for (int i = 1; i < n; i++) {
+            maxPref = Math.max(maxPref, prefs[i]);
+        }
 
         double sum = 0;
         for (int i = 0; i < n; i++) {
@@ -129,45 +127,20 @@ public class PolicyGradientSelector extends AbstractBanditSelector {
         for (int i = 0; i < n; i++) {
             result[i] /= sum;
         }
-
-        return result;
     }
 
     @Override
-    public Class<? extends Edit> select() {
-        preSelect();
-
-        double r = rng.nextDouble();
-        double cumulative = 0;
+    protected int selectArm() {
+        int selected = sampleArm(policy);
 
-        Class<? extends Edit> selected = null;
-        for (int i = 0; i < operators.size(); i++) {
-            cumulative += policy[i];
-            if (r <= cumulative) {
-                selected = operators.get(i);
-                break;
-            }
-        }
-
-        if (selected == null) {
-            selected = operators.get(operators.size() - 1);
-        }
+        Logger.debug("PolicyGradient: selected " + operators.get(selected).getSimpleName() +
+                " (π=" + String.format("%.4f", policy[selected]) + ")");
 
-        Logger.debug("PolicyGradient: selected " + selected.getSimpleName() +
-                " (π=" + String.format("%.4f", policy[operators.indexOf(selected)]) + ")");
-
-        postSelect(selected);
         return selected;
     }
 
     @Override
-    public void updateQuality(Class<? extends Edit> operator, Long parentFitness,
-                              Long childFitness, boolean success) {
-        super.updateQuality(operator, parentFitness, childFitness, success);
-
-        double reward = calculateReward(parentFitness, childFitness, success);
-        int selectedIndex = operators.indexOf(operator);
-
+    protected void onUpdate(int selectedIndex, double reward) {
         // REINFORCE gradient update
         for (int i = 0; i < operators.size(); i++) {
             if (i == selectedIndex) {
@@ -179,15 +152,14 @@ public class PolicyGradientSelector extends AbstractBanditSelector {
             }
         }
 
-        policy = computeSoftmax(preferences);
+        computeSoftmax(preferences, policy);
 
         totalReward += reward;
         rewardCount++;
         averageReward = totalReward / rewardCount;
 
-        preferencesLog.add(preferences.clone());
-        policyLog.add(policy.clone());
-        averageRewardLog.add(averageReward);
+        preferencesLog.record(preferences);
+        policyLog.record(policy);
 
         Logger.debug("PolicyGradient: updated preferences, avg_reward=" +
                 String.format("%.4f", averageReward));
@@ -225,16 +197,18 @@ public class PolicyGradientSelector extends AbstractBanditSelector {
         return averageReward;
     }
 
-    public List<double[]> getPreferencesLog() {
-        return Collections.unmodifiableList(preferencesLog);
-    }
-
-    public List<double[]> getPolicyLog() {
-        return Collections.unmodifiableList(policyLog);
+    /**
+     * @return preferences after each of the retained recent updates, oldest first
+     */
+    public VectorHistory getPreferencesLog() {
+        return preferencesLog;
     }
 
-    public List<Double> getAverageRewardLog() {
-        return Collections.unmodifiableList(averageRewardLog);
+    /**
+     * @return policy after each of the retained recent updates, oldest first
+     */
+    public VectorHistory getPolicyLog() {
+        return policyLog;
     }
 
     @Override
@@ -242,7 +216,7 @@ public class PolicyGradientSelector extends AbstractBanditSelector {
         super.reset();
 
         Arrays.fill(preferences, 0.0);
-        policy = computeSoftmax(preferences);
+        computeSoftmax(preferences, policy);
 
         averageReward = 0.0;
         totalReward = 0.0;
@@ -250,11 +224,9 @@ public class PolicyGradientSelector extends AbstractBanditSelector {
 
         preferencesLog.clear();
         policyLog.clear();
-        averageRewardLog.clear();
 
-        preferencesLog.add(preferences.clone());
-        policyLog.add(policy.clone());
-        averageRewardLog.add(averageReward);
+        preferencesLog.record(preferences);
+        policyLog.record(policy);
     }
 
     @Override
@@ -43,10 +43,10 @@ public class ProbabilityMatchingSelector extends AbstractBanditSelector {
     private final double pMin;
 
     /** Current selection probabilities */
-    private double[] probabilities;
+    private final double[] probabilities;
 
     /** Log of probability distributions over time */
-    private final List<double[]> probabilitiesLog;
+    private final VectorHistory probabilitiesLog;
 
     /**
      * Create a probability matching selector.
@@ -75,8 +75,8 @@ public class ProbabilityMatchingSelector extends AbstractBanditSelector {
         this.probabilities = new double[n];
         Arrays.fill(probabilities, 1.0 / n);
 
-        this.probabilitiesLog = new ArrayList<>();
-        probabilitiesLog.add(probabilities.clone());
+        this.probabilitiesLog = new VectorHistory(history.getCapacity(), n);
+        probabilitiesLog.record(probabilities);
 
         Logger.info("Created ProbabilityMatchingSelector with pMin=" + pMin);
     }
@@ -92,8 +92,8 @@ public class ProbabilityMatchingSelector extends AbstractBanditSelector {
         int n = operators.size();
 
         double totalQ = 0;
-        for (Class<? extends Edit> op : operators) {
-            totalQ += averageQualities.get(op);
+        for (int i = 0; i < n; i++) {
+            totalQ += averageQualities[i];
         }
 
         if (totalQ <= 0) {
@@ -101,9 +101,7 @@ public class ProbabilityMatchingSelector extends AbstractBanditSelector {
         } else {
             double remainingProbability = 1.0 - n * pMin;
             for (int i = 0; i < n; i++) {
-                Class<? extends Edit> op = operators.get(i);
-                double q = averageQualities.get(op);
-                probabilities[i] = pMin + remainingProbability * (q / totalQ);
+                probabilities[i] = pMin + remainingProbability * (averageQualities[i] / totalQ);
             }
         }
 
@@ -116,38 +114,19 @@ public class ProbabilityMatchingSelector extends AbstractBanditSelector {
     }
 
     @Override
-    public Class<? extends Edit> select() {
-        preSelect();
+    protected int selectArm() {
+        int selected = sampleArm(probabilities);
 
-        double r = rng.nextDouble();
-        double cumulative = 0;
+        Logger.debug("ProbabilityMatching: selected " + operators.get(selected).getSimpleName() +
+                " (p=" + String.format("%.4f", probabilities[selected]) + ")");
 
-        Class<? extends Edit> selected = null;
-        for (int i = 0; i < operators.size(); i++) {
-            cumulative += probabilities[i];
-            if (r <= cumulative) {
-                selected = operators.get(i);
-                break;
-            }
-        }
-
-        if (selected == null) {
-            selected = operators.get(operators.size() - 1);
-        }
-
-        Logger.debug("ProbabilityMatching: selected " + selected.getSimpleName() +
-                " (p=" + String.format("%.4f", probabilities[operators.indexOf(selected)]) + ")");
-
-        postSelect(selected);
         return selected;
     }
 
     @Override
-    public void updateQuality(Class<? extends Edit> operator, Long parentFitness,
-                              Long childFitness, boolean success) {
-        super.updateQuality(operator, parentFitness, childFitness, success);
+    protected void onUpdate(int arm, double reward) {
         updateProbabilities();
-        probabilitiesLog.add(probabilities.clone());
+        probabilitiesLog.record(probabilities);
         Logger.debug("ProbabilityMatching: updated probabilities");
     }
 
@@ -167,8 +146,11 @@ public class ProbabilityMatchingSelector extends AbstractBanditSelector {
         return pMin;
     }
 
-    public List<double[]> getProbabilitiesLog() {
-        return Collections.unmodifiableList(probabilitiesLog);
+    /**
+     * @return probabilities after each of the retained recent updates, oldest first
+     */
+    public VectorHistory getProbabilitiesLog() {
+        return probabilitiesLog;
     }
 
     @Override
@@ -179,7 +161,7 @@ public class ProbabilityMatchingSelector extends AbstractBanditSelector {
         Arrays.fill(probabilities, 1.0 / n);
 
         probabilitiesLog.clear();
-        probabilitiesLog.add(probabilities.clone());
+        probabilitiesLog.record(probabilities);
     }
 
     @Override
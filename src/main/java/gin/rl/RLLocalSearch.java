@@ -7,9 +7,15 @@ import gin.SourceFile;
 import gin.edit.Edit;
 import gin.edit.llm.LLMConfig;
 import gin.edit.llm.LLMConfig.PromptType;
+import gin.edit.llm.SuggestionFilter;
+import gin.test.CompiledCodeCache;
+import gin.test.ExternalTestRunner;
 import gin.test.InternalTestRunner;
+import gin.test.UnitTest;
 import gin.test.UnitTestResult;
 import gin.test.UnitTestResultSet;
+import gin.util.Checkpoint;
+import gin.util.SurrogateModel;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.rng.simple.JDKRandomBridge;
 import org.apache.commons.rng.simple.RandomSource;
@@ -19,7 +25,13 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serial;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * RL-based Local Search for Genetic Improvement.
@@ -30,8 +42,14 @@ import java.util.*;
  * for the given optimization task.
  *
  * Key features:
- * - Supports multiple RL algorithms: uniform, epsilon-greedy, UCB, policy gradient
+ * - Supports multiple RL algorithms: uniform, epsilon-greedy, UCB, Thompson sampling,
+ *   policy gradient, probability matching, and the non-stationary variants
+ *   sliding-window UCB, discounted UCB and DMAB
+ * - Contextual selection (LinUCB) using features of the target method and patch,
+ *   with a model that can be carried over between methods (-lmodel)
  * - Can include LLM operators alongside traditional GI operators
+ * - Optional parallel evaluation of several neighbours at once (-par), each in its own JVM
+ * - Periodic checkpoints, so an interrupted run can be continued with -resume
  * - Comprehensive logging for dissertation analysis
  *
  * Usage:
@@ -72,12 +90,18 @@ public class RLLocalSearch implements Serializable {
     @Argument(alias = "n", description = "Number of steps")
     protected Integer numSteps = 100;
 
+    @Argument(alias = "tb", description = "Time budget for the search in seconds; if set, replaces the step limit")
+    protected Integer timeBudgetSeconds = null;
+
     @Argument(alias = "ff", description = "Fail fast on test failures")
     protected Boolean failFast = false;
 
+    @Argument(alias = "par", description = "Number of neighbours to evaluate in parallel, each in its own JVM (runtime measurements are noisier above 1)")
+    protected Integer parallelism = 1;
+
     // ===== RL parameters =====
 
-    @Argument(alias = "rl", description = "RL algorithm: uniform, epsilon_greedy, ucb, policy_gradient, probability_matching")
+    @Argument(alias = "rl", description = "RL algorithm: uniform, epsilon_greedy, ucb, thompson, thompson_beta, sw_ucb, d_ucb, dmab, linucb, policy_gradient, probability_matching")
     protected String rlAlgorithm = "epsilon_greedy";
 
     @Argument(alias = "eps", description = "Epsilon for epsilon-greedy (exploration rate)")
@@ -86,12 +110,39 @@ public class RLLocalSearch implements Serializable {
     @Argument(alias = "ucbc", description = "Exploration constant c for UCB")
     protected Double ucbC = Math.sqrt(2);
 
+    @Argument(alias = "tsig", description = "Assumed reward standard deviation for Thompson sampling")
+    protected Double thompsonSigma = 0.5;
+
+    @Argument(alias = "tgamma", description = "Discount factor for Thompson sampling (1 = no discounting)")
+    protected Double thompsonGamma = 1.0;
+
+    @Argument(alias = "win", description = "Window size for sliding-window UCB")
+    protected Integer windowSize = 100;
+
+    @Argument(alias = "gamma", description = "Discount factor for discounted UCB")
+    protected Double discount = 0.95;
+
+    @Argument(alias = "phd", description = "Page-Hinkley tolerance delta for DMAB")
+    protected Double phDelta = 0.15;
+
+    @Argument(alias = "phl", description = "Page-Hinkley threshold lambda for DMAB")
+    protected Double phLambda = 5.0;
+
+    @Argument(alias = "lalpha", description = "Exploration constant alpha for LinUCB")
+    protected Double linucbAlpha = 1.0;
+
+    @Argument(alias = "lmodel", description = "LinUCB model file: loaded at start if it exists, saved at the end")
+    protected File linucbModel = null;
+
     @Argument(alias = "alpha", description = "Learning rate for policy gradient")
     protected Double alpha = 0.1;
 
     @Argument(alias = "pmin", description = "Minimum probability for probability matching")
     protected Double pMin = 0.05;
 
+    @Argument(alias = "cost", description = "Reward the improvement divided by each operator's mean wall-clock cost per step, failures included, to maximise improvement per second")
+    protected Boolean costAwareRewards = false;
+
     // ===== Fitness function =====
 
     @Argument(alias = "ft", description = "Fitness type: runtime or memory")
@@ -116,6 +167,9 @@ public class RLLocalSearch implements Serializable {
     @Argument(alias = "mt", description = "Model type: OpenAI or ollama model name")
     protected String modelType = "OpenAI";
 
+    @Argument(alias = "ctxb", description = "Token budget for the class context in LLM prompts (0 to disable)")
+    protected Integer llmContextTokenBudget = 512;
+
     // ===== Output =====
 
     @Argument(alias = "o", description = "Output directory for logs")
@@ -124,15 +178,75 @@ public class RLLocalSearch implements Serializable {
     @Argument(alias = "expid", description = "Experiment ID (auto-generated if not specified)")
     protected String experimentId = null;
 
+    @Argument(alias = "logfmt", description = "Format of the streamed steps log: csv or jsonl")
+    protected String logFormat = "csv";
+
+    @Argument(alias = "sync", description = "Force the steps log to disk at least every this many steps")
+    protected Integer syncSteps = ExperimentLogger.DEFAULT_SYNC_STEPS;
+
+    @Argument(alias = "ckpt", description = "Write a checkpoint every this many steps (0 to disable)")
+    protected Integer checkpointInterval = 10;
+
+    @Argument(alias = "resume", description = "Resume from the checkpoint of this experiment ID, if there is one")
+    protected Boolean resume = false;
+
+    @Argument(alias = "sur", description = "Pre-screen neighbours with an online surrogate model and skip those unlikely to pass")
+    protected Boolean useSurrogate = false;
+
+    @Argument(alias = "surx", description = "Probability of evaluating a neighbour the surrogate would skip")
+    protected Double surrogateExplorationRate = SurrogateModel.DEFAULT_EXPLORATION_RATE;
+
+    @Argument(alias = "surt", description = "Skip neighbours predicted to pass with a lower probability than this")
+    protected Double surrogateThreshold = SurrogateModel.DEFAULT_THRESHOLD;
+
+    @Argument(alias = "surw", description = "Number of neighbours evaluated before the surrogate skips any")
+    protected Integer surrogateWarmup = SurrogateModel.DEFAULT_WARMUP;
+
+    @Argument(alias = "surr", description = "Number of neighbours generated in place of a skipped one before one is evaluated anyway")
+    protected Integer surrogateRetries = 10;
+
     // ===== Internal state =====
 
     protected SourceFile sourceFile;
     protected Random rng;
+    /** tests to run, or null to run all tests in testClassName */
+    protected List<UnitTest> tests;
     protected InternalTestRunner testRunner;
     protected OperatorSelector operatorSelector;
     protected List<Class<? extends Edit>> operators;
     protected ExperimentLogger logger;
 
+    protected long originalFitness;
+    protected Patch bestPatch;
+    protected long bestFitness;
+
+    /** when the search loop started, for the time budget */
+    protected long searchStartTime;
+
+    /** context features for contextual selectors, cached per source file */
+    protected final CodeFeatures codeFeatures = new CodeFeatures();
+
+    /** outcome of the most recently recorded evaluation, for the selection context */
+    protected CodeFeatures.Outcome lastOutcome;
+
+    /** where checkpoints are written: {outputDir}/{experimentId}.ckpt */
+    protected File checkpointFile;
+
+    /** number of evaluations recorded, for the checkpoint interval */
+    protected int completedSteps;
+
+    /** step number of the next evaluation */
+    protected int nextStep = 1;
+
+    /**
+     * operators selected for steps whose evaluations haven't been recorded yet,
+     * by step; checkpointed so that a resumed search evaluates them again
+     */
+    protected final TreeMap<Integer, Class<? extends Edit>> inFlightSteps = new TreeMap<>();
+
+    /** pre-screens neighbours before they are tested, or null if -sur is not set */
+    protected SurrogateModel surrogate;
+
     /**
      * Create RLLocalSearch from command line arguments.
      */
@@ -141,11 +255,24 @@ public class RLLocalSearch implements Serializable {
         initialize();
     }
 
+    /**
+     * Create RLLocalSearch from command line arguments, running the given
+     * tests instead of those in a test class. Used by {@link RLPortfolioSearch}.
+     */
+    RLLocalSearch(String[] args, List<UnitTest> tests) {
+        Args.parseOrExit(this, args);
+        this.tests = tests;
+        initialize();
+    }
+
     /**
      * Initialize all components.
      */
     private void initialize() {
         this.rng = new JDKRandomBridge(RandomSource.MT, Long.valueOf(seed));
+        if (useSurrogate) {
+            this.surrogate = new SurrogateModel(surrogateExplorationRate, surrogateThreshold, surrogateWarmup, seed);
+        }
 
         if (this.packageDir == null) {
             this.packageDir = (this.filename.getParentFile() != null)
@@ -174,20 +301,44 @@ public class RLLocalSearch implements Serializable {
             Collections.singletonList(this.methodSignature)
         );
 
-        this.testRunner = new InternalTestRunner(className, classPath, testClassName, failFast);
+        this.testRunner = (tests != null)
+            ? new InternalTestRunner(className, classPath, tests, failFast)
+            : new InternalTestRunner(className, classPath, testClassName, failFast);
 
         LLMConfig.openAIKey = openAIKey;
         LLMConfig.openAIModelName = openAIName;
         LLMConfig.defaultPromptType = llmPromptType;
         LLMConfig.modelType = modelType;
+        LLMConfig.contextTokenBudget = llmContextTokenBudget;
 
         this.operatorSelector = createSelector();
+        if (linucbModel != null && linucbModel.exists() && operatorSelector instanceof LinUCBSelector linUCB) {
+            try {
+                linUCB.loadModel(linucbModel);
+            } catch (IOException e) {
+                Logger.error("Failed to load LinUCB model, starting from scratch: " + e.getMessage());
+            }
+        }
+        if (costAwareRewards) {
+            if (operatorSelector instanceof AbstractBanditSelector bandit) {
+                bandit.setCostAwareRewards(true);
+            } else {
+                Logger.warn("Selector " + operatorSelector + " does not support cost-aware rewards");
+            }
+        }
 
         this.logger = new ExperimentLogger(
             experimentId != null ? experimentId : generateExperimentId(),
             outputDir
         );
         this.logger.setFitnessUnit(getFitnessUnit());
+        this.logger.setFormat(ExperimentLogger.Format.valueOf(logFormat.toUpperCase()));
+        this.logger.setSyncInterval(syncSteps, ExperimentLogger.DEFAULT_SYNC_INTERVAL_MS);
+        this.checkpointFile = new File(outputDir, logger.getExperimentId() + ".ckpt");
+        if (checkpointInterval > 0 && !(operatorSelector instanceof Serializable)) {
+            Logger.warn("Selector " + operatorSelector + " is not Serializable, checkpoints disabled");
+            checkpointInterval = 0;
+        }
 
         logConfiguration();
 
@@ -195,7 +346,43 @@ public class RLLocalSearch implements Serializable {
         Logger.info("  Algorithm: " + rlAlgorithm);
         Logger.info("  Fitness: " + fitnessType);
         Logger.info("  Operators: " + operators.size() + " (" + operatorSet + ")");
-        Logger.info("  Steps: " + numSteps);
+        if (timeBudgetSeconds != null) {
+            Logger.info("  Time budget: " + timeBudgetSeconds + " s");
+        } else {
+            Logger.info("  Steps: " + numSteps);
+        }
+        if (costAwareRewards) {
+            Logger.info("  Cost-aware rewards: enabled");
+        }
+        if (parallelism > 1) {
+            Logger.info("  Parallel evaluations: " + parallelism + ", each in its own JVM");
+            if (!fitnessType.equalsIgnoreCase("memory")) {
+                Logger.warn("Neighbours evaluated in parallel compete for the CPU, so their run times are noisier");
+            }
+        }
+    }
+
+    /**
+     * Run the tests against a patch. With parallelism above 1 every evaluation, the warmup included,
+     * runs in new JVMs, so that evaluations running at once don't share a heap, static state or the
+     * in-process class loaders; the warmup uses a new JVM for each rep, so that the original is
+     * measured as cold as each neighbour is.
+     *
+     * @throws UncheckedIOException if a test JVM can't be started
+     */
+    private UnitTestResultSet evaluate(Patch patch, int reps) {
+        if (parallelism <= 1) {
+            return testRunner.runTests(patch, null, reps);
+        }
+        ExternalTestRunner runner = new ExternalTestRunner(className, classPath, testRunner.getTests(), true, false, failFast);
+        try {
+            return runner.runTests(patch, null, reps);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while evaluating " + patch, e);
+        }
     }
 
     /**
@@ -227,6 +414,17 @@ public class RLLocalSearch implements Serializable {
             case "epsilon_greedy", "epsilon-greedy", "egreedy" ->
                 new EpsilonGreedySelector(operators, epsilon, rng);
             case "ucb", "ucb1" -> new UCBSelector(operators, ucbC, rng);
+            case "thompson", "thompson_sampling", "ts" ->
+                new ThompsonSamplingSelector(operators, thompsonSigma,
+                        ThompsonSamplingSelector.DEFAULT_PRIOR_MEAN, thompsonGamma, rng);
+            case "thompson_beta", "beta_thompson", "ts_beta" ->
+                new BetaThompsonSamplingSelector(operators, thompsonGamma, rng);
+            case "sw_ucb", "sliding_window_ucb", "swucb" ->
+                new SlidingWindowUCBSelector(operators, ucbC, windowSize, rng);
+            case "d_ucb", "discounted_ucb", "ducb" ->
+                new DiscountedUCBSelector(operators, ucbC, discount, rng);
+            case "dmab" -> new DMABSelector(operators, ucbC, phDelta, phLambda, rng);
+            case "linucb", "lin_ucb", "contextual" -> new LinUCBSelector(operators, linucbAlpha, rng);
             case "policy_gradient", "policy-gradient", "pg", "reinforce" ->
                 new PolicyGradientSelector(operators, alpha, rng);
             case "probability_matching", "probability-matching", "pm" ->
@@ -248,12 +446,39 @@ public class RLLocalSearch implements Serializable {
         logger.setConfiguration("operator_set", operatorSet);
         logger.setConfiguration("num_operators", String.valueOf(operators.size()));
         logger.setConfiguration("fitness_type", fitnessType);
+        logger.setConfiguration("parallelism", String.valueOf(parallelism));
+        logger.setConfiguration("time_budget_s", timeBudgetSeconds != null ? String.valueOf(timeBudgetSeconds) : "");
+        logger.setConfiguration("cost_aware_rewards", String.valueOf(costAwareRewards));
 
         switch (rlAlgorithm.toLowerCase()) {
             case "epsilon_greedy", "epsilon-greedy", "egreedy" ->
                 logger.setConfiguration("epsilon", String.valueOf(epsilon));
             case "ucb", "ucb1" ->
                 logger.setConfiguration("ucb_c", String.valueOf(ucbC));
+            case "thompson", "thompson_sampling", "ts" -> {
+                logger.setConfiguration("thompson_sigma", String.valueOf(thompsonSigma));
+                logger.setConfiguration("thompson_gamma", String.valueOf(thompsonGamma));
+            }
+            case "thompson_beta", "beta_thompson", "ts_beta" ->
+                logger.setConfiguration("thompson_gamma", String.valueOf(thompsonGamma));
+            case "sw_ucb", "sliding_window_ucb", "swucb" -> {
+                logger.setConfiguration("ucb_c", String.valueOf(ucbC));
+                logger.setConfiguration("window_size", String.valueOf(windowSize));
+            }
+            case "d_ucb", "discounted_ucb", "ducb" -> {
+                logger.setConfiguration("ucb_c", String.valueOf(ucbC));
+                logger.setConfiguration("discount", String.valueOf(discount));
+            }
+            case "dmab" -> {
+                logger.setConfiguration("ucb_c", String.valueOf(ucbC));
+                logger.setConfiguration("ph_delta", String.valueOf(phDelta));
+                logger.setConfiguration("ph_lambda", String.valueOf(phLambda));
+            }
+            case "linucb", "lin_ucb", "contextual" -> {
+                logger.setConfiguration("linucb_alpha", String.valueOf(linucbAlpha));
+                logger.setConfiguration("context_features", String.join(";", CodeFeatures.FEATURE_NAMES));
+                logger.setConfiguration("linucb_model", linucbModel != null ? linucbModel.toString() : "");
+            }
             case "policy_gradient", "policy-gradient", "pg", "reinforce" ->
                 logger.setConfiguration("alpha", String.valueOf(alpha));
             case "probability_matching", "probability-matching", "pm" ->
@@ -263,17 +488,20 @@ public class RLLocalSearch implements Serializable {
         if (operatorSet.equals("llm") || operatorSet.equals("all")) {
             logger.setConfiguration("llm_model", modelType.equals("OpenAI") ? openAIName : modelType);
             logger.setConfiguration("llm_prompt_type", llmPromptType.toString());
+            logger.setConfiguration("llm_context_token_budget", String.valueOf(llmContextTokenBudget));
         }
     }
 
     /**
      * Run warmup to get baseline fitness.
+     *
+     * @throws IllegalStateException if the original code fails to compile or pass its tests
      */
     private long warmup() {
         Logger.info("Running warmup...");
 
         Patch emptyPatch = new Patch(this.sourceFile);
-        UnitTestResultSet resultSet = testRunner.runTests(emptyPatch, null, WARMUP_REPS);
+        UnitTestResultSet resultSet = evaluate(emptyPatch, WARMUP_REPS);
 
         if (!resultSet.allTestsSuccessful()) {
             if (!resultSet.getCleanCompile()) {
@@ -284,7 +512,7 @@ public class RLLocalSearch implements Serializable {
                     Logger.error("  " + r);
                 }
             }
-            System.exit(1);
+            throw new IllegalStateException("Original code of " + methodSignature + " is not a valid starting point");
         }
 
         long avgFitness = getFitness(resultSet) / WARMUP_REPS;
@@ -297,59 +525,95 @@ public class RLLocalSearch implements Serializable {
      * Main search loop.
      */
     public void search() {
+        try {
+            start();
+        } catch (IllegalStateException e) {
+            Logger.error(e.getMessage());
+            System.exit(1);
+        }
+
+        if (parallelism > 1) {
+            searchParallel(nextStep);
+        } else {
+            runSteps(Integer.MAX_VALUE);
+        }
+
+        finish();
+        if (surrogate != null) {
+            Logger.info(surrogate.calibrationReport());
+        }
+    }
+
+    /**
+     * Measure the original fitness, or restore the search from its checkpoint.
+     *
+     * @throws IllegalStateException if the original code fails to compile or pass its tests
+     */
+    void start() {
         Logger.info("Starting RL Local Search");
         Logger.info("  File: " + filename);
         Logger.info("  Method: " + methodSignature);
 
-        long originalFitness = warmup();
-        logger.setOriginalFitness(originalFitness);
-
-        Patch bestPatch = new Patch(this.sourceFile);
-        long bestFitness = originalFitness;
+        nextStep = 1;
+        if (resume && checkpointFile.exists()) {
+            nextStep = restoreCheckpoint();
+        } else {
+            originalFitness = warmup();
+            logger.setOriginalFitness(originalFitness);
 
-        for (int step = 1; step <= numSteps; step++) {
-            long stepStartTime = System.currentTimeMillis();
+            bestPatch = new Patch(this.sourceFile);
+            bestFitness = originalFitness;
 
-            Class<? extends Edit> selectedOperator = operatorSelector.select();
+            searchStartTime = System.currentTimeMillis();
+        }
+    }
 
-            Logger.info(String.format("Step %d/%d: Trying %s",
-                step, numSteps, selectedOperator.getSimpleName()));
+    /**
+     * Run up to maxSteps steps one at a time, stopping early if the search budget runs out.
+     *
+     * @return the number of steps run
+     */
+    int runSteps(int maxSteps) {
+        // steps a parallel search had in flight when it was checkpointed; their operators are already selected
+        while (!inFlightSteps.isEmpty()) {
+            Map.Entry<Integer, Class<? extends Edit>> pending = inFlightSteps.firstEntry();
+            long stepStartTime = System.currentTimeMillis();
+            updateContext(pending.getKey());
+            Logger.info(String.format("Step %s: Trying %s",
+                stepLabel(pending.getKey()), pending.getValue().getSimpleName()));
 
-            Patch neighbour = createNeighbour(bestPatch, selectedOperator);
-            UnitTestResultSet results = testRunner.runTests(neighbour, null, 1);
+            Patch neighbour = prescreenNeighbour(bestPatch, pending.getValue());
+            UnitTestResultSet results = evaluate(neighbour, 1);
 
-            boolean success = results.getValidPatch()
-                           && results.getCleanCompile()
-                           && results.allTestsSuccessful();
+            inFlightSteps.remove(pending.getKey());
+            recordEvaluation(pending.getKey(), pending.getValue(), bestFitness, neighbour, results, stepStartTime);
+            maybeCheckpoint(nextStep);
+        }
 
-            Long childFitness = success ? getFitness(results) : null;
-            double reward = calculateReward(bestFitness, childFitness, success);
+        int run = 0;
+        for (; run < maxSteps && hasBudgetFor(nextStep); run++, nextStep++) {
+            int step = nextStep;
+            long stepStartTime = System.currentTimeMillis();
 
-            operatorSelector.updateQuality(selectedOperator, bestFitness, childFitness, success);
+            updateContext(step);
+            Class<? extends Edit> selectedOperator = operatorSelector.select();
 
-            long stepDuration = System.currentTimeMillis() - stepStartTime;
-            logger.logStep(step, selectedOperator, success, bestFitness, childFitness,
-                          reward, stepDuration, neighbour.toString());
+            Logger.info(String.format("Step %s: Trying %s",
+                stepLabel(step), selectedOperator.getSimpleName()));
 
-            String msg;
-            if (!results.getValidPatch()) {
-                msg = "Invalid patch";
-            } else if (!results.getCleanCompile()) {
-                msg = "Compilation failed";
-            } else if (!results.allTestsSuccessful()) {
-                msg = "Tests failed";
-            } else if (childFitness >= bestFitness) {
-                msg = String.format("No improvement (%d %s)", childFitness, getFitnessUnit());
-            } else {
-                bestPatch = neighbour;
-                bestFitness = childFitness;
-                msg = String.format("*** NEW BEST: %d %s (%.1f%% improvement) ***",
-                    bestFitness, getFitnessUnit(), 100.0 * (originalFitness - bestFitness) / originalFitness);
-            }
+            Patch neighbour = prescreenNeighbour(bestPatch, selectedOperator);
+            UnitTestResultSet results = evaluate(neighbour, 1);
 
-            Logger.info(String.format("  Result: %s, Reward: %.4f", msg, reward));
+            recordEvaluation(step, selectedOperator, bestFitness, neighbour, results, stepStartTime);
+            maybeCheckpoint(step + 1);
         }
+        return run;
+    }
 
+    /**
+     * Report the result, export the logs and write the optimised source if there was an improvement.
+     */
+    void finish() {
         double improvement = 100.0 * (originalFitness - bestFitness) / originalFitness;
         String unit = getFitnessUnit();
         Logger.info("=".repeat(60));
@@ -359,11 +623,37 @@ public class RLLocalSearch implements Serializable {
         Logger.info(String.format("  Patch:    %s", bestPatch));
         Logger.info("=".repeat(60));
 
+        if (SuggestionFilter.getSuggestionsSeen() > 0) {
+            Logger.info(SuggestionFilter.statisticsSummary());
+            logger.setConfiguration("llm_suggestions_seen", String.valueOf(SuggestionFilter.getSuggestionsSeen()));
+            logger.setConfiguration("llm_evaluations_saved", String.valueOf(SuggestionFilter.getEvaluationsSaved()));
+        }
+        if (surrogate != null) {
+            logger.setConfiguration("surrogate_rejected", String.valueOf(surrogate.getRejected()));
+            logger.setConfiguration("surrogate_explored", String.valueOf(surrogate.getExplored()));
+            logger.setConfiguration("surrogate_brier", String.format("%.4f", surrogate.getBrierScore()));
+            logger.setConfiguration("surrogate_log_loss", String.format("%.4f", surrogate.getLogLoss()));
+        }
+
         logger.printSummary();
 
         if (operatorSelector instanceof AbstractBanditSelector bandit) {
             bandit.logOperatorSummary();
         }
+        if (operatorSelector instanceof DMABSelector dmab) {
+            logger.setConfiguration("dmab_restarts", String.valueOf(dmab.getRestarts()));
+            logger.setConfiguration("dmab_restart_steps", dmab.getRestartLog().toString());
+        }
+        if (operatorSelector instanceof LinUCBSelector linUCB) {
+            linUCB.logModelSummary(CodeFeatures.FEATURE_NAMES);
+            if (linucbModel != null) {
+                try {
+                    linUCB.saveModel(linucbModel);
+                } catch (IOException e) {
+                    Logger.error("Failed to save LinUCB model: " + e.getMessage());
+                }
+            }
+        }
 
         try {
             logger.exportAll(operatorSelector);
@@ -378,6 +668,307 @@ public class RLLocalSearch implements Serializable {
         }
     }
 
+    /**
+     * Search loop for parallelism &gt; 1.
+     *
+     * Keeps up to {@link #parallelism} neighbours under evaluation at once.
+     * Results are fed back to the selector as each evaluation finishes,
+     * possibly out of order, and a replacement is selected straight away, so
+     * no worker waits for the rest of a batch. Neighbours are always created
+     * from the best patch at the time they are submitted; the reward for each
+     * is relative to that patch's fitness.
+     * <p>
+     * Each neighbour is evaluated in its own JVM (see {@link #evaluate}). The
+     * shared source file is only read while workers copy it to apply their
+     * patches, as its target method nodes are found when it is created.
+     */
+    private void searchParallel(int firstStep) {
+        if (!(operatorSelector instanceof BatchOperatorSelector selector)) {
+            throw new IllegalStateException(operatorSelector + " does not support parallel evaluation");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        CompletionService<Evaluation> completion = new ExecutorCompletionService<>(executor);
+
+        int submitted = firstStep - 1;
+        int inFlight = 0;
+        try {
+            // steps that were in flight when the search was checkpointed; their operators are already selected
+            for (Map.Entry<Integer, Class<? extends Edit>> pending : new ArrayList<>(inFlightSteps.entrySet())) {
+                updateContext(pending.getKey());
+                submitEvaluation(completion, pending.getKey(), pending.getValue());
+                inFlight++;
+            }
+
+            int initial = parallelism - inFlight;
+            if (timeBudgetSeconds == null) {
+                initial = Math.min(initial, numSteps - submitted);
+            }
+            if (initial > 0 && hasBudgetFor(firstStep)) {
+                updateContext(submitted + 1);
+                for (Class<? extends Edit> op : selector.selectBatch(initial)) {
+                    submitEvaluation(completion, ++submitted, op);
+                    inFlight++;
+                }
+            }
+
+            while (inFlight > 0) {
+                Evaluation evaluation = completion.take().get();
+                inFlight--;
+                inFlightSteps.remove(evaluation.step());
+
+                if (evaluation.results() == null) {
+                    // the selector learns nothing from an evaluation that didn't finish
+                    settlePull(evaluation.step());
+                    selector.cancelPull(evaluation.operator());
+                    recordFailedEvaluation(evaluation);
+                } else {
+                    recordEvaluation(evaluation.step(), evaluation.operator(), evaluation.parentFitness(),
+                            evaluation.neighbour(), evaluation.results(), evaluation.startTime());
+                }
+                // steps still in flight are checkpointed with the operators selected for them
+                maybeCheckpoint(submitted + 1);
+
+                // more than parallelism may be in flight after resuming with a lower -par
+                if (inFlight < parallelism && hasBudgetFor(submitted + 1)) {
+                    updateContext(submitted + 1);
+                    submitEvaluation(completion, ++submitted, selector.selectBatch(1).get(0));
+                    inFlight++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Logger.error("Interrupted while waiting for evaluations, stopping search");
+        } catch (ExecutionException e) {
+            Logger.error(e.getCause(), "Evaluation failed unexpectedly, stopping search");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Create a neighbour of the current best patch and queue it for evaluation.
+     * Neighbour creation uses the shared RNG so is done on the calling thread.
+     */
+    private void submitEvaluation(CompletionService<Evaluation> completion, int step, Class<? extends Edit> operator) {
+        Logger.info(String.format("Step %s: Trying %s", stepLabel(step), operator.getSimpleName()));
+
+        Patch neighbour = prescreenNeighbour(bestPatch, operator);
+        long parentFitness = bestFitness;
+        inFlightSteps.put(step, operator);
+
+        completion.submit(() -> {
+            long startTime = System.currentTimeMillis();
+            try {
+                UnitTestResultSet results = evaluate(neighbour, 1);
+                return new Evaluation(step, operator, parentFitness, neighbour, results, startTime);
+            } catch (RuntimeException e) {
+                Logger.error(e, "Evaluation of step " + step + " failed");
+                return new Evaluation(step, operator, parentFitness, neighbour, null, startTime);
+            }
+        });
+    }
+
+    /**
+     * Feed the result of evaluating a neighbour back to the selector and logger,
+     * and make it the new best patch if it improves on the current best.
+     */
+    private void recordEvaluation(int step, Class<? extends Edit> operator, long parentFitness,
+                                  Patch neighbour, UnitTestResultSet results, long stepStartTime) {
+        boolean success = results.getValidPatch()
+                       && results.getCleanCompile()
+                       && results.allTestsSuccessful();
+        lastOutcome = CodeFeatures.outcomeOf(results.getValidPatch(), results.getCleanCompile(),
+                results.allTestsSuccessful());
+
+        Long childFitness = success ? getFitness(results) : null;
+        if (surrogate != null) {
+            surrogate.observe(neighbour, results);
+            if (success) {
+                surrogate.observeFitness(neighbour, childFitness);
+            }
+        }
+        double reward = calculateReward(parentFitness, childFitness, success);
+
+        long stepDuration = System.currentTimeMillis() - stepStartTime;
+        settlePull(step);
+        operatorSelector.updateQuality(operator, parentFitness, childFitness, success, stepDuration);
+        // log what the selector learnt from, which -cost has turned into improvement per unit of search time
+        if (costAwareRewards && operatorSelector instanceof AbstractBanditSelector bandit) {
+            reward = bandit.getLastReward();
+        }
+
+        logger.logStep(step, operator, success, parentFitness, childFitness,
+                      reward, stepDuration, neighbour.toString());
+
+        String msg;
+        if (!results.getValidPatch()) {
+            msg = "Invalid patch";
+        } else if (!results.getCleanCompile()) {
+            msg = "Compilation failed";
+        } else if (!results.allTestsSuccessful()) {
+            msg = "Tests failed";
+        } else if (childFitness >= bestFitness) {
+            msg = String.format("No improvement (%d %s)", childFitness, getFitnessUnit());
+        } else {
+            bestPatch = neighbour;
+            bestFitness = childFitness;
+            msg = String.format("*** NEW BEST: %d %s (%.1f%% improvement) ***",
+                bestFitness, getFitnessUnit(), 100.0 * (originalFitness - bestFitness) / originalFitness);
+        }
+
+        Logger.info(String.format("  Result (step %d): %s, Reward: %.4f", step, msg, reward));
+        completedSteps++;
+    }
+
+    /**
+     * Log an evaluation that threw as a failed step with no reward, so that its step number
+     * isn't missing from the log.
+     */
+    private void recordFailedEvaluation(Evaluation evaluation) {
+        long stepDuration = System.currentTimeMillis() - evaluation.startTime();
+        logger.logStep(evaluation.step(), evaluation.operator(), false, evaluation.parentFitness(), null,
+                0.0, stepDuration, evaluation.neighbour().toString());
+        Logger.info(String.format("  Result (step %d): Evaluation failed, Reward: %.4f", evaluation.step(), 0.0));
+        completedSteps++;
+    }
+
+    /**
+     * Write a checkpoint if another checkpointInterval steps have been recorded.
+     *
+     * @param nextStep the step to continue from on resume; earlier steps not yet
+     *                 recorded are saved as in flight
+     */
+    private void maybeCheckpoint(int nextStep) {
+        if (checkpointInterval <= 0 || completedSteps % checkpointInterval != 0) {
+            return;
+        }
+        try {
+            Patch.parseEdits(bestPatch.toString());
+        } catch (IllegalArgumentException e) {
+            Logger.error(e, "Checkpoint not written, as the best patch could not be restored from it");
+            return;
+        }
+        try {
+            // the logger's file positions must match the state being saved
+            logger.sync();
+            Checkpoint.save(checkpointFile, new SearchState(nextStep, completedSteps,
+                    System.currentTimeMillis() - searchStartTime, originalFitness, bestPatch.toString(),
+                    bestFitness, lastOutcome, operatorSelector, rng, logger, surrogate, new TreeMap<>(inFlightSteps)));
+            Logger.debug("Checkpoint written before step " + nextStep);
+        } catch (IOException e) {
+            // a failed checkpoint shouldn't stop the search
+            Logger.error(e, "Could not write checkpoint to " + checkpointFile);
+        }
+    }
+
+    /**
+     * Restore the search from the checkpoint file, replacing the selector, RNG
+     * and logger created from the command line.
+     *
+     * @return the step to continue from
+     */
+    private int restoreCheckpoint() {
+        SearchState state;
+        try {
+            state = Checkpoint.load(checkpointFile, SearchState.class);
+        } catch (IOException e) {
+            Logger.error(e, "Could not read checkpoint " + checkpointFile);
+            System.exit(1);
+            return 0;
+        }
+
+        // the selector and the search share the RNG; serialising them together kept that
+        operatorSelector = state.selector();
+        rng = state.rng();
+        logger = state.logger();
+        originalFitness = state.originalFitness();
+        bestPatch = Patch.fromString(state.bestPatch(), sourceFile);
+        bestFitness = state.bestFitness();
+        lastOutcome = state.lastOutcome();
+        surrogate = state.surrogate();
+        completedSteps = state.completedSteps();
+        searchStartTime = System.currentTimeMillis() - state.elapsedMs();
+
+        inFlightSteps.clear();
+        if (state.inFlightSteps() != null) {
+            inFlightSteps.putAll(state.inFlightSteps());
+        }
+
+        // steps that were in flight keep their pending selections, as they are evaluated again
+        if (operatorSelector instanceof BatchOperatorSelector batch) {
+            for (Class<? extends Edit> op : batch.getOperators()) {
+                long inFlight = inFlightSteps.values().stream().filter(op::equals).count();
+                while (batch.getPendingPulls(op) > inFlight) {
+                    batch.cancelPull(op);
+                }
+            }
+        }
+
+        Logger.info("Resumed from " + checkpointFile + " at step " + state.nextStep() +
+                " with " + inFlightSteps.size() + " steps to evaluate again" +
+                " (best: " + bestFitness + " " + getFitnessUnit() + ", selector: " + operatorSelector + ")");
+        return state.nextStep();
+    }
+
+    /**
+     * Tell a contextual selector about the patch the next edit will extend, and number its
+     * selections by the steps they are for.
+     *
+     * @param step the step the next selection is for
+     */
+    private void updateContext(int step) {
+        if (operatorSelector instanceof ContextualOperatorSelector contextual) {
+            contextual.setContext(codeFeatures.context(bestPatch, lastOutcome));
+            contextual.setPullId(step);
+        }
+    }
+
+    /**
+     * Tell a contextual selector which step is being settled, as parallel evaluations finish in any order.
+     */
+    private void settlePull(int step) {
+        if (operatorSelector instanceof ContextualOperatorSelector contextual) {
+            contextual.settlePull(step);
+        }
+    }
+
+    /**
+     * The search stops when the time budget runs out if one was given, otherwise after numSteps.
+     * A step that is started within the budget is always allowed to finish.
+     */
+    private boolean hasBudgetFor(int step) {
+        if (timeBudgetSeconds != null) {
+            return System.currentTimeMillis() - searchStartTime < timeBudgetSeconds * 1000L;
+        }
+        return step <= numSteps;
+    }
+
+    private String stepLabel(int step) {
+        if (timeBudgetSeconds != null) {
+            long remaining = timeBudgetSeconds - (System.currentTimeMillis() - searchStartTime) / 1000;
+            return String.format("%d (%ds left)", step, Math.max(0, remaining));
+        }
+        return step + "/" + numSteps;
+    }
+
+    /**
+     * Create neighbours with the selected operator until one is accepted by the
+     * surrogate model, or surrogateRetries have been skipped, in which case the
+     * last one is returned.
+     */
+    private Patch prescreenNeighbour(Patch patch, Class<? extends Edit> operatorClass) {
+        Patch neighbour = createNeighbour(patch, operatorClass);
+        if (surrogate == null) {
+            return neighbour;
+        }
+        for (int retry = 0; retry < surrogateRetries && !surrogate.shouldEvaluate(neighbour); retry++) {
+            Logger.debug("Surrogate skipped neighbour: " + neighbour);
+            neighbour = createNeighbour(patch, operatorClass);
+        }
+        return neighbour;
+    }
+
     /**
      * Create a neighbor patch using the selected operator.
      */
@@ -404,6 +995,25 @@ public class RLLocalSearch implements Serializable {
         return (double) parentFitness / childFitness;
     }
 
+    /**
+     * Everything needed to continue a search. In this local search the current
+     * patch is always the best patch, so only that is stored. Neighbours in flight
+     * are created afresh from it on resume, with the operators selected for them.
+     */
+    private record SearchState(int nextStep, int completedSteps, long elapsedMs, long originalFitness,
+                               String bestPatch, long bestFitness, CodeFeatures.Outcome lastOutcome,
+                               OperatorSelector selector, Random rng, ExperimentLogger logger,
+                               SurrogateModel surrogate, TreeMap<Integer, Class<? extends Edit>> inFlightSteps)
+            implements Serializable {
+    }
+
+    /**
+     * A finished evaluation; results is null if the test runner threw.
+     */
+    private record Evaluation(int step, Class<? extends Edit> operator, long parentFitness,
+                              Patch neighbour, UnitTestResultSet results, long startTime) {
+    }
+
     /**
      * Main entry point.
      */
@@ -425,11 +1035,21 @@ public class RLLocalSearch implements Serializable {
         System.out.println("  -m <method>    Method signature (e.g., \"sort(int[])\")");
         System.out.println();
         System.out.println("RL Options:");
-        System.out.println("  -rl <algo>     Algorithm: uniform, epsilon_greedy, ucb, policy_gradient, probability_matching");
+        System.out.println("  -rl <algo>     Algorithm: uniform, epsilon_greedy, ucb, thompson, thompson_beta,");
+        System.out.println("                 sw_ucb, d_ucb, dmab, linucb, policy_gradient, probability_matching");
         System.out.println("  -eps <value>   Epsilon for epsilon-greedy (default: 0.2)");
         System.out.println("  -ucbc <value>  Exploration constant for UCB (default: sqrt(2))");
+        System.out.println("  -tsig <value>  Reward standard deviation for Thompson sampling (default: 0.5)");
+        System.out.println("  -tgamma <value> Discount factor for Thompson sampling (default: 1.0, no discounting)");
+        System.out.println("  -win <size>    Window size for sliding-window UCB (default: 100)");
+        System.out.println("  -gamma <value> Discount factor for discounted UCB (default: 0.95)");
+        System.out.println("  -phd <value>   Page-Hinkley delta for DMAB (default: 0.15)");
+        System.out.println("  -phl <value>   Page-Hinkley lambda for DMAB (default: 5.0)");
+        System.out.println("  -lalpha <value> Exploration constant for LinUCB (default: 1.0)");
+        System.out.println("  -lmodel <file> LinUCB model to start from and save to, shared between methods");
         System.out.println("  -alpha <value> Learning rate for policy gradient (default: 0.1)");
         System.out.println("  -pmin <value>  Minimum probability for probability matching (default: 0.05)");
+        System.out.println("  -cost          Divide rewards by relative step cost (improvement per second)");
         System.out.println();
         System.out.println("Fitness Options:");
         System.out.println("  -ft <type>     Fitness type: runtime or memory (default: memory)");
@@ -441,13 +1061,25 @@ public class RLLocalSearch implements Serializable {
         System.out.println("  -oaik <key>    OpenAI API key");
         System.out.println("  -oain <model>  OpenAI model name (default: gpt-3.5-turbo)");
         System.out.println("  -mt <type>     Model type: OpenAI or ollama model name");
+        System.out.println("  -ctxb <tokens> Token budget for class context in prompts (default: 512)");
         System.out.println();
         System.out.println("Search Options:");
         System.out.println("  -n <steps>     Number of search steps (default: 100)");
+        System.out.println("  -tb <seconds>  Time budget for the search; replaces -n when set");
         System.out.println("  -s <seed>      Random seed (default: 123)");
+        System.out.println("  -par <n>       Neighbours evaluated in parallel (default: 1)");
+        System.out.println("  -ckpt <steps>  Checkpoint every n steps, 0 to disable (default: 10)");
+        System.out.println("  -resume        Continue from the checkpoint of the same experiment ID");
+        System.out.println("  -sur           Skip neighbours an online surrogate model predicts will fail");
+        System.out.println("  -surx <value>  Probability of evaluating a skipped neighbour anyway (default: 0.1)");
+        System.out.println("  -surt <value>  Skip neighbours below this predicted pass probability (default: 0.05)");
+        System.out.println("  -surw <n>      Neighbours evaluated before any are skipped (default: 30)");
+        System.out.println("  -surr <n>      Neighbours generated in place of a skipped one (default: 10)");
         System.out.println();
         System.out.println("Output:");
         System.out.println("  -o <dir>       Output directory for logs (default: rl_results)");
         System.out.println("  -expid <id>    Experiment ID for log files");
+        System.out.println("  -logfmt <fmt>  Steps log format: csv or jsonl (default: csv)");
+        System.out.println("  -sync <steps>  Force the steps log to disk every n steps (default: 20)");
     }
 }
@@ -0,0 +1,336 @@
+package gin.rl;
+
+import com.opencsv.CSVWriter;
+import com.sampullara.cli.Args;
+import com.sampullara.cli.Argument;
+import gin.test.CompiledCodeCache;
+import gin.util.Sampler;
+import org.pmw.tinylog.Logger;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Portfolio of RL local searches over the hot methods of a project.
+ *
+ * RLLocalSearch improves a single method. This takes a method file in the
+ * format read by {@link Sampler} (e.g. the output of gin.util.Profiler) and
+ * shares one evaluation budget between its methods. The budget is handed out
+ * in slices of a few steps; after each slice the chosen method's search stops
+ * and another method is chosen by UCB1 over methods:
+ *
+ *     score(m) = G(m) / G_max + c * sqrt(ln(N) / n(m))
+ *
+ * where G(m) is the mean relative improvement per slice of method m, G_max the
+ * largest improvement made in any slice so far, n(m) the number of slices
+ * given to m and N the total number of slices. Methods that keep improving get
+ * more of the budget, while every method is tried at least once, in the order
+ * of the method file.
+ *
+ * Every method has its own RLLocalSearch, operator selector and logs
+ * ({outputDir}/{experimentId}_m{n}_*), created when the method is first
+ * chosen. They all run in this JVM, use the classpath and test settings
+ * worked out once by Sampler, and share one cache of compiled classes and,
+ * with -sur, one surrogate model (see gin.util.SurrogateModel).
+ * Warmup runs are not counted towards the budget. A method whose original
+ * code fails its tests is dropped from the portfolio.
+ *
+ * Usage:
+ *   java -cp gin.jar gin.rl.RLPortfolioSearch -d project -c classpath -m methods.csv -n 1000 -slice 10
+ */
+public class RLPortfolioSearch extends Sampler {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] SLICE_HEADER = {"Slice", "MethodIndex", "Method", "Steps", "TotalSteps",
+            "FitnessBefore", "FitnessAfter", "OriginalFitness", "Gain"};
+
+    @Argument(alias = "n", description = "Total number of steps, shared by all methods")
+    protected Integer numSteps = 1000;
+
+    @Argument(alias = "tb", description = "Time budget for the whole portfolio in seconds; if set, replaces the step limit")
+    protected Integer timeBudgetSeconds = null;
+
+    @Argument(alias = "slice", description = "Number of steps given to a method each time it is chosen")
+    protected Integer sliceSteps = 10;
+
+    @Argument(alias = "mc", description = "Exploration constant for choosing methods (UCB1)")
+    protected Double methodC = 0.5;
+
+    @Argument(alias = "s", description = "Random seed for each method's search")
+    protected Integer seed = 123;
+
+    @Argument(alias = "rl", description = "RL algorithm for operator selection within each method")
+    protected String rlAlgorithm = "epsilon_greedy";
+
+    @Argument(alias = "ops", description = "Operator set: traditional, llm, all")
+    protected String operatorSet = "all";
+
+    @Argument(alias = "ft", description = "Fitness type: runtime or memory")
+    protected String fitnessType = "memory";
+
+    @Argument(alias = "rlo", description = "Output directory for the logs of each method's search")
+    protected String rlOutputDir = "rl_results";
+
+    @Argument(alias = "expid", description = "Experiment ID; method n is logged as {expid}_m{n}")
+    protected String experimentId = "portfolio";
+
+    @Argument(alias = "cache", description = "Number of compiled patched classes to keep (0 to disable)")
+    protected Integer compiledCodeCacheSize = CompiledCodeCache.DEFAULT_CAPACITY;
+
+    private final List<MethodArm> arms = new ArrayList<>();
+    private CompiledCodeCache compiledCodeCache;
+    private CSVWriter sliceWriter;
+
+    private int totalSlices;
+    private int totalSteps;
+    private double maxGain;
+    private long startTime;
+
+    public RLPortfolioSearch(String[] args) {
+        super(args);
+        Args.parseOrExit(this, args);
+        if (sliceSteps < 1) {
+            throw new IllegalArgumentException("Slice size must be positive, got: " + sliceSteps);
+        }
+        if (compiledCodeCacheSize > 0) {
+            compiledCodeCache = new CompiledCodeCache(compiledCodeCacheSize);
+        }
+        for (TargetMethod method : methodData) {
+            arms.add(new MethodArm(arms.size() + 1, method));
+        }
+        Logger.info("Portfolio of " + arms.size() + " methods, " +
+                (timeBudgetSeconds != null ? timeBudgetSeconds + " s" : numSteps + " steps") +
+                " in slices of " + sliceSteps + " steps");
+    }
+
+    public static void main(String[] args) {
+        RLPortfolioSearch portfolio = new RLPortfolioSearch(args);
+        portfolio.sampleMethods();
+    }
+
+    @Override
+    protected void sampleMethodsHook() {
+        openSliceLog();
+        startTime = System.currentTimeMillis();
+
+        MethodArm arm;
+        while (hasBudget() && (arm = selectMethod()) != null) {
+            if (arm.search == null && !startMethod(arm)) {
+                continue;
+            }
+            runSlice(arm);
+        }
+
+        for (MethodArm finished : arms) {
+            if (finished.search != null) {
+                finished.search.finish();
+            }
+        }
+        logSummary();
+    }
+
+    /**
+     * @return the active method with the highest UCB1 score, or null if none are left
+     */
+    private MethodArm selectMethod() {
+        MethodArm best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (MethodArm arm : arms) {
+            if (arm.retired) {
+                continue;
+            }
+            if (arm.slices == 0) {
+                return arm;
+            }
+            double quality = maxGain > 0 ? arm.gainSum / arm.slices / maxGain : 0.0;
+            double score = quality + methodC * Math.sqrt(Math.log(totalSlices) / arm.slices);
+            if (score > bestScore) {
+                bestScore = score;
+                best = arm;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Create the method's search and measure its original fitness.
+     *
+     * @return false if the method had to be dropped
+     */
+    private boolean startMethod(MethodArm arm) {
+        Logger.info("Starting method " + arm.index + ": " + arm.method.getMethodName());
+        try {
+            arm.search = new RLLocalSearch(searchArgs(arm), arm.method.getGinTests());
+            arm.search.testRunner.setCompiledCodeCache(compiledCodeCache);
+            // one surrogate (-sur) learns from all methods; edit and node types carry over between them
+            arm.search.surrogate = surrogate;
+            arm.search.start();
+            return true;
+        } catch (RuntimeException e) {
+            // an IllegalStateException from warmup, or a source file that can't be parsed
+            Logger.error("Dropping method " + arm.index + " from the portfolio: " + e.getMessage());
+            arm.search = null;
+            arm.retired = true;
+            return false;
+        }
+    }
+
+    private String[] searchArgs(MethodArm arm) {
+        List<String> args = new ArrayList<>(List.of(
+                "-f", arm.method.getFileSource().getPath(),
+                "-m", arm.method.getMethodName(),
+                "-c", arm.method.getClassName(),
+                "-cp", classPath,
+                "-s", String.valueOf(seed),
+                // the portfolio enforces the budget; a method can't use more than all of it
+                "-n", String.valueOf(timeBudgetSeconds != null ? Integer.MAX_VALUE : numSteps),
+                "-rl", rlAlgorithm,
+                "-ops", operatorSet,
+                "-ft", fitnessType,
+                "-o", rlOutputDir,
+                "-expid", experimentId + "_m" + arm.index,
+                "-ckpt", "0",
+                "-oaik", openAIKey,
+                "-oain", openAIName,
+                "-mt", modelType,
+                "-pt", llmPromptType.toString(),
+                "-ctxb", String.valueOf(llmContextTokenBudget)));
+        if (failFast) {
+            args.add("-ff");
+        }
+        return args.toArray(new String[0]);
+    }
+
+    private void runSlice(MethodArm arm) {
+        RLLocalSearch search = arm.search;
+        int steps = sliceSteps;
+        if (timeBudgetSeconds == null) {
+            steps = Math.min(steps, numSteps - totalSteps);
+        }
+
+        long before = search.bestFitness;
+        int run = search.runSteps(steps);
+        long after = search.bestFitness;
+
+        if (run == 0) {
+            arm.retired = true;
+            return;
+        }
+
+        double gain = (double) (before - after) / search.originalFitness;
+        maxGain = Math.max(maxGain, gain);
+        arm.slices++;
+        arm.steps += run;
+        arm.gainSum += gain;
+        totalSlices++;
+        totalSteps += run;
+
+        Logger.info(String.format("Slice %d: method %d ran %d steps, best %d -> %d (gain %.4f)",
+                totalSlices, arm.index, run, before, after, gain));
+        writeSlice(arm, run, before, after, gain);
+    }
+
+    private boolean hasBudget() {
+        if (timeBudgetSeconds != null) {
+            return System.currentTimeMillis() - startTime < timeBudgetSeconds * 1000L;
+        }
+        return totalSteps < numSteps;
+    }
+
+    private void openSliceLog() {
+        File sliceLog = new File(rlOutputDir, experimentId + "_portfolio.csv");
+        try {
+            sliceLog.getAbsoluteFile().getParentFile().mkdirs();
+            sliceWriter = new CSVWriter(new FileWriter(sliceLog));
+            sliceWriter.writeNext(SLICE_HEADER);
+            Logger.info("Logging slices to: " + sliceLog);
+        } catch (IOException e) {
+            Logger.error(e, "Could not open slice log " + sliceLog + ", slices will not be logged");
+            sliceWriter = null;
+        }
+    }
+
+    private void writeSlice(MethodArm arm, int run, long before, long after, double gain) {
+        if (sliceWriter == null) {
+            return;
+        }
+        sliceWriter.writeNext(new String[]{
+                String.valueOf(totalSlices),
+                String.valueOf(arm.index),
+                arm.method.getMethodName(),
+                String.valueOf(run),
+                String.valueOf(totalSteps),
+                String.valueOf(before),
+                String.valueOf(after),
+                String.valueOf(arm.search.originalFitness),
+                String.format("%.6f", gain)
+        });
+        try {
+            sliceWriter.flush();
+        } catch (IOException e) {
+            Logger.error(e, "Could not write to slice log");
+        }
+    }
+
+    private void logSummary() {
+        Logger.info("=".repeat(60));
+        Logger.info(String.format("Portfolio complete: %d steps in %d slices, %.1f s",
+                totalSteps, totalSlices, (System.currentTimeMillis() - startTime) / 1000.0));
+        for (MethodArm arm : arms) {
+            if (arm.search == null) {
+                Logger.info(String.format("  %3d %s: %s", arm.index, arm.method.getMethodName(),
+                        arm.retired ? "dropped" : "not started"));
+            } else {
+                RLLocalSearch search = arm.search;
+                Logger.info(String.format("  %3d %s: %d steps, %d -> %d (%.1f%% improvement)",
+                        arm.index, arm.method.getMethodName(), arm.steps, search.originalFitness,
+                        search.bestFitness,
+                        100.0 * (search.originalFitness - search.bestFitness) / search.originalFitness));
+            }
+        }
+        if (compiledCodeCache != null) {
+            Logger.info(String.format("  Compiled code cache: %d hits, %d misses (%.1f%%)",
+                    compiledCodeCache.getHits(), compiledCodeCache.getMisses(),
+                    100.0 * compiledCodeCache.getHitRate()));
+        }
+        Logger.info("=".repeat(60));
+    }
+
+    @Override
+    protected void close() {
+        super.close();
+        try {
+            if (sliceWriter != null) {
+                sliceWriter.close();
+            }
+        } catch (IOException e) {
+            Logger.error(e, "Could not close slice log");
+        }
+    }
+
+    /**
+     * A method in the portfolio and its search, created when first chosen.
+     */
+    private static class MethodArm {
+
+        private final int index;
+        private final TargetMethod method;
+        private RLLocalSearch search;
+        private boolean retired;
+        private int slices;
+        private int steps;
+        private double gainSum;
+
+        private MethodArm(int index, TargetMethod method) {
+            this.index = index;
+            this.method = method;
+        }
+    }
+
+}
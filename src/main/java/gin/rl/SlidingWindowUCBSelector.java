@@ -0,0 +1,167 @@
+package gin.rl;
+
+import gin.edit.Edit;
+import org.pmw.tinylog.Logger;
+
+import java.io.Serial;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Sliding-window UCB (SW-UCB) operator selector for non-stationary rewards.
+ *
+ * Works like UCB1, but only the last W rewards count towards the estimates:
+ *
+ *     SW-UCB(a) = Q_W(a) + c * sqrt(ln(min(t, W)) / n_W(a))
+ *
+ * where Q_W(a) and n_W(a) are the mean reward and the number of selections of
+ * operator a within the window. As the best patch grows, operators that used
+ * to help may stop doing so; once their old rewards slide out of the window
+ * the selector stops relying on them. An operator with no rewards left in the
+ * window is treated as untried and selected again.
+ *
+ * The window is a ring buffer with per-operator running sums, so each update
+ * is O(1). Pending pulls from batched selection count towards n_W(a) as in
+ * {@link UCBSelector}.
+ *
+ * Advantages:
+ * - Adapts to abrupt changes in operator usefulness
+ * - Bounded memory of the past
+ *
+ * Disadvantages:
+ * - Window size must suit the rate of change
+ * - Forgets useful information about stationary operators
+ */
+public class SlidingWindowUCBSelector extends AbstractBanditSelector {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** Exploration constant */
+    private final double c;
+
+    /** Number of most recent rewards used */
+    private final int windowSize;
+
+    /** Operator and reward of each update in the window, as a ring buffer */
+    private final int[] windowArms;
+    private final double[] windowRewards;
+    private int windowFill;
+    private int windowNext;
+
+    /** Number of selections and sum of rewards of each operator within the window */
+    private final int[] windowCounts;
+    private final double[] windowSums;
+
+    /**
+     * Create a sliding-window UCB selector.
+     *
+     * @param operators list of available Edit classes
+     * @param c exploration constant (typically sqrt(2))
+     * @param windowSize number of recent rewards to use (typical: 50 to 500)
+     * @param rng random number generator
+     * @throws IllegalArgumentException if c is negative or the window is smaller than the number of operators
+     */
+    public SlidingWindowUCBSelector(List<Class<? extends Edit>> operators, double c, int windowSize, Random rng) {
+        super(operators, rng);
+
+        if (c < 0) {
+            throw new IllegalArgumentException("Exploration constant c must be non-negative, got: " + c);
+        }
+        if (windowSize < operators.size()) {
+            throw new IllegalArgumentException("Window size must be at least the number of operators (" +
+                    operators.size() + "), got: " + windowSize);
+        }
+
+        this.c = c;
+        this.windowSize = windowSize;
+        this.windowArms = new int[windowSize];
+        this.windowRewards = new double[windowSize];
+        this.windowCounts = new int[operators.size()];
+        this.windowSums = new double[operators.size()];
+
+        Logger.info("Created SlidingWindowUCBSelector with c=" + c + ", window=" + windowSize);
+    }
+
+    @Override
+    protected int selectArm() {
+        int t = windowFill + totalPending;
+
+        int selected = 0;
+        double best = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < operators.size(); i++) {
+            double value = computeUCB(i, t);
+            if (value > best) {
+                best = value;
+                selected = i;
+            }
+        }
+
+        Logger.debug("SW-UCB: selected " + operators.get(selected).getSimpleName() +
+                " (UCB=" + String.format("%.4f", best) + ", in window=" + windowCounts[selected] + ")");
+
+        return selected;
+    }
+
+    private double computeUCB(int arm, int t) {
+        int n = windowCounts[arm] + pendingPulls[arm];
+        if (n == 0) {
+            return Double.MAX_VALUE;
+        }
+        double q = windowCounts[arm] > 0 ? windowSums[arm] / windowCounts[arm] : 0.0;
+        return q + c * Math.sqrt(Math.log(Math.max(t, 1)) / n);
+    }
+
+    @Override
+    protected void onUpdate(int arm, double reward) {
+        if (windowFill == windowSize) {
+            int oldArm = windowArms[windowNext];
+            windowCounts[oldArm]--;
+            // avoid drift from repeated subtraction once an operator leaves the window
+            windowSums[oldArm] = windowCounts[oldArm] == 0 ? 0.0 : windowSums[oldArm] - windowRewards[windowNext];
+        } else {
+            windowFill++;
+        }
+
+        windowArms[windowNext] = arm;
+        windowRewards[windowNext] = reward;
+        windowNext = (windowNext + 1) % windowSize;
+
+        windowCounts[arm]++;
+        windowSums[arm] += reward;
+    }
+
+    public Map<Class<? extends Edit>, Double> getWindowQualities() {
+        Map<Class<? extends Edit>, Double> qualities = new HashMap<>();
+        for (int i = 0; i < operators.size(); i++) {
+            qualities.put(operators.get(i), windowCounts[i] > 0 ? windowSums[i] / windowCounts[i] : 0.0);
+        }
+        return qualities;
+    }
+
+    public double getC() {
+        return c;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        windowFill = 0;
+        windowNext = 0;
+        Arrays.fill(windowCounts, 0);
+        Arrays.fill(windowSums, 0.0);
+    }
+
+    @Override
+    public String toString() {
+        return "SlidingWindowUCBSelector{c=" + c + ", window=" + windowSize +
+                ", operators=" + operators.size() + "}";
+    }
+}
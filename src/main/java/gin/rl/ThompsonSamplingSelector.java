@@ -0,0 +1,194 @@
+package gin.rl;
+
+import gin.edit.Edit;
+import org.pmw.tinylog.Logger;
+
+import java.io.Serial;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Thompson sampling operator selector (Gaussian rewards).
+ *
+ * Each operator's mean reward is given a Gaussian posterior, assuming the
+ * rewards themselves are Gaussian with known standard deviation sigma and a
+ * prior of N(priorMean, sigma^2):
+ *
+ *     mean(a) = (priorMean + Σ r(a)) / (n(a) + 1)
+ *     sd(a)   = sigma / sqrt(n(a) + 1)
+ *
+ * At each selection one value is drawn from every posterior and the operator
+ * with the highest draw is chosen. Uncertain operators produce widely spread
+ * draws, so they keep being tried until their posterior narrows.
+ *
+ * The default prior mean is 1.0, i.e. "no change in fitness", so untried
+ * operators are neither favoured nor penalised relative to ones that
+ * produce neutral patches.
+ *
+ * With a discount gamma &lt; 1, the reward sums and counts of all operators
+ * are multiplied by gamma at every update, so old evidence fades and the
+ * posterior of an operator that hasn't been tried for a while widens again.
+ * This suits the non-stationary case where an operator's usefulness changes
+ * as the best patch grows. With gamma = 1 every reward counts equally.
+ *
+ * Batches (see {@link BatchOperatorSelector}) need no special treatment:
+ * the posteriors don't change while pulls are pending, but every pull in a
+ * batch takes a fresh draw, which spreads the batch in proportion to each
+ * operator's probability of being the best.
+ *
+ * Advantages:
+ * - Explores in proportion to uncertainty, without a tuned schedule
+ * - Naturally diversifies batched selections
+ *
+ * Disadvantages:
+ * - Assumes a reward noise level (sigma)
+ * - Stochastic, so runs differ more than with UCB
+ */
+public class ThompsonSamplingSelector extends AbstractBanditSelector {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** Prior mean reward: 1.0 means no change in fitness */
+    public static final double DEFAULT_PRIOR_MEAN = 1.0;
+
+    /** Assumed standard deviation of the rewards */
+    private final double sigma;
+
+    /** Prior mean reward for every operator */
+    private final double priorMean;
+
+    /** Discount factor applied to past rewards at each update */
+    private final double gamma;
+
+    /** (Discounted) number of rewards and sum of rewards of each operator */
+    private final double[] counts;
+    private final double[] sums;
+
+    /** Draws from the most recent selection, indexed by arm */
+    private final double[] samples;
+
+    /**
+     * Create a Thompson sampling selector.
+     *
+     * @param operators list of available Edit classes
+     * @param sigma assumed standard deviation of the rewards (typical: 0.1 to 1.0)
+     * @param priorMean prior mean reward for every operator
+     * @param gamma discount factor in (0, 1]; 1 for no discounting
+     * @param rng random number generator
+     * @throws IllegalArgumentException if sigma is not positive or gamma is out of range
+     */
+    public ThompsonSamplingSelector(List<Class<? extends Edit>> operators, double sigma, double priorMean,
+                                    double gamma, Random rng) {
+        super(operators, rng);
+
+        if (sigma <= 0) {
+            throw new IllegalArgumentException("Sigma must be positive, got: " + sigma);
+        }
+        if (gamma <= 0 || gamma > 1) {
+            throw new IllegalArgumentException("Discount gamma must be in (0, 1], got: " + gamma);
+        }
+
+        this.sigma = sigma;
+        this.priorMean = priorMean;
+        this.gamma = gamma;
+        this.counts = new double[operators.size()];
+        this.sums = new double[operators.size()];
+        this.samples = new double[operators.size()];
+
+        Logger.info("Created ThompsonSamplingSelector with sigma=" + sigma + ", priorMean=" + priorMean +
+                ", gamma=" + gamma);
+    }
+
+    /**
+     * Create a Thompson sampling selector without discounting.
+     *
+     * @param operators list of available Edit classes
+     * @param sigma assumed standard deviation of the rewards
+     * @param priorMean prior mean reward for every operator
+     * @param rng random number generator
+     */
+    public ThompsonSamplingSelector(List<Class<? extends Edit>> operators, double sigma, double priorMean, Random rng) {
+        this(operators, sigma, priorMean, 1.0, rng);
+    }
+
+    /**
+     * Create a Thompson sampling selector with the default prior mean of 1.0.
+     *
+     * @param operators list of available Edit classes
+     * @param sigma assumed standard deviation of the rewards
+     * @param rng random number generator
+     */
+    public ThompsonSamplingSelector(List<Class<? extends Edit>> operators, double sigma, Random rng) {
+        this(operators, sigma, DEFAULT_PRIOR_MEAN, rng);
+    }
+
+    @Override
+    protected int selectArm() {
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = posteriorMean(i) + posteriorSd(i) * rng.nextGaussian();
+        }
+        int selected = argmax(samples);
+
+        Logger.debug("Thompson: selected " + operators.get(selected).getSimpleName() +
+                " (sample=" + String.format("%.4f", samples[selected]) + ")");
+
+        return selected;
+    }
+
+    @Override
+    protected void onUpdate(int arm, double reward) {
+        if (gamma < 1) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] *= gamma;
+                sums[i] *= gamma;
+            }
+        }
+        counts[arm] += 1;
+        sums[arm] += reward;
+    }
+
+    private double posteriorMean(int arm) {
+        return (priorMean + sums[arm]) / (counts[arm] + 1);
+    }
+
+    private double posteriorSd(int arm) {
+        return sigma / Math.sqrt(counts[arm] + 1);
+    }
+
+    public Map<Class<? extends Edit>, Double> getPosteriorMeans() {
+        Map<Class<? extends Edit>, Double> means = new HashMap<>();
+        for (int i = 0; i < operators.size(); i++) {
+            means.put(operators.get(i), posteriorMean(i));
+        }
+        return means;
+    }
+
+    public double getSigma() {
+        return sigma;
+    }
+
+    public double getPriorMean() {
+        return priorMean;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        Arrays.fill(counts, 0.0);
+        Arrays.fill(sums, 0.0);
+    }
+
+    @Override
+    public String toString() {
+        return "ThompsonSamplingSelector{sigma=" + sigma + ", priorMean=" + priorMean +
+                ", gamma=" + gamma + ", operators=" + operators.size() + "}";
+    }
+}
@@ -24,6 +24,13 @@ import java.util.*;
  * The second term is the "uncertainty bonus" - it increases for operators
  * that haven't been tried recently, encouraging exploration.
  *
+ * When selecting in batches (see {@link BatchOperatorSelector}), pending pulls
+ * are counted in n(a) and t as if they had already returned a reward equal to
+ * Q(a). This shrinks an arm's bonus as soon as it is chosen, so a batch is
+ * spread over the promising arms rather than repeating the single best one.
+ * With one selection at a time there are no pending pulls at selection time,
+ * and this is plain UCB1.
+ *
  * Advantages:
  * - Principled exploration based on uncertainty
  * - Provably optimal regret bounds
@@ -41,8 +48,11 @@ public class UCBSelector extends AbstractBanditSelector {
     /** Exploration constant (controls exploration vs exploitation) */
     private final double c;
 
-    /** Set of operators that haven't been selected yet (for initialization) */
-    private final Set<Class<? extends Edit>> unselectedOperators;
+    /** Whether each operator has been selected yet (for initialization), indexed by arm */
+    private final boolean[] initialized;
+
+    /** Number of operators that haven't been selected yet */
+    private int unselectedCount;
 
     /**
      * Create a UCB selector.
@@ -60,7 +70,8 @@ public class UCBSelector extends AbstractBanditSelector {
         }
 
         this.c = c;
-        this.unselectedOperators = new HashSet<>(operators);
+        this.initialized = new boolean[operators.size()];
+        this.unselectedCount = operators.size();
 
         Logger.info("Created UCBSelector with c=" + c);
     }
@@ -76,33 +87,38 @@ public class UCBSelector extends AbstractBanditSelector {
     }
 
     @Override
-    public Class<? extends Edit> select() {
-        preSelect();
-
-        Class<? extends Edit> selected;
+    protected int selectArm() {
+        int selected;
 
         // Initialization phase: ensure each operator is selected at least once
-        if (!unselectedOperators.isEmpty()) {
-            List<Class<? extends Edit>> unselectedList = new ArrayList<>(unselectedOperators);
-            selected = unselectedList.get(rng.nextInt(unselectedList.size()));
-            unselectedOperators.remove(selected);
+        if (unselectedCount > 0) {
+            // pick uniformly among the remaining operators, in operator order
+            int skip = rng.nextInt(unselectedCount);
+            selected = 0;
+            while (initialized[selected] || skip-- > 0) {
+                selected++;
+            }
+            initialized[selected] = true;
+            unselectedCount--;
 
             Logger.debug("UCB: INITIALIZATION - selecting unselected operator (" +
-                    unselectedOperators.size() + " remaining)");
+                    unselectedCount + " remaining)");
         } else {
-            int totalSelections = getTotalSelections();
-
-            selected = Collections.max(operators, (a, b) -> {
-                double ucbA = computeUCB(a, totalSelections);
-                double ucbB = computeUCB(b, totalSelections);
-                return Double.compare(ucbA, ucbB);
-            });
-
-            Logger.debug("UCB: selected " + selected.getSimpleName() +
-                    " (UCB=" + String.format("%.4f", computeUCB(selected, totalSelections)) + ")");
+            int t = totalSelections + totalPending;
+            selected = 0;
+            double best = computeUCB(0, t);
+            for (int i = 1; i < operators.size(); i++) {
+                double ucb = computeUCB(i, t);
+                if (ucb > best) {
+                    best = ucb;
+                    selected = i;
+                }
+            }
+
+            Logger.debug("UCB: selected " + operators.get(selected).getSimpleName() +
+                    " (UCB=" + String.format("%.4f", best) + ")");
         }
 
-        postSelect(selected);
         return selected;
     }
 
@@ -111,13 +127,13 @@ public class UCBSelector extends AbstractBanditSelector {
      *
      * UCB(a) = Q(a) + c * sqrt(ln(t) / n(a))
      *
-     * @param operator the operator to compute UCB for
-     * @param totalSelections total number of selections made (t)
+     * @param arm index of the operator to compute UCB for
+     * @param totalSelections total number of selections made, including pending ones (t)
      * @return the UCB value
      */
-    private double computeUCB(Class<? extends Edit> operator, int totalSelections) {
-        double q = averageQualities.get(operator);
-        int n = actionCounts.get(operator);
+    private double computeUCB(int arm, int totalSelections) {
+        double q = averageQualities[arm];
+        int n = actionCounts[arm] + pendingPulls[arm];
 
         if (n == 0) {
             return Double.MAX_VALUE;
@@ -128,10 +144,9 @@ public class UCBSelector extends AbstractBanditSelector {
     }
 
     public Map<Class<? extends Edit>, Double> getUCBValues() {
-        int totalSelections = getTotalSelections();
         Map<Class<? extends Edit>, Double> ucbValues = new HashMap<>();
-        for (Class<? extends Edit> op : operators) {
-            ucbValues.put(op, computeUCB(op, totalSelections));
+        for (int i = 0; i < operators.size(); i++) {
+            ucbValues.put(operators.get(i), computeUCB(i, totalSelections + totalPending));
         }
         return ucbValues;
     }
@@ -141,14 +156,14 @@ public class UCBSelector extends AbstractBanditSelector {
     }
 
     public boolean isInitialized() {
-        return unselectedOperators.isEmpty();
+        return unselectedCount == 0;
     }
 
     @Override
     public void reset() {
         super.reset();
-        unselectedOperators.clear();
-        unselectedOperators.addAll(operators);
+        Arrays.fill(initialized, false);
+        unselectedCount = operators.size();
     }
 
     @Override
@@ -34,11 +34,8 @@ public class UniformSelector extends AbstractBanditSelector {
     }
 
     @Override
-    public Class<? extends Edit> select() {
-        preSelect();
-        Class<? extends Edit> selected = operators.get(rng.nextInt(operators.size()));
-        postSelect(selected);
-        return selected;
+    protected int selectArm() {
+        return rng.nextInt(operators.size());
     }
 
     @Override
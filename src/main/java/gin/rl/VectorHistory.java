@@ -0,0 +1,68 @@
+package gin.rl;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Fixed-size ring buffer of per-step vectors (e.g. a selector's policy or
+ * preferences after each update).
+ *
+ * Rows are preallocated and copied into, so recording never allocates.
+ * Once full, the oldest rows are overwritten. Index 0 is the oldest retained row.
+ */
+public class VectorHistory implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final double[][] rows;
+    private final int width;
+    private long count;
+
+    /**
+     * @param capacity number of rows to retain
+     * @param width length of each row
+     */
+    public VectorHistory(int capacity, int width) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("History capacity must be positive, got: " + capacity);
+        }
+        this.rows = new double[capacity][width];
+        this.width = width;
+    }
+
+    /**
+     * @param vector values to record; copied, so the caller may reuse the array
+     */
+    public void record(double[] vector) {
+        System.arraycopy(vector, 0, rows[(int) (count % rows.length)], 0, width);
+        count++;
+    }
+
+    /**
+     * @return total number of rows recorded, including those no longer retained
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public int retained() {
+        return (int) Math.min(count, rows.length);
+    }
+
+    /**
+     * @param i index of the row, 0 being the oldest retained
+     * @return a copy of the row
+     */
+    public double[] get(int i) {
+        int retained = retained();
+        if (i < 0 || i >= retained) {
+            throw new IndexOutOfBoundsException("Index " + i + " outside retained history of " + retained);
+        }
+        return rows[(int) ((count - retained + i) % rows.length)].clone();
+    }
+
+    public void clear() {
+        count = 0;
+    }
+}
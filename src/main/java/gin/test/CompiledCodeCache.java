@@ -0,0 +1,113 @@
+package gin.test;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of compiled patched classes, keyed by class name
+ * and patched source.
+ *
+ * Local search often produces the same patched source more than once (edits
+ * that turn out to be no-ops, or a removal that undoes an earlier addition),
+ * and compiling is a large part of each evaluation. Several
+ * {@link InternalTestRunner}s can share one cache, as long as they use the
+ * same classpath. Compilation failures are cached too, with their error.
+ */
+public class CompiledCodeCache implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 3121459868407263021L;
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final int capacity;
+    private final Map<String, Entry> entries;
+    private long hits;
+    private long misses;
+
+    public CompiledCodeCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of compiled classes kept
+     */
+    public CompiledCodeCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, got: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Serial
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > CompiledCodeCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the cached result of compiling this source, or null if there is none
+     */
+    public synchronized Entry get(String className, String source) {
+        Entry entry = entries.get(key(className, source));
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    public synchronized void put(String className, String source, Entry entry) {
+        entries.put(key(className, source), entry);
+    }
+
+    private static String key(String className, String source) {
+        return className + '\n' + source;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("CompiledCodeCache{size=%d/%d, hits=%d, misses=%d}", entries.size(), capacity, hits, misses);
+    }
+
+    /**
+     * Result of compiling a patched class.
+     *
+     * @param byteCode the compiled class, or null if compilation failed
+     * @param error    the compiler error, or null if there was none
+     */
+    public record Entry(byte[] byteCode, String error) implements Serializable {
+
+        public boolean compiled() {
+            return byteCode != null;
+        }
+    }
+
+}
@@ -10,6 +10,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * Runs tests internally, through CacheClassLoader
@@ -26,6 +27,16 @@ public class InternalTestRunner extends TestRunner {
      */
     private boolean failFast;
 
+    /**
+     * Compiled patched classes, possibly shared with other runners; null to always compile.
+     */
+    private transient CompiledCodeCache compiledCodeCache;
+
+    /**
+     * Chooses the tests to run against each compiled patch, from its patched source; null to run all tests.
+     */
+    private transient Function<String, List<UnitTest>> testSelector;
+
     /**
      * Create an InternalTestRunner given a package.ClassName, a classpath string separated by colons if needed,
      * and a list of unit tests that will be used to test patches.
@@ -81,6 +92,34 @@ public class InternalTestRunner extends TestRunner {
         this.failFast = failFast;
     }
 
+    public CompiledCodeCache getCompiledCodeCache() {
+        return compiledCodeCache;
+    }
+
+    /**
+     * Reuse compiled classes for patched sources seen before. The cache may be
+     * shared with other runners that use the same classpath.
+     *
+     * @param compiledCodeCache the cache, or null to compile every patch
+     */
+    public void setCompiledCodeCache(CompiledCodeCache compiledCodeCache) {
+        this.compiledCodeCache = compiledCodeCache;
+    }
+
+    public Function<String, List<UnitTest>> getTestSelector() {
+        return testSelector;
+    }
+
+    /**
+     * Run only some of the tests against each patch. The selector is given the patched source,
+     * once the patch has compiled, so that the patch is only applied once.
+     *
+     * @param testSelector returns the tests to run for a patched source, or null to run all tests
+     */
+    public void setTestSelector(Function<String, List<UnitTest>> testSelector) {
+        this.testSelector = testSelector;
+    }
+
     /**
      * Apply and compile the given patch, then run all unit tests against it.
      *
@@ -101,19 +140,21 @@ public class InternalTestRunner extends TestRunner {
             boolean noOp = isPatchedSourceSame(patch.getSourceFile().toString(), patchedSource);
             //Initialise with default value
             boolean compiledOK = false;
+            String compileError = null;
             // Only tries to compile and run when the patch is valid
             // The patch might be invalid due to a couple of edits, which
             // drop to being no-ops; remaining edits might be ok so still
             // try compiling and then running in case of no-op
-            Compiler compiler = new Compiler();
             if (patchValid) {
                 // Compile
-                CompiledCode code = compiler.compile(this.getClassName(), patchedSource, this.getClassPath());
-                compiledOK = (code != null);
+                CompiledCodeCache.Entry compiled = compile(patchedSource);
+                compiledOK = compiled.compiled();
+                compileError = compiled.error();
                 // Run tests
                 if (compiledOK) {
-                    classLoader.setCustomCompiledCode(this.getClassName(), code.getByteCode());
-                    results = runTests(reps, classLoader);
+                    classLoader.setCustomCompiledCode(this.getClassName(), compiled.byteCode());
+                    List<UnitTest> testsToRun = testSelector != null ? testSelector.apply(patchedSource) : this.getTests();
+                    results = runTests(testsToRun, reps, classLoader);
                 } else {
                     results = emptyResults(reps);
                 }
@@ -121,7 +162,7 @@ public class InternalTestRunner extends TestRunner {
                 results = emptyResults(reps);
             }
 
-            return new UnitTestResultSet(patch, patchedSource, patchValid, editsValid, compiledOK, compiler.getLastError(), noOp, results);
+            return new UnitTestResultSet(patch, patchedSource, patchValid, editsValid, compiledOK, compileError, noOp, results);
         } finally {
             try {
                 classLoader.close();
@@ -132,14 +173,35 @@ public class InternalTestRunner extends TestRunner {
     }
 
     /**
-     * Run each of the tests against the modified class held in the class load, rep times.
+     * Compile the patched class, or fetch it from the compiled code cache if set.
+     */
+    private CompiledCodeCache.Entry compile(String patchedSource) {
+        CompiledCodeCache cache = this.compiledCodeCache;
+        if (cache != null) {
+            CompiledCodeCache.Entry cached = cache.get(this.getClassName(), patchedSource);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Compiler compiler = new Compiler();
+        CompiledCode code = compiler.compile(this.getClassName(), patchedSource, this.getClassPath());
+        CompiledCodeCache.Entry compiled = new CompiledCodeCache.Entry(code != null ? code.getByteCode() : null,
+                compiler.getLastError());
+        if (cache != null) {
+            cache.put(this.getClassName(), patchedSource, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Run each of the given tests against the modified class held in the class load, rep times.
      *
+     * @param testsToRun  Tests to run
      * @param reps        Number of times to run each test
      * @param classLoader CacheClassLoader containing correct classpath and any modified classes.
      */
-    private List<UnitTestResult> runTests(int reps, CacheClassLoader classLoader) {
+    private List<UnitTestResult> runTests(List<UnitTest> testsToRun, int reps, CacheClassLoader classLoader) {
 
-        List<UnitTest> testsToRun = this.getTests();
         List<UnitTestResult> results = new LinkedList<>();
         for (int r = 1; r <= reps; r++) {
             for (UnitTest testToRun : testsToRun) {
@@ -164,8 +226,11 @@ public class InternalTestRunner extends TestRunner {
      * Loads JUnitBridge using a separate classloader and invokes jUnit using reflection.
      * This allows us to have jUnit load all classes from a CacheClassLoader, enabling us to override the modified
      * class with the freshly compiled version.
+     * <p>
+     * Public so that tests can also be run against the unmodified classes, with one
+     * class loader shared by a whole test suite (see gin.util.InProcessProfiler).
      */
-    private UnitTestResult runSingleTest(UnitTest test, CacheClassLoader classLoader, int rep) {
+    public UnitTestResult runSingleTest(UnitTest test, CacheClassLoader classLoader, int rep) {
 
         Class<?> runnerClass = null;
         try {
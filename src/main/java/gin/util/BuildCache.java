@@ -0,0 +1,191 @@
+package gin.util;
+
+import org.pmw.tinylog.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * What gin.util.Project learned from the build tool, kept in the project directory so that
+ * later runs of the samplers and profilers can skip invoking Maven or Gradle: the Maven
+ * dependencies classpath, and the directories reported by the Gradle tooling API.
+ * <p>
+ * The cache is keyed by a hash of every build file in the project (pom.xml, build.gradle,
+ * settings, gradle.properties, wrapper properties, version catalogs and .mvn configuration)
+ * and of the build settings, e.g. the Gradle version. A cache with another key is ignored,
+ * and replaced once the build tool has been run again. Build output, VCS and IDE directories
+ * are not searched for build files, nor are copies of the project made by the profilers'
+ * workers (marked with {@link #COPY_MARKER}), which would otherwise change the key on every run.
+ * <p>
+ * The cache is saved with {@link Checkpoint}, so a crash while saving leaves the previous
+ * cache intact.
+ */
+class BuildCache implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 4381906675223107642L;
+
+    static final String FILE_NAME = ".gin-build-cache.ser";
+
+    // Put in copies of the project inside the project, so their build files aren't hashed
+    static final String COPY_MARKER = ".gin-project-copy";
+
+    private static final Set<String> BUILD_FILES = Set.of("pom.xml", "build.gradle", "build.gradle.kts",
+            "settings.gradle", "settings.gradle.kts", "gradle.properties", "gradle-wrapper.properties",
+            "libs.versions.toml", "maven.config", "jvm.config", "extensions.xml");
+
+    private static final Set<String> SKIPPED_DIRS = Set.of("src", "target", "build", "out", "node_modules");
+
+    private final String key;
+    private List<List<File>> dirs;
+    private String dependenciesClasspath;
+
+    private BuildCache(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return the cache saved in the project directory if it has the given key, else an empty cache
+     */
+    static BuildCache load(File projectDir, String key) {
+        File file = new File(projectDir, FILE_NAME);
+        if (!file.exists()) {
+            return new BuildCache(key);
+        }
+        try {
+            BuildCache cache = Checkpoint.load(file, BuildCache.class);
+            if (cache.key.equals(key)) {
+                return cache;
+            }
+            Logger.info("Build files have changed since " + file + " was written, the build tool will be run again");
+        } catch (IOException e) {
+            Logger.warn("Could not read build cache " + file + ": " + e);
+        }
+        return new BuildCache(key);
+    }
+
+    void save(File projectDir) {
+        File file = new File(projectDir, FILE_NAME);
+        try {
+            Checkpoint.save(file, this);
+        } catch (IOException e) {
+            Logger.warn("Could not write build cache " + file + ": " + e);
+        }
+    }
+
+    /**
+     * @return the cached directory lists, in the order they were stored, or null if there are none
+     */
+    List<List<File>> getDirs() {
+        return dirs;
+    }
+
+    void setDirs(List<List<File>> dirs) {
+        this.dirs = new ArrayList<>();
+        for (List<File> list : dirs) {
+            this.dirs.add(new ArrayList<>(list));
+        }
+    }
+
+    /**
+     * @return the cached dependencies classpath, or null if there is none or one of its jars is
+     * gone, e.g. after the local repository was cleaned
+     */
+    String getDependenciesClasspath() {
+        if (dependenciesClasspath == null) {
+            return null;
+        }
+        for (String entry : dependenciesClasspath.split(File.pathSeparator)) {
+            if (!entry.isEmpty() && !new File(entry).exists()) {
+                Logger.info("Cached classpath entry is missing, the classpath will be resolved again: " + entry);
+                return null;
+            }
+        }
+        return dependenciesClasspath;
+    }
+
+    void setDependenciesClasspath(String dependenciesClasspath) {
+        this.dependenciesClasspath = dependenciesClasspath;
+    }
+
+    /**
+     * @param projectDir the project directory, searched for build files
+     * @param settings   anything else that changes what the build tool reports, e.g. its version
+     * @return a hash of the build files' paths and contents, and of the settings
+     */
+    static String key(File projectDir, List<String> settings) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        for (String setting : settings) {
+            digest.update(String.valueOf(setting).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        Path root = projectDir.toPath();
+        for (Path buildFile : buildFiles(root)) {
+            digest.update(root.relativize(buildFile).toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            try {
+                digest.update(Files.readAllBytes(buildFile));
+            } catch (IOException e) {
+                // Hashed by name only; unreadable now, so unlikely to match a later read
+                Logger.warn("Could not read build file " + buildFile + ": " + e);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // Build files under the root, sorted so the key doesn't depend on directory listing order
+    private static Set<Path> buildFiles(Path root) {
+        Set<Path> buildFiles = new TreeSet<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (dir.equals(root)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    String name = dir.getFileName().toString();
+                    boolean hidden = name.startsWith(".") && !name.equals(".mvn");
+                    boolean skipped = hidden || SKIPPED_DIRS.contains(name) || Files.exists(dir.resolve(COPY_MARKER));
+                    return skipped ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (BUILD_FILES.contains(file.getFileName().toString())) {
+                        buildFiles.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            Logger.warn("Could not list build files in " + root + ": " + e);
+        }
+        return buildFiles;
+    }
+
+}
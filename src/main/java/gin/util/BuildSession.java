@@ -0,0 +1,83 @@
+package gin.util;
+
+import gin.test.UnitTest;
+import org.apache.maven.shared.invoker.InvocationRequest;
+import org.apache.maven.shared.invoker.Invoker;
+import org.gradle.tooling.ProjectConnection;
+import org.pmw.tinylog.Logger;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the tests of a project one at a time, for a whole profiling run, without paying the
+ * build tool's start up cost for every test. Opened with {@link Project#openBuildSession(File)}
+ * and used by gin.util.Profiler and gin.util.MemoryProfiler.
+ * <p>
+ * For Gradle, one tooling API connection per project or module directory is opened on first
+ * use and kept open until the session is closed, so the daemon and its project model are
+ * reused rather than reconnected for every test. Connections may be used by several tests at
+ * once; Gradle starts more daemons if needed.
+ * <p>
+ * For Maven, the invoker for each worker is set up once, and snapshot dependencies are checked
+ * for updates only by the first test run rather than by every test. Each test is still a
+ * separate mvn process unless a Maven daemon (mvnd) is given: mvnd keeps the build JVM, its
+ * loaded plugins and the resolved project model in memory between runs, and passes the
+ * client's environment, including the profiling options, on to the build. The daemon is not
+ * used for runs pinned to cores, as taskset would only pin the mvnd client.
+ */
+public class BuildSession implements AutoCloseable {
+
+    // Key for the invoker of runs that are not pinned
+    private static final String UNPINNED = "";
+
+    private final Project project;
+    private final File mavenDaemon;
+
+    private final Map<File, ProjectConnection> connections = new ConcurrentHashMap<>();
+    private final Map<String, Invoker> invokers = new ConcurrentHashMap<>();
+    private final AtomicBoolean snapshotsUpdated = new AtomicBoolean(false);
+
+    BuildSession(Project project, File mavenDaemon) {
+        this.project = project;
+        this.mavenDaemon = mavenDaemon;
+        if (mavenDaemon != null && project.isMavenProject()) {
+            Logger.info("Running Maven tests with Maven daemon: " + mavenDaemon);
+        }
+    }
+
+    /**
+     * Run a single test, possibly at the same time as other tests in this session.
+     * See {@link Project#runUnitTest(UnitTest, String, String, String, String[], File, String)}.
+     *
+     * @param buildDir copy of the project to run the build in, so that concurrent runs don't share
+     *                 build outputs, or null to run it in the project itself
+     */
+    public void runUnitTest(UnitTest test, String args, String task, String mavenProfile, String[] buildToolArgs,
+                            File workerDir, String cpus, File buildDir) throws FailedToExecuteTestException {
+
+        if (project.isMavenProject()) {
+            Invoker invoker = invokers.computeIfAbsent(cpus == null ? UNPINNED : cpus,
+                    key -> project.mavenInvoker(workerDir, cpus, mavenDaemon));
+            boolean updateSnapshots = snapshotsUpdated.compareAndSet(false, true);
+            InvocationRequest request = project.unitTestRequestMaven(test, args, task, mavenProfile, buildToolArgs, updateSnapshots, buildDir);
+            project.runUnitTestMaven(invoker, request, test);
+        } else {
+            ProjectConnection connection = connections.computeIfAbsent(project.gradleConnectionDir(test, buildDir), project::connectGradle);
+            project.runUnitTestGradle(connection, test, args, buildToolArgs);
+        }
+
+    }
+
+    @Override
+    public void close() {
+        for (ProjectConnection connection : connections.values()) {
+            connection.close();
+        }
+        connections.clear();
+        invokers.clear();
+    }
+
+}
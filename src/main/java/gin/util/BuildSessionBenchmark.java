@@ -0,0 +1,186 @@
+package gin.util;
+
+import com.opencsv.CSVWriter;
+import com.sampullara.cli.Args;
+import com.sampullara.cli.Argument;
+import gin.test.UnitTest;
+import org.apache.commons.io.FileUtils;
+import org.pmw.tinylog.Logger;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Measures the time taken to run single tests of a project through the build tool, as the
+ * profilers do, with a fresh build tool run per test and within a {@link BuildSession}.
+ * <p>
+ * Each rep runs every selected test both ways, one after the other, so that both see the same
+ * system state. Which way goes first alternates from run to run, so that neither gains from
+ * caches warmed by the other. The test itself takes the same time either way, so the difference between the
+ * means is the per-test invocation overhead saved by the session.
+ * <p>
+ * Run directly from the commandline, after the project's tests have been compiled.
+ */
+public class BuildSessionBenchmark {
+
+    private static final String[] HEADER = {"Project", "Mode", "Rep", "Test", "Millis"};
+
+    @Argument(alias = "p", description = "Project name, required", required = true)
+    protected String projectName;
+    @Argument(alias = "d", description = "Project Directory, required", required = true)
+    protected File projectDir;
+    @Argument(alias = "o", description = "Output file with the time of every run")
+    protected File outputFile;
+    @Argument(alias = "r", description = "Number of times to run each test each way")
+    protected Integer reps = 3;
+    @Argument(alias = "n", description = "Number of tests to run, the first in name order")
+    protected Integer numTests = 10;
+    @Argument(alias = "h", description = "Path to maven bin directory e.g. /usr/local/. Leave blank for automatic discovery.")
+    protected File mavenHome;
+    @Argument(alias = "v", description = "Set Gradle version")
+    protected String gradleVersion;
+    @Argument(alias = "s", description = "Skip initial run of all tests, just parse reports")
+    protected Boolean skipInitialRun = false;
+    @Argument(alias = "t", description = "Run given maven task rather than test")
+    protected String mavenTaskName = "test";
+    @Argument(alias = "m", description = "Maven profile to use, e.g. light-test")
+    protected String mavenProfile = "";
+    @Argument(alias = "ba", description = "Comma separated list of arguments to pass to Maven or Gradle")
+    protected String[] buildToolArgs = {};
+    @Argument(alias = "mvnd", description = "Path to a Maven daemon (mvnd) executable for the session runs")
+    protected File mavenDaemon;
+
+    private final Project project;
+
+    public BuildSessionBenchmark(String[] args) {
+        Args.parseOrExit(this, args);
+        project = new Project(projectDir, projectName);
+        if (this.gradleVersion != null) {
+            project.setGradleVersion(this.gradleVersion);
+        }
+        if (this.mavenHome == null) {
+            String mavenHomePath = MavenUtils.findMavenHomePath();
+            if (mavenHomePath != null) {
+                this.mavenHome = FileUtils.getFile(mavenHomePath);
+            }
+        }
+        if (this.mavenHome != null) {
+            project.setMavenHome(this.mavenHome);
+        }
+        project.setUp();
+    }
+
+    public static void main(String[] args) {
+        BuildSessionBenchmark benchmark = new BuildSessionBenchmark(args);
+        benchmark.run();
+    }
+
+    public void run() {
+
+        if (!this.skipInitialRun) {
+            project.runAllUnitTests(this.mavenTaskName, this.mavenProfile, this.buildToolArgs);
+        }
+
+        List<UnitTest> tests = new ArrayList<>();
+        for (UnitTest test : new TreeSet<>(project.parseTestReports())) {
+            // Parameterized tests can't be run individually
+            if (tests.size() < this.numTests && !test.getMethodName().contains("[")) {
+                tests.add(test);
+            }
+        }
+        if (tests.isEmpty()) {
+            Logger.error("No tests found to run in project: " + projectName);
+            System.exit(-1);
+        }
+
+        List<String[]> rows = new ArrayList<>();
+        long freshTotal = 0;
+        long sessionTotal = 0;
+
+        try (BuildSession session = project.openBuildSession(this.mavenDaemon)) {
+            for (int rep = 1; rep <= this.reps; rep++) {
+                for (int i = 0; i < tests.size(); i++) {
+                    UnitTest test = tests.get(i);
+                    boolean sessionFirst = (rep + i) % 2 == 0;
+                    Logger.info(String.format("Running unit test %s, rep %d/%d, %s first", test, rep, this.reps,
+                            sessionFirst ? "session" : "fresh"));
+
+                    long[] fresh = new long[1];
+                    long[] inSession = new long[1];
+                    BooleanSupplier runFresh = () -> time(() -> runFresh(test), fresh);
+                    BooleanSupplier runInSession = () -> time(() -> runInSession(session, test), inSession);
+                    boolean passed = sessionFirst
+                            ? runInSession.getAsBoolean() & runFresh.getAsBoolean()
+                            : runFresh.getAsBoolean() & runInSession.getAsBoolean();
+
+                    if (!passed) {
+                        Logger.warn("Failed to execute test: " + test + ", leaving it out of the timings");
+                        continue;
+                    }
+                    freshTotal += fresh[0];
+                    sessionTotal += inSession[0];
+                    rows.add(new String[]{projectName, "fresh", Integer.toString(rep), test.toString(), Long.toString(fresh[0])});
+                    rows.add(new String[]{projectName, "session", Integer.toString(rep), test.toString(), Long.toString(inSession[0])});
+                }
+            }
+        }
+
+        int runs = rows.size() / 2;
+        if (runs == 0) {
+            Logger.error("No test ran successfully, so there is nothing to compare.");
+            System.exit(-1);
+        }
+        double freshMean = (double) freshTotal / runs;
+        double sessionMean = (double) sessionTotal / runs;
+        Logger.info(String.format("Mean time per test over %d runs: %.0f ms with a build tool run per test, %.0f ms in a build session", runs, freshMean, sessionMean));
+        Logger.info(String.format("Per-test overhead saved: %.0f ms (%.1f%%)", freshMean - sessionMean, 100 * (freshMean - sessionMean) / freshMean));
+
+        if (this.outputFile != null) {
+            writeResults(rows);
+        }
+
+    }
+
+    // Run, putting the time taken in millis into millis[0]
+    private static boolean time(BooleanSupplier run, long[] millis) {
+        long start = System.nanoTime();
+        boolean passed = run.getAsBoolean();
+        millis[0] = (System.nanoTime() - start) / 1_000_000;
+        return passed;
+    }
+
+    private boolean runFresh(UnitTest test) {
+        try {
+            project.runUnitTest(test, "", this.mavenTaskName, this.mavenProfile, this.buildToolArgs, null, null);
+            return true;
+        } catch (FailedToExecuteTestException e) {
+            return false;
+        }
+    }
+
+    private boolean runInSession(BuildSession session, UnitTest test) {
+        try {
+            session.runUnitTest(test, "", this.mavenTaskName, this.mavenProfile, this.buildToolArgs, null, null, null);
+            return true;
+        } catch (FailedToExecuteTestException e) {
+            return false;
+        }
+    }
+
+    private void writeResults(List<String[]> rows) {
+        try (CSVWriter writer = new CSVWriter(new FileWriter(this.outputFile))) {
+            writer.writeNext(HEADER);
+            writer.writeAll(rows);
+        } catch (IOException e) {
+            Logger.error("Error writing benchmark results: " + outputFile);
+            Logger.trace(e);
+            System.exit(-1);
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package gin.util;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The sampled call stacks of one test, as a prefix trie: a flame graph. Used by gin.util.Trace.
+ * <p>
+ * Only frames in the main program are kept, outermost first, each interned to an int ID.
+ * A node is a path of frames from the root; it records the samples whose stack has that
+ * path as a prefix (total) and those whose stack ends there (self). Nodes are stored in
+ * parallel int arrays, with children found through a single map keyed by parent and frame.
+ * <p>
+ * Frames are kept raw, as class.method:line, so that the tree can be built while parsing
+ * and the frames cleaned into method signatures afterwards, once per distinct frame.
+ */
+class CallTree implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 3620143860474923613L;
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    private final List<String> frames = new ArrayList<>();
+    private final Map<String, Integer> frameIds = new HashMap<>();
+
+    // (parent << 32 | frame) -> child node
+    private final Map<Long, Integer> children = new HashMap<>();
+    private int[] parent = new int[16];
+    private int[] frame = new int[16];
+    private int[] self = new int[16];
+    private int[] total = new int[16];
+    private int size = 1;
+
+    private long samples;
+
+    CallTree() {
+        parent[ROOT] = NONE;
+        frame[ROOT] = NONE;
+    }
+
+    /**
+     * Add one sample.
+     *
+     * @param stack frames of the main program on the sampled stack, outermost first; samples with
+     *              no frames in the main program are not counted
+     */
+    void addStack(List<String> stack) {
+        if (stack.isEmpty()) {
+            return;
+        }
+        samples++;
+        int node = ROOT;
+        total[ROOT]++;
+        for (String f : stack) {
+            node = child(node, intern(f));
+            total[node]++;
+        }
+        self[node]++;
+    }
+
+    private int intern(String f) {
+        Integer id = frameIds.get(f);
+        if (id == null) {
+            id = frames.size();
+            frames.add(f);
+            frameIds.put(f, id);
+        }
+        return id;
+    }
+
+    private int child(int node, int f) {
+        long key = ((long) node << 32) | f;
+        Integer child = children.get(key);
+        if (child == null) {
+            child = size++;
+            if (child == parent.length) {
+                int capacity = parent.length * 2;
+                parent = Arrays.copyOf(parent, capacity);
+                frame = Arrays.copyOf(frame, capacity);
+                self = Arrays.copyOf(self, capacity);
+                total = Arrays.copyOf(total, capacity);
+            }
+            parent[child] = node;
+            frame[child] = f;
+            children.put(key, child);
+        }
+        return child;
+    }
+
+    /**
+     * @return number of samples added
+     */
+    long getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return number of nodes, excluding the root
+     */
+    int nodeCount() {
+        return size - 1;
+    }
+
+    /**
+     * Samples in which each method was the innermost frame of the main program.
+     *
+     * @param methodOf maps a raw frame to its method, or to null to leave the frame out
+     */
+    Map<String, Integer> selfCounts(Function<String, String> methodOf) {
+        String[] methods = methods(methodOf);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int node = 1; node < size; node++) {
+            String method = methods[frame[node]];
+            if (self[node] > 0 && method != null) {
+                counts.merge(method, self[node], Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Samples in which each method was anywhere on the stack. A sample is counted once for
+     * a method however many times the method appears in it, e.g. through recursion.
+     *
+     * @param methodOf maps a raw frame to its method, or to null to leave the frame out
+     */
+    Map<String, Integer> inclusiveCounts(Function<String, String> methodOf) {
+        String[] methods = methods(methodOf);
+
+        // Intern the methods too, so that ancestors can be compared by ID
+        Map<String, Integer> methodIds = new HashMap<>();
+        int[] methodOfFrame = new int[methods.length];
+        for (int f = 0; f < methods.length; f++) {
+            methodOfFrame[f] = methods[f] == null ? NONE : methodIds.computeIfAbsent(methods[f], m -> methodIds.size());
+        }
+
+        long[] counts = new long[methodIds.size()];
+        for (int node = 1; node < size; node++) {
+            int method = methodOfFrame[frame[node]];
+            if (method != NONE && !onPathAbove(node, method, methodOfFrame)) {
+                counts[method] += total[node];
+            }
+        }
+
+        Map<String, Integer> inclusive = new HashMap<>();
+        methodIds.forEach((m, id) -> inclusive.put(m, (int) counts[id]));
+        return inclusive;
+    }
+
+    // Whether the method appears at a proper ancestor of the node, in which case its samples are already counted
+    private boolean onPathAbove(int node, int method, int[] methodOfFrame) {
+        for (int n = parent[node]; n != ROOT; n = parent[n]) {
+            if (methodOfFrame[frame[n]] == method) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String[] methods(Function<String, String> methodOf) {
+        String[] methods = new String[frames.size()];
+        for (int f = 0; f < methods.length; f++) {
+            methods[f] = methodOf.apply(frames.get(f));
+        }
+        return methods;
+    }
+
+}
@@ -0,0 +1,101 @@
+package gin.util;
+
+import org.pmw.tinylog.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Reading and writing search checkpoints.
+ * <p>
+ * A checkpoint is any Serializable object. It is written to a temporary file,
+ * forced to disk and then moved over the previous checkpoint, so a crash while
+ * checkpointing leaves the previous checkpoint intact.
+ * <p>
+ * Output files that are appended to during a search (e.g. results CSVs) can be
+ * rolled back on resume to their length when the checkpoint was taken, with
+ * {@link #truncate(File, long)}, so that results produced after the checkpoint
+ * are not written twice.
+ */
+public class Checkpoint {
+
+    private Checkpoint() {
+    }
+
+    /**
+     * Atomically replace the checkpoint file with the given state.
+     *
+     * @param file  checkpoint file
+     * @param state state to save
+     * @throws IOException if the state can't be written
+     */
+    public static void save(File file, Serializable state) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmp);
+             ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeObject(state);
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Logger.debug("Checkpoint written to " + file);
+    }
+
+    /**
+     * @param file checkpoint file
+     * @param type expected type of the saved state
+     * @return the saved state
+     * @throws IOException if the file can't be read or doesn't hold a state of the given type
+     */
+    public static <T extends Serializable> T load(File file, Class<T> type) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Object state = in.readObject();
+            if (!type.isInstance(state)) {
+                throw new IOException("Checkpoint " + file + " holds a " + state.getClass().getName() +
+                        ", expected " + type.getName());
+            }
+            return type.cast(state);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Checkpoint " + file + " was written by an incompatible version", e);
+        }
+    }
+
+    /**
+     * @param file an output file
+     * @return its current length, or 0 if it does not exist
+     */
+    public static long lengthOf(File file) {
+        return file.exists() ? file.length() : 0;
+    }
+
+    /**
+     * Roll an output file back to the length it had when a checkpoint was taken.
+     *
+     * @param file   output file
+     * @param length length to truncate to
+     * @throws IOException if the file is shorter than length or can't be truncated
+     */
+    public static void truncate(File file, long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < length) {
+                throw new IOException(file + " is shorter (" + raf.length() + " bytes) than at the checkpoint (" +
+                        length + " bytes)");
+            }
+            raf.setLength(length);
+        }
+    }
+}
@@ -53,12 +53,24 @@ public abstract class GP extends Sampler {
     @Argument(alias = "pb", description = "Probability of combined")
     protected Double combinedProbablity = 0.5;
 
+    @Argument(alias = "ckpt", description = "Checkpoint file, rewritten after every generation")
+    protected File checkpointFile = null;
+
+    @Argument(alias = "resume", description = "Resume from the checkpoint file (-ckpt)")
+    protected Boolean resume = false;
+
     // Allowed edit types for sampling: parsed from editType
     protected List<Class<? extends Edit>> editTypes;
 
     protected Random mutationRng;
     protected Random individualRng;
 
+    // Index of the method being searched, for checkpoints
+    protected int methodIndex;
+
+    // Population to resume the current method from, or null to start it from scratch
+    protected PopulationCheckpoint resumeState;
+
     public GP(String[] args) {
         super(args);
         Args.parseOrExit(this, args);
@@ -93,18 +105,36 @@ public abstract class GP extends Sampler {
             Logger.info("Please enter a positive number of generations and individuals.");
         } else {
 
-            writeNewHeader();
+            PopulationCheckpoint checkpoint = null;
+            if (resume && checkpointFile != null && checkpointFile.exists()) {
+                checkpoint = resumeFromCheckpoint(checkpointFile);
+                mutationRng = checkpoint.mutationRng();
+                individualRng = checkpoint.individualRng();
+            } else {
+                writeNewHeader();
+            }
 
             int numberToSearch = Math.min(methodData.size(), methodNumber);
-            for (TargetMethod method : methodData.subList(0, numberToSearch)) {
+            int firstMethod = checkpoint != null ? checkpoint.methodIndex() : 0;
+            for (methodIndex = firstMethod; methodIndex < numberToSearch; methodIndex++) {
+                TargetMethod method = methodData.get(methodIndex);
 
                 Logger.info("Running GP on method " + method);
 
+                resumeState = (checkpoint != null && checkpoint.methodIndex() == methodIndex && checkpoint.hasPopulation())
+                        ? checkpoint : null;
+
                 // Setup SourceFile for patching
                 SourceFile sourceFile = SourceFile.makeSourceFileForEditTypes(editTypes, method.getFileSource().getPath(), Collections.singletonList(method.getMethodName()));
 
                 search(method, new Patch(sourceFile));
 
+                resumeState = null;
+                if (checkpointFile != null) {
+                    saveCheckpoint(checkpointFile, methodIndex + 1, 0, 0, new double[0],
+                            Collections.emptyList(), Collections.emptyList(), mutationRng, individualRng);
+                }
+
             }
         }
 
@@ -159,7 +189,8 @@ public abstract class GP extends Sampler {
         }
     }
 
-    protected void writePatch(int iteration, int evaluationNumber, UnitTestResultSet results, String methodName, double fitness, double improvement) {
+    // Synchronized as islands (see GPSimple) write results from several threads
+    protected synchronized void writePatch(int iteration, int evaluationNumber, UnitTestResultSet results, String methodName, double fitness, double improvement) {
         String[] entry = { methodName
         		, Integer.toString(iteration)
         		, Integer.toString(evaluationNumber)
@@ -171,6 +202,9 @@ public abstract class GP extends Sampler {
                 , Double.toString(improvement)
         };
         outputFileWriter.writeNext(entry);
+        if (surrogate != null && results.getCleanCompile() && results.allTestsSuccessful()) {
+            surrogate.observeFitness(results.getPatch(), fitness);
+        }
     }
 
 }
@@ -13,6 +13,7 @@ import java.io.Serial;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -33,7 +34,8 @@ public class GPFix extends GPSimple {
     private double multiplier = 0.0;
     private double targetFitness = -1.0;
     private Map<UnitTest, Boolean> testResults = new HashMap<>();
-    private Map<Patch, Double> recordedFitness = new HashMap<>();
+    // Concurrent as islands (see GPSimple) evaluate patches in parallel
+    private Map<Patch, Double> recordedFitness = new ConcurrentHashMap<>();
 
     public GPFix(String[] args) {
         super(args);
@@ -55,6 +57,12 @@ public class GPFix extends GPSimple {
         Logger.info("Record all fitness values in a HashMap: " + record);
     }
 
+    // Fitness counts the passing tests, so every patch has to run all of them
+    @Override
+    protected boolean fitnessUsesTestCost() {
+        return true;
+    }
+
     /*============== Implementation of abstract methods  ==============*/
 
     protected UnitTestResultSet initFitness(String className, List<UnitTest> tests, Patch origPatch) {
@@ -124,7 +132,7 @@ public class GPFix extends GPSimple {
         int passing = 0;
         int failing = 0;
         this.testResults = new HashMap<>();
-        this.recordedFitness = new HashMap<>();
+        this.recordedFitness = new ConcurrentHashMap<>();
 
         for (UnitTestResult testResult : results.getResults()) {
             if (testResult.getPassed()) {
@@ -28,6 +28,11 @@ public class GPMemory extends GPSimple {
         sampler.sampleMethods();
     }
 
+    @Override
+    protected boolean fitnessUsesTestCost() {
+        return true;
+    }
+
     /*============== Implementation of abstract methods  ==============*/
 
     protected UnitTestResultSet initFitness(String className, List<UnitTest> tests, Patch origPatch) {
@@ -38,6 +43,12 @@ public class GPMemory extends GPSimple {
     // Calculate fitness
     protected double fitness(UnitTestResultSet results) {
 
+        return memoryFitness(results);
+    }
+
+    // Total memory usage, or Double.MAX_VALUE if the patch fails; also used by GPSteadyStateMemory
+    static double memoryFitness(UnitTestResultSet results) {
+
         double fitness = Double.MAX_VALUE;
         if (results.getCleanCompile() && results.allTestsSuccessful()) {
             return (double) results.totalMemoryUsage();
@@ -32,6 +32,11 @@ public class GPRuntime extends GPSimple {
         sampler.sampleMethods();
     }
 
+    @Override
+    protected boolean fitnessUsesTestCost() {
+        return true;
+    }
+
     /*============== Implementation of abstract methods  ==============*/
 
     protected UnitTestResultSet initFitness(String className, List<UnitTest> tests, Patch origPatch) {
@@ -42,6 +47,12 @@ public class GPRuntime extends GPSimple {
     // Calculate fitness
     protected double fitness(UnitTestResultSet results) {
 
+        return runtimeFitness(results);
+    }
+
+    // Total run time in ms, or Double.MAX_VALUE if the patch fails; also used by GPSteadyStateRuntime
+    static double runtimeFitness(UnitTestResultSet results) {
+
         double fitness = Double.MAX_VALUE;
         if (results.getCleanCompile() && results.allTestsSuccessful()) {
             return (double) (results.totalExecutionTime() / 1000000);
@@ -1,14 +1,24 @@
 package gin.util;
 
+import com.sampullara.cli.Args;
+import com.sampullara.cli.Argument;
 import gin.Patch;
 import gin.edit.Edit;
 import gin.test.UnitTest;
 import gin.test.UnitTestResultSet;
+import org.apache.commons.rng.simple.JDKRandomBridge;
+import org.apache.commons.rng.simple.RandomSource;
 import org.pmw.tinylog.Logger;
 
 import java.io.File;
 import java.io.Serial;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -17,6 +27,12 @@ import java.util.*;
  * Roughly based on: "A systematic study of automated program repair: Fixing 55 out of 105 bugs for $8 each."
  * by Claire Le Goues, Michael Dewey-Vogt, Stephanie Forrest, Westley Weimer (ICSE 2012)
  * and its Java implementation at <a href="https://github.com/squaresLab/genprog4java">...</a>
+ *
+ * With -islands n &gt; 1, n populations (islands) evolve side by side on their own threads, each with
+ * its own pair of random number generators seeded from mutationRng and individualRng. Every -mint
+ * generations the best -mig patches of each island are sent to the next island in a ring, as strings
+ * (Patch.toString/fromString), where they replace the worst patches. Tests are then always run in a
+ * separate jvm, as -j, so that concurrent evaluations don't share a heap.
  */
 
 public abstract class GPSimple extends GP {
@@ -28,8 +44,34 @@ public abstract class GPSimple extends GP {
     // Probability of adding an edit during uniform crossover
     private static final double MUTATE_PROBABILITY = 0.5;
 
+    @Argument(alias = "islands", description = "Number of populations (islands) evolved in parallel")
+    protected Integer islands = 1;
+
+    @Argument(alias = "mint", description = "Generations between migrations between islands")
+    protected Integer migrationInterval = 5;
+
+    @Argument(alias = "mig", description = "Number of best patches each island sends to the next at a migration")
+    protected Integer migrants = 1;
+
     public GPSimple(String[] args) {
         super(args);
+        Args.parseOrExit(this, args);
+        if (islands > 1) {
+            Logger.info("Islands: " + islands + ", migrating " + migrants + " patches every " + migrationInterval + " generations");
+            requireSubprocessEvaluation("Islands evaluate patches concurrently");
+        }
+    }
+
+    // Patches evaluated concurrently in one JVM would share its heap and class loaders, so run tests in a separate jvm
+    protected void requireSubprocessEvaluation(String reason) {
+        if (!inSubprocess && !eachTestInNewSubprocess) {
+            Logger.warn(reason + ", so tests will be run in a separate jvm (-j)");
+            inSubprocess = true;
+        }
+        if (coverageSelector != null) {
+            Logger.warn("Coverage-based test selection needs tests to run in-process, all tests will be run");
+            coverageSelector = null;
+        }
     }
 
     // Constructor used for testing
@@ -56,96 +98,291 @@ public abstract class GPSimple extends GP {
     // Simple GP search (based on Simple)
     protected void search(TargetMethod method, Patch origPatch) {
 
+        if (islands > 1) {
+            searchIslands(method, origPatch);
+            return;
+        }
+
         String className = method.getClassName();
         String methodName = method.toString();
         List<UnitTest> tests = method.getGinTests();
 
-        // Run original code
-        UnitTestResultSet results = initFitness(className, tests, origPatch);
+        UnitTestResultSet results;
+        double orig;
+        Map<Patch, Double> population = new HashMap<>();
+        AtomicInteger evals;
+        int firstGeneration;
 
-        // Calculate fitness and record result, including fitness improvement (currently 0)
-        double orig = fitness(results);
-        super.writePatch(-1, 0, results, methodName, orig, 0);
+        if (resumeState != null) {
+
+            // Continue from the checkpointed population
+            orig = resumeState.reference()[0];
+            List<Patch> restored = resumeState.restorePatches(origPatch.getSourceFile());
+            for (int i = 0; i < restored.size(); i++) {
+                population.put(restored.get(i), resumeState.fitnesses().get(i)[0]);
+            }
+            evals = new AtomicInteger(resumeState.evaluations());
+            firstGeneration = resumeState.generation();
+
+        } else {
+
+            // Run original code
+            results = initFitness(className, tests, origPatch);
+
+            // Calculate fitness and record result, including fitness improvement (currently 0)
+            orig = fitness(results);
+            super.writePatch(-1, 0, results, methodName, orig, 0);
+
+            // Generation 1
+            evals = new AtomicInteger(1);
+            population = initialPopulation(method, origPatch, orig, super.mutationRng, evals);
+            firstGeneration = 0;
+        }
+
+        for (int g = firstGeneration; g < genNumber; g++) {
+
+            Logger.info("Creating generation: " + (g + 1));
+
+            population = evolve(g, population, method, origPatch, orig, super.mutationRng, super.individualRng, evals);
+
+            if (checkpointFile != null) {
+                checkpoint(g + 1, evals.get(), orig, population);
+            }
+
+        }
+
+    }
+
+    // Generation 1: the original patch plus up to indNumber - 1 single mutations of it
+    private Map<Patch, Double> initialPopulation(TargetMethod method, Patch origPatch, double orig,
+                                                 Random mutationRng, AtomicInteger evals) {
 
-        // Generation 1
         Map<Patch, Double> population = new HashMap<>();
         population.put(origPatch, orig);
 
         for (int i = 1; i < indNumber; i++) {
 
             // Add a mutation
-            Patch patch = mutate(origPatch);
+            Patch patch = prescreen(() -> mutate(origPatch, mutationRng));
             // If fitnessThreshold met, add it
-            results = testPatch(className, tests, patch, null);
+            UnitTestResultSet results = testPatch(method.getClassName(), method.getGinTests(), patch, null);
             double fitness = fitness(results);
-            super.writePatch(-1, i, results, methodName, fitness, 0);
+            super.writePatch(-1, evals.getAndIncrement(), results, method.toString(), fitness, 0);
             if (fitnessThreshold(results, orig)) {
                 population.put(patch, fitness);
             }
 
         }
 
-        int evals = indNumber;
-        for (int g = 0; g < genNumber; g++) {
+        return population;
+    }
 
-            // Previous generation
-            List<Patch> patches = new ArrayList<>(population.keySet());
+    // Create and evaluate the next generation from the given one
+    private Map<Patch, Double> evolve(int g, Map<Patch, Double> population, TargetMethod method, Patch origPatch,
+                                      double orig, Random mutationRng, Random individualRng, AtomicInteger evals) {
 
-            Logger.info("Creating generation: " + (g + 1));
+        // Previous generation
+        List<Patch> patches = new ArrayList<>(population.keySet());
+
+        // Current generation
+        Map<Patch, Double> newPopulation = new HashMap<>();
+
+        // Select individuals for crossover
+        List<Patch> selectedPatches = select(population, origPatch, orig, individualRng);
 
-            // Current generation
-            Map<Patch, Double> newPopulation = new HashMap<>();
+        // Keep a list of patches after crossover
+        List<Patch> crossoverPatches = crossover(selectedPatches, origPatch, mutationRng, individualRng);
 
-            // Select individuals for crossover
-            List<Patch> selectedPatches = select(population, origPatch, orig);
+        // If less than indNumber variants produced, add random patches from the previous generation
+        while (crossoverPatches.size() < indNumber) {
+            crossoverPatches.add(patches.get(individualRng.nextInt(patches.size())).clone());
+        }
+
+        // Mutate the newly created population and check fitness
+        for (Patch patch : crossoverPatches) {
 
-            // Keep a list of patches after crossover
-            List<Patch> crossoverPatches = crossover(selectedPatches, origPatch);
+            // Add a mutation
+            Patch parent = patch;
+            patch = prescreen(() -> mutate(parent, mutationRng));
 
-            // If less than indNumber variants produced, add random patches from the previous generation
-            while (crossoverPatches.size() < indNumber) {
-                crossoverPatches.add(patches.get(super.individualRng.nextInt(patches.size())).clone());
+            Logger.debug("Testing patch: " + patch);
+
+            // Test the patched source file
+            UnitTestResultSet results = testPatch(method.getClassName(), method.getGinTests(), patch, null);
+            double newFitness = fitness(results);
+
+            // If fitness threshold met, add patch to the mating population
+            if (fitnessThreshold(results, orig)) {
+                newPopulation.put(patch, newFitness);
             }
+            super.writePatch(g, evals.getAndIncrement(), results, method.toString(), newFitness, compareFitness(newFitness, orig));
+        }
 
-            // Mutate the newly created population and check fitness
-            for (Patch patch : crossoverPatches) {
+        if (newPopulation.isEmpty()) {
+            newPopulation.put(origPatch, orig);
+        }
+        return newPopulation;
+    }
+
+    /*====== Island model ======*/
+
+    // Evolve several populations in parallel, with periodic migration of the best patches in a ring
+    private void searchIslands(TargetMethod method, Patch origPatch) {
+
+        if (resumeState != null) {
+            Logger.warn("Populations are not checkpointed in island mode, starting method " + method + " from scratch");
+        }
+
+        // Run original code
+        UnitTestResultSet results = initFitness(method.getClassName(), method.getGinTests(), origPatch);
+        double orig = fitness(results);
+        super.writePatch(-1, 0, results, method.toString(), orig, 0);
+
+        // Derive a separate stream for each island, so the search doesn't depend on thread timing
+        List<Island> islandList = new ArrayList<>();
+        for (int i = 0; i < islands; i++) {
+            islandList.add(new Island(i,
+                    new JDKRandomBridge(RandomSource.MT, super.mutationRng.nextLong()),
+                    new JDKRandomBridge(RandomSource.MT, super.individualRng.nextLong())));
+        }
+
+        AtomicInteger evals = new AtomicInteger(1);
+        ExecutorService executor = Executors.newFixedThreadPool(islands);
+        try {
+
+            runOnIslands(executor, islandList, island ->
+                    island.population = initialPopulation(method, origPatch, orig, island.mutationRng, evals));
 
-                // Add a mutation
-                patch = mutate(patch);
+            for (int g = 0; g < genNumber; g++) {
 
-                Logger.debug("Testing patch: " + patch);
+                Logger.info("Creating generation: " + (g + 1) + " on " + islands + " islands");
 
-                // Test the patched source file
-                results = testPatch(className, tests, patch, null);
-                double newFitness = fitness(results);
+                int generation = g;
+                runOnIslands(executor, islandList, island -> island.population = evolve(generation,
+                        island.population, method, origPatch, orig, island.mutationRng, island.individualRng, evals));
 
-                // If fitness threshold met, add patch to the mating population
-                if (fitnessThreshold(results, orig)) {
-                    newPopulation.put(patch, newFitness);
+                if ((g + 1) % migrationInterval == 0 && g + 1 < genNumber) {
+                    migrate(islandList, origPatch);
                 }
-                super.writePatch(g, evals++, results, methodName, newFitness, compareFitness(newFitness, orig));
+
             }
 
-            population = new HashMap<>(newPopulation);
-            if (population.isEmpty()) {
-                population.put(origPatch, orig);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Logger.error("Interrupted while evolving islands, stopping search of method " + method);
+        } catch (ExecutionException e) {
+            Logger.error(e.getCause(), "Island search failed, stopping search of method " + method);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (Island island : islandList) {
+            Map.Entry<Patch, Double> best = island.best(1).get(0);
+            Logger.info("Island " + island.id + " best: " + best.getValue() + " " + best.getKey());
+        }
+
+    }
+
+    // Apply the same step to every island at once and wait for all of them to finish
+    private void runOnIslands(ExecutorService executor, List<Island> islandList, IslandStep step)
+            throws InterruptedException, ExecutionException {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Island island : islandList) {
+            tasks.add(() -> {
+                step.apply(island);
+                return null;
+            });
+        }
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+            future.get();
+        }
+    }
+
+    // Each island sends copies of its best patches to the next island, replacing that island's worst
+    private void migrate(List<Island> islandList, Patch origPatch) {
+
+        // Pick all emigrants before any island changes
+        List<Map<String, Double>> emigrants = new ArrayList<>();
+        for (Island island : islandList) {
+            Map<String, Double> outgoing = new LinkedHashMap<>();
+            for (Map.Entry<Patch, Double> entry : island.best(migrants)) {
+                outgoing.put(entry.getKey().toString(), entry.getValue());
             }
+            emigrants.add(outgoing);
+        }
 
+        for (int i = 0; i < islandList.size(); i++) {
+            Island target = islandList.get((i + 1) % islandList.size());
+            for (Map.Entry<String, Double> entry : emigrants.get(i).entrySet()) {
+                if (target.population.size() >= indNumber) {
+                    List<Map.Entry<Patch, Double>> ranked = target.best(target.population.size());
+                    target.population.remove(ranked.get(ranked.size() - 1).getKey());
+                }
+                target.population.put(Patch.fromString(entry.getKey(), origPatch.getSourceFile()), entry.getValue());
+            }
+            Logger.debug("Migrated " + emigrants.get(i).size() + " patches from island " + i + " to island " + target.id);
         }
+    }
 
+    // Something done to one island, on the island's own thread
+    @FunctionalInterface
+    private interface IslandStep {
+        void apply(Island island);
+    }
+
+    // A population with its own random number generators; only touched by one thread at a time
+    private final class Island {
+
+        private final int id;
+        private final Random mutationRng;
+        private final Random individualRng;
+        private Map<Patch, Double> population = new HashMap<>();
+
+        private Island(int id, Random mutationRng, Random individualRng) {
+            this.id = id;
+            this.mutationRng = mutationRng;
+            this.individualRng = individualRng;
+        }
+
+        // The n fittest patches, best first
+        private List<Map.Entry<Patch, Double>> best(int n) {
+            List<Map.Entry<Patch, Double>> ranked = new ArrayList<>(population.entrySet());
+            ranked.sort((a, b) -> Double.compare(compareFitness(b.getValue(), a.getValue()), 0));
+            return ranked.subList(0, Math.min(n, ranked.size()));
+        }
+    }
+
+    // Save the population at the end of a generation
+    private void checkpoint(int nextGeneration, int evals, double orig, Map<Patch, Double> population) {
+        List<Patch> patches = new ArrayList<>(population.size());
+        List<double[]> fitnesses = new ArrayList<>(population.size());
+        for (Map.Entry<Patch, Double> entry : population.entrySet()) {
+            patches.add(entry.getKey());
+            fitnesses.add(new double[]{entry.getValue()});
+        }
+        saveCheckpoint(checkpointFile, methodIndex, nextGeneration, evals, new double[]{orig},
+                patches, fitnesses, mutationRng, individualRng);
     }
 
     /*====== GP Operators ======*/
 
     // Adds a random edit of the given type with equal probability among allowed types
     protected Patch mutate(Patch oldPatch) {
+        return mutate(oldPatch, super.mutationRng);
+    }
+
+    protected Patch mutate(Patch oldPatch, Random mutationRng) {
         Patch patch = oldPatch.clone();
-        patch.addRandomEditOfClasses(super.mutationRng, super.editTypes);
+        patch.addRandomEditOfClasses(mutationRng, super.editTypes);
         return patch;
     }
 
     // Tournament selection for patches
     protected List<Patch> select(Map<Patch, Double> population, Patch origPatch, double origFitness) {
+        return select(population, origPatch, origFitness, super.individualRng);
+    }
+
+    protected List<Patch> select(Map<Patch, Double> population, Patch origPatch, double origFitness, Random individualRng) {
 
         List<Patch> patches = new ArrayList<>(population.keySet());
         if (patches.size() < super.indNumber) {
@@ -159,7 +396,7 @@ public abstract class GPSimple extends GP {
         // Pick half of the population size
         for (int i = 0; i < super.indNumber / 2; i++) {
 
-            Collections.shuffle(patches, super.individualRng);
+            Collections.shuffle(patches, individualRng);
 
             // Best patch from x% randomly selected patches picked each time
             Patch bestPatch = patches.get(0);
@@ -182,10 +419,14 @@ public abstract class GPSimple extends GP {
 
     // Uniform crossover: patch1patch2 and patch2patch1 created, each edit added with x% probability
     protected List<Patch> crossover(List<Patch> patches, Patch origPatch) {
+        return crossover(patches, origPatch, super.mutationRng, super.individualRng);
+    }
+
+    protected List<Patch> crossover(List<Patch> patches, Patch origPatch, Random mutationRng, Random individualRng) {
 
         List<Patch> crossedPatches = new ArrayList<>();
 
-        Collections.shuffle(patches, super.individualRng);
+        Collections.shuffle(patches, individualRng);
         int half = patches.size() / 2;
         for (int i = 0; i < half; i++) {
 
@@ -198,20 +439,20 @@ public abstract class GPSimple extends GP {
             Patch child2 = origPatch.clone();
 
             for (Edit edit : list1) {
-                if (super.mutationRng.nextFloat() > MUTATE_PROBABILITY) {
+                if (mutationRng.nextFloat() > MUTATE_PROBABILITY) {
                     child1.add(edit);
                 }
             }
             for (Edit edit : list2) {
-                if (super.mutationRng.nextFloat() > MUTATE_PROBABILITY) {
+                if (mutationRng.nextFloat() > MUTATE_PROBABILITY) {
                     child1.add(edit);
                 }
-                if (super.mutationRng.nextFloat() > MUTATE_PROBABILITY) {
+                if (mutationRng.nextFloat() > MUTATE_PROBABILITY) {
                     child2.add(edit);
                 }
             }
             for (Edit edit : list1) {
-                if (super.mutationRng.nextFloat() > MUTATE_PROBABILITY) {
+                if (mutationRng.nextFloat() > MUTATE_PROBABILITY) {
                     child2.add(edit);
                 }
             }
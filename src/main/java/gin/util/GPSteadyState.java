@@ -0,0 +1,225 @@
+package gin.util;
+
+import com.sampullara.cli.Args;
+import com.sampullara.cli.Argument;
+import gin.Patch;
+import gin.test.UnitTest;
+import gin.test.UnitTestResultSet;
+import org.pmw.tinylog.Logger;
+
+import java.io.File;
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Method-based steady-state GP search with asynchronous evaluation.
+ * <p>
+ * Generational GP (GPSimple) waits for the slowest patch of every generation, which is
+ * often one that times out. Here up to -slots patches are evaluated at once, and as soon
+ * as any of them finishes its result is folded into the population and a new offspring
+ * is bred and submitted in its place, so no slot waits on another.
+ * <p>
+ * Offspring come from tournament selection, uniform crossover (with probability -pb) and
+ * mutation, using the operators of GPSimple. A new patch joins the population while it
+ * is smaller than -in; after that it replaces the worst of a random tournament, if it is
+ * at least as fit. The budget is -gn x -in evaluations, as for GPSimple.
+ * <p>
+ * All breeding is done on the calling thread, but the order in which evaluations finish
+ * depends on timing, so runs with more than one slot are not exactly repeatable. With more
+ * than one slot tests are run in a separate jvm, as -j, and run times are measured while
+ * other patches compete for the CPU.
+ * <p>
+ * Subclasses give the fitness, which is minimised.
+ */
+public abstract class GPSteadyState extends GPSimple {
+
+    @Serial
+    private static final long serialVersionUID = 5902236470553118342L;
+
+    // Percentage of population size taking part in each tournament
+    private static final double TOURNAMENT_PERCENTAGE = 0.2;
+
+    @Argument(alias = "slots", description = "Number of patches evaluated at the same time; above 1 tests run in a separate jvm and run times are noisier")
+    protected Integer slots = 1;
+
+    public GPSteadyState(String[] args) {
+        super(args);
+        Args.parseOrExit(this, args);
+        Logger.info("Evaluation slots: " + slots);
+        if (slots > 1) {
+            requireSubprocessEvaluation("Slots evaluate patches concurrently");
+        }
+    }
+
+    // Constructor used for testing
+    public GPSteadyState(File projectDir, File methodFile) {
+        super(projectDir, methodFile);
+    }
+
+    // Both kinds of steady-state search minimise the tests' run time or memory use
+    @Override
+    protected boolean fitnessUsesTestCost() {
+        return true;
+    }
+
+    /*============== Implementation of abstract methods  ==============*/
+
+    @Override
+    protected UnitTestResultSet initFitness(String className, List<UnitTest> tests, Patch origPatch) {
+
+        return testPatch(className, tests, origPatch, null);
+    }
+
+    // Calculate fitness threshold, for selection to the next generation
+    @Override
+    protected boolean fitnessThreshold(UnitTestResultSet results, double orig) {
+
+        return results.allTestsSuccessful();
+    }
+
+    // Compare two fitness values, newFitness better if result > 0
+    @Override
+    protected double compareFitness(double newFitness, double oldFitness) {
+
+        return oldFitness - newFitness;
+    }
+
+    /*====== Search ======*/
+
+    @Override
+    protected void search(TargetMethod method, Patch origPatch) {
+
+        if (resumeState != null || checkpointFile != null) {
+            Logger.warn("Steady-state GP does not checkpoint populations; method " + method + " is searched from scratch");
+        }
+
+        String methodName = method.toString();
+
+        // Run original code
+        UnitTestResultSet results = initFitness(method.getClassName(), method.getGinTests(), origPatch);
+        double orig = fitness(results);
+        super.writePatch(-1, 0, results, methodName, orig, 0);
+
+        List<Individual> population = new ArrayList<>();
+        population.add(new Individual(origPatch, orig));
+
+        int budget = genNumber * indNumber;
+        int submitted = 0;
+        int completed = 0;
+        int inFlight = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(slots);
+        CompletionService<UnitTestResultSet> completion = new ExecutorCompletionService<>(executor);
+        try {
+
+            while (inFlight < slots && submitted < budget) {
+                submit(completion, method, breed(population, origPatch));
+                submitted++;
+                inFlight++;
+            }
+
+            while (inFlight > 0) {
+
+                results = completion.take().get();
+                inFlight--;
+                completed++;
+
+                double fitness = fitness(results);
+                // the generation a generational search would be in after this many evaluations
+                int iteration = completed / indNumber;
+                super.writePatch(iteration, completed, results, methodName, fitness, compareFitness(fitness, orig));
+                if (fitnessThreshold(results, orig)) {
+                    insert(population, new Individual(results.getPatch(), fitness));
+                }
+
+                if (submitted < budget) {
+                    submit(completion, method, breed(population, origPatch));
+                    submitted++;
+                    inFlight++;
+                }
+
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Logger.error("Interrupted while waiting for evaluations, stopping search of method " + method);
+        } catch (ExecutionException e) {
+            Logger.error(e.getCause(), "Evaluation failed, stopping search of method " + method);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Individual best = population.get(0);
+        for (Individual individual : population) {
+            if (compareFitness(individual.fitness, best.fitness) > 0) {
+                best = individual;
+            }
+        }
+        Logger.info("Best patch after " + completed + " evaluations: " + best.fitness + " " + best.patch);
+
+    }
+
+    private void submit(CompletionService<UnitTestResultSet> completion, TargetMethod method, Patch patch) {
+        Logger.debug("Submitting patch: " + patch);
+        completion.submit(() -> testPatch(method.getClassName(), method.getGinTests(), patch, null));
+    }
+
+    // One offspring: a tournament winner, crossed over with a second winner with probability combinedProbablity, then mutated
+    private Patch breed(List<Individual> population, Patch origPatch) {
+        Patch child = tournament(population, true).patch.clone();
+        if (population.size() > 1 && super.individualRng.nextDouble() < combinedProbablity) {
+            List<Patch> parents = new ArrayList<>();
+            parents.add(child);
+            parents.add(tournament(population, true).patch.clone());
+            // crossover returns both parents followed by both children
+            child = crossover(parents, origPatch, super.mutationRng, super.individualRng).get(2);
+        }
+        Patch parent = child;
+        return prescreen(() -> mutate(parent, super.mutationRng));
+    }
+
+    // Add to the population while it is below indNumber; after that replace the loser of a tournament if no better
+    void insert(List<Individual> population, Individual individual) {
+        if (population.size() < indNumber) {
+            population.add(individual);
+            return;
+        }
+        Individual worst = tournament(population, false);
+        if (compareFitness(individual.fitness, worst.fitness) >= 0) {
+            population.set(population.indexOf(worst), individual);
+        }
+    }
+
+    // The best (or worst) of a few individuals picked at random
+    private Individual tournament(List<Individual> population, boolean best) {
+        int size = Math.max(2, (int) (indNumber * TOURNAMENT_PERCENTAGE));
+        Individual winner = population.get(super.individualRng.nextInt(population.size()));
+        for (int i = 1; i < size; i++) {
+            Individual challenger = population.get(super.individualRng.nextInt(population.size()));
+            double comparison = compareFitness(challenger.fitness, winner.fitness);
+            if (best ? comparison > 0 : comparison < 0) {
+                winner = challenger;
+            }
+        }
+        return winner;
+    }
+
+    static final class Individual {
+
+        private final Patch patch;
+        private final double fitness;
+
+        Individual(Patch patch, double fitness) {
+            this.patch = patch;
+            this.fitness = fitness;
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package gin.util;
+
+import gin.test.UnitTestResultSet;
+
+import java.io.File;
+import java.io.Serial;
+
+
+/**
+ * Method-based steady-state GP search for memory, with asynchronous evaluation (see GPSteadyState).
+ */
+
+public class GPSteadyStateMemory extends GPSteadyState {
+
+    @Serial
+    private static final long serialVersionUID = -6184075239511372647L;
+
+    public GPSteadyStateMemory(String[] args) {
+        super(args);
+    }
+
+    // Constructor used for testing
+    public GPSteadyStateMemory(File projectDir, File methodFile) {
+        super(projectDir, methodFile);
+    }
+
+    public static void main(String[] args) {
+        GPSteadyStateMemory sampler = new GPSteadyStateMemory(args);
+        sampler.sampleMethods();
+    }
+
+    /*============== Implementation of abstract methods  ==============*/
+
+    // Calculate fitness
+    @Override
+    protected double fitness(UnitTestResultSet results) {
+
+        return GPMemory.memoryFitness(results);
+    }
+
+
+}
@@ -0,0 +1,42 @@
+package gin.util;
+
+import gin.test.UnitTestResultSet;
+
+import java.io.File;
+import java.io.Serial;
+
+
+/**
+ * Method-based steady-state GP search for runtime, with asynchronous evaluation (see GPSteadyState).
+ */
+
+public class GPSteadyStateRuntime extends GPSteadyState {
+
+    @Serial
+    private static final long serialVersionUID = -3841620755120473906L;
+
+    public GPSteadyStateRuntime(String[] args) {
+        super(args);
+    }
+
+    // Constructor used for testing
+    public GPSteadyStateRuntime(File projectDir, File methodFile) {
+        super(projectDir, methodFile);
+    }
+
+    public static void main(String[] args) {
+        GPSteadyStateRuntime sampler = new GPSteadyStateRuntime(args);
+        sampler.sampleMethods();
+    }
+
+    /*============== Implementation of abstract methods  ==============*/
+
+    // Calculate fitness
+    @Override
+    protected double fitness(UnitTestResultSet results) {
+
+        return GPRuntime.runtimeFitness(results);
+    }
+
+
+}
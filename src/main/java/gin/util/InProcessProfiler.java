@@ -0,0 +1,235 @@
+package gin.util;
+
+import gin.test.CacheClassLoader;
+import gin.test.InternalTestRunner;
+import gin.test.UnitTest;
+import gin.test.UnitTestResult;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.pmw.tinylog.Logger;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Profiles a whole test suite in this JVM, in a single pass. Used by gin.util.Profiler with -inproc.
+ * <p>
+ * Instead of a build tool run and a JFR file per test, the tests are run one after another
+ * through {@link InternalTestRunner}, all in one {@link CacheClassLoader} on the project
+ * classpath, while a JFR {@link RecordingStream} delivers jdk.ExecutionSample events.
+ * Each test run is bracketed by a {@link ProfiledTestEvent}, committed to the same
+ * recording, so its start and end are on the same clock as the samples. When the suite
+ * has finished the stream is stopped, which waits for every event to be delivered, and
+ * each sample is attributed to the test whose run it falls in. Samples outside every
+ * test run (class loading between tests, the stream's own thread) are dropped.
+ * <p>
+ * As with file-based JFR profiling, the frames of each sample's stack that are in the main
+ * program are added to the test's {@link CallTree}, which is cleaned as in {@link Trace}.
+ * Tests that fail are reported and left out, as the build tool runs would be.
+ * Tests share static state, as they would in a single surefire or Gradle test JVM.
+ */
+class InProcessProfiler {
+
+    private final Project project;
+    private final String classPath;
+    private final Duration samplingPeriod;
+    private final Set<String> mainClasses;
+
+    // Filled on the stream's thread, read once the stream has stopped
+    private final List<Sample> samples = new ArrayList<>();
+    private final List<Run> runs = new ArrayList<>();
+    // Frames and stacks are repeated in many samples, so keep one copy of each
+    private final Map<String, String> frames = new HashMap<>();
+    private final Map<List<String>, List<String>> stacks = new HashMap<>();
+
+    /**
+     * @param project        the project, for its main classes and method signatures
+     * @param classPath      classpath with the project's main and test classes and dependencies
+     * @param samplingPeriod period of jdk.ExecutionSample
+     */
+    InProcessProfiler(Project project, String classPath, Duration samplingPeriod) {
+        this.project = project;
+        this.classPath = classPath;
+        this.samplingPeriod = samplingPeriod;
+        this.mainClasses = project.allMainClasses();
+    }
+
+    /**
+     * Run every test reps times, recording samples all the while.
+     *
+     * @return a trace for each test that passed every rep, in the order given, merged over reps
+     */
+    Map<UnitTest, Trace> profile(List<UnitTest> tests, int reps) {
+        return profile(tests, reps, Map.of());
+    }
+
+    /**
+     * Run every test reps times, recording samples all the while. A test with a loop count is
+     * run that many times back to back in each rep, so that a test too short to be sampled in
+     * one run still gets samples; its trace is summed over the loop.
+     *
+     * @param loops times to run each test in each rep, 1 for tests not in the map
+     * @return a trace for each test that passed every rep, in the order given, merged over reps
+     */
+    Map<UnitTest, Trace> profile(List<UnitTest> tests, int reps, Map<UnitTest, Integer> loops) {
+
+        samples.clear();
+        runs.clear();
+        List<UnitTestResult> failures = new ArrayList<>();
+
+        try (RecordingStream stream = new RecordingStream()) {
+            stream.enable("jdk.ExecutionSample").withPeriod(samplingPeriod).withStackTrace();
+            stream.enable(ProfiledTestEvent.class).withoutStackTrace();
+            stream.onEvent("jdk.ExecutionSample", this::onSample);
+            stream.onEvent(ProfiledTestEvent.NAME, this::onRun);
+            stream.startAsync();
+
+            InternalTestRunner runner = new InternalTestRunner("", classPath, tests, false);
+            try (CacheClassLoader classLoader = new CacheClassLoader(classPath)) {
+                for (int rep = 1; rep <= reps; rep++) {
+                    for (int i = 0; i < tests.size(); i++) {
+                        UnitTest test = tests.get(i);
+                        int testLoops = loops.getOrDefault(test, 1);
+                        Logger.info(String.format("Running unit test %s (%d/%d) Rep %d/%d", test, i + 1, tests.size(), rep, reps)
+                                + (testLoops > 1 ? " x" + testLoops : ""));
+
+                        ProfiledTestEvent event = new ProfiledTestEvent();
+                        event.testIndex = i;
+                        event.test = test.toString();
+                        event.begin();
+                        UnitTestResult result = runner.runSingleTest(test, classLoader, rep);
+                        for (int loop = 1; loop < testLoops && result.getPassed(); loop++) {
+                            result = runner.runSingleTest(test, classLoader, rep);
+                        }
+                        event.end();
+                        event.commit();
+
+                        if (!result.getPassed()) {
+                            failures.add(result);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                Logger.error(e, "Could not close class loader for the test suite");
+            }
+
+            // waits until every event recorded so far has been delivered
+            stream.stop();
+        }
+
+        Map<UnitTest, Trace> traces = attribute(tests);
+
+        if (!failures.isEmpty()) {
+            Logger.warn("Failed to run some tests!");
+            Logger.warn(failures.size() + " test runs failed, these tests are left out of the profile");
+            for (UnitTestResult failure : failures) {
+                Logger.warn("Failed test: " + failure.getTest() + " due to exception: " + failure.getExceptionType()
+                        + " " + failure.getExceptionMessage());
+                traces.remove(failure.getTest());
+            }
+        }
+        return traces;
+    }
+
+    private synchronized void onSample(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null) {
+            return;
+        }
+        List<String> stack = Trace.mainProgramStack(stackTrace, mainClasses);
+        if (!stack.isEmpty()) {
+            stack.replaceAll(frame -> frames.computeIfAbsent(frame, f -> f));
+            samples.add(new Sample(toNanos(event.getStartTime()), stacks.computeIfAbsent(stack, s -> s)));
+        }
+    }
+
+    private synchronized void onRun(RecordedEvent event) {
+        runs.add(new Run(event.getInt("testIndex"), toNanos(event.getStartTime()), toNanos(event.getEndTime())));
+    }
+
+    // Count each sample against the run it falls in
+    private synchronized Map<UnitTest, Trace> attribute(List<UnitTest> tests) {
+
+        runs.sort((a, b) -> Long.compare(a.start, b.start));
+        List<CallTree> callTrees = new ArrayList<>(tests.size());
+        for (int i = 0; i < tests.size(); i++) {
+            callTrees.add(new CallTree());
+        }
+
+        int unattributed = 0;
+        for (Sample sample : samples) {
+            Run run = runAt(sample.time);
+            if (run == null) {
+                unattributed++;
+            } else {
+                callTrees.get(run.testIndex).addStack(sample.stack);
+            }
+        }
+        Logger.info(String.format("Attributed %d of %d samples in the main program to %d test runs",
+                samples.size() - unattributed, samples.size(), runs.size()));
+
+        Map<UnitTest, Trace> traces = new LinkedHashMap<>();
+        for (int i = 0; i < tests.size(); i++) {
+            traces.put(tests.get(i), Trace.fromCallTree(project, tests.get(i), callTrees.get(i)));
+        }
+        samples.clear();
+        runs.clear();
+        stacks.clear();
+        return traces;
+    }
+
+    // The run containing this time, if any; runs don't overlap as tests are run one at a time
+    private Run runAt(long time) {
+        int index = Collections.binarySearch(runs, new Run(-1, time, time), (a, b) -> Long.compare(a.start, b.start));
+        if (index < 0) {
+            index = -index - 2;
+        }
+        if (index < 0) {
+            return null;
+        }
+        Run run = runs.get(index);
+        return time <= run.end ? run : null;
+    }
+
+    private static long toNanos(java.time.Instant instant) {
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+
+    private record Sample(long time, List<String> stack) {
+    }
+
+    private record Run(int testIndex, long start, long end) {
+    }
+
+    /**
+     * Marks the run of one test in the recording.
+     */
+    @Name(ProfiledTestEvent.NAME)
+    @Label("Gin Profiled Test")
+    @Category("Gin")
+    @StackTrace(false)
+    static class ProfiledTestEvent extends Event {
+
+        static final String NAME = "gin.ProfiledTest";
+
+        @Label("Test Index")
+        int testIndex;
+
+        @Label("Test")
+        String test;
+    }
+
+}
@@ -26,6 +26,11 @@ public class LocalSearchRuntime extends LocalSearchSimple {
         sampler.sampleMethods();
     }
 
+    @Override
+    protected boolean fitnessUsesTestCost() {
+        return true;
+    }
+
     /*============== Implementation of abstract methods  ==============*/
     protected UnitTestResultSet initFitness(String className, List<UnitTest> tests, Patch origPatch) {
         return testPatch(className, tests, origPatch, null);
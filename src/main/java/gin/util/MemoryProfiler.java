@@ -21,16 +21,22 @@ import java.util.stream.Collectors;
 /**
  * Simple profiler for mvn/gradle projects to find the "hot" methods of a test suite using hprof.
  * <p>
+ * With JFR on Java 17 and later, allocations are sampled with jdk.ObjectAllocationSample and
+ * weighted by the bytes each sample stands for. Methods are ranked by the total bytes they
+ * allocated, or by their allocation rate: those bytes over the recorded time of the tests
+ * that allocated in them.
+ * <p>
  * Run directly from the commandline.
  * <p>
  * You provide the project directory, output file, number of reps.... the MemoryProfiler does the rest.
  */
 public class MemoryProfiler {
 
-    private static final String[] HEADER = {"Project", "MethodIndex", "Method", "Count", "Tests"};
+    private static final String[] HEADER = {"Project", "MethodIndex", "Method", "Count", "Tests", "AllocatedBytes", "BytesPerSecond"};
     private static final String WORKING_DIR = "hprof";
     private static String HPROF_ARG = "-agentlib:hprof=heap=sites,lineno=y,depth=1,interval=$hprofInterval,file=";
     private static String JFR_ARG = "-XX:+FlightRecorder -XX:StartFlightRecording:jdk.ObjectAllocationInNewTLAB#enabled=true,name=Gin,dumponexit=true,settings=profile,filename="; // Could replace ObjectAllocationInNewTLAB with ObjectCount (former is for tmp objects and includes stacktrace)
+    private static final String JFR_SAMPLE_ARG = "-XX:+FlightRecorder -XX:StartFlightRecording:jdk.ObjectAllocationSample#enabled=true,jdk.ObjectAllocationSample#throttle=$throttle,jdk.ObjectAllocationSample#stackTrace=true,name=Gin,dumponexit=true,settings=profile,filename=";
     
     
     // Instance Members
@@ -69,6 +75,16 @@ public class MemoryProfiler {
     protected boolean saveChoice = false;
     @Argument(alias = "ba", description = "Comma separated list of arguments to pass to Maven or Gradle")
     protected String[] buildToolArgs = new String[0];
+    @Argument(alias = "w", description = "Number of tests to profile at the same time, capped by the number of cores; workers after the first build in their own copy of the project")
+    protected Integer workers = 1;
+    @Argument(alias = "pin", description = "Pin each profiling worker to its own cores with taskset (Linux, Maven projects)")
+    protected Boolean pinWorkers = false;
+    @Argument(alias = "throttle", description = "Rate of jdk.ObjectAllocationSample events with JFR on Java 17+, e.g. 1000/s or 20/ms")
+    protected String allocationThrottle = "1000/s";
+    @Argument(alias = "rank", description = "Rank hot methods by total allocated bytes (bytes) or allocation rate (rate)")
+    protected String rankBy = "bytes";
+    @Argument(alias = "mvnd", description = "Path to a Maven daemon (mvnd) executable to run each test with, rather than starting mvn for every test")
+    protected File mavenDaemon;
 
     public MemoryProfiler(String[] args) {
         Args.parseOrExit(this, args);
@@ -94,6 +110,9 @@ public class MemoryProfiler {
         if (this.profilerChoice.equalsIgnoreCase("HPROF")) {
 	        // Adds the interval provided by the user
 	        HPROF_ARG = HPROF_ARG.replace("$hprofInterval", Long.toString(hprofInterval));
+        } else if (javaVersion >= 17) {
+            // ObjectAllocationSample is available from 16, weighted by bytes and with a bounded overhead
+            JFR_ARG = JFR_SAMPLE_ARG.replace("$throttle", allocationThrottle);
         }
         
         valiateArguments();
@@ -109,6 +128,15 @@ public class MemoryProfiler {
         if (this.project.isGradleProject() && this.profilerChoice.trim().equalsIgnoreCase("JFR") && SystemUtils.IS_OS_WINDOWS) {
             throw new IllegalArgumentException("Gin will not work with Windows and Java Flight Recorder on Gradle projects.");
         }
+        if (!this.rankBy.equalsIgnoreCase("bytes") && !this.rankBy.equalsIgnoreCase("rate")) {
+            throw new IllegalArgumentException("Hot methods can be ranked by bytes or rate, not: " + this.rankBy);
+        }
+        if (this.mavenDaemon != null && this.pinWorkers) {
+            throw new IllegalArgumentException("Runs with the Maven daemon can't be pinned to cores, so -mvnd can't be combined with -pin.");
+        }
+        if (this.rankBy.equalsIgnoreCase("rate") && this.profilerChoice.trim().equalsIgnoreCase("HPROF")) {
+            throw new IllegalArgumentException("Allocation rates need the duration of the recordings, which hprof does not give; use JFR.");
+        }
     }
     
 
@@ -146,7 +174,11 @@ public class MemoryProfiler {
 
         List<HotMethod> hotMethods = calcHotMethods(testMemoryTraces);
 
-        hotMethods.sort(Collections.reverseOrder());
+        if (this.rankBy.equalsIgnoreCase("rate")) {
+            hotMethods.sort(Comparator.comparingDouble((HotMethod m) -> m.bytesPerSecond).reversed());
+        } else {
+            hotMethods.sort(Collections.reverseOrder());
+        }
 
         writeResults(hotMethods);
 
@@ -178,10 +210,9 @@ public class MemoryProfiler {
 
     protected Map<UnitTest, ProfileResult> profileTestSuite(Set<UnitTest> tests) {
 
-        Map<UnitTest, ProfileResult> results = new HashMap<>();
-
         ensureWorkingDirectory();
 
+        List<TestRun> runs = new ArrayList<>();
         int testCount = 0;
 
         // Sort for replication when debugging
@@ -201,37 +232,55 @@ public class MemoryProfiler {
             testCount++;
 
             for (int rep = 1; rep <= this.reps; rep++) {
+                runs.add(new TestRun(test, testCount, rep));
+            }
 
-                String args;
+        }
 
-                if (this.profilerChoice.equalsIgnoreCase("HPROF")) {
-                    args = HPROF_ARG + hprofFile(test, rep).getAbsolutePath();
-                } else {
-                    args = JFR_ARG + jfrFile(test, rep).getAbsolutePath();
-                }
-                
-                String progressMessage = String.format("Running unit test %s (%d/%d) Rep %d/%d",
-                        test, testCount, tests.size(), rep, this.reps);
+        int total = tests.size();
+        ProfilingWorkers pool = new ProfilingWorkers(workingDir, project.getProjectDir(), this.workers, this.pinWorkers);
+        List<ProfileResult> profileResults;
+        try (BuildSession session = project.openBuildSession(this.mavenDaemon)) {
+            profileResults = pool.run(runs, (run, worker) -> profileTest(session, run, total, worker));
+        }
 
-                Logger.info(progressMessage);
+        // as before, the last rep's result is kept for each test
+        Map<UnitTest, ProfileResult> results = new HashMap<>();
+        for (ProfileResult profileResult : profileResults) {
+            results.put(profileResult.test, profileResult);
+        }
 
-                ProfileResult profileResult;
+        return results;
 
-                try {
-                    project.runUnitTest(test, args, this.mavenTaskName, this.mavenProfile, this.buildToolArgs);
-                    profileResult = new ProfileResult(test, true, null);
-                } catch (FailedToExecuteTestException e) {
-                    Logger.warn("Failed to execute test: " + test + " due to Exception: " + e);
-                    profileResult = new ProfileResult(test, false, e);
-                }
+    }
 
-                results.put(test, profileResult);
+    // Run one rep of one test with profiling enabled, on the given worker
+    private ProfileResult profileTest(BuildSession session, TestRun run, int total, ProfilingWorkers.Worker worker) {
 
-            }
+        UnitTest test = run.test;
+        int rep = run.rep;
 
+        String args;
+
+        if (this.profilerChoice.equalsIgnoreCase("HPROF")) {
+            args = HPROF_ARG + hprofFile(test, rep).getAbsolutePath();
+        } else {
+            args = JFR_ARG + jfrFile(test, rep).getAbsolutePath();
         }
+        args += " " + worker.jvmArgs();
 
-        return results;
+        String progressMessage = String.format("Running unit test %s (%d/%d) Rep %d/%d on worker %d",
+                test, run.index, total, rep, this.reps, worker.id());
+
+        Logger.info(progressMessage);
+
+        try {
+            session.runUnitTest(test, args, this.mavenTaskName, this.mavenProfile, this.buildToolArgs, worker.directory(), worker.cpus(), worker.projectDir());
+            return new ProfileResult(test, true, null);
+        } catch (FailedToExecuteTestException e) {
+            Logger.warn("Failed to execute test: " + test + " due to Exception: " + e);
+            return new ProfileResult(test, false, e);
+        }
 
     }
 
@@ -298,19 +347,28 @@ public class MemoryProfiler {
 
     // Parse traces from test suite
 
-    // For each method found in the entire test suite trace, record its overall count, and the name of
-    // all tests that called it.
-    private List<HotMethod> calcHotMethods(List<MemoryTrace> traces) {
+    // For each method found in the entire test suite trace, record its overall count and bytes, and the name of
+    // all tests that called it. The allocation rate is over the recorded time of those tests.
+    static List<HotMethod> calcHotMethods(List<MemoryTrace> traces) {
 
         List<HotMethod> hotMethods = new LinkedList<>();
 
         MemoryTrace entireTestSuiteMemoryTrace = MemoryTrace.mergeMemoryTraces(traces);
 
+        Map<UnitTest, Long> durations = new HashMap<>();
+        for (MemoryTrace trace : traces) {
+            durations.merge(trace.getTest(), trace.getDurationNanos(), Long::sum);
+        }
+
         for (String hotMethod : entireTestSuiteMemoryTrace.allMethods()) {
 
             Set<UnitTest> callingTests = findTestsCallingMethod(hotMethod, traces);
 
-            HotMethod method = new HotMethod(hotMethod, entireTestSuiteMemoryTrace.getMethodCount(hotMethod), callingTests);
+            long bytes = entireTestSuiteMemoryTrace.getAllocatedBytes(hotMethod);
+            long nanos = callingTests.stream().mapToLong(durations::get).sum();
+            double bytesPerSecond = nanos > 0 ? bytes * 1e9 / nanos : Double.NaN;
+
+            HotMethod method = new HotMethod(hotMethod, entireTestSuiteMemoryTrace.getMethodCount(hotMethod), bytes, bytesPerSecond, callingTests);
 
             hotMethods.add(method);
 
@@ -320,7 +378,7 @@ public class MemoryProfiler {
 
     }
 
-    private Set<UnitTest> findTestsCallingMethod(String method, List<MemoryTrace> traces) {
+    private static Set<UnitTest> findTestsCallingMethod(String method, List<MemoryTrace> traces) {
 
         Set<UnitTest> tests = new HashSet<>();
 
@@ -365,7 +423,9 @@ public class MemoryProfiler {
                     Integer.toString(hotMethodIndex),
                     method.methodName,
                     Integer.toString(method.count),
-                    allTestNames
+                    allTestNames,
+                    Long.toString(method.allocatedBytes),
+                    Double.isNaN(method.bytesPerSecond) ? "" : String.format("%.0f", method.bytesPerSecond)
             };
 
             writer.writeNext(row);
@@ -407,6 +467,9 @@ public class MemoryProfiler {
 
     }
 
+    private record TestRun(UnitTest test, int index, int rep) {
+    }
+
     static class ProfileResult {
         UnitTest test;
         boolean success;
@@ -423,17 +486,23 @@ public class MemoryProfiler {
 
         String methodName;
         int count;
+        long allocatedBytes;
+        double bytesPerSecond;  // NaN if the duration is not known
         Set<UnitTest> tests;
 
-        HotMethod(String method, int count, Set<UnitTest> tests) {
+        HotMethod(String method, int count, long allocatedBytes, double bytesPerSecond, Set<UnitTest> tests) {
             this.methodName = method;
             this.count = count;
+            this.allocatedBytes = allocatedBytes;
+            this.bytesPerSecond = bytesPerSecond;
             this.tests = tests;
         }
 
+        // By allocated bytes, then by number of allocations
         @Override
         public int compareTo(HotMethod o) {
-            return Integer.compare(this.count, o.count);
+            int byBytes = Long.compare(this.allocatedBytes, o.allocatedBytes);
+            return byBytes != 0 ? byBytes : Integer.compare(this.count, o.count);
         }
 
     }
@@ -16,25 +16,43 @@ import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 import java.nio.file.Paths;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BinaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
- * Used by gin.util.Profiler.
+ * Used by gin.util.MemoryProfiler.
+ * <p>
+ * Allocations are attributed to the innermost frame of the main program on their stack.
+ * With JFR, jdk.ObjectAllocationSample events are used where the recording has them
+ * (JDK 16 and later), each weighted by the bytes it stands for; otherwise each
+ * jdk.ObjectAllocationInNewTLAB event is weighted by the size of the new TLAB. With hprof,
+ * the allocated bytes of each site are used directly.
+ * <p>
+ * The duration of a JFR trace runs from the first to the last allocation attributed to the
+ * main program, so that the allocation rate is over the time the tests were running the
+ * program's code rather than over the whole JVM, startup included.
  */
 public class MemoryTrace {
 
     private final UnitTest test;
+    // Number of allocation events, or of allocated bytes for hprof
     Map<String, Integer> methodCounts;
+    Map<String, Long> allocatedBytes;
+    // Time covered by the recording, 0 if not known
+    private final long durationNanos;
 
-    private MemoryTrace(UnitTest test, Map<String, Integer> methodCounts) {
+    MemoryTrace(UnitTest test, Map<String, Integer> methodCounts, Map<String, Long> allocatedBytes, long durationNanos) {
         this.test = test;
         this.methodCounts = methodCounts;
+        this.allocatedBytes = allocatedBytes;
+        this.durationNanos = durationNanos;
     }
 
     // Merge traces together, adding method counts where appropriate
@@ -49,12 +67,16 @@ public class MemoryTrace {
         }
 
         Map<String, Integer> allSamples = new HashMap<>();
+        Map<String, Long> allBytes = new HashMap<>();
+        long duration = 0;
 
         for (MemoryTrace trace : traces) {
             trace.methodCounts.forEach((k, v) -> allSamples.merge(k, v, Integer::sum));
+            trace.allocatedBytes.forEach((k, v) -> allBytes.merge(k, v, Long::sum));
+            duration += trace.durationNanos;
         }
 
-        return new MemoryTrace(test, allSamples);
+        return new MemoryTrace(test, allSamples, allBytes, duration);
 
     }
 
@@ -80,21 +102,27 @@ public class MemoryTrace {
         Map<String, Integer> methodCounts = parseHPROFMethodCounts(traceText, tracePoints);
 
         // Finally: clean up methodCounts, to exclude methods not in the project etc.
-        Map<String, Integer> cleanedCounts = cleanMethodCounts(project, methodCounts);
+        Map<String, String> cleanNames = cleanMethodNames(project, methodCounts.keySet());
+        Map<String, Integer> cleanedCounts = clean(methodCounts, cleanNames, Integer::sum);
 
-        return new MemoryTrace(test, cleanedCounts);
+        // hprof's counts are already in bytes
+        Map<String, Long> cleanedBytes = new HashMap<>();
+        cleanedCounts.forEach((k, v) -> cleanedBytes.put(k, v.longValue()));
+
+        return new MemoryTrace(test, cleanedCounts, cleanedBytes, 0);
 
     }
     
     public static MemoryTrace fromJFRFile(Project project, UnitTest test, File JFRFile) throws IOException {
 
-        // Samples from the table at the end of the file. Use the tracePoints map to add line number.
-        Map<String, Integer> methodCounts = parseJFRMethodCounts(JFRFile, project);
+        // Allocation events, attributed to methods in the main program
+        Allocations allocations = parseJFRAllocations(JFRFile, project.allMainClasses());
 
         // Finally: clean up methodCounts, to exclude methods not in the project etc.
-        Map<String, Integer> cleanedCounts = cleanMethodCounts(project, methodCounts);
+        Map<String, String> cleanNames = cleanMethodNames(project, allocations.counts.keySet());
 
-        return new MemoryTrace(test, cleanedCounts);
+        return new MemoryTrace(test, clean(allocations.counts, cleanNames, Integer::sum),
+                clean(allocations.bytes, cleanNames, Long::sum), allocations.durationNanos());
 
     }
 
@@ -208,12 +236,18 @@ public class MemoryTrace {
 
     }
     
-    private static Map<String, Integer> parseJFRMethodCounts(File jfrF, Project project) throws IOException {
-
-        Map<String, Integer> samples = new HashMap<>();
+    /**
+     * Read the allocation events of a JFR file, attributing each to the innermost frame of the main
+     * program on its stack, as class.method:line.
+     *
+     * @param mainClasses the classes of the main program
+     */
+    static Allocations parseJFRAllocations(File jfrF, Set<String> mainClasses) throws IOException {
 
-        //use main classes to find methods in the main program
-        Set<String> mainClasses = project.allMainClasses();
+        // Recordings from JDK 16 and later have both kinds of event if TLAB events are enabled,
+        // so keep them apart and use the samples if there are any
+        Allocations sampled = new Allocations();
+        Allocations tlab = new Allocations();
 
         try (RecordingFile jfr = new RecordingFile(Paths.get(jfrF.getAbsolutePath()))) {
 
@@ -222,56 +256,82 @@ public class MemoryTrace {
                 RecordedEvent event = jfr.readEvent();
                 String check = event.getEventType().getName();
 
-                //there are two kinds of events we could be looking for
-                // jdk.ObjectCount and jdk.ObjectAllocationInNewTLAB
-                // the latter is for temp objects, but importantly comes with
-                // stack trace info which we can use to identify location
-                // ObjectCount doesn't seem to have this (it would also need
-                // the JFR argument to be XX:StartFlightRecording:jdk.ObjectCount#enabled=true)
-                if (check.endsWith("jdk.ObjectAllocationInNewTLAB")) { // com.oracle.jdk.ObjectAllocationInNewTLAB for Oracle JDK, jdk.ObjectAllocationInNewTLAB for OpenJDK
-                    RecordedStackTrace s = event.getStackTrace();
-
-                    if (s != null) {
+                //jdk.ObjectAllocationSample is throttled, and its weight is the number of bytes
+                //allocated by the thread since the last sample, so summing weights estimates
+                //the bytes allocated; for jdk.ObjectAllocationInNewTLAB (the only allocation
+                //event before JDK 16), the size of the new TLAB plays the same role
+                //(the events are prefixed com.oracle. on Oracle JDK 8)
+                Allocations allocations;
+                long bytes;
+                if (check.endsWith("jdk.ObjectAllocationSample")) {
+                    allocations = sampled;
+                    bytes = event.getLong("weight");
+                } else if (check.endsWith("jdk.ObjectAllocationInNewTLAB")) {
+                    allocations = tlab;
+                    bytes = event.getLong("tlabSize");
+                } else {
+                    continue;
+                }
 
-                        //traverse the call stack, if a frame is part of the main program,
-                        //return it
-                        for (int i = 0; i < s.getFrames().size(); i++) {
+                RecordedStackTrace s = event.getStackTrace();
 
-                            RecordedFrame topFrame = s.getFrames().get(i);
-                            RecordedMethod method = topFrame.getMethod();
+                if (s != null) {
 
-                            String methodName = method.getType().getName();
-                            String className = StringUtils.substringBeforeLast(methodName, ".");
+                    //traverse the call stack, if a frame is part of the main program,
+                    //return it
+                    for (int i = 0; i < s.getFrames().size(); i++) {
 
-                            if (mainClasses.contains(methodName) || mainClasses.contains(className)) {
-                                methodName += "." + method.getName() + ":" + topFrame.getLineNumber();
-                                samples.merge(methodName, 1, Integer::sum);
-                                break;
-                            }
-                        }
+                        RecordedFrame topFrame = s.getFrames().get(i);
+                        RecordedMethod method = topFrame.getMethod();
 
+                        String methodName = method.getType().getName();
+                        String className = StringUtils.substringBeforeLast(methodName, ".");
 
+                        if (mainClasses.contains(methodName) || mainClasses.contains(className)) {
+                            methodName += "." + method.getName() + ":" + topFrame.getLineNumber();
+                            allocations.counts.merge(methodName, 1, Integer::sum);
+                            allocations.bytes.merge(methodName, bytes, Long::sum);
+                            allocations.start = Math.min(allocations.start, toNanos(event.getStartTime()));
+                            allocations.end = Math.max(allocations.end, toNanos(event.getEndTime()));
+                            break;
+                        }
                     }
+
                 }
             }
-            return samples;
 
         }
 
+        return sampled.counts.isEmpty() ? tlab : sampled;
+
+    }
+
+    private static long toNanos(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
     }
 
-    // Run through method counts and cleanup
-    private static Map<String, Integer> cleanMethodCounts(Project project, Map<String, Integer> methodCounts) {
+    // Add up values over the raw keys that have the same method
+    private static <V> Map<String, V> clean(Map<String, V> rawValues, Map<String, String> cleanNames, BinaryOperator<V> sum) {
+        Map<String, V> cleaned = new HashMap<>();
+        rawValues.forEach((method, value) -> {
+            String cleanName = cleanNames.get(method);
+            if (cleanName != null) {
+                cleaned.merge(cleanName, value, sum);
+            }
+        });
+        return cleaned;
+    }
 
-        Map<String, Integer> cleanMemoryTrace = new HashMap<>();
+    // Map raw keys to method signatures, leaving out methods not in the project etc.
+    private static Map<String, String> cleanMethodNames(Project project, Set<String> methods) {
+
+        Map<String, String> cleanNames = new HashMap<>();
 
         // Get all classes in this project
         Set<String> mainClasses = project.allMainClasses();
         Set<String> testClasses = project.allTestClasses();
 
-        for (Map.Entry<String, Integer> entry : methodCounts.entrySet()) {
-
-            String method = entry.getKey();
+        for (String method : methods) {
 
             String className = StringUtils.substringBeforeLast(method, ".");
 
@@ -281,13 +341,13 @@ public class MemoryTrace {
             boolean classInMain = mainClasses.contains(className);
             boolean classInTest = testClasses.contains(className);
 
-            boolean hasLineNumber = entry.getKey().contains(":");
+            boolean hasLineNumber = method.contains(":");
 
             if (classInMain && includeMethod && hasLineNumber) {
 
                 String lineRegex = "^(.*):(\\d*)";
                 Pattern linePattern = Pattern.compile(lineRegex);
-                Matcher lineMatcher = linePattern.matcher(entry.getKey());
+                Matcher lineMatcher = linePattern.matcher(method);
                 lineMatcher.find();
 
                 String methodName = lineMatcher.group(1);
@@ -302,7 +362,7 @@ public class MemoryTrace {
                         Logger.warn("This is likely because the method relates to an enum type.");
                     }
                 } else {
-                    cleanMemoryTrace.put(fullMethodName, entry.getValue());
+                    cleanNames.put(method, fullMethodName);
                 }
 
             } else {
@@ -334,7 +394,7 @@ public class MemoryTrace {
 
         }
 
-        return cleanMemoryTrace;
+        return cleanNames;
 
     }
 
@@ -360,10 +420,35 @@ public class MemoryTrace {
         return this.methodCounts.get(method);
     }
 
+    public long getAllocatedBytes(String method) {
+        return this.allocatedBytes.get(method);
+    }
+
+    /**
+     * @return the time covered by the recordings of this trace in nanoseconds, 0 if not known
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
     public UnitTest getTest() {
         return test;
     }
 
+    // Raw allocation counts and bytes from one recording, and when the first and last were made
+    static class Allocations {
+
+        final Map<String, Integer> counts = new HashMap<>();
+        final Map<String, Long> bytes = new HashMap<>();
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+
+        long durationNanos() {
+            return end > start ? end - start : 0;
+        }
+
+    }
+
     static class MemoryTracePoint {
 
         String method;
@@ -0,0 +1,63 @@
+package gin.util;
+
+import gin.Patch;
+import gin.SourceFile;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * State of a population-based search (GPSimple, NSGAII) between generations,
+ * as saved by {@link Sampler#saveCheckpoint}.
+ * <p>
+ * Patches are kept as their toString() descriptions, since SourceFiles are
+ * rebuilt from the sources on resume; see {@link Patch#fromString}. A
+ * checkpoint with no patches marks the start of method methodIndex.
+ *
+ * @param methodIndex   index of the method being searched in the method file
+ * @param generation    next generation to create
+ * @param evaluations   number of evaluations so far on this method
+ * @param reference     fitness values of the original code
+ * @param patches       current population
+ * @param fitnesses     fitness values of each patch in the population
+ * @param mutationRng   mutation RNG, including its state
+ * @param individualRng individual selection RNG, including its state
+ * @param outputLength  length of the results file when the checkpoint was taken
+ */
+public record PopulationCheckpoint(
+        int methodIndex,
+        int generation,
+        int evaluations,
+        double[] reference,
+        List<String> patches,
+        List<double[]> fitnesses,
+        Random mutationRng,
+        Random individualRng,
+        long outputLength
+) implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @return true if the checkpoint holds a population, rather than marking the start of a method
+     */
+    public boolean hasPopulation() {
+        return !patches.isEmpty();
+    }
+
+    /**
+     * @param sourceFile source file of the method being searched
+     * @return the population, recreated against the given source file
+     */
+    public List<Patch> restorePatches(SourceFile sourceFile) {
+        List<Patch> restored = new ArrayList<>(patches.size());
+        for (String patch : patches) {
+            restored.add(Patch.fromString(patch, sourceFile));
+        }
+        return restored;
+    }
+}
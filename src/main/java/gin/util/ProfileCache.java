@@ -0,0 +1,142 @@
+package gin.util;
+
+import gin.test.UnitTest;
+import org.pmw.tinylog.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Traces of earlier profiling runs, kept so that tests whose code has not changed need not
+ * be profiled again. Used by gin.util.Profiler with -incremental.
+ * <p>
+ * Each test's trace is stored with a key: a hash of the project classpath, of the profiling
+ * settings and of the contents of every class file the test depended on, as recorded by
+ * Ekstazi for the test's class. A cached trace is reused only if the key computed now is the
+ * same, i.e. none of those class files, nor the classpath, nor the way the test is profiled
+ * (e.g. reps or sampling), has changed. Tests with no dependency information
+ * have no key and are always profiled.
+ * <p>
+ * The cache is saved with {@link Checkpoint}, so a crash while saving leaves the previous
+ * cache intact.
+ */
+class ProfileCache implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = -2716405923611748805L;
+
+    private final Map<UnitTest, Entry> entries = new HashMap<>();
+
+    // Hashes of class files in this run, as many tests share dependencies
+    private transient Map<String, String> contentHashes = new HashMap<>();
+
+    /**
+     * @return the cache saved in the file, or an empty cache if there is none or it can't be read
+     */
+    static ProfileCache load(File file) {
+        if (!file.exists()) {
+            return new ProfileCache();
+        }
+        try {
+            ProfileCache cache = Checkpoint.load(file, ProfileCache.class);
+            cache.contentHashes = new HashMap<>();
+            Logger.info("Loaded " + cache.entries.size() + " cached traces from " + file);
+            return cache;
+        } catch (IOException e) {
+            Logger.warn("Could not read profiling cache " + file + ", profiling all tests: " + e);
+            return new ProfileCache();
+        }
+    }
+
+    void save(File file) {
+        try {
+            Checkpoint.save(file, this);
+            Logger.info("Saved " + entries.size() + " traces to profiling cache " + file);
+        } catch (IOException e) {
+            Logger.warn("Could not write profiling cache " + file + ": " + e);
+        }
+    }
+
+    /**
+     * @return the cached trace of the test, or null if there is none or it was stored under another key
+     */
+    Trace get(UnitTest test, String key) {
+        Entry entry = entries.get(test);
+        return key != null && entry != null && entry.key.equals(key) ? entry.trace : null;
+    }
+
+    void put(UnitTest test, String key, Trace trace) {
+        if (key != null) {
+            entries.put(test, new Entry(key, trace));
+        }
+    }
+
+    /**
+     * Forget tests that are no longer in the suite.
+     */
+    void retainAll(Set<UnitTest> tests) {
+        entries.keySet().retainAll(tests);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param dependencies external forms of the URLs of the class files a test depends on
+     * @param classpath    the project classpath
+     * @param settings     the profiling settings that shape a trace, in any fixed form
+     * @return the key for a test with these dependencies
+     */
+    String key(Collection<String> dependencies, String classpath, String settings) {
+        MessageDigest digest = sha256();
+        digest.update(classpath.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        for (String dependency : new TreeSet<>(dependencies)) {
+            digest.update(dependency.getBytes(StandardCharsets.UTF_8));
+            digest.update(contentHashes.computeIfAbsent(dependency, ProfileCache::hashContents).getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // A class file may be in a directory or a jar; one that can't be read hashes as missing
+    private static String hashContents(String url) {
+        MessageDigest digest = sha256();
+        try (InputStream in = URI.create(url).toURL().openStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            return "missing";
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private record Entry(String key, Trace trace) implements Serializable {
+    }
+
+}
@@ -7,6 +7,7 @@ import com.sampullara.cli.Args;
 import com.sampullara.cli.Argument;
 import gin.test.UnitTest;
 import gin.util.enums.ProfilerChoice;
+import gin.util.regression.impl.EkstaziRTS;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.pmw.tinylog.Logger;
@@ -16,6 +17,10 @@ import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -30,11 +35,16 @@ public class Profiler implements Serializable {
 
     @Serial
     private static final long serialVersionUID = 766201566071524493L;
-    private static final String[] HEADER = {"Project", "MethodIndex", "Method", "Count", "Tests"};
+    // Count is the self count, kept under its old name for existing readers of the file
+    // SelfShare is the fraction of all self samples, with the bounds of its 95% confidence interval
+    private static final String[] HEADER = {"Project", "MethodIndex", "Method", "Count", "Tests", "SelfCount", "InclusiveCount",
+            "SelfShare", "SelfShareLow", "SelfShareHigh"};
     private static final String WORKING_DIR = "profiler_out";
     private static final String JFR_ARG_BEFORE_11 = "-XX:+UnlockCommercialFeatures -XX:+FlightRecorder -XX:StartFlightRecording=name=Gin,dumponexit=true,settings=profile,filename=";
 //    private static final String JFR_ARG_11_AFTER = "-Xlog:jfr+system=info -XX:+FlightRecorder -XX:FlightRecorderOptions=stackdepth=256 -XX:StartFlightRecording=name=Gin#JFRNAME#,settings=gin-profile.jfc,dumponexit=true,settings=profile,delay=1s,filename=#JFRNAME#";
     private static final String JFR_ARG_11_AFTER = "-Xlog:jfr+system=info -XX:+FlightRecorder -XX:FlightRecorderOptions=stackdepth=256 -XX:StartFlightRecording=name=Gin#JFRNAME#,settings=#SETTINGSNAME#,dumponexit=true,settings=profile,duration=12s,filename=#JFRNAME#";
+    // The test's own settings come after the built in profile settings, so that its sampling period wins
+    private static final String JFR_ARG_ADAPTIVE = "-Xlog:jfr+system=info -XX:+FlightRecorder -XX:FlightRecorderOptions=stackdepth=256 -XX:StartFlightRecording=name=Gin#JFRNAME#,settings=profile,settings=#SETTINGSNAME#,dumponexit=true,duration=#DURATION#s,filename=#JFRNAME#";
     private static String HPROF_ARG = "-agentlib:hprof=cpu=samples,lineno=y,depth=1,interval=$hprofInterval,file=";
     // Instance Members
     private final File workingDir;
@@ -71,6 +81,26 @@ public class Profiler implements Serializable {
     protected boolean saveProfiles = false;
     @Argument(alias = "ba", description = "Comma separated list of arguments to pass to Maven or Gradle")
     protected String[] buildToolArgs = new String[0];
+    @Argument(alias = "w", description = "Number of tests to profile at the same time, capped by the number of cores; workers after the first build in their own copy of the project")
+    protected Integer workers = 1;
+    @Argument(alias = "pin", description = "Pin each profiling worker to its own cores with taskset (Linux, Maven projects)")
+    protected Boolean pinWorkers = false;
+    @Argument(alias = "inproc", description = "Run all tests in this JVM and profile them in one pass with a JFR stream, rather than one build tool run per test")
+    protected Boolean inProcess = false;
+    @Argument(alias = "jfrp", description = "JFR sampling period in milliseconds for in-process profiling")
+    protected Long jfrSamplingPeriod = 10L;
+    @Argument(alias = "inclusive", description = "Rank hot methods by inclusive samples (method anywhere on the stack) rather than self samples (method innermost)")
+    protected Boolean rankInclusive = false;
+    @Argument(alias = "incremental", description = "Only profile tests whose class dependencies (recorded by Ekstazi) or classpath changed since the last run, reusing cached traces for the rest")
+    protected Boolean incremental = false;
+    @Argument(alias = "cache", description = "Profiling cache file for -incremental, default profile_cache.ser in the profiler's working directory")
+    protected File cacheFile;
+    @Argument(alias = "mvnd", description = "Path to a Maven daemon (mvnd) executable to run each test with, rather than starting mvn for every test")
+    protected File mavenDaemon;
+    @Argument(alias = "adaptive", description = "Choose each test's JFR sampling period and recording length from its run time in the initial run, and loop tests too short to sample in this JVM (Maven projects); not with -incremental")
+    protected Boolean adaptive = false;
+    @Argument(alias = "samples", description = "Number of samples to aim for from each run of a test with -adaptive")
+    protected Integer targetSamples = 100;
 
     public Profiler(String[] args) {
         Args.parseOrExit(this, args);
@@ -107,6 +137,27 @@ public class Profiler implements Serializable {
     }
 
     private void valiateArguments() {
+        if (this.inProcess && !this.profilerChoice.trim().equalsIgnoreCase("JFR")) {
+            throw new IllegalArgumentException("In-process profiling is only available with JFR.");
+        }
+        if (this.inProcess && this.excludeProfiler) {
+            throw new IllegalArgumentException("In-process profiling leaves no profiling files to parse, so can't be combined with -x.");
+        }
+        if (this.incremental && (this.inProcess || this.excludeProfiler)) {
+            throw new IllegalArgumentException("Incremental profiling runs tests one at a time, so can't be combined with -inproc or -x.");
+        }
+        if (this.mavenDaemon != null && this.pinWorkers) {
+            throw new IllegalArgumentException("Runs with the Maven daemon can't be pinned to cores, so -mvnd can't be combined with -pin.");
+        }
+        if (this.adaptive && (!this.profilerChoice.trim().equalsIgnoreCase("JFR") || JavaUtils.getJavaVersion() < 11)) {
+            throw new IllegalArgumentException("Adaptive sampling is only available with JFR on Java 11 or later.");
+        }
+        if (this.adaptive && this.excludeProfiler) {
+            throw new IllegalArgumentException("Adaptive sampling chooses how tests are run, so can't be combined with -x.");
+        }
+        if (this.adaptive && this.incremental) {
+            throw new IllegalArgumentException("Adaptive sampling profiles short tests in-process, so can't be combined with -incremental.");
+        }
         if (this.project.isGradleProject() && this.profilerChoice.trim().equalsIgnoreCase("JFR") && SystemUtils.IS_OS_WINDOWS) {
             throw new IllegalArgumentException("Gin will not work with Windows and Java Flight Recorder on Gradle projects.");
         }
@@ -119,7 +170,11 @@ public class Profiler implements Serializable {
         Logger.info("Profiling project: " + this.project);
 
         if (!this.skipInitialRun) {
-            project.runAllUnitTests(this.mavenTaskName, this.mavenProfile, this.buildToolArgs);
+            if (this.incremental) {
+                runAllUnitTestsWithEkstazi();
+            } else {
+                project.runAllUnitTests(this.mavenTaskName, this.mavenProfile, this.buildToolArgs);
+            }
         }
 
         Set<UnitTest> tests = project.parseTestReports();
@@ -135,9 +190,42 @@ public class Profiler implements Serializable {
             tests = Sets.newHashSet(Iterables.limit(tests, profileFirstNTests));
         }
 
+        if (this.inProcess) {
+            TraceAggregator aggregator = new TraceAggregator(project);
+            profileInProcess(tests, this.jfrSamplingPeriod, loopCounts(tests, this.jfrSamplingPeriod)).forEach(aggregator::addTrace);
+            List<HotMethod> hotMethods = aggregator.hotMethods();
+            rankHotMethods(hotMethods);
+            writeResults(hotMethods);
+            return;
+        }
+
+        TraceAggregator aggregator = new TraceAggregator(this.project);
+        ProfileCache cache = null;
+        Map<UnitTest, String> cacheKeys = null;
+        Map<UnitTest, List<Trace>> parsedTraces = null;
+
         Map<UnitTest, List<ProfileResult>> results = null;
+        List<Trace> loopedTraces = List.of();
         if (!this.excludeProfiler) {
-            results = profileTestSuite(tests);
+            Set<UnitTest> toProfile = tests;
+            if (this.incremental) {
+                cache = ProfileCache.load(cacheFile());
+                cacheKeys = cacheKeys(tests, cache);
+                toProfile = reuseCachedTraces(tests, cache, cacheKeys, aggregator);
+                parsedTraces = new HashMap<>();
+            }
+            Map<UnitTest, Integer> loops = loopCounts(toProfile, SamplingPlan.MIN_PERIOD_MS);
+            if (!loops.isEmpty() && project.isMavenProject()) {
+                // A build tool run can only run a test once, so these are looped in this JVM instead
+                Logger.warn(loops.size() + " of " + toProfile.size() + " tests are too short to get " + this.targetSamples
+                        + " samples in one run, so will be profiled in loops in this JVM rather than through Maven");
+                loopedTraces = profileInProcess(loops.keySet(), SamplingPlan.MIN_PERIOD_MS, loops);
+                toProfile = new HashSet<>(toProfile);
+                toProfile.removeAll(loops.keySet());
+            } else if (!loops.isEmpty()) {
+                Logger.warn(loops.size() + " tests are too short for the target number of samples, but can only be looped in-process for Maven projects");
+            }
+            results = profileTestSuite(toProfile);
             //tests = tests.stream().filter(test -> results.containsKey(test) && results.get(test).success).collect(Collectors.toSet());
             reportSummary(results);
         } else {
@@ -145,12 +233,18 @@ public class Profiler implements Serializable {
             results = buildResultsFromExistingFiles(tests /*, someTimestampOrNull */);
         }
 
-        Logger.info("Parsing traces for " + tests.size() + " tests");
-        List<Trace> testTraces = parseTraces(results.values());
+        Logger.info("Parsing traces for " + results.size() + " tests");
+        aggregateTraces(results.values(), aggregator, parsedTraces);
+        // only with -adaptive, which isn't used with -incremental, so these are never cached
+        loopedTraces.forEach(aggregator::addTrace);
 
-        List<HotMethod> hotMethods = calcHotMethods(testTraces);
+        if (cache != null) {
+            updateCache(cache, cacheKeys, parsedTraces, tests);
+        }
+
+        List<HotMethod> hotMethods = aggregator.hotMethods();
 
-        hotMethods.sort(Collections.reverseOrder());
+        rankHotMethods(hotMethods);
 
         writeResults(hotMethods);
 
@@ -187,16 +281,14 @@ public class Profiler implements Serializable {
 
     protected Map<UnitTest, List<ProfileResult>> profileTestSuite(Set<UnitTest> tests) {
 
-        Map<UnitTest, List<ProfileResult>> results = new HashMap<>();
-
         ensureWorkingDirectory();
 
-        int testCount = 0;
-
         // Sort for replication when debugging
         List<UnitTest> sortedTests = new LinkedList<>(tests);
         Collections.sort(sortedTests);
 
+        List<TestRun> runs = new ArrayList<>();
+        int testCount = 0;
         for (UnitTest test : sortedTests) {
 
             if (isParameterizedTest(test)) {
@@ -207,60 +299,137 @@ public class Profiler implements Serializable {
             }
 
             testCount++;
-
-            List<ProfileResult> profileResultsForThisTest = new ArrayList<>(this.reps);
             for (int rep = 1; rep <= this.reps; rep++) {
+                runs.add(new TestRun(test, testCount, rep));
+            }
+        }
 
-                String args;
-
-                long startTime = System.currentTimeMillis(); // this is to give each JFR output a unique filename
-
-                if (this.profilerChoice.equalsIgnoreCase("HPROF")) {
-                    args = HPROF_ARG + hprofFile(test, rep).getAbsolutePath();
-                } else {
-                    if (JavaUtils.getJavaVersion() < 11) {
-                        args = JFR_ARG_BEFORE_11 + jfrFile(test, rep, startTime).getAbsolutePath();
-                    } else {
-                        args = JFR_ARG_11_AFTER.replace("#JFRNAME#", jfrFile(test, rep, startTime).getAbsolutePath()).replace("#SETTINGSNAME#", writeJfrConfigNextToOutputs(workingDir).toString());
-                    }
+        // Written once, as concurrent runs read them
+        String jfrSettings = null;
+        Map<UnitTest, SamplingPlan.Plan> plans = new HashMap<>();
+        Map<Long, String> settingsByPeriod = new HashMap<>();
+        if (!this.profilerChoice.equalsIgnoreCase("HPROF") && JavaUtils.getJavaVersion() >= 11) {
+            jfrSettings = writeJfrConfigNextToOutputs(workingDir).toString();
+            if (this.adaptive) {
+                SamplingPlan planner = new SamplingPlan(this.targetSamples);
+                for (TestRun run : runs) {
+                    SamplingPlan.Plan plan = plans.computeIfAbsent(run.test, test -> planner.planFor(project.getTestDurationMillis(test)));
+                    settingsByPeriod.computeIfAbsent(plan.periodMillis(), period -> writeJfrConfigNextToOutputs(workingDir, period).toString());
                 }
+            }
+        }
+        String settings = jfrSettings;
+        int total = testCount;
+
+        ProfilingWorkers pool = new ProfilingWorkers(workingDir, project.getProjectDir(), this.workers, this.pinWorkers);
+        List<ProfileResult> profileResults;
+        try (BuildSession session = project.openBuildSession(this.mavenDaemon)) {
+            profileResults = pool.run(runs, (run, worker) -> {
+                SamplingPlan.Plan plan = plans.get(run.test);
+                String testSettings = plan == null ? settings : settingsByPeriod.get(plan.periodMillis());
+                return profileTest(session, run, total, testSettings, plan, worker);
+            });
+        }
 
+        Map<UnitTest, List<ProfileResult>> results = new HashMap<>();
+        for (ProfileResult profileResult : profileResults) {
+            results.computeIfAbsent(profileResult.test, test -> new ArrayList<>(this.reps)).add(profileResult);
+        }
 
-                String progressMessage = String.format("Running unit test %s (%d/%d) Rep %d/%d", test, testCount, tests.size(), rep, this.reps);
+        return results;
 
-                Logger.info(progressMessage);
+    }
 
-                ProfileResult profileResult;
+    // Run one rep of one test with profiling enabled, on the given worker
+    private ProfileResult profileTest(BuildSession session, TestRun run, int total, String jfrSettings, SamplingPlan.Plan plan,
+                                      ProfilingWorkers.Worker worker) {
 
-                try {
-                    project.runUnitTest(test, args, this.mavenTaskName, this.mavenProfile, this.buildToolArgs);
-                    profileResult = new ProfileResult(test, true, null, rep, startTime, jfrFile(test, rep, startTime).getAbsolutePath());
+        UnitTest test = run.test;
+        int rep = run.rep;
 
-                    // Optional: wait briefly to ensure the dump completed before reading
-                    try {
-                        java.nio.file.Path p = jfrFile(test, rep, startTime).toPath();
-                        long s1 = java.nio.file.Files.size(p);
-                        Thread.sleep(200);
-                        long s2 = java.nio.file.Files.size(p);
-                        if (s1 != s2) Thread.sleep(500);
-                    } catch (Exception ignore) {}
-                } catch (FailedToExecuteTestException e) {
-                    Logger.warn("Failed to execute test: " + test + " due to Exception: " + e);
-                    profileResult = new ProfileResult(test, false, e, rep, startTime, jfrFile(test, rep, startTime).getAbsolutePath());
-                }
+        String args;
 
-                profileResultsForThisTest.add(profileResult);
+        long startTime = System.currentTimeMillis(); // this is to give each JFR output a unique filename
 
+        if (this.profilerChoice.equalsIgnoreCase("HPROF")) {
+            args = HPROF_ARG + hprofFile(test, rep).getAbsolutePath();
+        } else {
+            if (JavaUtils.getJavaVersion() < 11) {
+                args = JFR_ARG_BEFORE_11 + jfrFile(test, rep, startTime).getAbsolutePath();
+            } else if (plan != null) {
+                args = JFR_ARG_ADAPTIVE.replace("#JFRNAME#", jfrFile(test, rep, startTime).getAbsolutePath()).replace("#SETTINGSNAME#", jfrSettings)
+                        .replace("#DURATION#", Long.toString(plan.recordingSeconds()));
+            } else {
+                args = JFR_ARG_11_AFTER.replace("#JFRNAME#", jfrFile(test, rep, startTime).getAbsolutePath()).replace("#SETTINGSNAME#", jfrSettings);
             }
+        }
+        args += " " + worker.jvmArgs();
+
+
+        String progressMessage = String.format("Running unit test %s (%d/%d) Rep %d/%d on worker %d", test, run.index, total, rep, this.reps, worker.id());
+
+        Logger.info(progressMessage);
 
-            results.put(test, profileResultsForThisTest);
+        ProfileResult profileResult;
 
+        try {
+            session.runUnitTest(test, args, this.mavenTaskName, this.mavenProfile, this.buildToolArgs, worker.directory(), worker.cpus(), worker.projectDir());
+            profileResult = new ProfileResult(test, true, null, rep, startTime, jfrFile(test, rep, startTime).getAbsolutePath());
+
+            // Optional: wait briefly to ensure the dump completed before reading
+            try {
+                java.nio.file.Path p = jfrFile(test, rep, startTime).toPath();
+                long s1 = java.nio.file.Files.size(p);
+                Thread.sleep(200);
+                long s2 = java.nio.file.Files.size(p);
+                if (s1 != s2) Thread.sleep(500);
+            } catch (Exception ignore) {}
+        } catch (FailedToExecuteTestException e) {
+            Logger.warn("Failed to execute test: " + test + " due to Exception: " + e);
+            profileResult = new ProfileResult(test, false, e, rep, startTime, jfrFile(test, rep, startTime).getAbsolutePath());
         }
 
-        return results;
+        return profileResult;
 
     }
 
+    // Run the entire test suite in this JVM, attributing JFR samples to each test as it runs
+
+    protected List<Trace> profileInProcess(Set<UnitTest> tests, long periodMillis, Map<UnitTest, Integer> loops) {
+
+        // Sort for replication when debugging
+        List<UnitTest> sortedTests = new ArrayList<>();
+        for (UnitTest test : tests) {
+            if (isParameterizedTest(test)) {
+                Logger.warn("Ignoring parameterized test, as jUnit does not support running individual " + "parameterized tests.");
+                Logger.warn("Test was: " + test);
+            } else {
+                sortedTests.add(test);
+            }
+        }
+        Collections.sort(sortedTests);
+
+        Logger.info("Profiling " + sortedTests.size() + " tests in-process, sampling every " + periodMillis + " ms");
+        InProcessProfiler profiler = new InProcessProfiler(project, project.classpath(), java.time.Duration.ofMillis(periodMillis));
+        return new ArrayList<>(profiler.profile(sortedTests, this.reps, loops).values());
+
+    }
+
+    // With -adaptive, how many times to loop each test that is too short to get the target number of samples at this period
+    private Map<UnitTest, Integer> loopCounts(Set<UnitTest> tests, long periodMillis) {
+        Map<UnitTest, Integer> loops = new HashMap<>();
+        if (this.adaptive) {
+            SamplingPlan planner = new SamplingPlan(this.targetSamples);
+            for (UnitTest test : tests) {
+                int testLoops = planner.loopsFor(project.getTestDurationMillis(test), periodMillis);
+                if (testLoops > 1) {
+                    loops.put(test, testLoops);
+                }
+            }
+        }
+        return loops;
+    }
+
     private boolean isParameterizedTest(UnitTest test) {
         return test.getMethodName().contains("[");
     }
@@ -338,42 +507,170 @@ public class Profiler implements Serializable {
 
     // Parse traces from test suite
 
-    // For each method found in the entire test suite trace, record its overall count, and the name of
-    // all tests that called it.
-    private List<HotMethod> calcHotMethods(List<Trace> traces) {
+    // Parse the profiling files on all cores, folding each into the totals for the test suite as soon
+    // as it is parsed. For each method this records its overall count, and all tests that called it.
+    // As in parseTraces, a test's results after its first failed rep are skipped.
+    private void aggregateTraces(Collection<List<ProfileResult>> results, TraceAggregator aggregator,
+                                 Map<UnitTest, List<Trace>> parsedTraces) {
 
-        List<HotMethod> hotMethods = new LinkedList<>();
+        List<ProfileResult> toParse = new ArrayList<>();
+        for (List<ProfileResult> testResults : results) {
+            for (ProfileResult result : testResults) {
+                if (!result.success) {
+                    Logger.info("Skipping failed test: " + result.test);
+                    break;
+                }
+                if (!isParameterizedTest(result.test)) {
+                    toParse.add(result);
+                }
+            }
+        }
 
-        Trace entireTestSuiteTrace = Trace.mergeTraces(traces);
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), toParse.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(toParse.size());
+            for (ProfileResult result : toParse) {
+                futures.add(executor.submit(() -> {
+                    Trace trace = parseInto(aggregator, result);
+                    if (trace != null && parsedTraces != null) {
+                        synchronized (parsedTraces) {
+                            parsedTraces.computeIfAbsent(result.test, t -> new ArrayList<>()).add(trace);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing traces", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to parse traces", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
 
-        for (String hotMethod : entireTestSuiteTrace.allMethods()) {
+        Logger.info("Parsed " + toParse.size() + " profiling files on " + threads + " threads: "
+                + aggregator.methodCount() + " methods sampled by " + aggregator.testCount() + " tests");
 
-            Set<UnitTest> callingTests = findTestsCallingMethod(hotMethod, traces);
+    }
 
-            HotMethod method = new HotMethod(hotMethod, entireTestSuiteTrace.getMethodCount(hotMethod), callingTests);
+    // Parse one profiling file into the aggregator, returning its trace, or null if it can't be read
+    private Trace parseInto(TraceAggregator aggregator, ProfileResult result) {
 
-            hotMethods.add(method);
+        UnitTest test = result.test;
+        Logger.info("Parsing trace for test: " + test + " rep " + result.rep);
 
+        File traceFile;
+        Trace trace;
+        if (this.profilerChoice.equalsIgnoreCase("HPROF")) {
+            traceFile = hprofFile(test, result.rep);
+            trace = aggregator.add(test, Trace.parseHPROFFile(traceFile));
+        } else {
+            traceFile = jfrFile(test, result.rep, result.startTime);
+            try {
+                trace = aggregator.add(test, Trace.parseJFRCallTree(traceFile, aggregator.getMainClasses()));
+            } catch (IOException e) {
+                Logger.warn("Failed to read JFR file due to IOException: " + e);
+                Logger.warn(e);
+                return null;
+            }
         }
 
-        return hotMethods;
+        //delete individual profiling files
+        if (!saveProfiles) {
+            try {
+                Files.deleteIfExists(traceFile.toPath());
+            } catch (IOException e) {
+                Logger.warn("Failed to delete profiling file with IOException: " + e);
+            }
+        }
+
+        return trace;
 
     }
 
-    private Set<UnitTest> findTestsCallingMethod(String method, List<Trace> traces) {
+    // Incremental profiling
 
-        Set<UnitTest> tests = new HashSet<>();
+    // Run the test suite with Ekstazi's agent, which records the class files each test class depends on
+    private void runAllUnitTestsWithEkstazi() {
+        String ekstaziArg = new EkstaziRTS(this.projectDir).getArgumentLine();
+        if (ekstaziArg == null) {
+            Logger.warn("Ekstazi is not available, all tests will be profiled");
+            project.runAllUnitTests(this.mavenTaskName, this.mavenProfile, this.buildToolArgs);
+            return;
+        }
+        Properties properties = new Properties();
+        properties.put("argLine", ekstaziArg);
+        project.runAllUnitTestsWithProperties(this.mavenTaskName, this.mavenProfile, properties, this.buildToolArgs);
+    }
 
-        for (Trace trace : traces) {
+    private File cacheFile() {
+        return this.cacheFile != null ? this.cacheFile : new File(this.workingDir, "profile_cache.ser");
+    }
 
-            if (trace.allMethods().contains(method)) {
-                tests.add(trace.getTest());
+    // The cache key of each test with Ekstazi dependency information
+    private Map<UnitTest, String> cacheKeys(Set<UnitTest> tests, ProfileCache cache) {
+        Map<String, Set<String>> dependencies = new EkstaziRTS(this.projectDir).getTestClassDependencies();
+        String classpath = project.classpath();
+        String settings = profilingSettings();
+        Map<UnitTest, String> keys = new HashMap<>();
+        for (UnitTest test : tests) {
+            Set<String> testDependencies = dependencies.get(test.getFullClassName());
+            if (testDependencies != null) {
+                keys.put(test, cache.key(testDependencies, classpath, settings));
             }
+        }
+        return keys;
+    }
 
+    // The options that change what a test's trace holds, so that traces taken with other options aren't reused
+    private String profilingSettings() {
+        return "reps=" + this.reps
+                + ";profiler=" + this.profilerChoice.toUpperCase()
+                + ";hprofInterval=" + this.hprofInterval
+                + ";adaptive=" + this.adaptive
+                + ";samples=" + this.targetSamples;
+    }
+
+    // Add the cached traces of unchanged tests to the aggregator, returning the tests that need profiling
+    private Set<UnitTest> reuseCachedTraces(Set<UnitTest> tests, ProfileCache cache, Map<UnitTest, String> keys,
+                                            TraceAggregator aggregator) {
+        Set<UnitTest> toProfile = new HashSet<>();
+        for (UnitTest test : tests) {
+            Trace cached = cache.get(test, keys.get(test));
+            if (cached != null) {
+                aggregator.addTrace(cached);
+            } else {
+                toProfile.add(test);
+            }
         }
+        Logger.info("Reusing cached traces for " + (tests.size() - toProfile.size()) + " tests, profiling "
+                + toProfile.size() + " tests whose dependencies changed or were not cached");
+        return toProfile;
+    }
 
-        return tests;
+    // Store the traces of tests profiled in full in this run, and forget tests no longer in the suite
+    private void updateCache(ProfileCache cache, Map<UnitTest, String> keys, Map<UnitTest, List<Trace>> parsedTraces,
+                             Set<UnitTest> tests) {
+        parsedTraces.forEach((test, traces) -> {
+            if (traces.size() == this.reps) {
+                cache.put(test, keys.get(test), Trace.mergeTraces(traces));
+            }
+        });
+        cache.retainAll(tests);
+        cache.save(cacheFile());
+    }
 
+    // Hottest first, by self or inclusive samples
+    private void rankHotMethods(List<HotMethod> hotMethods) {
+        if (this.rankInclusive) {
+            hotMethods.sort(Comparator.comparingInt((HotMethod m) -> m.inclusiveCount).thenComparingInt(m -> m.count).reversed());
+        } else {
+            hotMethods.sort(Collections.reverseOrder());
+        }
     }
 
     // Write hot methods to output csv
@@ -392,6 +689,7 @@ public class Profiler implements Serializable {
         writer.writeNext(HEADER);
 
         int hotMethodIndex = 1;
+        long totalSamples = hotMethods.stream().mapToLong(method -> method.count).sum();
 
         for (HotMethod method : hotMethods) {
 
@@ -401,7 +699,11 @@ public class Profiler implements Serializable {
             }
             String allTestNames = String.join(",", testNames);
 
-            String[] row = {this.projectName, Integer.toString(hotMethodIndex), method.methodName, Integer.toString(method.count), allTestNames};
+            double[] interval = SamplingPlan.confidenceInterval(method.count, totalSamples);
+            String[] row = {this.projectName, Integer.toString(hotMethodIndex), method.methodName, Integer.toString(method.count), allTestNames,
+                    Integer.toString(method.count), Integer.toString(method.inclusiveCount),
+                    String.format(Locale.ROOT, "%.4f", totalSamples == 0 ? 0.0 : (double) method.count / totalSamples),
+                    String.format(Locale.ROOT, "%.4f", interval[0]), String.format(Locale.ROOT, "%.4f", interval[1])};
 
             writer.writeNext(row);
 
@@ -459,6 +761,23 @@ public class Profiler implements Serializable {
         }
     }
 
+    // The same settings, with Java and native method samples taken every periodMillis
+    static Path writeJfrConfigNextToOutputs(File projectDir, long periodMillis) {
+        Path defaults = writeJfrConfigNextToOutputs(projectDir);
+        try {
+            String config = Files.readString(defaults).replace("<setting name=\"period\">10 ms</setting>",
+                    "<setting name=\"period\">" + periodMillis + " ms</setting>");
+            Path out = defaults.resolveSibling("gin-profile-" + periodMillis + "ms.jfc");
+            Files.writeString(out, config);
+            return out.toAbsolutePath();
+        } catch (IOException e) {
+            Logger.error("Couldn't write JFR config file with a sampling period of " + periodMillis + " ms. Exception was:");
+            Logger.error(e);
+            System.exit(1);
+            return null;
+        }
+    }
+
     /**
      * Rebuild results by scanning profiler_out for JFR files produced earlier.
      * Matches files named: <sanitizedTest>_<rep>_<startTime>.jfr
@@ -607,6 +926,9 @@ public class Profiler implements Serializable {
 
     }
 
+    private record TestRun(UnitTest test, int index, int rep) {
+    }
+
     static class ProfileResult {
         UnitTest test;
         boolean success;
@@ -629,11 +951,13 @@ public class Profiler implements Serializable {
 
         String methodName;
         int count;
+        int inclusiveCount;
         Set<UnitTest> tests;
 
-        HotMethod(String method, int count, Set<UnitTest> tests) {
+        HotMethod(String method, int count, int inclusiveCount, Set<UnitTest> tests) {
             this.methodName = method;
             this.count = count;
+            this.inclusiveCount = inclusiveCount;
             this.tests = tests;
         }
 
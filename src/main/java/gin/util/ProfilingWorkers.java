@@ -0,0 +1,238 @@
+package gin.util;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.pmw.tinylog.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs profiling jobs, one build tool run of one test each, on a fixed number of workers.
+ * Used by gin.util.Profiler and gin.util.MemoryProfiler.
+ * <p>
+ * The number of workers is capped by the number of available cores. Each worker has a
+ * directory of its own under the profiler's working directory, which tests should use as
+ * java.io.tmpdir (see {@link Worker#jvmArgs()}) so that concurrent tests don't share
+ * temporary files. Builds running at once in one project would also share its pom, target/
+ * or build/ directories and test reports, so every worker but the first builds in a copy of
+ * the project of its own ({@link Worker#projectDir()}), made when the workers are created;
+ * the copies cost disk space and a first compile each. With pinning, the cores the process
+ * may run on (its affinity mask, e.g. under taskset or a cgroup cpuset) are split evenly
+ * between workers and each worker's runs are started under taskset, so that concurrent
+ * tests are not sampled while competing for the same core; this is only available on Linux
+ * with taskset installed, and for Maven projects.
+ * <p>
+ * Progress is logged as jobs finish, with an estimate of the time left based on the
+ * throughput so far.
+ */
+class ProfilingWorkers {
+
+    private final List<Worker> workers = new ArrayList<>();
+
+    /**
+     * @param workingDir the profiler's working directory
+     * @param projectDir the project the tests belong to, copied for every worker but the first
+     * @param requested  number of workers wanted
+     * @param pin        whether to pin each worker to its own cores
+     * @throws UncheckedIOException if the project can't be copied
+     */
+    ProfilingWorkers(File workingDir, File projectDir, int requested, boolean pin) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int count = Math.max(1, Math.min(requested, cores));
+        if (count < requested) {
+            Logger.warn("Only " + cores + " cores available, using " + count + " profiling workers instead of " + requested);
+        }
+        if (pin && !tasksetAvailable()) {
+            Logger.warn("taskset is not available, profiling workers will not be pinned to cores");
+            pin = false;
+        }
+
+        List<Integer> allowed = pin ? allowedCpus(cores) : List.of();
+        int coresPerWorker = pin ? Math.max(1, allowed.size() / count) : cores / count;
+        for (int id = 0; id < count; id++) {
+            File dir = new File(workingDir, "worker-" + id);
+            new File(dir, "tmp").mkdirs();
+            String cpus = null;
+            if (pin) {
+                // wraps round only if the mask has fewer CPUs than the JVM reported
+                int first = (id * coresPerWorker) % allowed.size();
+                cpus = allowed.subList(first, Math.min(first + coresPerWorker, allowed.size())).stream()
+                        .map(String::valueOf).collect(Collectors.joining(","));
+            }
+            File buildDir = id == 0 ? projectDir : copyProject(projectDir, workingDir, new File(dir, "project"));
+            workers.add(new Worker(id, dir, cpus, buildDir));
+        }
+        Logger.info("Profiling with " + count + " worker(s)" + (pin ? ", " + coresPerWorker + " core(s) each" : ""));
+    }
+
+    int size() {
+        return workers.size();
+    }
+
+    // Copy the project afresh, leaving out the working directory and so the copies themselves;
+    // the copy is marked so that the project's build cache doesn't hash its build files
+    private static File copyProject(File projectDir, File workingDir, File copy) {
+        Path skipped = workingDir.getAbsoluteFile().toPath();
+        try {
+            FileUtils.deleteDirectory(copy);
+            FileUtils.copyDirectory(projectDir, copy, file -> !file.getAbsoluteFile().toPath().startsWith(skipped));
+            FileUtils.touch(new File(copy, BuildCache.COPY_MARKER));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not copy " + projectDir + " for a profiling worker", e);
+        }
+        return copy;
+    }
+
+    /**
+     * Run a job for every task, each on whichever worker is free.
+     *
+     * @return the results, in the order of the tasks
+     */
+    <T, R> List<R> run(List<T> tasks, Job<T, R> job) {
+
+        BlockingQueue<Worker> idle = new ArrayBlockingQueue<>(workers.size(), false, workers);
+        ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+        AtomicInteger done = new AtomicInteger();
+        long start = System.currentTimeMillis();
+
+        List<Future<R>> futures = new ArrayList<>(tasks.size());
+        for (T task : tasks) {
+            Callable<R> callable = () -> {
+                Worker worker = idle.take();
+                try {
+                    return job.run(task, worker);
+                } finally {
+                    idle.put(worker);
+                    logProgress(done.incrementAndGet(), tasks.size(), start);
+                }
+            };
+            futures.add(executor.submit(callable));
+        }
+
+        List<R> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while profiling", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Profiling job failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private static void logProgress(int done, int total, long start) {
+        long elapsed = System.currentTimeMillis() - start;
+        long remaining = elapsed * (total - done) / done;
+        Logger.info(String.format("Profiled %d/%d (%.1f%%), elapsed %s, ETA %s",
+                done, total, 100.0 * done / total, formatDuration(elapsed), formatDuration(remaining)));
+    }
+
+    static String formatDuration(long millis) {
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(millis);
+        return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+
+    // The CPUs this process may run on, or 0 to cores - 1 if they can't be read
+    private static List<Integer> allowedCpus(int cores) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("Cpus_allowed_list:")) {
+                    List<Integer> cpus = parseCpuList(line.substring(line.indexOf(':') + 1));
+                    if (!cpus.isEmpty()) {
+                        return cpus;
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            Logger.warn("Could not read the CPUs this process may use, pinning workers from CPU 0: " + e);
+        }
+        List<Integer> cpus = new ArrayList<>();
+        for (int cpu = 0; cpu < cores; cpu++) {
+            cpus.add(cpu);
+        }
+        return cpus;
+    }
+
+    /**
+     * @param list a Linux CPU list, e.g. "0-3,8,10-11"
+     * @return the CPUs in it, in order
+     * @throws IllegalArgumentException if the list can't be parsed
+     */
+    static List<Integer> parseCpuList(String list) {
+        List<Integer> cpus = new ArrayList<>();
+        for (String part : list.trim().split(",")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            String[] range = part.split("-");
+            int first = Integer.parseInt(range[0].trim());
+            int last = range.length > 1 ? Integer.parseInt(range[1].trim()) : first;
+            for (int cpu = first; cpu <= last; cpu++) {
+                cpus.add(cpu);
+            }
+        }
+        return cpus;
+    }
+
+    private static boolean tasksetAvailable() {
+        if (!SystemUtils.IS_OS_LINUX) {
+            return false;
+        }
+        try {
+            Process process = new ProcessBuilder("taskset", "-V").redirectErrorStream(true).start();
+            process.getInputStream().readAllBytes();
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * One profiling job, e.g. running one test once.
+     */
+    @FunctionalInterface
+    interface Job<T, R> {
+        R run(T task, Worker worker);
+    }
+
+    /**
+     * @param id         worker number, from 0
+     * @param directory  the worker's own directory
+     * @param cpus       taskset CPU list for the worker, or null if not pinned
+     * @param projectDir the project, or the worker's own copy of it, to run builds in
+     */
+    record Worker(int id, File directory, String cpus, File projectDir) {
+
+        /**
+         * @return JVM arguments giving the test JVM the worker's own temporary directory
+         */
+        String jvmArgs() {
+            return "-Djava.io.tmpdir=" + new File(directory, "tmp").getAbsolutePath();
+        }
+    }
+
+}
@@ -1,8 +1,5 @@
 package gin.util;
 
-import com.github.javaparser.StaticJavaParser;
-import com.github.javaparser.ast.CompilationUnit;
-import com.github.javaparser.ast.body.MethodDeclaration;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.reflect.ClassPath;
 import gin.test.UnitTest;
@@ -47,6 +44,7 @@ public class Project implements Serializable {
     private static final String DEFAULT_MAVEN_HOME = File.separator + "usr" + File.separator + "local" + File.separator;
 
     private static final boolean DEBUG = false;
+    private static final Pattern GRADLE_DURATION = Pattern.compile("(?:(\\d+)d)?(?:(\\d+)h)?(?:(\\d+)m)?(?:([\\d.]+)s)?");
     private final File projectDir;
     private final String projectName;
     private final List<File> moduleDirs = new LinkedList<>();
@@ -59,6 +57,13 @@ public class Project implements Serializable {
     private File mavenHome = new File(DEFAULT_MAVEN_HOME);
     private String gradleVersion = "7.6";
     private BuildType buildType;
+    // Built when first needed, as the source directories are only known after setUp
+    private transient SourceIndex sourceIndex;
+    private transient SourceIndex mainSourceIndex;
+    // Loaded when first needed, as it depends on the Gradle version and Maven home
+    private transient BuildCache buildCache;
+    // Run times of the passing tests in the last parsed test reports, in milliseconds
+    private final Map<UnitTest, Double> testDurations = new HashMap<>();
 
     /**
      * Builds a project object. You must call {@link #setUp()} or {@link #setUp(String, String)} before using it to capture the project's structure.
@@ -73,55 +78,7 @@ public class Project implements Serializable {
     }
 
     protected static String getMethodSignature(File srcDir, String methodName, String className, int lineNumber) {
-
-        String pathToSource = className.replace(".", File.separator) + ".java";
-        File sourceFile = new File(srcDir, pathToSource);
-
-        if (!sourceFile.exists()) {
-            return null;
-        }
-
-        CompilationUnit unit = null;
-        try {
-            unit = StaticJavaParser.parse(sourceFile);
-        } catch (FileNotFoundException e) {
-            Logger.error("Cannot find source file: " + sourceFile);
-            System.exit(-1);
-        }
-
-        // Get all methods in the compilation unit
-        List<MethodDeclaration> nodes = unit.getChildNodesByType(MethodDeclaration.class);
-
-        for (MethodDeclaration m : nodes) {
-
-            String name = m.getNameAsString();
-
-            int start = m.getRange().get().begin.line;
-            int end = m.getRange().get().end.line;
-
-            if (name.equals(methodName) && (start <= lineNumber) && (lineNumber <= end)) {
-
-                String methodSignature;
-                methodSignature = m.getDeclarationAsString(false, false, false);
-
-                // Strip out return type if provided
-                String prefix = methodSignature.substring(0, methodSignature.indexOf("("));
-                if (prefix.contains(" ")) {
-                    int lastIndexOf = prefix.trim().lastIndexOf(" ");
-                    methodSignature = methodSignature.substring(lastIndexOf + 1).trim();
-                }
-
-                // Remove all spaces
-                methodSignature = methodSignature.replaceAll("\\s", "");
-
-                return className + "." + methodSignature;
-
-            }
-
-        }
-
-        return null;
-
+        return new SourceIndex(List.of(srcDir)).getMethodSignature(className, methodName, lineNumber);
     }
 
     public void setUp() {
@@ -173,6 +130,7 @@ public class Project implements Serializable {
 
     public void setMavenHome(File mavenHome) {
         this.mavenHome = mavenHome;
+        this.buildCache = null;
     }
 
     public String getProjectName() {
@@ -185,6 +143,7 @@ public class Project implements Serializable {
 
     public void setGradleVersion(String gradleVersion) {
         this.gradleVersion = gradleVersion;
+        this.buildCache = null;
     }
 
     public BuildType getBuildType() {
@@ -233,18 +192,27 @@ public class Project implements Serializable {
 
     // Find a given source file within the project by classname
     public File findSourceFile(String className) {
+        return mainSourceIndex().findSourceFile(className);
+    }
 
-        String pathToSource = className.replace(".", File.separator) + ".java";
-
-        for (File dir : mainSourceDirs) {
-            File sourceFile = new File(dir, pathToSource);
-            if (sourceFile.exists()) {
-                return sourceFile;
-            }
+    // Index of all source files, shared by every method signature lookup so that each file is parsed once
+    private synchronized SourceIndex sourceIndex() {
+        if (sourceIndex == null) {
+            sourceIndex = new SourceIndex(allSourceDirs());
         }
+        return sourceIndex;
+    }
 
-        return null;
+    private synchronized SourceIndex mainSourceIndex() {
+        if (mainSourceIndex == null) {
+            mainSourceIndex = new SourceIndex(new LinkedList<>(mainSourceDirs));
+        }
+        return mainSourceIndex;
+    }
 
+    private synchronized void resetSourceIndex() {
+        sourceIndex = null;
+        mainSourceIndex = null;
     }
 
     // Check for build file to determine Maven/Gradle
@@ -267,14 +235,41 @@ public class Project implements Serializable {
     // Find source directories
     private void detectDirs() {
 
+        resetSourceIndex();
+
         if (isGradleProject()) {
-            detectDirsGradle();
+            // Asking Gradle for the project model starts a daemon and configures every module
+            List<List<File>> cachedDirs = buildCache().getDirs();
+            if (cachedDirs != null) {
+                Logger.info("Using cached project directories from " + BuildCache.FILE_NAME);
+                List<List<File>> dirLists = dirLists();
+                for (int i = 0; i < dirLists.size(); i++) {
+                    dirLists.get(i).addAll(cachedDirs.get(i));
+                }
+            } else {
+                detectDirsGradle();
+                buildCache().setDirs(dirLists());
+                buildCache().save(projectDir);
+            }
         } else if (isMavenProject()) {
             detectDirsMaven();
         }
 
     }
 
+    // The directory lists, in the order they are cached
+    private List<List<File>> dirLists() {
+        return List.of(moduleDirs, mainSourceDirs, testSourceDirs, mainResourceDirs, testResourceDirs, mainClassDirs, testClassDirs);
+    }
+
+    private synchronized BuildCache buildCache() {
+        if (buildCache == null) {
+            List<String> settings = List.of(buildType.toString(), String.valueOf(gradleVersion), mavenHome.getAbsolutePath());
+            buildCache = BuildCache.load(projectDir, BuildCache.key(projectDir, settings));
+        }
+        return buildCache;
+    }
+
     public boolean isGradleProject() {
         return buildType == BuildType.GRADLE;
     }
@@ -435,6 +430,21 @@ public class Project implements Serializable {
 
     public String getDependenciesClasspath() {
 
+        String cached = buildCache().getDependenciesClasspath();
+        if (cached != null) {
+            Logger.info("Using cached dependencies classpath from " + BuildCache.FILE_NAME);
+            return cached;
+        }
+
+        String dependencies = resolveDependenciesClasspath();
+        buildCache().setDependenciesClasspath(dependencies);
+        buildCache().save(projectDir);
+        return dependencies;
+
+    }
+
+    private String resolveDependenciesClasspath() {
+
         StringBuilder dependencies = new StringBuilder();
         try {
             InvocationRequest request = new DefaultInvocationRequest();
@@ -520,6 +530,7 @@ public class Project implements Serializable {
     }
 
     public Set<UnitTest> parseTestReports() {
+        testDurations.clear();
         if (isMavenProject()) {
             return parseMavenTestReport();
         } else {
@@ -705,6 +716,7 @@ public class Project implements Serializable {
                             Logger.warn("Excluding ignored or failed test case: " + test);
                         } else {
                             tests.add(test);
+                            recordDuration(test, parseGradleDuration(rowEntries.get(1).text()));
                         }
                     }
                 }
@@ -795,6 +807,7 @@ public class Project implements Serializable {
                         Logger.warn("Test case failed, excluded by profiler: " + test);
                     } else {
                         tests.add(test);
+                        recordDuration(test, parseSurefireTime(testCase.attr("time")));
                     }
                 }
 
@@ -806,24 +819,103 @@ public class Project implements Serializable {
 
     }
 
+    /**
+     * @return the run time of the test in the last parsed test report, in milliseconds, or null if it is not known
+     */
+    public Double getTestDurationMillis(UnitTest test) {
+        return testDurations.get(test);
+    }
+
+    private void recordDuration(UnitTest test, Double millis) {
+        if (millis != null) {
+            testDurations.put(test, millis);
+        }
+    }
+
+    // Surefire reports times in seconds, e.g. 0.012, with a grouping separator in older versions
+    static Double parseSurefireTime(String time) {
+        try {
+            return Double.parseDouble(time.replace(",", "").trim()) * 1000;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Gradle reports durations as e.g. 0.012s, 1m2.50s or 1h0m3.10s, and - if there is none
+    static Double parseGradleDuration(String duration) {
+        Matcher matcher = GRADLE_DURATION.matcher(duration.trim());
+        if (!matcher.matches() || duration.trim().isEmpty()) {
+            return null;
+        }
+        double millis = 0;
+        long[] unitMillis = {24 * 3_600_000L, 3_600_000L, 60_000L, 1000L};
+        for (int i = 0; i < unitMillis.length; i++) {
+            if (matcher.group(i + 1) != null) {
+                millis += Double.parseDouble(matcher.group(i + 1)) * unitMillis[i];
+            }
+        }
+        return millis;
+    }
+
     public void runUnitTest(UnitTest test, String args, String task, String mavenProfile, String[] buildToolArgs) throws
             FailedToExecuteTestException {
 
+        runUnitTest(test, args, task, mavenProfile, buildToolArgs, null, null);
+
+    }
+
+    /**
+     * Run a single test, possibly at the same time as other tests of this project.
+     *
+     * @param workerDir directory of this run's own, for the taskset wrapper script; required if cpus is set
+     * @param cpus      taskset CPU list to pin the Maven run and its forked test JVM to, e.g. "0-3", or null
+     */
+    public void runUnitTest(UnitTest test, String args, String task, String mavenProfile, String[] buildToolArgs,
+                            File workerDir, String cpus) throws FailedToExecuteTestException {
+
         if (isMavenProject()) {
-            runUnitTestMaven(test, args, task, mavenProfile, buildToolArgs);
+            runUnitTestMaven(test, args, task, mavenProfile, buildToolArgs, workerDir, cpus);
         } else {
+            // Gradle tests run in a JVM forked by the daemon, which can't be pinned from here
             runUnitTestGradle(test, args, buildToolArgs);
         }
 
     }
 
+    /**
+     * Open a session for running many tests one at a time, which keeps build tool connections
+     * open between tests. Close it once all tests have run.
+     *
+     * @param mavenDaemon mvnd executable to run Maven tests with, or null to use mvn
+     */
+    public BuildSession openBuildSession(@Nullable File mavenDaemon) {
+        return new BuildSession(this, mavenDaemon);
+    }
+
     public void runUnitTestGradle(UnitTest test, String args, String[] gradleArgs) {
 
-        File connectionDir = projectDir;
+        ProjectConnection connection = connectGradle(gradleConnectionDir(test));
 
-        if (!test.getModuleName().isEmpty()) {
-            connectionDir = new File(test.getModuleName());
+        runUnitTestGradle(connection, test, args, gradleArgs);
+
+        connection.close();
+
+    }
+
+    // Tests in a module are run through a connection to the module
+    File gradleConnectionDir(UnitTest test) {
+        return test.getModuleName().isEmpty() ? projectDir : new File(test.getModuleName());
+    }
+
+    // As above, but in buildDir, a copy of the project, if it is not null
+    File gradleConnectionDir(UnitTest test, File buildDir) {
+        if (buildDir == null) {
+            return gradleConnectionDir(test);
         }
+        return test.getModuleName().isEmpty() ? buildDir : new File(buildDir, test.getModuleName());
+    }
+
+    ProjectConnection connectGradle(File connectionDir) {
 
         GradleConnector connector = GradleConnector.newConnector().forProjectDirectory(connectionDir);
 
@@ -831,7 +923,11 @@ public class Project implements Serializable {
             connector.useGradleVersion(gradleVersion);
         }
 
-        ProjectConnection connection = connector.connect();
+        return connector.connect();
+
+    }
+
+    void runUnitTestGradle(ProjectConnection connection, UnitTest test, String args, String[] gradleArgs) {
 
         TestLauncher testLauncher = connection.newTestLauncher();
 
@@ -861,14 +957,29 @@ public class Project implements Serializable {
             System.exit(-1);
         }
 
-        connection.close();
-
     }
 
 
     public void runUnitTestMaven(UnitTest test, String args, String taskName, String profile, String[] mavenArgs)
             throws FailedToExecuteTestException {
 
+        runUnitTestMaven(test, args, taskName, profile, mavenArgs, null, null);
+
+    }
+
+    public void runUnitTestMaven(UnitTest test, String args, String taskName, String profile, String[] mavenArgs,
+                                 File workerDir, String cpus) throws FailedToExecuteTestException {
+
+        InvocationRequest request = unitTestRequestMaven(test, args, taskName, profile, mavenArgs, true, null);
+        runUnitTestMaven(mavenInvoker(workerDir, cpus, null), request, test);
+
+    }
+
+    // A request to run a single test; snapshots are checked for updates only if updateSnapshots is set.
+    // The build runs in buildDir, a copy of the project, if it is not null
+    InvocationRequest unitTestRequestMaven(UnitTest test, String args, String taskName, String profile, String[] mavenArgs,
+                                           boolean updateSnapshots, File buildDir) {
+
         // Maven requires a # separating class and method, with no parentheses
         String testClassName = test.getFullClassName();
         String methodName = test.getMethodName();
@@ -876,7 +987,7 @@ public class Project implements Serializable {
 
         InvocationRequest request = new DefaultInvocationRequest();
 
-        File pomFile = new File(projectDir, "pom.xml");
+        File pomFile = new File(buildDir == null ? projectDir : buildDir, "pom.xml");
         request.setPomFile(pomFile);
 
         if (!profile.isEmpty()) {
@@ -889,16 +1000,13 @@ public class Project implements Serializable {
 
         request.setGoals(Collections.singletonList(taskName));
 
-        request.setUpdateSnapshots(true);
+        request.setUpdateSnapshots(updateSnapshots);
         request.setAlsoMake(false);
         request.setUserSettingsFile(new File(mavenHome + "/conf/settings.xml"));
         request.setLocalRepositoryDirectory(new File(System.getProperty("user.home") + "/.m2/repository"));
         request.addArg("-X"); // extra debugging
         request.setBatchMode(true); // silence the “interactive mode” warning with
 
-        Invoker invoker = new DefaultInvoker();
-        invoker.setMavenHome(mavenHome);
-
         Properties properties = new Properties();
         request.setProperties(properties);
         properties.setProperty("test", testName);
@@ -917,6 +1025,29 @@ public class Project implements Serializable {
             // Do not add -am here; prime deps in a separate install step if needed
         }
 
+        return request;
+
+    }
+
+    /**
+     * @param workerDir   directory for the taskset wrapper script; required if cpus is set
+     * @param cpus        taskset CPU list to pin Maven and its forked test JVM to, or null
+     * @param mavenDaemon mvnd executable to run instead of mvn, or null; ignored if cpus is set
+     */
+    Invoker mavenInvoker(File workerDir, String cpus, File mavenDaemon) {
+        Invoker invoker = new DefaultInvoker();
+        invoker.setMavenHome(mavenHome);
+        if (cpus != null) {
+            // CPU affinity is inherited, so this pins surefire's forked JVM too
+            invoker.setMavenExecutable(pinnedMavenExecutable(workerDir, cpus));
+        } else if (mavenDaemon != null) {
+            invoker.setMavenExecutable(mavenDaemon);
+        }
+        return invoker;
+    }
+
+    void runUnitTestMaven(Invoker invoker, InvocationRequest request, UnitTest test) throws FailedToExecuteTestException {
+
         InvocationResult result = null;
 
         try {
@@ -935,6 +1066,26 @@ public class Project implements Serializable {
     }
 
 
+    // A script in workerDir that runs mvn under taskset, written on first use
+    private File pinnedMavenExecutable(File workerDir, String cpus) {
+        File script = new File(workerDir, "mvn-taskset-" + cpus.replace(',', '_'));
+        if (!script.exists()) {
+            File mvn = new File(mavenHome, "bin" + File.separator + "mvn");
+            try {
+                FileUtils.writeStringToFile(script, "#!/bin/sh\nexec taskset -c " + cpus + " \"" + mvn.getAbsolutePath() + "\" \"$@\"\n",
+                        java.nio.charset.StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                Logger.error("Could not write taskset wrapper for maven: " + script);
+                Logger.trace(e);
+                System.exit(-1);
+            }
+            if (!script.setExecutable(true)) {
+                Logger.warn("Could not make taskset wrapper for maven executable: " + script);
+            }
+        }
+        return script;
+    }
+
     public Set<String> allMainClasses() {
 
         Set<String> mainClasses = new HashSet<>();
@@ -999,13 +1150,7 @@ public class Project implements Serializable {
         String methodName = method.substring(method.lastIndexOf('.') + 1).trim();
         String className = method.substring(0, method.lastIndexOf('.'));
 
-        String signature = null;
-        for (File srcDir : this.allSourceDirs()) {
-            signature = getMethodSignature(srcDir, methodName, className, lineNumber);
-            if (signature != null) {
-                break;
-            }
-        }
+        String signature = sourceIndex().getMethodSignature(className, methodName, lineNumber);
 
         if (signature == null) {
             Logger.warn("Could not find source for method: " + method + " line: " + lineNumber);
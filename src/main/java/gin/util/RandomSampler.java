@@ -152,6 +152,16 @@ public class RandomSampler extends Sampler {
     }
 
 
+    // A patch of patchSize random edits
+    private Patch randomPatch(SourceFile sourceFile) {
+        Patch patch = new Patch(sourceFile);
+        for (int j = 0; j < patchSize; j++) {
+            // patch.addRandomEditOfClasses(prng, editTypes, combinedProbablity);
+            patch = neighbour(patch);
+        }
+        return patch;
+    }
+
     protected void sampleMethodsHook() {
 
         Random mrng = new JDKRandomBridge(RandomSource.MT, Long.valueOf(methodSeed));
@@ -177,11 +187,7 @@ public class RandomSampler extends Sampler {
                 // Setup SourceFile for patching
                 SourceFile sourceFile = SourceFile.makeSourceFileForEditTypes(editTypes, source.getPath(), Collections.singletonList(method.getMethodName()));
 
-                Patch patch = new Patch(sourceFile);
-                for (int j = 0; j < patchSize; j++) {
-                    // patch.addRandomEditOfClasses(prng, editTypes, combinedProbablity);
-                    patch = neighbour(patch);
-                }
+                Patch patch = prescreen(() -> randomPatch(sourceFile));
 
                 Logger.info("Testing random patch " + patch + " for method: " + method + " with ID " + methodID);
 
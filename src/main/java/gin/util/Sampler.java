@@ -8,9 +8,11 @@ import com.sampullara.cli.Argument;
 import gin.Patch;
 import gin.SourceFile;
 import gin.edit.llm.LLMConfig;
+import gin.edit.llm.SuggestionFilter;
 import gin.edit.llm.PromptTemplate;
 import gin.edit.llm.LLMConfig.PromptType;
 import gin.test.*;
+import gin.util.regression.StatementCoverageSelector;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
@@ -21,6 +23,9 @@ import java.lang.reflect.Field;
 import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 /**
  * Handy class for mutating and running tests on mutated code.
@@ -92,6 +97,8 @@ public abstract class Sampler implements Serializable {
     protected Boolean failFast = false;
     // This will only be instantiated with Gradle and Maven projects, used for getting classpath
     protected Project project = null;
+    // Source lookups for projects without a build file, created on first use
+    private transient SourceIndex sourceIndex = null;
     protected List<TargetMethod> methodData = new ArrayList<>();
 
     @Argument(alias = "oaik", description = "OpenAI API key for LLM edits")
@@ -111,10 +118,39 @@ public abstract class Sampler implements Serializable {
 
     @Argument(alias = "ptt", description = "Prompt Template for LLM edits")
     protected String llmPromptTemplate = "";
+
+    @Argument(alias = "ctxb", description = "Token budget for the class context ($CONTEXT$) in LLM prompts; 0 to disable")
+    protected Integer llmContextTokenBudget = 512;
+
+    @Argument(alias = "sur", description = "Pre-screen patches with an online surrogate model and skip those unlikely to pass")
+    protected Boolean useSurrogate = false;
+
+    @Argument(alias = "surx", description = "Probability of evaluating a patch the surrogate would skip")
+    protected Double surrogateExplorationRate = SurrogateModel.DEFAULT_EXPLORATION_RATE;
+
+    @Argument(alias = "surt", description = "Skip patches predicted to pass with a lower probability than this")
+    protected Double surrogateThreshold = SurrogateModel.DEFAULT_THRESHOLD;
+
+    @Argument(alias = "surw", description = "Number of patches evaluated before the surrogate skips any")
+    protected Integer surrogateWarmup = SurrogateModel.DEFAULT_WARMUP;
+
+    @Argument(alias = "surr", description = "Number of candidates generated in place of a skipped patch before one is evaluated anyway")
+    protected Integer surrogateRetries = 10;
+
+    protected SurrogateModel surrogate = null;
+
+    @Argument(alias = "covrts", description = "Run only the tests that cover the statements each patch changes; in-process runs only, ignored when fitness is a total over the tests")
+    protected Boolean coverageSelection = false;
+
+    @Argument(alias = "covfull", description = "With -covrts, run all tests for every this many patches to check the selection; 0 for never")
+    protected Integer coverageSanityInterval = StatementCoverageSelector.DEFAULT_SANITY_INTERVAL;
+
+    protected transient StatementCoverageSelector coverageSelector = null;
     
     /*============== Structures holding all project data  ==============*/
     protected Set<UnitTest> testData = new LinkedHashSet<>();
-    private int patchCount = 0;
+    // incremented by every island of a GPSimple search
+    private final AtomicInteger patchCount = new AtomicInteger();
 
 
     /*============== Constructors ==============*/
@@ -164,7 +200,23 @@ public abstract class Sampler implements Serializable {
         LLMConfig.defaultPromptType = llmPromptType;
         LLMConfig.projectName = projectName;
         LLMConfig.defaultPromptTemplate = llmPromptTemplate.isEmpty() ? null : PromptTemplate.fromFile(llmPromptTemplate); // this will override the prompttype
+        LLMConfig.contextTokenBudget = llmContextTokenBudget;
         // TODO other LLM args
+
+        if (useSurrogate) {
+            surrogate = new SurrogateModel(surrogateExplorationRate, surrogateThreshold, surrogateWarmup, 123);
+        }
+
+        if (coverageSelection) {
+            if (fitnessUsesTestCost()) {
+                Logger.warn("Coverage-based test selection runs fewer tests on patches than on the original code, so their "
+                        + "fitness can't be compared; all tests will be run");
+            } else if (inSubprocess || eachRepetitionInNewSubprocess || eachTestInNewSubprocess) {
+                Logger.warn("Coverage-based test selection needs tests to run in-process, all tests will be run");
+            } else {
+                coverageSelector = new StatementCoverageSelector(classPath, coverageSanityInterval);
+            }
+        }
     }
 
     /*============== the following is used to store method information  ==============*/
@@ -175,6 +227,15 @@ public abstract class Sampler implements Serializable {
             StopWatch stopWatch = StopWatch.createStarted();
             this.sampleMethodsHook();
             stopWatch.stop();
+            if (SuggestionFilter.getSuggestionsSeen() > 0) {
+                Logger.info(SuggestionFilter.statisticsSummary());
+            }
+            if (surrogate != null) {
+                Logger.info(surrogate.calibrationReport());
+            }
+            if (coverageSelector != null) {
+                Logger.info(coverageSelector.statisticsSummary());
+            }
             if (this.timingOutputFile != null) {
                 FileUtils.forceMkdirParent(this.timingOutputFile);
                 FileUtils.writeStringToFile(this.timingOutputFile, Long.toString(stopWatch.getTime()), Charset.defaultCharset());
@@ -188,13 +249,25 @@ public abstract class Sampler implements Serializable {
 
     protected abstract void sampleMethodsHook();
 
+    /**
+     * Samplers whose fitness is a total over the tests run (their run time, memory use or how many
+     * pass) override this, as those totals are only comparable between patches if every patch runs
+     * the same tests; -covrts is then ignored. Called from the constructor, so must not depend on
+     * the subclass's fields.
+     *
+     * @return whether fitness depends on which tests are run
+     */
+    protected boolean fitnessUsesTestCost() {
+        return false;
+    }
+
     /*============== sampleMethodsHook should be overriden in each subclass of Sampler  ==============*/
 
     protected UnitTestResultSet testEmptyPatch(String targetClass, Collection<UnitTest> tests, SourceFile sourceFile) {
 
         Logger.debug("Testing the empty patch..");
 
-        patchCount++;
+        patchCount.incrementAndGet();
 
         UnitTestResultSet resultSet;
 
@@ -252,26 +325,70 @@ public abstract class Sampler implements Serializable {
 
         Logger.debug("Testing patch: " + patch);
 
-        patchCount++;
+        patchCount.incrementAndGet();
 
         UnitTestResultSet resultSet;
 
-        if (!inSubprocess && !eachTestInNewSubprocess) {
+        if (coverageSelector != null) {
+            resultSet = testPatchWithCoverageSelection(targetClass, tests, patch, metadata);
+        } else if (!inSubprocess && !eachTestInNewSubprocess) {
             resultSet = testPatchInternally(targetClass, tests, patch, metadata);
         } else {
             resultSet = testPatchInSubprocess(targetClass, tests, patch, metadata);
         }
 
+        if (surrogate != null) {
+            surrogate.observe(patch, resultSet);
+        }
+
         return resultSet;
 
     }
 
+    /**
+     * Generate candidates until one is accepted by the surrogate model (-sur), or
+     * surrogateRetries candidates have been skipped, in which case the last one is returned.
+     *
+     * @param candidates makes a new candidate patch on each call
+     * @return the patch to evaluate
+     */
+    protected Patch prescreen(Supplier<Patch> candidates) {
+        Patch candidate = candidates.get();
+        if (surrogate == null) {
+            return candidate;
+        }
+        for (int retry = 0; retry < surrogateRetries && !surrogate.shouldEvaluate(candidate); retry++) {
+            Logger.debug("Surrogate skipped patch: " + candidate);
+            candidate = candidates.get();
+        }
+        return candidate;
+    }
+
     private UnitTestResultSet testPatchInternally(String targetClass, List<UnitTest> tests, Patch patch, Object metadata) {
 
         InternalTestRunner testRunner = new InternalTestRunner(targetClass, classPath, tests, failFast);
         return testRunner.runTests(patch, metadata, reps);
     }
 
+    /**
+     * Run the tests chosen by the coverage selector (-covrts); the selector sees the patched source
+     * once it has compiled, so that the patch is applied only once.
+     */
+    private UnitTestResultSet testPatchWithCoverageSelection(String targetClass, List<UnitTest> tests, Patch patch, Object metadata) {
+
+        InternalTestRunner testRunner = new InternalTestRunner(targetClass, classPath, tests, failFast);
+        AtomicReference<StatementCoverageSelector.Selection> selection = new AtomicReference<>();
+        testRunner.setTestSelector(patchedSource -> {
+            selection.set(coverageSelector.select(targetClass, patch.getSourceFile(), tests, patchedSource));
+            return selection.get().tests();
+        });
+        UnitTestResultSet resultSet = testRunner.runTests(patch, metadata, reps);
+        if (selection.get() != null) {
+            coverageSelector.check(selection.get(), resultSet);
+        }
+        return resultSet;
+    }
+
     private UnitTestResultSet testPatchInSubprocess(String targetClass, List<UnitTest> tests, Patch patch, Object metadata) {
 
         ExternalTestRunner testRunner = new ExternalTestRunner(targetClass, classPath, tests, eachRepetitionInNewSubprocess, eachTestInNewSubprocess, failFast);
@@ -385,30 +502,10 @@ public abstract class Sampler implements Serializable {
 
     // used for non-maven and non-gradle projects only
     private File findSourceFile(String className) {
-
-        String pathToSource = className.replace(".", File.separator) + ".java";
-        String filename;
-        File moduleDir;
-        if (className.contains(".")) {
-            filename = StringUtils.substringAfterLast(pathToSource, File.separator);
-            moduleDir = new File(projectDirectory, StringUtils.substringBeforeLast(pathToSource, File.separator));
-        } else {
-            filename = pathToSource;
-            moduleDir = projectDirectory;
-        }
-        if (!moduleDir.isDirectory()) {
-            return null;
+        if (sourceIndex == null) {
+            sourceIndex = new SourceIndex(List.of(projectDirectory));
         }
-        File[] files = moduleDir.listFiles((dir, name) -> name.equals(filename));
-        if (files == null || files.length == 0) {
-            return null;
-        }
-        if (files.length > 1) {
-            Logger.error("Two files found with the same name in: " + projectDirectory);
-            return null;
-        }
-        return files[0];
-
+        return sourceIndex.findSourceFile(className);
     }
 
     protected void writeHeader() {
@@ -436,12 +533,12 @@ public abstract class Sampler implements Serializable {
 
     protected void writeResults(UnitTestResultSet resultSet) {
 
-        writeResults(resultSet, patchCount, DEFAULT_ID);
+        writeResults(resultSet, patchCount.get(), DEFAULT_ID);
     }
 
     protected void writeResults(UnitTestResultSet resultSet, Integer methodID) {
 
-        writeResults(resultSet, patchCount, methodID);
+        writeResults(resultSet, patchCount.get(), methodID);
     }
 
     protected void writeResults(UnitTestResultSet testResultSet, int patchCount, Integer methodID) {
@@ -501,6 +598,74 @@ public abstract class Sampler implements Serializable {
         outputFileWriter.writeNext(entry);
     }
 
+    /*============== Checkpointing, for searches that support it  ==============*/
+
+    /**
+     * Save the state of a population-based search, after flushing the output file
+     * so that its length matches the state. Nothing is written if a patch in the
+     * population could not be recreated from its description on resume.
+     *
+     * @param file          checkpoint file
+     * @param methodIndex   index of the method being searched
+     * @param generation    next generation to create
+     * @param evaluations   evaluations so far on this method
+     * @param reference     fitness values of the original code
+     * @param patches       current population
+     * @param fitnesses     fitness values of each patch
+     * @param mutationRng   mutation RNG
+     * @param individualRng individual selection RNG
+     */
+    protected void saveCheckpoint(File file, int methodIndex, int generation, int evaluations, double[] reference,
+                                  List<Patch> patches, List<double[]> fitnesses,
+                                  Random mutationRng, Random individualRng) {
+        List<String> descriptions = new ArrayList<>(patches.size());
+        for (Patch patch : patches) {
+            descriptions.add(patch.toString());
+        }
+        try {
+            for (String description : descriptions) {
+                Patch.parseEdits(description);
+            }
+        } catch (IllegalArgumentException e) {
+            Logger.error(e, "Checkpoint not written, as a patch could not be restored from it");
+            return;
+        }
+        try {
+            outputFileWriter.flush();
+            PopulationCheckpoint checkpoint = new PopulationCheckpoint(methodIndex, generation, evaluations,
+                    reference, descriptions, new ArrayList<>(fitnesses), mutationRng, individualRng,
+                    Checkpoint.lengthOf(outputFile));
+            Checkpoint.save(file, checkpoint);
+            Logger.info("Checkpoint saved: method " + methodIndex + ", generation " + generation);
+        } catch (IOException e) {
+            // a failed checkpoint shouldn't stop the search
+            Logger.error(e, "Could not write checkpoint to " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Load a checkpoint and roll the output file back to the state it records,
+     * reopening it for appending.
+     *
+     * @param file checkpoint file
+     * @return the checkpoint
+     */
+    protected PopulationCheckpoint resumeFromCheckpoint(File file) {
+        try {
+            PopulationCheckpoint checkpoint = Checkpoint.load(file, PopulationCheckpoint.class);
+            Checkpoint.truncate(outputFile, checkpoint.outputLength());
+            outputFileWriter = new CSVWriter(new FileWriter(outputFile, true));
+            Logger.info("Resuming from checkpoint: method " + checkpoint.methodIndex() +
+                    ", generation " + checkpoint.generation());
+            return checkpoint;
+        } catch (IOException e) {
+            Logger.error(e, "Could not resume from checkpoint " + file.getAbsolutePath());
+            Logger.trace(e);
+            System.exit(-1);
+            return null;
+        }
+    }
+
     protected void close() {
         try {
             if (this.outputFileWriter != null) {
@@ -0,0 +1,109 @@
+package gin.util;
+
+/**
+ * Chooses how to sample each test with JFR, from its run time in the initial run of the test
+ * suite, so that every test gets enough jdk.ExecutionSample events to rank its methods. Used by
+ * gin.util.Profiler with -adaptive.
+ * <p>
+ * A test that runs for longer than the target number of samples times the default period is
+ * sampled at a longer period, up to {@link #MAX_PERIOD_MS}, which keeps its recording small.
+ * A shorter test is sampled at a shorter period, down to the shortest JFR supports; if even that
+ * would give fewer samples than the target, the test is run several times in a loop in one JVM,
+ * and its samples are summed over the loop. The recording lasts long enough for the JVM to start
+ * and for the test, or its loop, to run twice over, rather than a fixed 12 seconds that would cut
+ * off long tests.
+ * <p>
+ * Sample counts are only estimates of where time is spent, so the hot methods are reported with
+ * a {@link #confidenceInterval(long, long)} on their share of the samples.
+ */
+class SamplingPlan {
+
+    static final long DEFAULT_PERIOD_MS = 10;
+    static final long MIN_PERIOD_MS = 1;
+    static final long MAX_PERIOD_MS = 20;
+    // Periods are rounded down to one of these, so that only a few JFR settings files are needed
+    private static final long[] PERIODS_MS = {1, 2, 5, 10, 20};
+    static final int MAX_LOOPS = 1000;
+    // As used for every test before plans were adaptive
+    static final long MIN_RECORDING_SECONDS = 12;
+    // Allowance for the build tool and test JVM to start before the test runs
+    static final long STARTUP_SECONDS = 10;
+    // Surefire and Gradle report sub-millisecond tests as taking no time
+    private static final double MIN_DURATION_MS = 0.1;
+    // z for a two sided 95% interval
+    private static final double Z_95 = 1.96;
+
+    private final int targetSamples;
+
+    /**
+     * @param targetSamples number of samples wanted from each run of a test
+     */
+    SamplingPlan(int targetSamples) {
+        this.targetSamples = targetSamples;
+    }
+
+    /**
+     * @param durationMillis run time of the test, or null if it is not known
+     * @return how to sample the test; the default period, once, if its run time is not known
+     */
+    Plan planFor(Double durationMillis) {
+        if (durationMillis == null) {
+            return new Plan(DEFAULT_PERIOD_MS, 1, MIN_RECORDING_SECONDS);
+        }
+        double duration = Math.max(durationMillis, MIN_DURATION_MS);
+        long period = MIN_PERIOD_MS;
+        for (long candidate : PERIODS_MS) {
+            if (candidate <= duration / targetSamples) {
+                period = candidate;
+            }
+        }
+        int loops = loopsFor(duration, period);
+        long recordingSeconds = Math.max(MIN_RECORDING_SECONDS, STARTUP_SECONDS + (long) Math.ceil(2 * duration * loops / 1000));
+        return new Plan(period, loops, recordingSeconds);
+    }
+
+    /**
+     * @param durationMillis run time of the test, or null if it is not known
+     * @param periodMillis   sampling period
+     * @return how many times to run the test in a loop to get the target number of samples at this period
+     */
+    int loopsFor(Double durationMillis, long periodMillis) {
+        if (durationMillis == null) {
+            return 1;
+        }
+        double duration = Math.max(durationMillis, MIN_DURATION_MS);
+        double samplesPerRun = duration / periodMillis;
+        if (samplesPerRun >= targetSamples) {
+            return 1;
+        }
+        return (int) Math.min(MAX_LOOPS, Math.ceil(targetSamples / samplesPerRun));
+    }
+
+    /**
+     * Wilson score interval for the share of all samples that fell in one method, treating
+     * samples as independent draws.
+     *
+     * @param count samples in the method
+     * @param total samples in all methods
+     * @return the lower and upper bounds of the 95% interval, as fractions; 0 to 1 if there are no samples
+     */
+    static double[] confidenceInterval(long count, long total) {
+        if (total == 0) {
+            return new double[]{0, 1};
+        }
+        double share = (double) count / total;
+        double z2 = Z_95 * Z_95;
+        double centre = (share + z2 / (2 * total)) / (1 + z2 / total);
+        double halfWidth = Z_95 * Math.sqrt(share * (1 - share) / total + z2 / (4.0 * total * total)) / (1 + z2 / total);
+        return new double[]{Math.max(0, centre - halfWidth), Math.min(1, centre + halfWidth)};
+    }
+
+    /**
+     * @param periodMillis     jdk.ExecutionSample period
+     * @param loops            times to run the test in one JVM
+     * @param recordingSeconds how long to record for
+     */
+    record Plan(long periodMillis, int loops, long recordingSeconds) {
+    }
+
+}
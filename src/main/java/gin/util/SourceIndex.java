@@ -0,0 +1,183 @@
+package gin.util;
+
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import gin.misc.FullyQualifiedNames;
+import org.pmw.tinylog.Logger;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps classes to their source files, and source lines to the methods that contain them.
+ * Used by gin.util.Project, and by gin.util.Sampler for projects without a build file.
+ * <p>
+ * Each source file is parsed once, the first time a class in it is looked up, and its
+ * methods are annotated with {@link FullyQualifiedNames}. The methods of each class
+ * (top level, nested or anonymous, by its binary name) are kept sorted by first line.
+ * The methods of one class don't overlap, as the methods of a class declared inside a
+ * method belong to that class, so the method at a line is found by binary search.
+ * Lookups may be made from several threads.
+ */
+class SourceIndex {
+
+    private final List<File> sourceDirs;
+
+    private final Map<String, Optional<File>> sourceFiles = new ConcurrentHashMap<>();
+    private final Map<File, FileIndex> fileIndexes = new ConcurrentHashMap<>();
+
+    /**
+     * @param sourceDirs the directories to look for source files in, in order
+     */
+    SourceIndex(List<File> sourceDirs) {
+        this.sourceDirs = sourceDirs;
+    }
+
+    /**
+     * @param className fully qualified name of a top level class
+     * @return its source file in the first directory that has it, or null if there is none
+     */
+    File findSourceFile(String className) {
+        return sourceFiles.computeIfAbsent(className, name -> {
+            String pathToSource = name.replace(".", File.separator) + ".java";
+            for (File dir : sourceDirs) {
+                File sourceFile = new File(dir, pathToSource);
+                if (sourceFile.isFile()) {
+                    return Optional.of(sourceFile);
+                }
+            }
+            return Optional.empty();
+        }).orElse(null);
+    }
+
+    /**
+     * @param className  binary name of the class, as in a stack trace
+     * @param methodName name of the method
+     * @param lineNumber a line within the method
+     * @return className.methodName(parameter types), or null if no such method is found
+     */
+    String getMethodSignature(String className, String methodName, int lineNumber) {
+
+        // Nested and anonymous classes are in the source file of their top level class
+        String topLevelClass = className.contains("$") ? className.substring(0, className.indexOf('$')) : className;
+        File sourceFile = findSourceFile(topLevelClass);
+        if (sourceFile == null) {
+            return null;
+        }
+
+        FileIndex index = fileIndexes.get(sourceFile);
+        if (index == null) {
+            index = new FileIndex(sourceFile);
+            FileIndex existing = fileIndexes.putIfAbsent(sourceFile, index);
+            if (existing != null) {
+                index = existing;
+            }
+        }
+
+        String signature = index.find(className, methodName, lineNumber);
+        return signature == null ? null : className + "." + signature;
+
+    }
+
+    // The methods of one source file
+    private static class FileIndex {
+
+        private final Map<String, MethodRange[]> methodsByClass = new HashMap<>();
+        private final MethodRange[] allMethods;
+
+        FileIndex(File sourceFile) {
+
+            List<MethodRange> methods = new ArrayList<>();
+            try {
+                CompilationUnit unit = StaticJavaParser.parse(sourceFile);
+                FullyQualifiedNames.annotateCompilationUnit(unit);
+
+                for (MethodDeclaration m : unit.getChildNodesByType(MethodDeclaration.class)) {
+                    if (m.getRange().isEmpty()) {
+                        continue;
+                    }
+                    String fqName = m.getData(FullyQualifiedNames.NODEKEY_FQ_METHOD_NAME);
+                    int nameStart = fqName.lastIndexOf('.', fqName.indexOf('('));
+                    methods.add(new MethodRange(fqName.substring(0, Math.max(nameStart, 0)), m.getNameAsString(),
+                            fqName.substring(nameStart + 1), m.getRange().get().begin.line, m.getRange().get().end.line));
+                }
+            } catch (FileNotFoundException e) {
+                Logger.error("Cannot find source file: " + sourceFile);
+                System.exit(-1);
+            } catch (ParseProblemException e) {
+                Logger.warn("Cannot parse source file: " + sourceFile);
+                Logger.trace(e);
+            }
+
+            Comparator<MethodRange> byStart = Comparator.comparingInt(MethodRange::start);
+            Map<String, List<MethodRange>> grouped = new HashMap<>();
+            for (MethodRange method : methods) {
+                grouped.computeIfAbsent(method.className, c -> new ArrayList<>()).add(method);
+            }
+            grouped.forEach((className, classMethods) -> {
+                classMethods.sort(byStart);
+                methodsByClass.put(className, classMethods.toArray(new MethodRange[0]));
+            });
+            methods.sort(byStart);
+            allMethods = methods.toArray(new MethodRange[0]);
+
+        }
+
+        // The signature of the method with this name containing the line, preferring the given class
+        String find(String className, String methodName, int lineNumber) {
+            MethodRange[] methods = methodsByClass.get(className);
+            if (methods != null) {
+                MethodRange method = findIn(methods, methodName, lineNumber);
+                if (method != null) {
+                    return method.signature;
+                }
+            }
+            // e.g. types FullyQualifiedNames does not name, such as records; search every method as a fallback
+            for (MethodRange method : allMethods) {
+                if (method.name.equals(methodName) && method.start <= lineNumber && lineNumber <= method.end) {
+                    return method.signature;
+                }
+            }
+            return null;
+        }
+
+        // Binary search for the last method starting at or before the line, then back over any on the same lines
+        private static MethodRange findIn(MethodRange[] methods, String methodName, int lineNumber) {
+            int low = 0;
+            int high = methods.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (methods[mid].start <= lineNumber) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            for (int i = high; i >= 0 && methods[i].end >= lineNumber; i--) {
+                if (methods[i].name.equals(methodName)) {
+                    return methods[i];
+                }
+            }
+            return null;
+        }
+
+    }
+
+    /**
+     * @param className binary name of the declaring class
+     * @param name      method name
+     * @param signature name and parameter types, as name(Type,Type)
+     */
+    private record MethodRange(String className, String name, String signature, int start, int end) {
+    }
+
+}
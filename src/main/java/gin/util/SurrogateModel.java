@@ -0,0 +1,353 @@
+package gin.util;
+
+import gin.Patch;
+import gin.SourceFile;
+import gin.SourceFileTree;
+import gin.edit.Edit;
+import gin.test.UnitTestResultSet;
+import org.apache.commons.rng.simple.JDKRandomBridge;
+import org.apache.commons.rng.simple.RandomSource;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Online surrogate of patch evaluation, used to avoid running the tests on patches
+ * that are very likely to fail.
+ * <p>
+ * Each patch is described by a sparse set of hashed features: for every edit its
+ * class, the AST node type at each location it refers to (for statement and node
+ * edits), and the class combined with each location, so that locations where edits
+ * keep breaking the code are learnt; plus the number of edits. Two linear models are
+ * trained on these by stochastic gradient descent, with a per-feature learning rate
+ * that decays with the number of times the feature has been seen:
+ * <ul>
+ * <li>a logistic model of P(valid, compiles and passes all tests), trained on every
+ * evaluated patch</li>
+ * <li>a least-squares model of the fitness of passing patches, trained on standardised
+ * fitness values</li>
+ * </ul>
+ * {@link #shouldEvaluate(Patch)} accepts every patch until warmup patches have been
+ * seen; after that it rejects patches whose predicted probability is below the
+ * threshold, except that any patch is accepted with probability explorationRate so
+ * that the model keeps seeing (and correcting) its own rejections.
+ * <p>
+ * Calibration is measured prequentially: each evaluated patch is scored with the
+ * prediction made before the model learnt from it. Patches that were rejected are
+ * never evaluated, so the report only covers the patches that were accepted.
+ * <p>
+ * Methods are synchronized, so a model can be shared by searches that evaluate
+ * patches on several threads.
+ */
+public class SurrogateModel implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = -7216893406552187419L;
+
+    public static final double DEFAULT_EXPLORATION_RATE = 0.1;
+    public static final double DEFAULT_THRESHOLD = 0.05;
+    public static final int DEFAULT_WARMUP = 30;
+
+    // Size of the hashed feature space
+    private static final int DIMENSION = 1 << 15;
+    private static final double LEARNING_RATE = 0.5;
+    private static final int CALIBRATION_BINS = 10;
+    private static final int MAX_PATCH_SIZE_FEATURE = 5;
+
+    // "file":id as written by the toString of statement, node and line edits
+    private static final Pattern LOCATION = Pattern.compile("\"([^\"]*)\":(\\d+)");
+
+    private final double explorationRate;
+    private final double threshold;
+    private final int warmup;
+    private final Random rng;
+
+    private final double[] successWeights = new double[DIMENSION];
+    private final int[] successCounts = new int[DIMENSION];
+    private final double[] fitnessWeights = new double[DIMENSION];
+    private final int[] fitnessCounts = new int[DIMENSION];
+
+    // Node type at each location, looked up once as it needs a copy of the node
+    private final Map<String, String> nodeTypes = new HashMap<>();
+
+    // Running mean and variance of passing fitness values (Welford)
+    private long fitnessSamples;
+    private double fitnessMean;
+    private double fitnessM2;
+    private double fitnessAbsoluteError;
+    private long fitnessPredictions;
+
+    private long accepted;
+    private long explored;
+    private long rejected;
+
+    private long observed;
+    private long successes;
+    private double brierSum;
+    private double logLossSum;
+    private final long[] binCounts = new long[CALIBRATION_BINS];
+    private final double[] binPredicted = new double[CALIBRATION_BINS];
+    private final long[] binSuccesses = new long[CALIBRATION_BINS];
+
+    public SurrogateModel() {
+        this(DEFAULT_EXPLORATION_RATE, DEFAULT_THRESHOLD, DEFAULT_WARMUP, 123);
+    }
+
+    /**
+     * @param explorationRate probability of evaluating a patch whatever its prediction
+     * @param threshold       patches predicted to pass with a lower probability are rejected
+     * @param warmup          number of evaluated patches before any are rejected
+     * @param seed            seed for the exploration decisions
+     */
+    public SurrogateModel(double explorationRate, double threshold, int warmup, long seed) {
+        if (explorationRate < 0 || explorationRate > 1) {
+            throw new IllegalArgumentException("Exploration rate must be in [0, 1], got: " + explorationRate);
+        }
+        this.explorationRate = explorationRate;
+        this.threshold = threshold;
+        this.warmup = warmup;
+        this.rng = new JDKRandomBridge(RandomSource.MT, seed);
+    }
+
+    /*============== Prediction ==============*/
+
+    /**
+     * @return the predicted probability that the patch is valid, compiles and passes its tests
+     */
+    public synchronized double predictSuccess(Patch patch) {
+        return sigmoid(dot(successWeights, features(patch)));
+    }
+
+    /**
+     * @return the predicted fitness of the patch if it passes, or NaN if no passing patch has been seen
+     */
+    public synchronized double predictFitness(Patch patch) {
+        if (fitnessSamples == 0) {
+            return Double.NaN;
+        }
+        return fitnessMean + fitnessStdDev() * dot(fitnessWeights, features(patch));
+    }
+
+    /**
+     * Decide whether a candidate patch is worth evaluating.
+     *
+     * @return false if the patch should be skipped
+     */
+    public synchronized boolean shouldEvaluate(Patch patch) {
+        if (observed < warmup) {
+            accepted++;
+            return true;
+        }
+        if (predictSuccess(patch) >= threshold) {
+            accepted++;
+            return true;
+        }
+        if (rng.nextDouble() < explorationRate) {
+            explored++;
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+
+    /*============== Training ==============*/
+
+    /**
+     * Learn from an evaluated patch whether it passed.
+     */
+    public synchronized void observe(Patch patch, UnitTestResultSet results) {
+        boolean success = results.getValidPatch() && results.getCleanCompile() && results.allTestsSuccessful();
+        int[] x = features(patch);
+        double p = sigmoid(dot(successWeights, x));
+
+        observed++;
+        if (success) {
+            successes++;
+        }
+        double y = success ? 1.0 : 0.0;
+        brierSum += (p - y) * (p - y);
+        double clipped = Math.min(Math.max(p, 1e-12), 1 - 1e-12);
+        logLossSum -= success ? Math.log(clipped) : Math.log(1 - clipped);
+        int bin = Math.min((int) (p * CALIBRATION_BINS), CALIBRATION_BINS - 1);
+        binCounts[bin]++;
+        binPredicted[bin] += p;
+        if (success) {
+            binSuccesses[bin]++;
+        }
+
+        step(successWeights, successCounts, x, y - p);
+    }
+
+    /**
+     * Learn the fitness of a patch that passed its tests.
+     */
+    public synchronized void observeFitness(Patch patch, double fitness) {
+        if (Double.isNaN(fitness) || Double.isInfinite(fitness)) {
+            return;
+        }
+        int[] x = features(patch);
+        if (fitnessSamples > 0) {
+            fitnessAbsoluteError += Math.abs(predictFitness(patch) - fitness);
+            fitnessPredictions++;
+        }
+
+        fitnessSamples++;
+        double delta = fitness - fitnessMean;
+        fitnessMean += delta / fitnessSamples;
+        fitnessM2 += delta * (fitness - fitnessMean);
+
+        double target = (fitness - fitnessMean) / fitnessStdDev();
+        step(fitnessWeights, fitnessCounts, x, target - dot(fitnessWeights, x));
+    }
+
+    // One gradient step on the active features, each with rate LEARNING_RATE / sqrt(times seen)
+    private static void step(double[] weights, int[] counts, int[] x, double error) {
+        for (int i : x) {
+            counts[i]++;
+            weights[i] += LEARNING_RATE / Math.sqrt(counts[i]) * error;
+        }
+    }
+
+    private double fitnessStdDev() {
+        double sd = fitnessSamples > 1 ? Math.sqrt(fitnessM2 / (fitnessSamples - 1)) : 0;
+        return sd > 0 ? sd : 1;
+    }
+
+    /*============== Features ==============*/
+
+    int[] features(Patch patch) {
+        List<String> names = new ArrayList<>();
+        names.add("bias");
+        names.add("size=" + Math.min(patch.size(), MAX_PATCH_SIZE_FEATURE));
+        SourceFile sourceFile = patch.getSourceFile();
+        for (Edit edit : patch.getEdits()) {
+            String editClass = edit.getClass().getSimpleName();
+            names.add("edit=" + editClass);
+            Matcher location = LOCATION.matcher(edit.toString());
+            while (location.find()) {
+                String where = location.group(1) + ":" + location.group(2);
+                names.add("edit=" + editClass + "@" + where);
+                String nodeType = nodeType(sourceFile, where, Integer.parseInt(location.group(2)));
+                if (nodeType != null) {
+                    names.add("node=" + nodeType);
+                    names.add("edit=" + editClass + "|node=" + nodeType);
+                }
+            }
+        }
+        int[] x = new int[names.size()];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = Math.floorMod(names.get(i).hashCode() * 0x9E3779B1, DIMENSION);
+        }
+        return x;
+    }
+
+    private String nodeType(SourceFile sourceFile, String where, int id) {
+        if (!(sourceFile instanceof SourceFileTree tree)) {
+            return null;
+        }
+        return nodeTypes.computeIfAbsent(where, k -> {
+            var node = tree.getNode(id);
+            return node == null ? "none" : node.getClass().getSimpleName();
+        });
+    }
+
+    private static double dot(double[] weights, int[] x) {
+        double sum = 0;
+        for (int i : x) {
+            sum += weights[i];
+        }
+        return sum;
+    }
+
+    private static double sigmoid(double z) {
+        return 1.0 / (1.0 + Math.exp(-z));
+    }
+
+    /*============== Reporting ==============*/
+
+    public synchronized long getAccepted() {
+        return accepted;
+    }
+
+    public synchronized long getExplored() {
+        return explored;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    public synchronized long getObserved() {
+        return observed;
+    }
+
+    /**
+     * @return mean squared error of the success predictions, or NaN if nothing has been observed
+     */
+    public synchronized double getBrierScore() {
+        return observed == 0 ? Double.NaN : brierSum / observed;
+    }
+
+    /**
+     * @return mean log loss of the success predictions, or NaN if nothing has been observed
+     */
+    public synchronized double getLogLoss() {
+        return observed == 0 ? Double.NaN : logLossSum / observed;
+    }
+
+    /**
+     * @return mean absolute error of the fitness predictions, or NaN if none have been made
+     */
+    public synchronized double getFitnessMeanAbsoluteError() {
+        return fitnessPredictions == 0 ? Double.NaN : fitnessAbsoluteError / fitnessPredictions;
+    }
+
+    /**
+     * @return a multi-line summary of the screening decisions and of the calibration
+     * of the model over the patches it was asked about before learning from them
+     */
+    public synchronized String calibrationReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Surrogate: %d patches accepted, %d explored, %d rejected%n",
+                accepted, explored, rejected));
+        report.append(String.format("  Observed %d patches, %d passed (%.1f%%)%n", observed, successes,
+                observed == 0 ? 0.0 : 100.0 * successes / observed));
+        report.append(String.format("  Brier score %.4f, log loss %.4f, baseline Brier score %.4f%n",
+                getBrierScore(), getLogLoss(), baselineBrierScore()));
+        report.append(String.format("  Fitness mean absolute error %.4g over %d passing patches%n",
+                getFitnessMeanAbsoluteError(), fitnessPredictions));
+        report.append("  Predicted   Patches  Mean predicted  Observed\n");
+        for (int bin = 0; bin < CALIBRATION_BINS; bin++) {
+            if (binCounts[bin] == 0) {
+                continue;
+            }
+            report.append(String.format("  [%.1f, %.1f) %8d  %14.3f  %8.3f%n",
+                    (double) bin / CALIBRATION_BINS, (double) (bin + 1) / CALIBRATION_BINS, binCounts[bin],
+                    binPredicted[bin] / binCounts[bin], (double) binSuccesses[bin] / binCounts[bin]));
+        }
+        return report.toString();
+    }
+
+    // Brier score of always predicting the observed pass rate, for comparison
+    private double baselineBrierScore() {
+        if (observed == 0) {
+            return Double.NaN;
+        }
+        double rate = (double) successes / observed;
+        return rate * (1 - rate);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("SurrogateModel{observed=%d, accepted=%d, explored=%d, rejected=%d, brier=%.4f}",
+                observed, accepted, explored, rejected, getBrierScore());
+    }
+
+}
@@ -8,10 +8,13 @@ import org.pmw.tinylog.Logger;
 
 import java.io.*;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -23,12 +26,17 @@ public class Trace implements Serializable {
 
     @Serial
     private static final long serialVersionUID = -4519079857156034044L;
+    private static final Pattern LINE_PATTERN = Pattern.compile("^(.*):(\\d*)");
     private final UnitTest test;
+    // Samples with the method as the innermost frame in the main program
     Map<String, Integer> methodCounts;
+    // Samples with the method anywhere on the stack
+    Map<String, Integer> inclusiveCounts;
 
-    private Trace(UnitTest test, Map<String, Integer> methodCounts) {
+    private Trace(UnitTest test, Map<String, Integer> methodCounts, Map<String, Integer> inclusiveCounts) {
         this.test = test;
         this.methodCounts = methodCounts;
+        this.inclusiveCounts = inclusiveCounts;
     }
 
     // Merge traces together, adding method counts where appropriate
@@ -42,18 +50,33 @@ public class Trace implements Serializable {
         }
 
         Map<String, Integer> allSamples = new HashMap<>();
+        Map<String, Integer> allInclusive = new HashMap<>();
 
         for (Trace trace : traces) {
             trace.methodCounts.forEach((k, v) -> allSamples.merge(k, v, Integer::sum));
+            trace.inclusiveCounts.forEach((k, v) -> allInclusive.merge(k, v, Integer::sum));
         }
 
-        return new Trace(test, allSamples);
+        return new Trace(test, allSamples, allInclusive);
 
     }
 
     // Parse a trace from a file
     public static Trace fromHPROFFile(Project project, UnitTest test, File hprofFile) {
 
+        // Finally: clean up methodCounts, to exclude methods not in the project etc.
+        Map<String, Integer> cleanedCounts = cleanMethodCounts(project, parseHPROFFile(hprofFile));
+
+        // hprof is run with depth=1, so only the innermost frame is known
+        return fromInnermostCounts(test, cleanedCounts);
+
+    }
+
+    /**
+     * Read the raw sample counts from a hprof file, keyed as class.method:line, before cleaning.
+     */
+    static Map<String, Integer> parseHPROFFile(File hprofFile) {
+
         String traceText = "";
 
         try {
@@ -70,25 +93,69 @@ public class Trace implements Serializable {
         Map<Integer, TracePoint> tracePoints = parseTracePoints(traceText);
 
         // Samples from the table at the end of the file. Use the tracePoints map to add line number.
-        Map<String, Integer> methodCounts = parseHPROFMethodCounts(traceText, tracePoints);
+        return parseHPROFMethodCounts(traceText, tracePoints);
 
-        // Finally: clean up methodCounts, to exclude methods not in the project etc.
-        Map<String, Integer> cleanedCounts = cleanMethodCounts(project, methodCounts);
+    }
+
+    public static Trace fromJFRFile(Project project, UnitTest test, File JFRFile) throws IOException {
 
-        return new Trace(test, cleanedCounts);
+        // Call tree of the samples, then cleaned up to exclude methods not in the project etc.
+        return fromCallTree(project, test, parseJFRCallTree(JFRFile, project.allMainClasses()));
 
     }
 
-    public static Trace fromJFRFile(Project project, UnitTest test, File JFRFile) throws IOException {
+    /**
+     * Build a trace from the call tree of a test, with raw frames keyed as class.method:line,
+     * such as one read from a JFR file or collected in-process by {@link InProcessProfiler}.
+     */
+    static Trace fromCallTree(Project project, UnitTest test, CallTree callTree) {
 
-        // Samples from the table at the end of the file. Use the tracePoints map to add line number.
-        Map<String, Integer> methodCounts = parseJFRMethodCounts(JFRFile, project);
+        Set<String> mainClasses = project.allMainClasses();
+        Set<String> testClasses = project.allTestClasses();
 
-        // Finally: clean up methodCounts, to exclude methods not in the project etc.
-        Map<String, Integer> cleanedCounts = cleanMethodCounts(project, methodCounts);
+        // Clean each frame once, as it appears in many nodes
+        Map<String, Optional<String>> cleanNames = new HashMap<>();
+        Function<String, String> clean = frame -> cleanNames.computeIfAbsent(frame,
+                f -> Optional.ofNullable(cleanMethodName(project, f, mainClasses, testClasses))).orElse(null);
+
+        return fromCallTree(test, callTree, clean);
+
+    }
+
+    /**
+     * Build a trace from the call tree of a test, cleaning each raw frame with the given function,
+     * which gives null for frames to leave out.
+     */
+    static Trace fromCallTree(UnitTest test, CallTree callTree, Function<String, String> clean) {
+        return new Trace(test, callTree.selfCounts(clean), callTree.inclusiveCounts(clean));
+    }
 
-        return new Trace(test, cleanedCounts);
+    /**
+     * Build a trace from cleaned counts of innermost frames only, as from hprof.
+     */
+    static Trace fromInnermostCounts(UnitTest test, Map<String, Integer> cleanCounts) {
+        return new Trace(test, cleanCounts, new HashMap<>(cleanCounts));
+    }
 
+    /**
+     * @return the frames of the stack that belong to the main program, as class.method:line,
+     * outermost first; empty if there are none
+     */
+    static List<String> mainProgramStack(RecordedStackTrace stackTrace, Set<String> mainClasses) {
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        List<String> stack = new ArrayList<>();
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            RecordedFrame frame = frames.get(i);
+            RecordedMethod method = frame.getMethod();
+
+            String methodName = method.getType().getName();
+            String className = StringUtils.substringBeforeLast(methodName, ".");
+
+            if (mainClasses.contains(methodName) || mainClasses.contains(className)) {
+                stack.add(methodName + "." + method.getName() + ":" + frame.getLineNumber());
+            }
+        }
+        return stack;
     }
 
     // Parse hprof file and extract the index that gives number, method, and and line number for a trace point.
@@ -183,12 +250,14 @@ public class Trace implements Serializable {
 
     }
 
-    private static Map<String, Integer> parseJFRMethodCounts(File jfrF, Project project) throws IOException {
-
-        Map<String, Integer> samples = new HashMap<>();
+    /**
+     * Read the call tree of the samples in a JFR file, with frames keyed as class.method:line, before cleaning.
+     *
+     * @param mainClasses the project's main classes, used to find methods in the main program
+     */
+    static CallTree parseJFRCallTree(File jfrF, Set<String> mainClasses) throws IOException {
 
-        //use main classes to find methods in the main program
-        Set<String> mainClasses = project.allMainClasses();
+        CallTree samples = new CallTree();
 
         try (RecordingFile jfr = new RecordingFile(Paths.get(jfrF.getAbsolutePath()))) {
 
@@ -204,23 +273,9 @@ public class Trace implements Serializable {
 
                         if (s != null) {
 
-                            //traverse the call stack, if a frame is part of the main program,
-                            //return it
-                            for (int i = 0; i < s.getFrames().size(); i++) {
-
-                                RecordedFrame topFrame = s.getFrames().get(i);
-                                RecordedMethod method = topFrame.getMethod();
-
-                                String methodName = method.getType().getName();
-                                String className = StringUtils.substringBeforeLast(methodName, ".");
-
-                                if (mainClasses.contains(methodName) || mainClasses.contains(className)) {
-                                    methodName += "." + method.getName() + ":" + topFrame.getLineNumber();
-                                    samples.merge(methodName, 1, Integer::sum);
-                                    break;
-                                }
-                            }
-
+                            //traverse the call stack, keeping the frames that are part of the
+                            //main program
+                            samples.addStack(mainProgramStack(s, mainClasses));
 
                         }
                     }
@@ -249,74 +304,87 @@ public class Trace implements Serializable {
 
         for (Map.Entry<String, Integer> entry : methodCounts.entrySet()) {
 
-            try {
-                String method = entry.getKey();
-                String className = StringUtils.substringBeforeLast(method, ".");
+            String fullMethodName = cleanMethodName(project, entry.getKey(), mainClasses, testClasses);
+            if (fullMethodName != null) {
+                cleanTrace.merge(fullMethodName, entry.getValue(), Integer::sum);
+            }
 
-                boolean includeMethod = shouldIncludeMethod(method);
+        }
 
-                // Check if belongs to this project
-                boolean classInMain = mainClasses.contains(className);
-                boolean classInTest = testClasses.contains(className);
+        return cleanTrace;
 
-                boolean hasLineNumber = entry.getKey().contains(":");
+    }
 
-                if (classInMain && includeMethod && hasLineNumber) {
+    /**
+     * Map a raw sample key, class.method:line, to the signature of the method in the project's
+     * source, logging why it is excluded if it is not a method of the main program.
+     *
+     * @return the method signature, as class.method(args), or null if the method is excluded
+     */
+    static String cleanMethodName(Project project, String method, Set<String> mainClasses, Set<String> testClasses) {
 
-                    String lineRegex = "^(.*):(\\d*)";
-                    Pattern linePattern = Pattern.compile(lineRegex);
-                    Matcher lineMatcher = linePattern.matcher(entry.getKey());
-                    lineMatcher.find();
+        try {
+            String className = StringUtils.substringBeforeLast(method, ".");
 
-                    String methodName = lineMatcher.group(1);
-                    int lineNumber = Integer.parseInt(lineMatcher.group(2));
+            boolean includeMethod = shouldIncludeMethod(method);
 
-                    String fullMethodName = project.getMethodSignature(methodName, lineNumber);
+            // Check if belongs to this project
+            boolean classInMain = mainClasses.contains(className);
+            boolean classInTest = testClasses.contains(className);
 
-                    // If we can find the original method (we may not, e.g. interface overridden)
-                    if (fullMethodName == null) {
-                        Logger.warn("Excluding method as class in main tree but method not found: " + method);
-                        if (method.contains(".values")) {
-                            Logger.warn("This is likely because the method relates to an enum type.");
-                        }
-                    } else {
-                        cleanTrace.merge(fullMethodName, entry.getValue(), Integer::sum);
-                    }
+            boolean hasLineNumber = method.contains(":");
 
-                } else {
+            if (classInMain && includeMethod && hasLineNumber) {
+
+                Matcher lineMatcher = LINE_PATTERN.matcher(method);
+                lineMatcher.find();
 
-                    if (!includeMethod) {
+                String methodName = lineMatcher.group(1);
+                int lineNumber = Integer.parseInt(lineMatcher.group(2));
 
-                        Logger.info("Excluding method because exceptional case (inner class etc.): " + method);
+                String fullMethodName = project.getMethodSignature(methodName, lineNumber);
 
-                    } else if (classInTest) {
+                // If we can find the original method (we may not, e.g. interface overridden)
+                if (fullMethodName == null) {
+                    Logger.warn("Excluding method as class in main tree but method not found: " + method);
+                    if (method.contains(".values")) {
+                        Logger.warn("This is likely because the method relates to an enum type.");
+                    }
+                }
+                return fullMethodName;
 
-                        Logger.info("Excluding method because class is a test class: " + method);
+            } else {
 
-                    } else if (!hasLineNumber) {
+                if (!includeMethod) {
 
-                        Logger.info("Excluding method because hprof gave no line number: " + method);
+                    Logger.info("Excluding method because exceptional case (inner class etc.): " + method);
 
-                    } else if (method.contains(project.getProjectName())) {
+                } else if (classInTest) {
 
-                        Logger.warn("Excluding method because not in main project tree: " + method);
-                        Logger.warn(" ...but the method contains the project name! Possibly a bug.");
+                    Logger.info("Excluding method because class is a test class: " + method);
 
-                    } else {
+                } else if (!hasLineNumber) {
 
-                        Logger.info("Excluding method because not in main project tree: " + method);
+                    Logger.info("Excluding method because hprof gave no line number: " + method);
 
-                    }
+                } else if (method.contains(project.getProjectName())) {
+
+                    Logger.warn("Excluding method because not in main project tree: " + method);
+                    Logger.warn(" ...but the method contains the project name! Possibly a bug.");
+
+                } else {
+
+                    Logger.info("Excluding method because not in main project tree: " + method);
 
                 }
-            } catch (Exception e) {
-                Logger.warn("Exception cleaning method counts: ");
-                Logger.warn(e);
-            }
 
+            }
+        } catch (Exception e) {
+            Logger.warn("Exception cleaning method counts: ");
+            Logger.warn(e);
         }
 
-        return cleanTrace;
+        return null;
 
     }
 
@@ -342,6 +410,10 @@ public class Trace implements Serializable {
         return this.methodCounts.get(method);
     }
 
+    public int getInclusiveCount(String method) {
+        return this.inclusiveCounts.get(method);
+    }
+
     public UnitTest getTest() {
         return test;
     }
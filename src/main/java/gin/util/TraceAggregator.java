@@ -0,0 +1,165 @@
+package gin.util;
+
+import gin.test.UnitTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Folds per-test sample counts into the totals for a whole test suite. Used by gin.util.Profiler.
+ * <p>
+ * Traces are added one at a time, as soon as they are parsed, so only the aggregate is
+ * kept rather than a trace per test. Method signatures are interned to dense int IDs;
+ * the total self and inclusive counts of each method are kept in int arrays indexed by ID,
+ * and the tests that had it on the stack in a BitSet of test IDs, so the method to tests
+ * index is built in the same pass as the counts instead of by searching every trace for
+ * every method.
+ * <p>
+ * The main and test classes are listed once, and the cleaning of each raw key
+ * (class.method:line) into a method signature, which parses the source file, is done once
+ * per key and shared by all tests. Cleaning may be called from several threads at once;
+ * adding to the totals is synchronized.
+ */
+class TraceAggregator {
+
+    // Marks raw keys that are excluded, as the cache can't hold nulls
+    private static final String EXCLUDED = "";
+
+    private final Project project;
+    private final Set<String> mainClasses;
+    private final Set<String> testClasses;
+    private final Map<String, String> cleanNames = new ConcurrentHashMap<>();
+
+    private final Map<String, Integer> methodIds = new HashMap<>();
+    private final List<String> methods = new ArrayList<>();
+    private final List<BitSet> testsByMethod = new ArrayList<>();
+    private int[] selfCounts = new int[64];
+    private int[] inclusiveCounts = new int[64];
+
+    private final Map<UnitTest, Integer> testIds = new HashMap<>();
+    private final List<UnitTest> tests = new ArrayList<>();
+
+    TraceAggregator(Project project) {
+        this.project = project;
+        this.mainClasses = project.allMainClasses();
+        this.testClasses = project.allTestClasses();
+    }
+
+    /**
+     * @return the project's main classes, for finding frames of the main program when parsing
+     */
+    Set<String> getMainClasses() {
+        return mainClasses;
+    }
+
+    /**
+     * @return the method signature for a raw key, or null if the method is excluded
+     */
+    String cleanName(String rawMethod) {
+        String name = cleanNames.computeIfAbsent(rawMethod, k -> {
+            String clean = Trace.cleanMethodName(project, k, mainClasses, testClasses);
+            return clean == null ? EXCLUDED : clean;
+        });
+        return name.equals(EXCLUDED) ? null : name;
+    }
+
+    /**
+     * Clean raw sample counts of innermost frames only, as parsed from one hprof file, and add
+     * them to the totals. The cleaning is done on the calling thread.
+     *
+     * @return the cleaned trace
+     */
+    Trace add(UnitTest test, Map<String, Integer> rawCounts) {
+        Map<String, Integer> cleanCounts = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : rawCounts.entrySet()) {
+            String method = cleanName(entry.getKey());
+            if (method != null) {
+                cleanCounts.merge(method, entry.getValue(), Integer::sum);
+            }
+        }
+        Trace trace = Trace.fromInnermostCounts(test, cleanCounts);
+        addTrace(trace);
+        return trace;
+    }
+
+    /**
+     * Clean the call tree parsed from one JFR file and add its self and inclusive counts to
+     * the totals. The cleaning is done on the calling thread.
+     *
+     * @return the cleaned trace
+     */
+    Trace add(UnitTest test, CallTree callTree) {
+        Trace trace = Trace.fromCallTree(test, callTree, this::cleanName);
+        addTrace(trace);
+        return trace;
+    }
+
+    /**
+     * Add the counts of a trace that has already been cleaned.
+     */
+    void addTrace(Trace trace) {
+        addCounts(trace.getTest(), trace.methodCounts, trace.inclusiveCounts);
+    }
+
+    // Every method with self samples also has inclusive samples, so the inclusive counts cover all methods seen
+    private synchronized void addCounts(UnitTest test, Map<String, Integer> self, Map<String, Integer> inclusive) {
+        int testId = testIds.computeIfAbsent(test, t -> {
+            tests.add(t);
+            return tests.size() - 1;
+        });
+        for (Map.Entry<String, Integer> entry : inclusive.entrySet()) {
+            int methodId = methodId(entry.getKey());
+            inclusiveCounts[methodId] += entry.getValue();
+            selfCounts[methodId] += self.getOrDefault(entry.getKey(), 0);
+            testsByMethod.get(methodId).set(testId);
+        }
+    }
+
+    private int methodId(String method) {
+        Integer id = methodIds.get(method);
+        if (id == null) {
+            id = methods.size();
+            methodIds.put(method, id);
+            methods.add(method);
+            testsByMethod.add(new BitSet());
+            if (id == selfCounts.length) {
+                selfCounts = Arrays.copyOf(selfCounts, selfCounts.length * 2);
+                inclusiveCounts = Arrays.copyOf(inclusiveCounts, inclusiveCounts.length * 2);
+            }
+        }
+        return id;
+    }
+
+    synchronized int methodCount() {
+        return methods.size();
+    }
+
+    synchronized int testCount() {
+        return tests.size();
+    }
+
+    /**
+     * @return every method seen, with its total self and inclusive counts over all tests and the
+     * tests that had it on the stack
+     */
+    synchronized List<Profiler.HotMethod> hotMethods() {
+        List<Profiler.HotMethod> hotMethods = new ArrayList<>(methods.size());
+        for (int id = 0; id < methods.size(); id++) {
+            BitSet testBits = testsByMethod.get(id);
+            Set<UnitTest> callingTests = new LinkedHashSet<>();
+            for (int t = testBits.nextSetBit(0); t >= 0; t = testBits.nextSetBit(t + 1)) {
+                callingTests.add(tests.get(t));
+            }
+            hotMethods.add(new Profiler.HotMethod(methods.get(id), selfCounts[id], inclusiveCounts[id], callingTests));
+        }
+        return hotMethods;
+    }
+
+}
@@ -0,0 +1,35 @@
+package gin.util.regression;
+
+import java.util.BitSet;
+
+/**
+ * Records which statements have run, for {@link StatementCoverageSelector}. Calls to
+ * {@link #hit(int)} are inserted before each statement of an instrumented target method.
+ * <p>
+ * Loaded by the system class loader, so that instrumented code in a
+ * gin.test.CacheClassLoader and the selector share the same hits.
+ */
+public final class CoverageProbe {
+
+    private static BitSet hits = new BitSet();
+
+    private CoverageProbe() {
+    }
+
+    /**
+     * @param statementId id of the statement about to run
+     */
+    public static synchronized void hit(int statementId) {
+        hits.set(statementId);
+    }
+
+    /**
+     * @return the ids of the statements run since the last call, which are then forgotten
+     */
+    static synchronized BitSet collect() {
+        BitSet collected = hits;
+        hits = new BitSet();
+        return collected;
+    }
+
+}
@@ -0,0 +1,423 @@
+package gin.util.regression;
+
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.Range;
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.LambdaExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.LabeledStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.stmt.SwitchEntry;
+import gin.SourceFile;
+import gin.misc.FullyQualifiedNames;
+import gin.test.CacheClassLoader;
+import gin.test.Compiler;
+import gin.test.InternalTestRunner;
+import gin.test.UnitTest;
+import gin.test.UnitTestResult;
+import gin.test.UnitTestResultSet;
+import org.mdkt.compiler.CompiledCode;
+import org.pmw.tinylog.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Chooses, for each patch, the tests that can observe its change, from which tests ran which
+ * statements of the target methods. Used by gin.util.Sampler with -covrts.
+ * <p>
+ * Coverage is recorded once per target class and set of target methods, the first time a patch
+ * to them is tested: a call to {@link CoverageProbe} is inserted before every statement of the
+ * target methods, and each test is run in-process against the instrumented class.
+ * <p>
+ * A patch is compared line by line with the unpatched source. Each changed line, and the lines
+ * either side of an insertion, is mapped to the innermost instrumented statement containing it,
+ * and the tests that ran any of those statements are selected; a line in a target method but
+ * in no statement, e.g. its signature, selects the tests that called the method. A test that
+ * never ran a statement cannot see it deleted or changed, so is skipped. All tests are run if a
+ * changed line is outside the target methods, if the patch changes nothing, or if no test
+ * covers the change. Tests that failed or could not be run while recording are always selected.
+ * <p>
+ * Every sanityInterval selections all tests are run instead, and any failing test that the
+ * selection would have skipped is reported with {@link #check(Selection, UnitTestResultSet)}.
+ * <p>
+ * Selection changes which tests are run, and so the time taken by each patch, so it suits
+ * samplers that look at whether tests pass rather than at run time.
+ */
+public class StatementCoverageSelector {
+
+    public static final int DEFAULT_SANITY_INTERVAL = 100;
+
+    // Larger differences are treated as changing every line between their common prefix and suffix
+    private static final long MAX_DIFF_CELLS = 4_000_000;
+
+    private final String classPath;
+    private final int sanityInterval;
+    private final Map<String, MethodCoverage> coverage = new HashMap<>();
+
+    private int selections = 0;
+    private int testsSelected = 0;
+    private int testsSkipped = 0;
+    private int sanityRuns = 0;
+    private int missedFailures = 0;
+
+    /**
+     * @param classPath      classpath of the project, as given to gin.test.InternalTestRunner
+     * @param sanityInterval run all tests every this many selections; 0 for never
+     */
+    public StatementCoverageSelector(String classPath, int sanityInterval) {
+        this.classPath = classPath;
+        this.sanityInterval = sanityInterval;
+    }
+
+    /**
+     * @param targetClass   fully qualified name of the patched class
+     * @param sourceFile    the unpatched source, with its target methods
+     * @param tests         all tests for the target methods
+     * @param patchedSource the source after applying the patch
+     * @return the tests to run against the patch
+     */
+    public synchronized Selection select(String targetClass, SourceFile sourceFile, List<UnitTest> tests, String patchedSource) {
+        String key = targetClass + sourceFile.getTargetMethodNames();
+        MethodCoverage methodCoverage = coverage.get(key);
+        if (methodCoverage == null) {
+            methodCoverage = record(targetClass, sourceFile.toString(), sourceFile.getTargetMethodNames(), tests);
+            coverage.put(key, methodCoverage);
+        }
+        List<UnitTest> selected = methodCoverage.select(changedLines(methodCoverage.source, patchedSource), tests);
+        selections++;
+        if (sanityInterval > 0 && selections % sanityInterval == 0) {
+            sanityRuns++;
+            return new Selection(tests, selected, true);
+        }
+        testsSelected += selected.size();
+        testsSkipped += tests.size() - selected.size();
+        return new Selection(selected, selected, false);
+    }
+
+    /**
+     * Warn about tests that failed in a sanity run but would not have been selected.
+     *
+     * @param selection the selection the patch was run with
+     * @param results   the results of running it
+     */
+    public synchronized void check(Selection selection, UnitTestResultSet results) {
+        if (!selection.sanityRun()) {
+            return;
+        }
+        Set<UnitTest> selected = new LinkedHashSet<>(selection.selected());
+        Set<UnitTest> missed = new LinkedHashSet<>();
+        for (UnitTestResult result : results.getResults()) {
+            if (!result.getPassed() && !selected.contains(result.getTest())) {
+                missed.add(result.getTest());
+            }
+        }
+        for (UnitTest test : missed) {
+            Logger.warn("Coverage-based selection would have skipped failing test " + test + " for patch: " + results.getPatch());
+        }
+        missedFailures += missed.size();
+        Logger.info(statisticsSummary());
+    }
+
+    public synchronized String statisticsSummary() {
+        return String.format("Coverage-based test selection: %d patches, %d tests run, %d skipped; "
+                        + "%d runs of all tests, with %d failing tests the selection would have skipped",
+                selections - sanityRuns, testsSelected, testsSkipped, sanityRuns, missedFailures);
+    }
+
+    /**
+     * Instrument the target methods and run every test against them once.
+     */
+    private MethodCoverage record(String targetClass, String source, List<String> targetMethodNames, List<UnitTest> tests) {
+        MethodCoverage methodCoverage = instrument(targetClass, source, targetMethodNames);
+        if (methodCoverage.instrumentedSource == null) {
+            Logger.warn("Cannot instrument " + targetClass + ", all of its tests will be run");
+            return methodCoverage;
+        }
+        Compiler compiler = new Compiler();
+        CompiledCode code = compiler.compile(targetClass, methodCoverage.instrumentedSource, classPath);
+        methodCoverage.instrumentedSource = null;
+        if (code == null) {
+            Logger.warn("Cannot compile instrumented " + targetClass + ", all of its tests will be run: " + compiler.getLastError());
+            return methodCoverage;
+        }
+
+        Logger.info("Recording statement coverage of " + targetClass + " by " + tests.size() + " tests");
+        InternalTestRunner runner = new InternalTestRunner(targetClass, classPath, tests, false);
+        try (CacheClassLoader classLoader = new CacheClassLoader(classPath)) {
+            classLoader.setCustomCompiledCode(targetClass, code.getByteCode());
+            for (UnitTest test : tests) {
+                CoverageProbe.collect();
+                UnitTestResult result = runner.runSingleTest(test, classLoader, 1);
+                BitSet hits = CoverageProbe.collect();
+                if (result.getPassed()) {
+                    methodCoverage.hits.put(test, hits);
+                } else {
+                    Logger.warn("Test failed on instrumented " + targetClass + ", it will always be run: " + test);
+                }
+            }
+        } catch (IOException e) {
+            Logger.error(e, "Could not close CacheClassLoader.");
+        }
+        return methodCoverage;
+    }
+
+    /**
+     * Insert a probe before every statement of the target methods of the target class.
+     *
+     * @param targetClass       fully qualified name of the class, whose methods can be instrumented
+     * @param source            the source file
+     * @param targetMethodNames methods to instrument; every method of the class if empty
+     * @return the statements and methods instrumented, and the instrumented source; which is null,
+     * with nothing instrumented, if the source cannot be parsed
+     */
+    static MethodCoverage instrument(String targetClass, String source, List<String> targetMethodNames) {
+        MethodCoverage methodCoverage = new MethodCoverage(source);
+        CompilationUnit cu;
+        try {
+            cu = StaticJavaParser.parse(source);
+        } catch (ParseProblemException e) {
+            Logger.warn("Cannot parse source of " + targetClass + ": " + e.getMessage());
+            return methodCoverage;
+        }
+
+        Set<String> targets = new TreeSet<>();
+        for (String name : targetMethodNames) {
+            if (!name.isBlank()) {
+                targets.add(FullyQualifiedNames.makeMethodNameFullyQualified(name.replaceAll("\\s", ""), cu));
+            }
+        }
+        FullyQualifiedNames.annotateCompilationUnit(cu);
+
+        List<Statement> statements = new ArrayList<>();
+        for (MethodDeclaration method : cu.findAll(MethodDeclaration.class)) {
+            // Only the target class is replaced when tests are run, not nested or other top level classes
+            boolean inTargetClass = method.getParentNode()
+                    .filter(parent -> parent instanceof TypeDeclaration<?>)
+                    .flatMap(parent -> ((TypeDeclaration<?>) parent).getFullyQualifiedName())
+                    .filter(targetClass::equals)
+                    .isPresent();
+            String name = method.containsData(FullyQualifiedNames.NODEKEY_FQ_METHOD_NAME) ? method.getData(FullyQualifiedNames.NODEKEY_FQ_METHOD_NAME) : null;
+            if (!inTargetClass || method.getBody().isEmpty() || method.getRange().isEmpty()
+                    || !(targets.isEmpty() || targets.contains(name))) {
+                continue;
+            }
+            methodCoverage.methods.add(method.getRange().get());
+            for (Statement statement : method.getBody().get().findAll(Statement.class)) {
+                if (isProbed(statement, method)) {
+                    statements.add(statement);
+                }
+            }
+        }
+
+        // Ranges are recorded before any probe is inserted
+        for (Statement statement : statements) {
+            methodCoverage.statements.add(statement.getRange().get());
+        }
+        for (int id = 0; id < statements.size(); id++) {
+            insertProbe(statements.get(id), id);
+        }
+        methodCoverage.instrumentedSource = cu.toString();
+        return methodCoverage;
+    }
+
+    private static boolean isProbed(Statement statement, MethodDeclaration method) {
+        if (statement instanceof BlockStmt || statement.getRange().isEmpty()) {
+            return false;
+        }
+        // Statements in anonymous or local classes are compiled to other classes
+        if (statement.findAncestor(BodyDeclaration.class).orElse(null) != method) {
+            return false;
+        }
+        Node parent = statement.getParentNode().orElse(null);
+        if (parent instanceof LabeledStmt || parent instanceof LambdaExpr) {
+            return false;
+        }
+        // The result of a switch expression entry, e.g. case A -> 1;
+        return !(parent instanceof SwitchEntry entry) || entry.getType() == SwitchEntry.Type.STATEMENT_GROUP;
+    }
+
+    private static void insertProbe(Statement statement, int id) {
+        Statement probe = StaticJavaParser.parseStatement(CoverageProbe.class.getName() + ".hit(" + id + ");");
+        Node parent = statement.getParentNode().get();
+        if (parent instanceof BlockStmt block) {
+            block.getStatements().addBefore(probe, statement);
+        } else if (parent instanceof SwitchEntry entry) {
+            entry.getStatements().addBefore(probe, statement);
+        } else {
+            // The body of an if, else or loop
+            BlockStmt block = new BlockStmt();
+            statement.replace(block);
+            block.addStatement(probe);
+            block.addStatement(statement);
+        }
+    }
+
+    /**
+     * @param original the original source
+     * @param patched  the patched source
+     * @return the lines of the original, from 1, that were changed or deleted, and those either side of each insertion
+     */
+    static Set<Integer> changedLines(String original, String patched) {
+        String[] a = original.split("\r?\n", -1);
+        String[] b = patched.split("\r?\n", -1);
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix].equals(b[prefix])) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix && a[a.length - 1 - suffix].equals(b[b.length - 1 - suffix])) {
+            suffix++;
+        }
+        int n = a.length - prefix - suffix;
+        int m = b.length - prefix - suffix;
+
+        Set<Integer> changed = new TreeSet<>();
+        if (n == 0 && m == 0) {
+            return changed;
+        }
+        if ((long) n * m > MAX_DIFF_CELLS) {
+            for (int line = prefix; line <= prefix + n + 1; line++) {
+                addLine(changed, line, a.length);
+            }
+            return changed;
+        }
+
+        // lcs[i][j] is the length of the longest common subsequence of the middle of a from i and of b from j
+        int[][] lcs = new int[n + 1][m + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                lcs[i][j] = a[prefix + i].equals(b[prefix + j]) ? lcs[i + 1][j + 1] + 1 : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+            }
+        }
+        int i = 0;
+        int j = 0;
+        // Whether lines have been deleted since the last common line, so that insertions replace them
+        boolean replacing = false;
+        while (i < n || j < m) {
+            if (i < n && j < m && a[prefix + i].equals(b[prefix + j])) {
+                replacing = false;
+                i++;
+                j++;
+            } else if (j == m || (i < n && lcs[i + 1][j] >= lcs[i][j + 1])) {
+                // Line prefix + i + 1 of the original was deleted or changed
+                addLine(changed, prefix + i + 1, a.length);
+                replacing = true;
+                i++;
+            } else {
+                // Inserted between lines prefix + i and prefix + i + 1 of the original
+                if (!replacing) {
+                    addLine(changed, prefix + i, a.length);
+                    addLine(changed, prefix + i + 1, a.length);
+                }
+                j++;
+            }
+        }
+        return changed;
+    }
+
+    private static void addLine(Set<Integer> lines, int line, int lineCount) {
+        if (line >= 1 && line <= lineCount) {
+            lines.add(line);
+        }
+    }
+
+    /**
+     * Tests to run against a patch.
+     *
+     * @param tests     the tests to run
+     * @param selected  the tests chosen from coverage; the same as tests unless this is a sanity run
+     * @param sanityRun whether all tests are run, to check the selection
+     */
+    public record Selection(List<UnitTest> tests, List<UnitTest> selected, boolean sanityRun) {
+    }
+
+    /**
+     * Which tests ran which statements of the target methods of one class.
+     */
+    static class MethodCoverage {
+
+        final String source;
+        final List<Range> methods = new ArrayList<>();
+        // Indexed by statement id
+        final List<Range> statements = new ArrayList<>();
+        // Statement ids run by each test; tests without an entry are always selected
+        final Map<UnitTest, BitSet> hits = new HashMap<>();
+        String instrumentedSource;
+
+        MethodCoverage(String source) {
+            this.source = source;
+        }
+
+        /**
+         * @param changedLines lines of the source changed by a patch
+         * @param tests        all tests for the target methods
+         * @return the tests that can observe the change, in the order given
+         */
+        List<UnitTest> select(Set<Integer> changedLines, List<UnitTest> tests) {
+            if (changedLines.isEmpty()) {
+                return tests;
+            }
+            BitSet changedStatements = new BitSet();
+            boolean methodChanged = false;
+            for (int line : changedLines) {
+                if (methods.stream().noneMatch(range -> contains(range, line))) {
+                    return tests;
+                }
+                BitSet innermost = innermostStatements(line);
+                if (innermost.isEmpty()) {
+                    methodChanged = true;
+                } else {
+                    changedStatements.or(innermost);
+                }
+            }
+            List<UnitTest> selected = new ArrayList<>();
+            for (UnitTest test : tests) {
+                BitSet testHits = hits.get(test);
+                if (testHits == null || (methodChanged && !testHits.isEmpty()) || testHits.intersects(changedStatements)) {
+                    selected.add(test);
+                }
+            }
+            return selected.isEmpty() ? tests : selected;
+        }
+
+        // The shortest statements containing the line; several if they are on one line, e.g. a(); b();
+        private BitSet innermostStatements(int line) {
+            BitSet innermost = new BitSet();
+            int shortest = Integer.MAX_VALUE;
+            for (int id = 0; id < statements.size(); id++) {
+                Range range = statements.get(id);
+                if (!contains(range, line)) {
+                    continue;
+                }
+                int length = range.end.line - range.begin.line;
+                if (length < shortest) {
+                    shortest = length;
+                    innermost.clear();
+                }
+                if (length == shortest) {
+                    innermost.set(id);
+                }
+            }
+            return innermost;
+        }
+
+        private static boolean contains(Range range, int line) {
+            return range.begin.line <= line && line <= range.end.line;
+        }
+
+    }
+
+}
@@ -118,6 +118,30 @@ public class EkstaziRTS extends RTSStrategy {
         }
     }
 
+    /**
+     * Reads the dependencies recorded by Ekstazi for each test class, e.g. to
+     * tell which tests are affected by a change.
+     *
+     * @return the external form of the URL of every class file each test
+     * class depended on, keyed by the fully qualified name of the test class
+     */
+    public Map<String, Set<String>> getTestClassDependencies() {
+        Map<String, Set<String>> dependencies = new HashMap<>();
+        if (!this.ekstaziDir.isDirectory()) {
+            Logger.warn("No Ekstazi dependency information in " + this.ekstaziDir);
+            return dependencies;
+        }
+        FileUtils.iterateFiles(this.ekstaziDir, FileFilterUtils.trueFileFilter(), null)
+                .forEachRemaining(file -> {
+                    String testClass = FilenameUtils.getBaseName(file.getName());
+                    Set<String> urls = storer.load(this.ekstaziDir.getAbsolutePath(), testClass, CLASS_EXT).stream()
+                            .map(RegData::getURLExternalForm)
+                            .collect(Collectors.toCollection(TreeSet::new));
+                    dependencies.put(testClass, urls);
+                });
+        return dependencies;
+    }
+
     @Override
     protected Map<String, Set<UnitTest>> getTargetClassesToTestCases(Collection<String> targetClasses, Collection<UnitTest> tests) {
         Logger.info("Reading Ekstazi dependency information for " + targetClasses.size() + " classes and " + tests.size() + " tests.");
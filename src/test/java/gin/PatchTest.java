@@ -4,6 +4,7 @@ import gin.edit.Edit;
 import gin.edit.Edit.EditType;
 import gin.edit.insert.*;
 import gin.edit.line.*;
+import gin.edit.llm.LLMMaskedStatement;
 import gin.edit.matched.MatchedCopyStatement;
 import gin.edit.matched.MatchedDeleteStatement;
 import gin.edit.matched.MatchedReplaceStatement;
@@ -967,5 +968,34 @@ public class PatchTest {
                 "| gin.edit.statement.MoveStatement \"" + verySmallExampleSourceFilename + "\":3 -> \"" + verySmallExampleSourceFilename + "\":4:2 |", patchTree.toString());
     }
 
-}
+    @Test
+    public void fromString() throws Exception {
+        patchTree.add(new CopyStatement(verySmallExampleSourceFilename, 1, verySmallExampleSourceFilename, 2, 3));
+        patchTree.add(new DeleteStatement(verySmallExampleSourceFilename, 4));
+        patchTree.add(new MoveStatement(verySmallExampleSourceFilename, 3, verySmallExampleSourceFilename, 4, 2));
+
+        Patch parsed = Patch.fromString(patchTree.toString(), sourceFileTree);
+        assertEquals(patchTree.size(), parsed.size());
+        assertEquals(patchTree.toString(), parsed.toString());
+
+        patchLine.add(new DeleteLine(verySmallExampleSourceFilename, 5));
+        parsed = Patch.fromString(patchLine.toString(), sourceFileLine);
+        assertEquals(patchLine.toString(), parsed.toString());
+
+        assertEquals(0, Patch.fromString("|", sourceFileTree).size());
+    }
 
+    @Test
+    public void fromStringLLMMaskedStatement() throws Exception {
+        patchTree.add(new LLMMaskedStatement(verySmallExampleSourceFilename, 4));
+        patchTree.add(new DeleteStatement(verySmallExampleSourceFilename, 3));
+
+        List<Edit> parsed = Patch.parseEdits(patchTree.toString());
+        assertEquals(2, parsed.size());
+        LLMMaskedStatement masked = (LLMMaskedStatement) parsed.get(0);
+        assertEquals(verySmallExampleSourceFilename, masked.destinationFilename);
+        assertEquals(4, masked.destinationStatement);
+        assertEquals(patchTree.getEdits().get(1).toString(), parsed.get(1).toString());
+    }
+
+}
@@ -0,0 +1,94 @@
+package gin.algorithm.nsgaii;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NonDominatedSortingTest {
+
+    // Fronts by the definition: peel off the non-dominated individuals until none are left
+    private static int[] pairwiseSort(long[][] objectives) {
+        int n = objectives.length;
+        int[] rank = new int[n];
+        boolean[] assigned = new boolean[n];
+        int remaining = n;
+        for (int front = 0; remaining > 0; front++) {
+            boolean[] inFront = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                if (assigned[i]) {
+                    continue;
+                }
+                boolean dominated = false;
+                for (int j = 0; j < n && !dominated; j++) {
+                    dominated = !assigned[j] && NonDominatedSorting.dominates(objectives[j], objectives[i]);
+                }
+                inFront[i] = !dominated;
+            }
+            for (int i = 0; i < n; i++) {
+                if (inFront[i]) {
+                    rank[i] = front;
+                    assigned[i] = true;
+                    remaining--;
+                }
+            }
+        }
+        return rank;
+    }
+
+    private static long[][] randomObjectives(Random rng, int n, int m, int range) {
+        long[][] objectives = new long[n][m];
+        for (long[] row : objectives) {
+            for (int k = 0; k < m; k++) {
+                row[k] = rng.nextInt(range);
+            }
+        }
+        return objectives;
+    }
+
+    @Test
+    public void testDominates() {
+        assertTrue(NonDominatedSorting.dominates(new long[]{1, 2}, new long[]{2, 2}));
+        assertFalse(NonDominatedSorting.dominates(new long[]{2, 2}, new long[]{2, 2}));
+        assertFalse(NonDominatedSorting.dominates(new long[]{1, 3}, new long[]{2, 2}));
+        assertTrue(NonDominatedSorting.dominates(new long[]{5, Long.MAX_VALUE - 1}, new long[]{Long.MAX_VALUE, Long.MAX_VALUE}));
+    }
+
+    @Test
+    public void testSmallExample() {
+        long[][] objectives = {{1, 5}, {2, 2}, {5, 1}, {3, 3}, {2, 2}, {4, 4}, {6, 6}};
+        assertArrayEquals(new int[]{0, 0, 0, 1, 0, 2, 3}, NonDominatedSorting.sort(objectives));
+    }
+
+    @Test
+    public void testMatchesPairwiseSort() {
+        Random rng = new Random(42);
+        for (int m = 2; m <= 4; m++) {
+            for (int trial = 0; trial < 20; trial++) {
+                // small ranges give plenty of ties and duplicates
+                long[][] objectives = randomObjectives(rng, 1 + rng.nextInt(200), m, 1 + rng.nextInt(30));
+                assertArrayEquals(pairwiseSort(objectives), NonDominatedSorting.sort(objectives));
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, NonDominatedSorting.sort(new long[0][]).length);
+    }
+
+    @Test
+    public void testCrowdingDistances() {
+        long[][] objectives = {{0, 10}, {2, 8}, {5, 5}, {10, 0}};
+        double[] distances = NonDominatedSorting.crowdingDistances(objectives, new int[]{0, 1, 2, 3});
+        assertEquals(Double.POSITIVE_INFINITY, distances[0], 0);
+        assertEquals(Double.POSITIVE_INFINITY, distances[3], 0);
+        assertEquals(0.5 + 0.5, distances[1], 1e-9);
+        assertEquals(0.8 + 0.8, distances[2], 1e-9);
+    }
+
+}
@@ -0,0 +1,60 @@
+package gin.algorithm.nsgaii;
+
+import gin.Patch;
+import gin.SourceFileLine;
+import gin.TestConfiguration;
+import gin.edit.line.DeleteLine;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParetoArchiveTest {
+
+    private final static String exampleSourceFilename = TestConfiguration.EXAMPLE_DIR_NAME + "Small.java";
+
+    private SourceFileLine sourceFile;
+
+    @Before
+    public void setUp() {
+        sourceFile = new SourceFileLine(exampleSourceFilename, Collections.emptyList());
+    }
+
+    private Patch patchDeletingLine(int line) {
+        Patch patch = new Patch(sourceFile);
+        patch.add(new DeleteLine(exampleSourceFilename, line));
+        return patch;
+    }
+
+    @Test
+    public void testLookup() {
+        ParetoArchive archive = new ParetoArchive();
+        archive.add(patchDeletingLine(1), new long[]{5, 5});
+
+        assertArrayEquals(new long[]{5, 5}, archive.lookup(patchDeletingLine(1)));
+        assertNull(archive.lookup(patchDeletingLine(2)));
+        assertEquals(1, archive.size());
+    }
+
+    @Test
+    public void testFront() {
+        ParetoArchive archive = new ParetoArchive();
+        assertTrue(archive.add(patchDeletingLine(1), new long[]{5, 5}));
+        assertTrue(archive.add(patchDeletingLine(2), new long[]{3, 8}));
+        assertFalse(archive.add(patchDeletingLine(3), new long[]{6, 6}));
+        assertFalse(archive.add(patchDeletingLine(4), new long[]{5, 5}));
+        assertTrue(archive.add(patchDeletingLine(5), new long[]{4, 4}));
+
+        assertEquals(2, archive.getFront().size());
+        assertEquals(patchDeletingLine(2).toString(), archive.getFront().get(0).toString());
+        assertArrayEquals(new long[]{4, 4}, archive.getFrontObjectives().get(1));
+        assertEquals(5, archive.size());
+    }
+
+}
@@ -0,0 +1,64 @@
+package gin.edit.llm;
+
+import gin.SourceFileTree;
+import gin.TestConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PromptContextBuilderTest {
+
+    private final static String exampleSourceFilename = TestConfiguration.EXAMPLE_DIR_NAME + "Triangle.java";
+    private final static String exampleMethodName = "classifyTriangle(int,int,int)";
+
+    private SourceFileTree sourceFile;
+
+    @Before
+    public void setup() {
+        PromptContextBuilder.clearCache();
+        sourceFile = new SourceFileTree(exampleSourceFilename, Collections.singletonList(exampleMethodName));
+    }
+
+    @Test
+    public void contextContainsSignaturesAndFields() {
+        String context = PromptContextBuilder.getContext(sourceFile, 512);
+
+        assertTrue(context.contains("public static int classifyTriangle(int a, int b, int c)"));
+        assertTrue(context.contains("static final int INVALID;"));
+        assertTrue(context.contains("private static void delay();"));
+        // the method body itself isn't repeated, that's given by $DESTINATION$
+        assertFalse(context.contains("return SCALENE"));
+    }
+
+    @Test
+    public void contextRespectsBudget() {
+        String context = PromptContextBuilder.getContext(sourceFile, 25);
+
+        assertTrue(context.length() <= 25 * PromptContextBuilder.CHARS_PER_TOKEN);
+        assertTrue(context.contains("classifyTriangle"));
+        assertFalse(context.contains("delay"));
+    }
+
+    @Test
+    public void contextIsCached() {
+        String first = PromptContextBuilder.getContext(sourceFile, 512);
+        String second = PromptContextBuilder.getContext((SourceFileTree) sourceFile.copyOf(), 512);
+        assertSame(first, second);
+    }
+
+    @Test
+    public void noBudgetOrTargetGivesEmptyContext() {
+        assertEquals("", PromptContextBuilder.getContext(sourceFile, 0));
+        SourceFileTree wholeClass = new SourceFileTree(exampleSourceFilename, Collections.emptyList());
+        assertEquals("", PromptContextBuilder.getContext(wholeClass, 512));
+        SourceFileTree blankTarget = new SourceFileTree(exampleSourceFilename, Collections.singletonList(""));
+        assertEquals("", PromptContextBuilder.getContext(blankTarget, 512));
+    }
+
+}
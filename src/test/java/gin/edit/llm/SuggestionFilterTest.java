@@ -0,0 +1,80 @@
+package gin.edit.llm;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.stmt.Statement;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class SuggestionFilterTest {
+
+    private static final String ORIGINAL = "{ int sum = 0; for (int i = 0; i < n; i++) { sum += i; } return sum; }";
+
+    @Before
+    public void setup() {
+        SuggestionFilter.resetStatistics();
+    }
+
+    @Test
+    public void canonicalIgnoresCommentsWhitespaceAndLocalNames() {
+        Statement renamed = StaticJavaParser.parseBlock("{\n  // total\n  int total = 0;\n  for (int j = 0; j < n; j++) {\n    total += j; /* add */\n  }\n  return total;\n}");
+        assertEquals(SuggestionFilter.canonicalise(StaticJavaParser.parseBlock(ORIGINAL)),
+                SuggestionFilter.canonicalise(renamed));
+    }
+
+    @Test
+    public void canonicalKeepsFieldsAndMethodCalls() {
+        Statement a = StaticJavaParser.parseBlock("{ return size(); }");
+        Statement b = StaticJavaParser.parseBlock("{ return length(); }");
+        assertNotEquals(SuggestionFilter.canonicalise(a), SuggestionFilter.canonicalise(b));
+    }
+
+    @Test
+    public void retainUsefulDropsNoOpsAndDuplicates() {
+        String noOp = "{ int s = 0; for (int k = 0; k < n; k++) { s += k; } return s; }";
+        String better = "{ return n * (n - 1) / 2; }";
+        String betterAgain = "{\n  // closed form\n  return n * (n - 1) / 2;\n}";
+        String different = "{ return (n * n - n) >> 1; }";
+
+        List<String> strings = new ArrayList<>(Arrays.asList(noOp, better, betterAgain, different));
+        List<Statement> statements = new ArrayList<>();
+        for (String s : strings) {
+            statements.add(StaticJavaParser.parseBlock(s));
+        }
+
+        int removed = SuggestionFilter.retainUseful(StaticJavaParser.parseBlock(ORIGINAL), statements, strings);
+
+        assertEquals(2, removed);
+        assertEquals(Arrays.asList(better, different), strings);
+        assertEquals(2, statements.size());
+        assertEquals(4, SuggestionFilter.getSuggestionsSeen());
+        assertEquals(1, SuggestionFilter.getNoOpsDropped());
+        assertEquals(1, SuggestionFilter.getDuplicatesDropped());
+        // the first useful suggestion is still evaluated
+        assertEquals(0, SuggestionFilter.getEvaluationsSaved());
+    }
+
+    @Test
+    public void evaluationSavedWhenAllSuggestionsDropped() {
+        String noOp = "{ int s = 0; for (int k = 0; k < n; k++) { s += k; } return s; }";
+
+        List<String> strings = new ArrayList<>(Arrays.asList(noOp, noOp));
+        List<Statement> statements = new ArrayList<>();
+        for (String s : strings) {
+            statements.add(StaticJavaParser.parseBlock(s));
+        }
+
+        int removed = SuggestionFilter.retainUseful(StaticJavaParser.parseBlock(ORIGINAL), statements, strings);
+
+        assertEquals(2, removed);
+        assertEquals(0, statements.size());
+        assertEquals(1, SuggestionFilter.getEvaluationsSaved());
+    }
+
+}
@@ -0,0 +1,48 @@
+package gin.test;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CompiledCodeCacheTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        CompiledCodeCache cache = new CompiledCodeCache(2);
+        CompiledCodeCache.Entry entry = new CompiledCodeCache.Entry(new byte[]{1, 2, 3}, null);
+
+        assertNull(cache.get("Example", "class Example {}"));
+        cache.put("Example", "class Example {}", entry);
+        assertSame(entry, cache.get("Example", "class Example {}"));
+        assertNull(cache.get("Example", "class Example { }"));
+        assertNull(cache.get("Other", "class Example {}"));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(0.25, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        CompiledCodeCache cache = new CompiledCodeCache(2);
+        cache.put("A", "a", new CompiledCodeCache.Entry(new byte[]{1}, null));
+        cache.put("B", "b", new CompiledCodeCache.Entry(new byte[]{2}, null));
+        cache.get("A", "a");
+        cache.put("C", "c", new CompiledCodeCache.Entry(null, "error"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("A", "a"));
+        assertNull(cache.get("B", "b"));
+        assertFalse(cache.get("C", "c").compiled());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacityMustBePositive() {
+        new CompiledCodeCache(0);
+    }
+
+}
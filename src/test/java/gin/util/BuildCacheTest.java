@@ -0,0 +1,88 @@
+package gin.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class BuildCacheTest {
+
+    private File projectDir;
+    private File pomFile;
+
+    @Before
+    public void setUp() throws IOException {
+        projectDir = Files.createTempDirectory("gin-build-cache").toFile();
+        projectDir.deleteOnExit();
+        pomFile = new File(projectDir, "pom.xml");
+        pomFile.deleteOnExit();
+        Files.writeString(pomFile.toPath(), "<project/>");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(projectDir);
+    }
+
+    @Test
+    public void testKeyChangesWithBuildFiles() throws IOException {
+        String key = BuildCache.key(projectDir, List.of("MAVEN"));
+        assertEquals(key, BuildCache.key(projectDir, List.of("MAVEN")));
+        assertNotEquals(key, BuildCache.key(projectDir, List.of("GRADLE")));
+
+        // Build output is not searched
+        File targetDir = new File(projectDir, "target");
+        targetDir.mkdir();
+        targetDir.deleteOnExit();
+        File copiedPom = new File(targetDir, "pom.xml");
+        copiedPom.deleteOnExit();
+        Files.writeString(copiedPom.toPath(), "<project><modules/></project>");
+        assertEquals(key, BuildCache.key(projectDir, List.of("MAVEN")));
+
+        // Nor are copies of the project
+        File copyDir = new File(projectDir, "profiler_out" + File.separator + "worker-1" + File.separator + "project");
+        copyDir.mkdirs();
+        Files.writeString(new File(copyDir, "pom.xml").toPath(), "<project><modules/></project>");
+        Files.createFile(new File(copyDir, BuildCache.COPY_MARKER).toPath());
+        assertEquals(key, BuildCache.key(projectDir, List.of("MAVEN")));
+
+        Files.writeString(pomFile.toPath(), "<project><modules/></project>");
+        assertNotEquals(key, BuildCache.key(projectDir, List.of("MAVEN")));
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        new File(projectDir, BuildCache.FILE_NAME).deleteOnExit();
+        String key = BuildCache.key(projectDir, List.of("MAVEN"));
+        BuildCache cache = BuildCache.load(projectDir, key);
+        assertNull(cache.getDependenciesClasspath());
+
+        cache.setDependenciesClasspath(File.pathSeparator + pomFile.getAbsolutePath());
+        cache.setDirs(List.of(List.of(projectDir), List.of()));
+        cache.save(projectDir);
+
+        BuildCache loaded = BuildCache.load(projectDir, key);
+        assertEquals(File.pathSeparator + pomFile.getAbsolutePath(), loaded.getDependenciesClasspath());
+        assertEquals(List.of(List.of(projectDir), List.of()), loaded.getDirs());
+
+        assertNull(BuildCache.load(projectDir, "other").getDirs());
+    }
+
+    @Test
+    public void testMissingJarInvalidatesClasspath() {
+        String key = BuildCache.key(projectDir, List.of("MAVEN"));
+        BuildCache cache = BuildCache.load(projectDir, key);
+        cache.setDependenciesClasspath(File.pathSeparator + new File(projectDir, "missing.jar").getAbsolutePath());
+        assertNull(cache.getDependenciesClasspath());
+    }
+
+}
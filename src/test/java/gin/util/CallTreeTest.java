@@ -0,0 +1,69 @@
+package gin.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class CallTreeTest {
+
+    // Frames of the same method on different lines map to the same method
+    private static final Function<String, String> METHOD = frame -> frame.startsWith("Excluded") ? null : frame.substring(0, frame.indexOf(':'));
+
+    private CallTree tree;
+
+    @Before
+    public void setUp() {
+        tree = new CallTree();
+    }
+
+    @Test
+    public void testSelfAndInclusive() {
+        tree.addStack(List.of("A.main:1", "A.run:5", "B.sort:10"));
+        tree.addStack(List.of("A.main:1", "A.run:5", "B.sort:12"));
+        tree.addStack(List.of("A.main:1", "A.run:6"));
+        tree.addStack(List.of("A.main:1", "C.log:3"));
+
+        assertEquals(4, tree.getSamples());
+        assertEquals(6, tree.nodeCount());
+
+        Map<String, Integer> self = tree.selfCounts(METHOD);
+        assertEquals(2, (int) self.get("B.sort"));
+        assertEquals(1, (int) self.get("A.run"));
+        assertEquals(1, (int) self.get("C.log"));
+        assertFalse(self.containsKey("A.main"));
+
+        Map<String, Integer> inclusive = tree.inclusiveCounts(METHOD);
+        assertEquals(4, (int) inclusive.get("A.main"));
+        assertEquals(3, (int) inclusive.get("A.run"));
+        assertEquals(2, (int) inclusive.get("B.sort"));
+        assertEquals(1, (int) inclusive.get("C.log"));
+    }
+
+    @Test
+    public void testRecursionCountedOnce() {
+        tree.addStack(List.of("A.fib:2", "A.fib:4", "A.fib:4"));
+        tree.addStack(List.of("A.fib:2", "A.fib:4"));
+
+        assertEquals(2, (int) tree.inclusiveCounts(METHOD).get("A.fib"));
+        assertEquals(2, (int) tree.selfCounts(METHOD).get("A.fib"));
+    }
+
+    @Test
+    public void testExcludedFrames() {
+        tree.addStack(List.of("A.main:1", "Excluded.inner:7"));
+        tree.addStack(List.of());
+
+        assertEquals(1, tree.getSamples());
+        assertNull(tree.selfCounts(METHOD).get("A.main"));
+        assertEquals(1, (int) tree.inclusiveCounts(METHOD).get("A.main"));
+        assertEquals(1, tree.inclusiveCounts(METHOD).size());
+    }
+
+}
@@ -0,0 +1,151 @@
+package gin.util;
+
+import com.opencsv.CSVReader;
+import gin.Patch;
+import gin.SourceFile;
+import gin.SourceFileTree;
+import gin.TestConfiguration;
+import gin.test.UnitTest;
+import gin.test.UnitTestResultSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GPSteadyStateTest {
+
+    File resourcesDir = new File(TestConfiguration.EXAMPLE_DIR_NAME);
+    File packageDir = new File(resourcesDir, "mypackage");
+    File methodFile = new File(packageDir, "profiler_results_faulty.csv");
+    File outputFile = new File(packageDir, "gpsteadystate_sampler_results.csv");
+
+    SizeSteadyState sampler;
+
+    // Smaller patches are fitter; no tests are run, each evaluation just takes a little while
+    static class SizeSteadyState extends GPSteadyState {
+
+        final AtomicInteger evaluations = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        // if set, the first patch after the original holds its slot until this counts down
+        CountDownLatch othersFinished;
+        volatile boolean released;
+
+        SizeSteadyState(File projectDir, File methodFile) {
+            super(projectDir, methodFile);
+        }
+
+        @Override
+        protected UnitTestResultSet testPatch(String targetClass, List<UnitTest> tests, Patch patch, Object metadata) {
+            int evaluation = evaluations.incrementAndGet();
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                if (othersFinished != null && evaluation == 2) {
+                    released = othersFinished.await(10, TimeUnit.SECONDS);
+                } else {
+                    Thread.sleep(20);
+                    if (othersFinished != null && evaluation > 2) {
+                        othersFinished.countDown();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return new UnitTestResultSet(patch, null, true, Collections.emptyList(), true, "", false, Collections.emptyList());
+        }
+
+        @Override
+        protected double fitness(UnitTestResultSet results) {
+            return results.getPatch().size();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+
+        sampler = new SizeSteadyState(resourcesDir, methodFile);
+        sampler.outputFile = outputFile;
+        sampler.classPath = resourcesDir.getPath();
+        sampler.setUp();
+    }
+
+    @Test
+    public void testSlotsAreRefilled() throws Exception {
+
+        sampler.slots = 3;
+        sampler.indNumber = 4;
+        sampler.genNumber = 3;
+        sampler.sampleMethods();
+
+        // the original, then the whole budget, never more than slots at a time
+        assertEquals(13, sampler.evaluations.get());
+        assertTrue(sampler.maxRunning.get() <= 3);
+
+        try (CSVReader reader = new CSVReader(new FileReader(outputFile))) {
+            List<String[]> lines = reader.readAll();
+            assertEquals(14, lines.size());
+        }
+    }
+
+    @Test
+    public void testSlotIsRefilledWhileOthersRun() throws Exception {
+
+        // one patch holds its slot until three others have finished, which the other
+        // two slots can only manage if they are refilled without waiting for it
+        sampler.slots = 3;
+        sampler.indNumber = 4;
+        sampler.genNumber = 3;
+        sampler.othersFinished = new CountDownLatch(3);
+        sampler.sampleMethods();
+
+        assertTrue(sampler.released);
+        assertEquals(13, sampler.evaluations.get());
+    }
+
+    @Test
+    public void testInsert() throws Exception {
+
+        sampler.indNumber = 2;
+        SourceFile sourceFile = new SourceFileTree(new File(packageDir, "ExampleFaulty.java").getPath(), Collections.emptyList());
+        Patch origPatch = new Patch(sourceFile);
+        GPSteadyState.Individual first = new GPSteadyState.Individual(origPatch, 5.0);
+        GPSteadyState.Individual second = new GPSteadyState.Individual(origPatch, 5.0);
+        List<GPSteadyState.Individual> population = new ArrayList<>();
+
+        // the population grows until it is full
+        population.add(first);
+        sampler.insert(population, second);
+        assertEquals(2, population.size());
+
+        // then a worse patch replaces nothing
+        GPSteadyState.Individual worse = new GPSteadyState.Individual(origPatch, 9.0);
+        sampler.insert(population, worse);
+        assertEquals(2, population.size());
+        assertFalse(population.contains(worse));
+
+        // and a better one replaces the loser of a tournament
+        GPSteadyState.Individual better = new GPSteadyState.Individual(origPatch, 3.0);
+        sampler.insert(population, better);
+        assertEquals(2, population.size());
+        assertTrue(population.contains(better));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(outputFile.toPath());
+    }
+}
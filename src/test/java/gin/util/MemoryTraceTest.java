@@ -0,0 +1,100 @@
+package gin.util;
+
+import gin.test.UnitTest;
+import jdk.jfr.Recording;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryTraceTest {
+
+    private static final int ARRAYS = 64;
+    private static final int ARRAY_BYTES = 1 << 20;
+
+    File jfrFile;
+
+    // Stands in for the main program; the test's own allocations are not attributed to it
+    static class Allocator {
+
+        static long allocate() {
+            long total = 0;
+            for (int i = 0; i < ARRAYS; i++) {
+                byte[] array = new byte[ARRAY_BYTES];
+                total += array.length;
+            }
+            return total;
+        }
+
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        jfrFile = Files.createTempFile("memorytrace", ".jfr").toFile();
+    }
+
+    @Test
+    public void testJFRAllocations() throws Exception {
+
+        long allocated;
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.ObjectAllocationSample").with("throttle", "off").withStackTrace();
+            recording.start();
+            // allocations outside the program, and the time before it runs, are not part of the trace
+            byte[][] other = new byte[ARRAYS][];
+            for (int i = 0; i < ARRAYS; i++) {
+                other[i] = new byte[ARRAY_BYTES];
+            }
+            Thread.sleep(500);
+            allocated = Allocator.allocate();
+            recording.stop();
+            recording.dump(jfrFile.toPath());
+        }
+
+        MemoryTrace.Allocations allocations = MemoryTrace.parseJFRAllocations(jfrFile, Set.of(Allocator.class.getName()));
+
+        // each sample stands for the bytes allocated since the last one, so the weights add up to about what was allocated
+        long bytes = allocations.bytes.values().stream().mapToLong(Long::longValue).sum();
+        assertTrue("attributed " + bytes + " of " + allocated + " bytes", bytes >= allocated / 2 && bytes <= allocated * 2);
+        assertTrue(allocations.counts.keySet().stream().allMatch(m -> m.startsWith(Allocator.class.getName() + ".allocate:")));
+
+        assertTrue(allocations.durationNanos() > 0);
+        assertTrue("duration " + allocations.durationNanos(), allocations.durationNanos() < 400_000_000L);
+    }
+
+    @Test
+    public void testBytesPerSecond() {
+
+        UnitTest fast = new UnitTest("example.ExampleTest", "fast");
+        UnitTest slow = new UnitTest("example.ExampleTest", "slow");
+        MemoryTrace fastTrace = new MemoryTrace(fast, new HashMap<>(Map.of("A.a:1", 2, "B.b:2", 1)),
+                new HashMap<>(Map.of("A.a:1", 1000L, "B.b:2", 500L)), 1_000_000_000L);
+        MemoryTrace slowTrace = new MemoryTrace(slow, new HashMap<>(Map.of("B.b:2", 1)),
+                new HashMap<>(Map.of("B.b:2", 1500L)), 3_000_000_000L);
+
+        Map<String, MemoryProfiler.HotMethod> hotMethods = new HashMap<>();
+        for (MemoryProfiler.HotMethod method : MemoryProfiler.calcHotMethods(List.of(fastTrace, slowTrace))) {
+            hotMethods.put(method.methodName, method);
+        }
+
+        // the rate is over the time of the tests that called the method
+        assertEquals(1000.0, hotMethods.get("A.a:1").bytesPerSecond, 1e-9);
+        assertEquals(500.0, hotMethods.get("B.b:2").bytesPerSecond, 1e-9);
+        assertEquals(2000L, hotMethods.get("B.b:2").allocatedBytes);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(jfrFile.toPath());
+    }
+
+}
@@ -0,0 +1,81 @@
+package gin.util;
+
+import gin.test.UnitTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ProfileCacheTest {
+
+    private File workingDir;
+    private File classFile;
+    private String classUrl;
+    private UnitTest test;
+    private Trace trace;
+
+    @Before
+    public void setUp() throws IOException {
+        workingDir = Files.createTempDirectory("gin-cache").toFile();
+        workingDir.deleteOnExit();
+        classFile = new File(workingDir, "Example.class");
+        classFile.deleteOnExit();
+        Files.writeString(classFile.toPath(), "version 1");
+        classUrl = classFile.toURI().toURL().toExternalForm();
+        test = new UnitTest("com.example.ExampleTest", "testExample");
+        trace = Trace.fromInnermostCounts(test, Map.of("com.example.Example.run()", 5));
+    }
+
+    @Test
+    public void testKeyChangesWithDependencies() throws IOException {
+        ProfileCache cache = new ProfileCache();
+        String key = cache.key(List.of(classUrl), "cp", "reps=1");
+        assertEquals(key, new ProfileCache().key(List.of(classUrl), "cp", "reps=1"));
+        assertNotEquals(key, new ProfileCache().key(List.of(classUrl), "other-cp", "reps=1"));
+        assertNotEquals(key, new ProfileCache().key(List.of(classUrl), "cp", "reps=2"));
+
+        Files.writeString(classFile.toPath(), "version 2");
+        assertNotEquals(key, new ProfileCache().key(List.of(classUrl), "cp", "reps=1"));
+    }
+
+    @Test
+    public void testGetOnlyWithSameKey() {
+        ProfileCache cache = new ProfileCache();
+        cache.put(test, "a", trace);
+        assertNotNull(cache.get(test, "a"));
+        assertNull(cache.get(test, "b"));
+        assertNull(cache.get(test, null));
+
+        cache.put(test, null, trace);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        File file = new File(workingDir, "cache.ser");
+        file.deleteOnExit();
+        ProfileCache cache = new ProfileCache();
+        cache.put(test, cache.key(List.of(classUrl), "cp", "reps=1"), trace);
+        cache.save(file);
+
+        ProfileCache loaded = ProfileCache.load(file);
+        Trace cached = loaded.get(test, loaded.key(List.of(classUrl), "cp", "reps=1"));
+        assertNotNull(cached);
+        assertEquals(5, cached.getMethodCount("com.example.Example.run()"));
+
+        loaded.retainAll(Set.of());
+        assertEquals(0, loaded.size());
+        assertEquals(0, ProfileCache.load(new File(workingDir, "missing.ser")).size());
+    }
+
+}
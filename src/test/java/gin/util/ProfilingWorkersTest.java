@@ -0,0 +1,114 @@
+package gin.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class ProfilingWorkersTest {
+
+    private File projectDir;
+    private File workingDir;
+
+    @Before
+    public void setUp() throws IOException {
+        projectDir = Files.createTempDirectory("gin-workers").toFile();
+        projectDir.deleteOnExit();
+        Files.writeString(new File(projectDir, "pom.xml").toPath(), "<project/>");
+        workingDir = new File(projectDir, "gin-working");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(projectDir);
+    }
+
+    @Test
+    public void testResultsInTaskOrder() {
+        ProfilingWorkers pool = new ProfilingWorkers(workingDir, projectDir, 2, false);
+        List<Integer> results = pool.run(List.of(5, 1, 4, 2, 3), (task, worker) -> {
+            sleep(task * 10L);
+            return task * task;
+        });
+        assertEquals(List.of(25, 1, 16, 4, 9), results);
+    }
+
+    @Test
+    public void testEachWorkerRunsOneJobAtATime() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        ProfilingWorkers pool = new ProfilingWorkers(workingDir, projectDir, cores + 1, false);
+        assertEquals(cores, pool.size());
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ConcurrentHashMap<Integer, Boolean> busy = new ConcurrentHashMap<>();
+        pool.run(List.of(1, 2, 3, 4, 5, 6, 7, 8), (task, worker) -> {
+            assertNull(busy.put(worker.id(), true));
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(20);
+            running.decrementAndGet();
+            busy.remove(worker.id());
+            assertTrue(new File(worker.directory(), "tmp").isDirectory());
+            return task;
+        });
+        assertTrue(maxRunning.get() <= cores);
+    }
+
+    @Test
+    public void testWorkersBuildInTheirOwnCopy() {
+        String buildCacheKey = BuildCache.key(projectDir, List.of("MAVEN"));
+        ProfilingWorkers pool = new ProfilingWorkers(workingDir, projectDir, 2, false);
+        assumeTrue(pool.size() == 2);
+
+        Set<File> projects = ConcurrentHashMap.newKeySet();
+        pool.run(List.of(1, 2, 3, 4), (task, worker) -> {
+            assertTrue(new File(worker.projectDir(), "pom.xml").isFile());
+            if (worker.id() > 0) {
+                // the working directory, and so the other copies, are left out
+                assertFalse(new File(worker.projectDir(), workingDir.getName()).exists());
+            }
+            projects.add(worker.projectDir());
+            return task;
+        });
+        assertTrue(projects.contains(projectDir));
+        assertEquals(2, projects.size());
+
+        // the copies' build files don't invalidate the project's build cache
+        assertEquals(buildCacheKey, BuildCache.key(projectDir, List.of("MAVEN")));
+    }
+
+    @Test
+    public void testParseCpuList() {
+        assertEquals(List.of(0, 1, 2, 3, 8, 10, 11), ProfilingWorkers.parseCpuList("0-3,8,10-11\n"));
+        assertEquals(List.of(5), ProfilingWorkers.parseCpuList(" 5"));
+    }
+
+    @Test
+    public void testFormatDuration() {
+        assertEquals("0:00:05", ProfilingWorkers.formatDuration(5_400));
+        assertEquals("2:03:04", ProfilingWorkers.formatDuration((2 * 3600 + 3 * 60 + 4) * 1000L));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -181,4 +181,16 @@ public class ProjectTest {
         assertEquals("mypackage.ExampleMethodSignature.exampleComplexParamComplexReturn(List<List<Map<Integer,Pair<Double,Object>>>>,List<Map<Integer,Object>>)", methodSignature);
     }
 
+    @Test
+    public void testParseTestDurations() {
+        assertEquals(12.0, Project.parseSurefireTime("0.012"), 1e-9);
+        assertEquals(1234500.0, Project.parseSurefireTime("1,234.5"), 1e-9);
+        assertNull(Project.parseSurefireTime(""));
+
+        assertEquals(12.0, Project.parseGradleDuration("0.012s"), 1e-9);
+        assertEquals(62500.0, Project.parseGradleDuration("1m2.50s"), 1e-9);
+        assertEquals(3603100.0, Project.parseGradleDuration("1h0m3.10s"), 1e-9);
+        assertNull(Project.parseGradleDuration("-"));
+    }
+
 }
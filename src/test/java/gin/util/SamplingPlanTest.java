@@ -0,0 +1,63 @@
+package gin.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SamplingPlanTest {
+
+    private SamplingPlan planner;
+
+    @Before
+    public void setUp() {
+        planner = new SamplingPlan(100);
+    }
+
+    @Test
+    public void testUnknownDurationUsesDefaults() {
+        SamplingPlan.Plan plan = planner.planFor(null);
+        assertEquals(SamplingPlan.DEFAULT_PERIOD_MS, plan.periodMillis());
+        assertEquals(1, plan.loops());
+        assertEquals(SamplingPlan.MIN_RECORDING_SECONDS, plan.recordingSeconds());
+    }
+
+    @Test
+    public void testLongTestSampledLessOftenAndRecordedInFull() {
+        SamplingPlan.Plan plan = planner.planFor(60_000.0);
+        assertEquals(SamplingPlan.MAX_PERIOD_MS, plan.periodMillis());
+        assertEquals(1, plan.loops());
+        assertEquals(SamplingPlan.STARTUP_SECONDS + 120, plan.recordingSeconds());
+
+        assertEquals(5, planner.planFor(700.0).periodMillis());
+    }
+
+    @Test
+    public void testShortTestLooped() {
+        SamplingPlan.Plan plan = planner.planFor(20.0);
+        assertEquals(SamplingPlan.MIN_PERIOD_MS, plan.periodMillis());
+        assertEquals(5, plan.loops());
+
+        // Reported as taking no time
+        assertEquals(SamplingPlan.MAX_LOOPS, planner.planFor(0.0).loops());
+        assertEquals(1, planner.loopsFor(2000.0, 10));
+        assertEquals(10, planner.loopsFor(100.0, 10));
+    }
+
+    @Test
+    public void testConfidenceInterval() {
+        double[] interval = SamplingPlan.confidenceInterval(50, 100);
+        assertEquals(0.404, interval[0], 0.001);
+        assertEquals(0.596, interval[1], 0.001);
+
+        // Narrower with more samples
+        double[] wider = SamplingPlan.confidenceInterval(5, 10);
+        assertTrue(wider[1] - wider[0] > interval[1] - interval[0]);
+
+        interval = SamplingPlan.confidenceInterval(0, 100);
+        assertEquals(0.0, interval[0], 0.0);
+        assertTrue(interval[1] > 0);
+    }
+
+}
@@ -0,0 +1,107 @@
+package gin.util;
+
+import gin.Patch;
+import gin.SourceFileTree;
+import gin.TestConfiguration;
+import gin.edit.statement.DeleteStatement;
+import gin.test.UnitTestResultSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SurrogateModelTest {
+
+    private final static String exampleSourceFilename = TestConfiguration.EXAMPLE_DIR_NAME + "Small.java";
+
+    private Patch failing;
+    private Patch passing;
+
+    @Before
+    public void setUp() {
+        SourceFileTree sourceFile = new SourceFileTree(exampleSourceFilename, Collections.emptyList());
+        List<Integer> statements = sourceFile.getAllStatementIDs();
+
+        failing = new Patch(sourceFile);
+        failing.add(new DeleteStatement(sourceFile.getRelativePathToWorkingDir(), statements.get(0)));
+        passing = new Patch(sourceFile);
+        passing.add(new DeleteStatement(sourceFile.getRelativePathToWorkingDir(), statements.get(statements.size() - 1)));
+    }
+
+    private static UnitTestResultSet result(Patch patch, boolean compiled) {
+        return new UnitTestResultSet(patch, null, true, Collections.emptyList(), compiled, null, false, Collections.emptyList());
+    }
+
+    @Test
+    public void testLearnsWhichPatchesPass() {
+        SurrogateModel model = new SurrogateModel(0.0, 0.5, 10, 123);
+
+        assertTrue(model.shouldEvaluate(failing));
+        for (int i = 0; i < 50; i++) {
+            model.observe(failing, result(failing, false));
+            model.observe(passing, result(passing, true));
+        }
+
+        assertTrue(model.predictSuccess(failing) < 0.2);
+        assertTrue(model.predictSuccess(passing) > 0.8);
+        assertFalse(model.shouldEvaluate(failing));
+        assertTrue(model.shouldEvaluate(passing));
+        assertEquals(1, model.getRejected());
+        assertEquals(100, model.getObserved());
+    }
+
+    @Test
+    public void testAcceptsEverythingDuringWarmup() {
+        SurrogateModel model = new SurrogateModel(0.0, 1.0, 3, 123);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(model.shouldEvaluate(failing));
+            model.observe(failing, result(failing, false));
+        }
+        assertFalse(model.shouldEvaluate(failing));
+    }
+
+    @Test
+    public void testExplorationRate() {
+        SurrogateModel model = new SurrogateModel(1.0, 1.0, 0, 123);
+        assertTrue(model.shouldEvaluate(failing));
+        assertEquals(1, model.getExplored());
+        assertEquals(0, model.getRejected());
+    }
+
+    @Test
+    public void testCalibration() {
+        SurrogateModel model = new SurrogateModel();
+        assertTrue(Double.isNaN(model.getBrierScore()));
+
+        // the first prediction is 0.5 for either outcome
+        model.observe(passing, result(passing, true));
+        assertEquals(0.25, model.getBrierScore(), 1e-9);
+        assertEquals(Math.log(2), model.getLogLoss(), 1e-9);
+
+        for (int i = 0; i < 50; i++) {
+            model.observe(failing, result(failing, false));
+            model.observe(passing, result(passing, true));
+        }
+        assertTrue(model.getBrierScore() < 0.25);
+        assertTrue(model.calibrationReport().contains("Observed 101 patches, 51 passed"));
+    }
+
+    @Test
+    public void testFitnessPrediction() {
+        SurrogateModel model = new SurrogateModel();
+        assertTrue(Double.isNaN(model.predictFitness(passing)));
+
+        for (int i = 0; i < 100; i++) {
+            model.observeFitness(failing, 100.0);
+            model.observeFitness(passing, 200.0);
+        }
+        assertEquals(100.0, model.predictFitness(failing), 10.0);
+        assertEquals(200.0, model.predictFitness(passing), 10.0);
+    }
+
+}
@@ -0,0 +1,74 @@
+package gin.util;
+
+import gin.TestConfiguration;
+import gin.test.UnitTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TraceAggregatorTest {
+
+    private static final File MAVEN_SIMPLE = new File(TestConfiguration.MAVEN_SIMPLE_DIR);
+
+    private final UnitTest first = new UnitTest("com.mycompany.app.AppTest", "testOne");
+    private final UnitTest second = new UnitTest("com.mycompany.app.AppTest", "testTwo");
+
+    TraceAggregator aggregator;
+
+    @Before
+    public void setUp() throws Exception {
+        Project project = new Project(MAVEN_SIMPLE, "simple");
+        project.setUp();
+        aggregator = new TraceAggregator(project);
+    }
+
+    @Test
+    public void testAdd() {
+
+        // frames outside the program are dropped
+        aggregator.add(first, Map.of("java.lang.String.length:1", 5));
+        assertNull(aggregator.cleanName("java.lang.String.length:1"));
+        assertEquals(0, aggregator.methodCount());
+
+        String classify = "com.mycompany.app.App.classifyTriangle(int,int,int)";
+        aggregator.addTrace(Trace.fromInnermostCounts(first, Map.of(classify, 5)));
+        aggregator.addTrace(Trace.fromInnermostCounts(second, Map.of(classify, 4)));
+        assertEquals(1, aggregator.methodCount());
+        assertEquals(2, aggregator.testCount());
+
+        Profiler.HotMethod method = aggregator.hotMethods().get(0);
+        assertEquals(classify, method.methodName);
+        assertEquals(9, method.count);
+        assertEquals(9, method.inclusiveCount);
+        assertEquals(Set.of(first, second), method.tests);
+    }
+
+    @Test
+    public void testManyMethods() {
+
+        // more methods than the initial size of the count arrays
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            counts.put("m" + i, i + 1);
+        }
+        aggregator.addTrace(Trace.fromInnermostCounts(first, counts));
+        aggregator.addTrace(Trace.fromInnermostCounts(second, Map.of("m99", 1)));
+
+        List<Profiler.HotMethod> hotMethods = aggregator.hotMethods();
+        assertEquals(100, hotMethods.size());
+        for (Profiler.HotMethod method : hotMethods) {
+            int i = Integer.parseInt(method.methodName.substring(1));
+            assertEquals(i == 99 ? 101 : i + 1, method.count);
+            assertEquals(i == 99 ? Set.of(first, second) : Set.of(first), method.tests);
+        }
+    }
+
+}
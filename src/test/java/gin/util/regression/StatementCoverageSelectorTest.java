@@ -0,0 +1,110 @@
+package gin.util.regression;
+
+import com.github.javaparser.StaticJavaParser;
+import gin.test.UnitTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StatementCoverageSelectorTest {
+
+    private static final String SOURCE = String.join("\n",
+            "package example;",                         // 1
+            "",                                         // 2
+            "public class Example {",                   // 3
+            "",                                         // 4
+            "    public int abs(int x) {",              // 5
+            "        int y = x;",                       // 6
+            "        if (x < 0)",                       // 7
+            "            y = -x;",                      // 8
+            "        return y;",                        // 9
+            "    }",                                    // 10
+            "",                                         // 11
+            "    public int other() {",                 // 12
+            "        return 1;",                        // 13
+            "    }",                                    // 14
+            "}",                                        // 15
+            "");
+
+    private final UnitTest positive = new UnitTest("example.ExampleTest", "testPositive");
+    private final UnitTest negative = new UnitTest("example.ExampleTest", "testNegative");
+    private final UnitTest unknown = new UnitTest("example.ExampleTest", "testUnknown");
+    private final List<UnitTest> tests = List.of(positive, negative, unknown);
+
+    private StatementCoverageSelector.MethodCoverage coverage;
+
+    @Before
+    public void setUp() {
+        coverage = StatementCoverageSelector.instrument("example.Example", SOURCE, List.of("abs(int)"));
+        // Statements: 0 int y = x; 1 if; 2 y = -x; 3 return y;
+        BitSet positiveHits = new BitSet();
+        positiveHits.set(0, 2);
+        positiveHits.set(3);
+        BitSet negativeHits = new BitSet();
+        negativeHits.set(0, 4);
+        coverage.hits.put(positive, positiveHits);
+        coverage.hits.put(negative, negativeHits);
+    }
+
+    @Test
+    public void testInstrument() {
+        assertEquals(1, coverage.methods.size());
+        assertEquals(4, coverage.statements.size());
+        assertEquals(8, coverage.statements.get(2).begin.line);
+
+        String instrumented = coverage.instrumentedSource;
+        StaticJavaParser.parse(instrumented);
+        for (int id = 0; id < 4; id++) {
+            assertTrue(instrumented.contains(CoverageProbe.class.getName() + ".hit(" + id + ");"));
+        }
+        // other() is not a target method
+        assertFalse(instrumented.contains(".hit(4);"));
+    }
+
+    @Test
+    public void testUnparseableSourceIsNotInstrumented() {
+        StatementCoverageSelector.MethodCoverage broken = StatementCoverageSelector.instrument("example.Example", "class {", List.of("abs(int)"));
+        assertNull(broken.instrumentedSource);
+        assertEquals(tests, broken.select(Set.of(8), tests));
+    }
+
+    @Test
+    public void testChangedLines() {
+        assertEquals(Collections.emptySet(), StatementCoverageSelector.changedLines(SOURCE, SOURCE));
+        assertEquals(Set.of(8), StatementCoverageSelector.changedLines(SOURCE, SOURCE.replace("y = -x;", "y = x;")));
+        assertEquals(Set.of(8), StatementCoverageSelector.changedLines(SOURCE, SOURCE.replace("            y = -x;\n", "")));
+        // An insertion touches the lines either side
+        assertEquals(Set.of(6, 7), StatementCoverageSelector.changedLines(SOURCE, SOURCE.replace("        int y = x;\n", "        int y = x;\n        y++;\n")));
+    }
+
+    @Test
+    public void testSelect() {
+        // Only the negative test ran y = -x
+        assertEquals(List.of(negative, unknown), coverage.select(StatementCoverageSelector.changedLines(SOURCE, SOURCE.replace("y = -x;", "y = x;")), tests));
+        // Both ran the if
+        assertEquals(tests, coverage.select(Set.of(7), tests));
+        // The signature selects tests that called the method
+        assertEquals(tests, coverage.select(Set.of(5), tests));
+        // Outside the target method
+        assertEquals(tests, coverage.select(Set.of(13), tests));
+        // Nothing changed
+        assertEquals(tests, coverage.select(Collections.emptySet(), tests));
+    }
+
+    @Test
+    public void testNoCoveringTestRunsAll() {
+        coverage.hits.put(unknown, new BitSet());
+        coverage.hits.get(negative).clear(2);
+        assertEquals(tests, coverage.select(Set.of(8), tests));
+    }
+
+}